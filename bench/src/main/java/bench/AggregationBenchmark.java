@@ -0,0 +1,75 @@
+package bench;
+
+import model.DateIndex;
+import model.ReportEngine;
+import model.TransactionAggregates;
+import model.TransactionStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dashboard's numbers: building the running aggregates and the date index
+ * from scratch, the full-scan baseline they replace, a period query as run
+ * on every chart render, and the parallel pivot behind the Reports tab.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+    private final ReportEngine reports = new ReportEngine();
+    private DateIndex index;
+    private int fromDay;
+    private int toDay;
+
+    @Setup
+    public void buildIndex(Dataset data) {
+        index = new DateIndex(data.store);
+        toDay = (int) SyntheticTransactions.LAST_DAY.toEpochDay();
+        fromDay = toDay - 89;
+    }
+
+    @TearDown
+    public void detach(Dataset data) {
+        data.store.removeListener(index);
+    }
+
+    @Benchmark
+    public long buildAggregates(Dataset data) {
+        TransactionAggregates aggregates = new TransactionAggregates(data.store);
+        data.store.removeListener(aggregates);
+        return aggregates.getCategoryCents(0, false);
+    }
+
+    @Benchmark
+    public long buildDateIndex(Dataset data) {
+        DateIndex built = new DateIndex(data.store);
+        data.store.removeListener(built);
+        return built.count(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void scanCategoryTotals(Dataset data, Blackhole bh) {
+        TransactionStore store = data.store;
+        bh.consume(store.sumCents(true));
+        bh.consume(store.sumCentsByCategory(false));
+    }
+
+    @Benchmark
+    public void periodQuery(Dataset data, Blackhole bh) {
+        bh.consume(index.sumCents(true, fromDay, toDay));
+        bh.consume(index.sumCents(false, fromDay, toDay));
+        for (int id = 0; id < data.store.categories().size(); id++) {
+            bh.consume(index.categoryExpenseCents(id, fromDay, toDay));
+        }
+    }
+
+    @Benchmark
+    public long pivotReport(Dataset data) {
+        return reports.run(data.store).sumCents(0, true);
+    }
+}
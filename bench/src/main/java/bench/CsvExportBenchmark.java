@@ -0,0 +1,34 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import storage.CsvExporter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvExportBenchmark {
+    private Path target;
+
+    @Setup
+    public void createTarget() throws IOException {
+        target = Files.createTempFile("spendid-bench", ".csv");
+    }
+
+    @TearDown
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public int exportAll(Dataset data) throws IOException {
+        return new CsvExporter(data.store).export(target, null);
+    }
+}
@@ -0,0 +1,21 @@
+package bench;
+
+import model.TransactionStore;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Shared benchmark input: a synthetic store at each of the tracked sizes. */
+@State(Scope.Benchmark)
+public class Dataset {
+    @Param({ "1000", "100000", "1000000" })
+    public int rows;
+
+    public TransactionStore store;
+
+    @Setup
+    public void generate() {
+        store = SyntheticTransactions.generate(rows);
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import model.TransactionStore;
+import org.openjdk.jmh.annotations.*;
+import storage.MappedTransactionFile;
+import storage.TransactionJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/** Snapshot write and full load (snapshot plus journal replay), the save/load paths of the app. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+    private Path directory;
+    private File snapshot;
+    private File scratch;
+    private TransactionStore target;
+
+    @Setup
+    public void writeSnapshot(Dataset data) throws IOException {
+        directory = Files.createTempDirectory("spendid-bench");
+        snapshot = directory.resolve("transactions.dat").toFile();
+        scratch = directory.resolve("scratch.dat").toFile();
+        MappedTransactionFile.write(data.store, 0, snapshot);
+        target = new TransactionStore();
+    }
+
+    @TearDown
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public long save(Dataset data) throws IOException {
+        MappedTransactionFile.write(data.store, 0, scratch);
+        return scratch.length();
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        TransactionJournal journal = new TransactionJournal(snapshot);
+        try {
+            journal.load(target);
+        } finally {
+            journal.close();
+        }
+        return target.size();
+    }
+}
@@ -0,0 +1,63 @@
+package bench;
+
+import model.StringDictionary;
+import model.TransactionStore;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic transaction generator: the same row count and seed always
+ * produce the same store, so benchmark runs can be compared against a baseline.
+ * Dates cover three years ending on a fixed day, and a few notes contain commas,
+ * quotes and line breaks so CSV quoting is exercised.
+ */
+public final class SyntheticTransactions {
+    public static final long DEFAULT_SEED = 0x5350454E44L;
+    public static final LocalDate LAST_DAY = LocalDate.of(2025, 6, 30);
+    public static final int SPAN_DAYS = 3 * 365;
+
+    private static final String[] INCOME_CATEGORIES = { "Allowance", "Salary", "Scholarship" };
+    private static final String[] EXPENSE_CATEGORIES = { "Food", "Transport", "Tuition", "Entertainment", "Misc" };
+    private static final String[] NOTES = {
+            "", "", "", "lunch", "jeepney fare", "books", "load", "movie night",
+            "groceries, snacks", "\"rush\" order", "split with\nroommates", "printing"
+    };
+
+    private SyntheticTransactions() {
+    }
+
+    public static TransactionStore generate(int rows) {
+        return generate(rows, DEFAULT_SEED);
+    }
+
+    public static TransactionStore generate(int rows, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        TransactionStore store = new TransactionStore();
+        StringDictionary categories = store.categories();
+        StringDictionary notes = store.notes();
+        int[] incomeIds = intern(categories, INCOME_CATEGORIES);
+        int[] expenseIds = intern(categories, EXPENSE_CATEGORIES);
+        int[] noteIds = intern(notes, NOTES);
+        int firstDay = (int) LAST_DAY.toEpochDay() - SPAN_DAYS + 1;
+
+        for (int i = 0; i < rows; i++) {
+            boolean income = random.nextInt(5) == 0;
+            int categoryId = income ? incomeIds[random.nextInt(incomeIds.length)]
+                    : expenseIds[random.nextInt(expenseIds.length)];
+            long cents = income ? 50_000 + random.nextInt(1_000_000) : 2_000 + random.nextInt(250_000);
+            int epochDay = firstDay + random.nextInt(SPAN_DAYS);
+            int noteId = noteIds[random.nextInt(noteIds.length)];
+            store.add(income, categoryId, cents, epochDay, noteId);
+        }
+        return store;
+    }
+
+    private static int[] intern(StringDictionary dictionary, String[] values) {
+        int[] ids = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ids[i] = dictionary.intern(values[i]);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import model.ChangeCoalescer;
+import model.DateIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import view.TransactionTableModel;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table population: reading every cell (the cost the old updateTable rebuild
+ * paid up front) and reading one screenful at a random offset, which is what
+ * the table does while scrolling.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableModelBenchmark {
+    private static final int VISIBLE_ROWS = 40;
+
+    private DateIndex dateIndex;
+    private ChangeCoalescer changes;
+    private TransactionTableModel model;
+    private final SplittableRandom random = new SplittableRandom(SyntheticTransactions.DEFAULT_SEED);
+
+    @Setup
+    public void createModel(Dataset data) {
+        dateIndex = new DateIndex(data.store);
+        changes = new ChangeCoalescer(data.store, Runnable::run);
+        model = new TransactionTableModel(data.store, dateIndex, changes);
+    }
+
+    @TearDown
+    public void detach(Dataset data) {
+        data.store.removeListener(model);
+        data.store.removeListener(changes);
+        data.store.removeListener(dateIndex);
+    }
+
+    @Benchmark
+    public void populateAll(Blackhole bh) {
+        readRows(0, model.getRowCount(), bh);
+    }
+
+    @Benchmark
+    public void scrollWindow(Blackhole bh) {
+        int first = random.nextInt(Math.max(1, model.getRowCount() - VISIBLE_ROWS));
+        readRows(first, Math.min(model.getRowCount(), first + VISIBLE_ROWS), bh);
+    }
+
+    private void readRows(int from, int to, Blackhole bh) {
+        int columns = model.getColumnCount();
+        for (int row = from; row < to; row++) {
+            for (int column = 0; column < columns; column++) {
+                bh.consume(model.getValueAt(row, column));
+            }
+        }
+    }
+}
@@ -1,28 +1,37 @@
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
-import com.formdev.flatlaf.themes.FlatMacDarkLaf;
-import java.awt.Font;
-import java.io.File;
-import java.awt.GraphicsEnvironment;
+import diagnostics.StartupTimings;
+import view.Resources;
 
 public class Main {
     public static void main(String[] args) {
-        try {
+        // Any arguments select the headless batch mode; no look and feel or fonts are loaded
+        if (cli.BatchMode.isRequested(args)) {
+            System.exit(cli.BatchMode.run(args));
+        }
 
-            // Set Theme
-            UIManager.setLookAndFeel(new FlatMacDarkLaf());
+        // Fonts, icons and the data files are read in the background while the theme sets up
+        StartupTimings.mark("main");
+        view.MainView.preload();
+
+        try {
 
-            // Load and Register Font
-            Font sfPro = Font.createFont(Font.TRUETYPE_FONT, new File("src/fonts/SF-Pro-Display-Medium.ttf")).deriveFont(14f);
-            GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(sfPro);
+            // Set Theme (by name, so batch runs never need FlatLaf on the class path)
+            try (StartupTimings.Phase ignored = StartupTimings.begin("look and feel")) {
+                UIManager.setLookAndFeel("com.formdev.flatlaf.themes.FlatMacDarkLaf");
+            }
 
-            // Apply it as default font
-            UIManager.put("defaultFont", sfPro);
+            // Apply the preloaded font as default font
+            UIManager.put("defaultFont", Resources.font(Resources.UI_FONT, 14f));
         } catch (Exception e) {
             e.printStackTrace();
         }
 
         // Launch
-        SwingUtilities.invokeLater(() -> new view.MainView());
+        SwingUtilities.invokeLater(() -> {
+            try (StartupTimings.Phase ignored = StartupTimings.begin("window")) {
+                new view.MainView();
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,347 @@
+package cli;
+
+import model.DateIndex;
+import model.Query;
+import model.StringDictionary;
+import model.TransactionRows;
+import model.TransactionStore;
+import storage.CsvExporter;
+import storage.CsvImporter;
+import storage.JsonExporter;
+import storage.JsonImporter;
+import storage.PartitionArchive;
+import storage.TransactionJournal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Headless entry point for scripted runs: load the data file, import CSV
+ * or JSON dumps, print a summary and export, without touching AWT, Swing or fonts.
+ * Steps always run in that order, whatever the order of the arguments, and
+ * each is timed; the timings are printed at the end. Only a saved import
+ * writes to the data files, and like a window's load it then also moves old
+ * months into the archive; runs that only report leave the files untouched.
+ */
+public final class BatchMode {
+    private static final String DEFAULT_DATA = "src/data/transactions.dat";
+
+    private final PrintStream out;
+    private final List<Phase> phases = new ArrayList<>();
+
+    private File dataFile = new File(DEFAULT_DATA);
+    private final List<Path> imports = new ArrayList<>();
+    private boolean summary;
+    private Path exportFile;
+    private LocalDate from;
+    private LocalDate to;
+    private Boolean incomeFilter;
+    private Query where;
+    private boolean explain;
+    private boolean save = true;
+
+    private BatchMode(PrintStream out) {
+        this.out = out;
+    }
+
+    /** True if the arguments ask for batch mode rather than the window. */
+    public static boolean isRequested(String[] args) {
+        return args.length > 0;
+    }
+
+    /** Runs the batch described by {@code args} and returns the process exit code. */
+    public static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchMode batch = new BatchMode(System.out);
+        try {
+            if (!batch.parse(args)) {
+                printUsage(System.out);
+                return 0;
+            }
+            batch.execute();
+            return 0;
+        } catch (IllegalArgumentException e) {
+            System.err.println("spendid: " + e.getMessage());
+            printUsage(System.err);
+            return 2;
+        } catch (IOException e) {
+            System.err.println("spendid: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static void printUsage(PrintStream stream) {
+        stream.println("Usage: spendid [options]");
+        stream.println("  --data FILE            data file to load and update (default " + DEFAULT_DATA + ")");
+        stream.println("  --import CSV|JSON|DIR  append the rows of a CSV or .json file, or the new rows of");
+        stream.println("                         every CSV file in a directory; may be repeated");
+        stream.println("  --summary              print totals, category and monthly breakdowns");
+        stream.println("  --export CSV|JSON      write the (filtered) transactions to a CSV file, or to JSON");
+        stream.println("                         if the name ends in .json");
+        stream.println("  --from DATE, --to DATE limit summary and export to a date range (yyyy-mm-dd)");
+        stream.println("  --type income|expense  limit the export to one type");
+        stream.println("  --where FILTER         limit the export to the rows matching a filter, such as");
+        stream.println("                         \"expense AND category in (Food, Transport) AND amount > 500\"");
+        stream.println("  --explain              print how the --where filter found its rows");
+        stream.println("  --no-save              do not write imported rows back to the data file");
+        stream.println("  --help                 show this message");
+        stream.println("Only a saved --import writes to the data files; it also archives old months.");
+    }
+
+    // Returns false when only help was asked for
+    private boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help":
+                case "-h":
+                    return false;
+                case "--data":
+                    dataFile = new File(value(args, ++i, arg));
+                    break;
+                case "--import":
+                    imports.add(Paths.get(value(args, ++i, arg)));
+                    break;
+                case "--summary":
+                    summary = true;
+                    break;
+                case "--export":
+                    exportFile = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--from":
+                    from = date(value(args, ++i, arg), arg);
+                    break;
+                case "--to":
+                    to = date(value(args, ++i, arg), arg);
+                    break;
+                case "--type":
+                    String type = value(args, ++i, arg);
+                    if (!type.equalsIgnoreCase("income") && !type.equalsIgnoreCase("expense")) {
+                        throw new IllegalArgumentException("--type must be income or expense");
+                    }
+                    incomeFilter = type.equalsIgnoreCase("income");
+                    break;
+                case "--where":
+                    try {
+                        where = Query.parse(value(args, ++i, arg));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("--where: " + e.getMessage());
+                    }
+                    break;
+                case "--explain":
+                    explain = true;
+                    break;
+                case "--no-save":
+                    save = false;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument " + arg);
+            }
+        }
+        if (imports.isEmpty() && !summary && exportFile == null) {
+            throw new IllegalArgumentException("nothing to do");
+        }
+        if (where != null && exportFile == null) {
+            throw new IllegalArgumentException("--where needs --export");
+        }
+        if (explain && where == null) {
+            throw new IllegalArgumentException("--explain needs --where");
+        }
+        return true;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static boolean isJson(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".json");
+    }
+
+    private static LocalDate date(String text, String option) {
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(option + " expects a date like 2025-01-31");
+        }
+    }
+
+    private void execute() throws IOException {
+        long started = System.nanoTime();
+        TransactionStore store = new TransactionStore();
+        PartitionArchive archive = new PartitionArchive(PartitionArchive.directoryFor(dataFile));
+        TransactionJournal journal = new TransactionJournal(dataFile, archive);
+        try {
+            if (save && !imports.isEmpty()) {
+                Files.createDirectories(dataFile.getAbsoluteFile().getParentFile().toPath());
+                // Running windows wait for the lock meanwhile, then load the result again
+                try (Closeable lock = journal.lock()) {
+                    long t = System.nanoTime();
+                    journal.load(store);
+                    phases.add(new Phase("load", store.size(), System.nanoTime() - t));
+                    importFiles(store, archive);
+                    t = System.nanoTime();
+                    // Imported rows are not journaled one by one; the whole store goes out as a new snapshot
+                    journal.rewrite(store);
+                    phases.add(new Phase("save", store.size(), System.nanoTime() - t));
+                }
+            } else {
+                // Nothing is written back, so the files are read as they are and old months are not archived
+                long t = System.nanoTime();
+                journal.loadReadOnly(store);
+                phases.add(new Phase("load", store.size(), System.nanoTime() - t));
+                importFiles(store, archive);
+            }
+
+            // Summary and export cover the archived months as well as the live ones
+            TransactionRows history = archive.isEmpty() ? store : archive.withHistory(store);
+            long t;
+            if (summary) {
+                t = System.nanoTime();
+                TransactionStore all = store;
+                if (history != store) {
+                    all = new TransactionStore();
+                    all.addAll(history, 0, history.size());
+                }
+                printSummary(all);
+                phases.add(new Phase("summary", all.size(), System.nanoTime() - t));
+            }
+
+            if (exportFile != null) {
+                t = System.nanoTime();
+                IntPredicate filter = row -> true;
+                if (incomeFilter != null) {
+                    boolean income = incomeFilter;
+                    filter = row -> history.isIncome(row) == income;
+                }
+                if (where != null) {
+                    // Building the indexes would cost more than the one scan they could save here
+                    Query.Result matched = where.select(history, null, null, LocalDate.now());
+                    if (explain) out.print(matched.explain());
+                    filter = filter.and(matched::contains);
+                }
+                int rows = isJson(exportFile) ? new JsonExporter(history).between(from, to).filter(filter).export(exportFile, null)
+                        : new CsvExporter(history).between(from, to).filter(filter).export(exportFile, null);
+                phases.add(new Phase("export", rows, System.nanoTime() - t));
+                out.println("Exported " + rows + " transactions to " + exportFile);
+            }
+        } finally {
+            journal.close();
+        }
+        printTimings(System.nanoTime() - started);
+    }
+
+    private void importFiles(TransactionStore store, PartitionArchive archive) throws IOException {
+        CsvImporter importer = new CsvImporter(store);
+        for (Path file : imports) {
+            long t = System.nanoTime();
+            int rows;
+            if (Files.isDirectory(file)) {
+                // Rows already in the archive count as present too
+                CsvImporter.DirectoryImport result = CsvImporter.importDirectory(file,
+                        archive.isEmpty() ? store : archive.withHistory(store),
+                        Runtime.getRuntime().availableProcessors(), CsvImporter.DEFAULT_BATCH_ROWS,
+                        store::addAll, (parsed, files) -> { });
+                out.printf("Imported %,d of %,d rows from %,d files in %s (%,d duplicates skipped)%n",
+                        result.added(), result.rows(), result.files(), file, result.duplicates());
+                rows = result.rows();
+            } else if (isJson(file)) {
+                rows = JsonImporter.importFile(file, CsvImporter.DEFAULT_BATCH_ROWS, store::addAll);
+            } else {
+                rows = importer.importFile(file);
+            }
+            phases.add(new Phase("import " + file.getFileName(), rows, System.nanoTime() - t));
+        }
+    }
+
+    private void printSummary(TransactionStore store) {
+        DateIndex index = new DateIndex(store);
+        int fromDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        int toDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+        long income = index.sumCents(true, fromDay, toDay);
+        long expenses = index.sumCents(false, fromDay, toDay);
+        int count = index.count(fromDay, toDay);
+        long[] categoryCents = new long[store.categories().size()];
+        for (int id = 0; id < categoryCents.length; id++) {
+            categoryCents[id] = index.categoryExpenseCents(id, fromDay, toDay);
+        }
+
+        out.println("Transactions: " + count + rangeLabel());
+        out.printf("  Income    %,18.2f%n", income / 100.0);
+        out.printf("  Expenses  %,18.2f%n", expenses / 100.0);
+        out.printf("  Net       %,18.2f%n", (income - expenses) / 100.0);
+
+        StringDictionary categories = store.categories();
+        Integer[] order = new Integer[categoryCents.length];
+        for (int id = 0; id < order.length; id++) order[id] = id;
+        Arrays.sort(order, Comparator.comparingLong((Integer id) -> categoryCents[id]).reversed());
+        out.println("Expenses by category:");
+        for (int id : order) {
+            if (categoryCents[id] == 0) continue;
+            out.printf("  %-22s %,18.2f%n", categories.get(id), categoryCents[id] / 100.0);
+        }
+
+        LocalDate first = from != null ? from : index.firstDate();
+        LocalDate last = to != null ? to : index.lastDate();
+        if (first != null && last != null && !first.isAfter(last)) {
+            YearMonth firstMonth = YearMonth.from(first);
+            int months = DateIndex.monthIndex(YearMonth.from(last)) - DateIndex.monthIndex(firstMonth) + 1;
+            // Month totals cover whole months; a partial --from/--to month is rounded out
+            long[] monthIncome = index.monthlyCents(true, firstMonth, months);
+            long[] monthExpenses = index.monthlyCents(false, firstMonth, months);
+            out.println("By month:              income           expenses");
+            for (int i = 0; i < months; i++) {
+                if (monthIncome[i] == 0 && monthExpenses[i] == 0) continue;
+                out.printf("  %-10s %,18.2f %,18.2f%n", firstMonth.plusMonths(i), monthIncome[i] / 100.0,
+                        monthExpenses[i] / 100.0);
+            }
+        }
+        store.removeListener(index);
+    }
+
+    private String rangeLabel() {
+        if (from == null && to == null) return "";
+        return " (" + (from == null ? "start" : from) + " to " + (to == null ? "end" : to) + ")";
+    }
+
+    private void printTimings(long totalNanos) {
+        out.println();
+        out.println("Timings:");
+        for (Phase phase : phases) {
+            double millis = phase.nanos / 1e6;
+            double perSecond = phase.nanos == 0 ? 0 : phase.rows * 1e9 / phase.nanos;
+            out.printf("  %-24s %,12d rows %,10.1f ms %,14.0f rows/s%n", phase.name, phase.rows, millis, perSecond);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long usedMb = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        out.printf("  %-24s %,35.1f ms   heap in use %,d MB%n", "total", totalNanos / 1e6, usedMb);
+    }
+
+    private static final class Phase {
+        final String name;
+        final long rows;
+        final long nanos;
+
+        Phase(String name, long rows, long nanos) {
+            this.name = name;
+            this.rows = rows;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** Flight Recorder event for an event dispatch thread stall seen by {@link EdtWatchdog}. */
+@Name("spendid.EdtStall")
+@Label("EDT Stall")
+@Category("Spendid")
+@Description("The event dispatch thread was busy with one event for longer than the stall threshold")
+@StackTrace(false)
+final class EdtStallEvent extends Event {
+    @Label("Stall Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long stallDuration;
+
+    @Label("Sampled Stack")
+    String stack;
+}
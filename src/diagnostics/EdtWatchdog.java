@@ -0,0 +1,210 @@
+package diagnostics;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Detects stalls of the event dispatch thread. An event queue pushed on top of
+ * the system one marks when the EDT starts working on something and when it
+ * goes back to waiting; a daemon thread samples the EDT's stack whenever the
+ * current piece of work has run past the threshold. Modal dialogs pump events
+ * from inside a dispatch, so every wait for the next event ends the current
+ * piece of work: an open dialog is not a stall, but slow work before or after
+ * it is. Finished stalls are logged, counted, kept (the most recent ones) for
+ * the diagnostics panel and emitted as {@link EdtStallEvent}s.
+ */
+public final class EdtWatchdog {
+    private static final int MAX_STALLS = 50;
+    private static final int MAX_SAMPLES = 20;
+    private static final int LOGGED_FRAMES = 12;
+
+    private final long thresholdNanos;
+    private final long sampleIntervalMillis;
+    private final Deque<Stall> stalls = new ArrayDeque<>();
+    private final List<StackTraceElement[]> samples = new ArrayList<>();
+    private volatile long busySince; // 0 while the EDT waits for events
+    private volatile Thread edt;
+    private long sampledSince;
+
+    /** One stall: when it started, how long it lasted and the stacks sampled meanwhile. */
+    public static final class Stall {
+        private final LocalDateTime started;
+        private final long nanos;
+        private final List<StackTraceElement[]> samples;
+
+        Stall(LocalDateTime started, long nanos, List<StackTraceElement[]> samples) {
+            this.started = started;
+            this.nanos = nanos;
+            this.samples = samples;
+        }
+
+        public LocalDateTime started() {
+            return started;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        public List<StackTraceElement[]> samples() {
+            return samples;
+        }
+
+        /** The samples, with identical consecutive stacks folded into one. */
+        public String describe() {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < samples.size(); ) {
+                int repeats = 1;
+                while (i + repeats < samples.size() && Arrays.equals(samples.get(i), samples.get(i + repeats))) repeats++;
+                text.append("sample ").append(i + 1);
+                if (repeats > 1) text.append('-').append(i + repeats);
+                text.append(":\n");
+                for (StackTraceElement frame : samples.get(i)) {
+                    text.append("    at ").append(frame).append('\n');
+                }
+                i += repeats;
+            }
+            return text.length() == 0 ? "(finished before it could be sampled)\n" : text.toString();
+        }
+    }
+
+    private EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+        this.sampleIntervalMillis = Math.max(10, thresholdMillis / 4);
+    }
+
+    /** Starts watching the EDT; work that keeps it busy for {@code thresholdMillis} or more is a stall. */
+    public static EdtWatchdog install(long thresholdMillis) {
+        EdtWatchdog watchdog = new EdtWatchdog(thresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(watchdog.new TimedQueue());
+        Thread sampler = new Thread(watchdog::sample, "edt-watchdog");
+        sampler.setDaemon(true);
+        sampler.start();
+        return watchdog;
+    }
+
+    public long thresholdMillis() {
+        return thresholdNanos / 1_000_000;
+    }
+
+    /** Recent stalls, oldest first. */
+    public synchronized List<Stall> stalls() {
+        return new ArrayList<>(stalls);
+    }
+
+    public synchronized void clear() {
+        stalls.clear();
+    }
+
+    void writeStalls(PrintWriter out) {
+        List<Stall> recent = stalls();
+        out.printf("EDT stalls over %d ms: %d recorded%n", thresholdMillis(), recent.size());
+        for (Stall stall : recent) {
+            out.println();
+            out.printf("%s  %,.1f ms%n", stall.started, Metrics.millis(stall.nanos));
+            out.print(stall.describe());
+        }
+    }
+
+    // Called on the EDT whenever it switches between working and waiting.
+    private void mark(long now, long next) {
+        long since = busySince;
+        busySince = next;
+        if (since != 0 && now - since >= thresholdNanos) {
+            record(since, now - since);
+        }
+    }
+
+    private void record(long since, long nanos) {
+        List<StackTraceElement[]> taken;
+        synchronized (this) {
+            taken = sampledSince == since ? new ArrayList<>(samples) : new ArrayList<>();
+            samples.clear();
+            sampledSince = 0;
+        }
+        LocalDateTime started = LocalDateTime.now().minusNanos(nanos);
+        Stall stall = new Stall(started, nanos, taken);
+        synchronized (this) {
+            stalls.addLast(stall);
+            if (stalls.size() > MAX_STALLS) stalls.removeFirst();
+        }
+        Metrics.counter("edt.stalls").increment();
+        Metrics.timer("edt.stall").record(nanos);
+
+        String stack = taken.isEmpty() ? "" : top(taken.get(taken.size() / 2));
+        System.err.printf("EDT stalled for %,.1f ms%n%s", Metrics.millis(nanos), stack);
+        EdtStallEvent event = new EdtStallEvent();
+        if (event.shouldCommit()) {
+            event.stallDuration = nanos;
+            event.stack = stack;
+            event.commit();
+        }
+    }
+
+    private static String top(StackTraceElement[] frames) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < Math.min(LOGGED_FRAMES, frames.length); i++) {
+            text.append("    at ").append(frames[i]).append('\n');
+        }
+        return text.toString();
+    }
+
+    private void sample() {
+        while (true) {
+            try {
+                Thread.sleep(sampleIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long since = busySince;
+            Thread thread = edt;
+            if (since == 0 || thread == null || System.nanoTime() - since < thresholdNanos) continue;
+            StackTraceElement[] stack = thread.getStackTrace();
+            synchronized (this) {
+                // The EDT may have moved on while the stack was taken; then the sample is dropped
+                if (busySince != since) continue;
+                if (sampledSince != since) {
+                    samples.clear();
+                    sampledSince = since;
+                }
+                if (samples.size() < MAX_SAMPLES) samples.add(stack);
+            }
+        }
+    }
+
+    private final class TimedQueue extends EventQueue {
+        private int depth;
+
+        @Override
+        public AWTEvent getNextEvent() throws InterruptedException {
+            mark(System.nanoTime(), 0);
+            try {
+                return super.getNextEvent();
+            } finally {
+                busySince = System.nanoTime();
+            }
+        }
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            edt = Thread.currentThread();
+            depth++;
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                depth--;
+                long now = System.nanoTime();
+                // Returning from a nested dispatch means the outer event carries on working
+                mark(now, depth > 0 ? now : 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package diagnostics;
+
+/**
+ * Mergeable histogram of {@code long} values with logarithmic buckets, used
+ * for the amount percentiles in reports and the latency percentiles of
+ * {@link Metrics} timers. Every bucket spans a factor of {@code GAMMA}, so a
+ * percentile is reported within about 1% of the true value while two
+ * histograms merge by adding their counts, which is what the parallel
+ * reduction in {@code model.ReportEngine} needs.
+ */
+public class LogHistogram {
+    private static final double GAMMA = 1.02;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    // Enough buckets for 1 up to Long.MAX_VALUE
+    private static final int BUCKETS = (int) Math.ceil(Math.log(Long.MAX_VALUE) / LOG_GAMMA) + 1;
+
+    // [0] counts zeros, [1, BUCKETS] positive values, (BUCKETS, 2 * BUCKETS] negative ones
+    private long[] counts;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public void add(long value) {
+        if (counts == null) counts = new long[2 * BUCKETS + 1];
+        counts[bucketOf(value)]++;
+        total++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public void merge(LogHistogram other) {
+        if (other.total == 0) return;
+        if (counts == null) counts = new long[2 * BUCKETS + 1];
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return total;
+    }
+
+    /**
+     * Approximate value below which {@code fraction} (0 to 1) of the values
+     * fall; 0 for an empty histogram. The extremes are exact.
+     */
+    public long percentile(double fraction) {
+        if (total == 0) return 0;
+        if (fraction <= 0) return min;
+        if (fraction >= 1) return max;
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        // Walk from the most negative bucket up through zero to the largest positive one
+        for (int i = 2 * BUCKETS; i > BUCKETS; i--) {
+            seen += counts[i];
+            if (seen >= rank) return clamp(-valueOf(i - BUCKETS));
+        }
+        seen += counts[0];
+        if (seen >= rank) return clamp(0);
+        for (int i = 1; i <= BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return clamp(valueOf(i));
+        }
+        return max;
+    }
+
+    private long clamp(long value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int bucketOf(long value) {
+        if (value == 0) return 0;
+        long magnitude = value == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(value);
+        int bucket = Math.min(BUCKETS, 1 + (int) (Math.log(magnitude) / LOG_GAMMA));
+        return value > 0 ? bucket : BUCKETS + bucket;
+    }
+
+    // Midpoint of bucket i, which holds magnitudes in [GAMMA^(i-1), GAMMA^i)
+    private static long valueOf(int bucket) {
+        return Math.round(Math.pow(GAMMA, bucket - 1) * (1 + GAMMA) / 2);
+    }
+}
@@ -0,0 +1,189 @@
+package diagnostics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide named timers and counters for the slow paths (load, save,
+ * table updates, painting, import and export). A timing also emits an
+ * {@link OperationEvent}, so the same operations show up in a Flight Recorder
+ * recording next to GC and allocation data. Names are dotted, e.g.
+ * {@code "csv.export"}; a metric is created the first time it is used.
+ */
+public final class Metrics {
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, Counter::new);
+    }
+
+    /** Starts timing {@code name}; close the result when the operation ends. */
+    public static Timing time(String name) {
+        return timer(name).start();
+    }
+
+    /** Timers sorted by name. */
+    public static List<Timer> timers() {
+        List<Timer> timers = new ArrayList<>(TIMERS.values());
+        timers.sort((a, b) -> a.name.compareTo(b.name));
+        return timers;
+    }
+
+    /** Counters sorted by name. */
+    public static List<Counter> counters() {
+        List<Counter> counters = new ArrayList<>(COUNTERS.values());
+        counters.sort((a, b) -> a.name.compareTo(b.name));
+        return counters;
+    }
+
+    public static void reset() {
+        TIMERS.clear();
+        COUNTERS.clear();
+    }
+
+    /** Writes every timer and counter, and the stalls {@code watchdog} saw (if any), as plain text. */
+    public static void writeReport(Path target, EdtWatchdog watchdog) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(target, StandardCharsets.UTF_8))) {
+            out.println("Spendid diagnostics, " + LocalDateTime.now());
+            out.println();
+            out.printf("%-28s %10s %12s %10s %10s %10s %10s%n", "Timer", "Count", "Total ms", "Mean ms", "P50 ms",
+                    "P99 ms", "Max ms");
+            for (Timer timer : timers()) {
+                out.printf("%-28s %,10d %,12.1f %,10.2f %,10.2f %,10.2f %,10.2f%n", timer.name, timer.count(),
+                        millis(timer.totalNanos()), millis(timer.meanNanos()), millis(timer.percentileNanos(0.5)),
+                        millis(timer.percentileNanos(0.99)), millis(timer.maxNanos()));
+            }
+            out.println();
+            out.printf("%-28s %14s%n", "Counter", "Value");
+            for (Counter counter : counters()) {
+                out.printf("%-28s %,14d%n", counter.name, counter.value());
+            }
+            if (watchdog != null) {
+                out.println();
+                watchdog.writeStalls(out);
+            }
+        }
+    }
+
+    public static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /** Count, total, maximum and approximate percentiles of one operation's durations. */
+    public static final class Timer {
+        private final String name;
+        private final LogHistogram histogram = new LogHistogram();
+        private long totalNanos;
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Timing start() {
+            return new Timing(this);
+        }
+
+        public synchronized void record(long nanos) {
+            histogram.add(nanos);
+            totalNanos += nanos;
+        }
+
+        public synchronized long count() {
+            return histogram.count();
+        }
+
+        public synchronized long totalNanos() {
+            return totalNanos;
+        }
+
+        public synchronized long meanNanos() {
+            return histogram.count() == 0 ? 0 : totalNanos / histogram.count();
+        }
+
+        public synchronized long maxNanos() {
+            return histogram.percentile(1);
+        }
+
+        /** Within about 1% of the true value; see {@link LogHistogram}. */
+        public synchronized long percentileNanos(double fraction) {
+            return histogram.percentile(fraction);
+        }
+    }
+
+    /** One running measurement; closing it records the elapsed time and commits the JFR event. */
+    public static final class Timing implements AutoCloseable {
+        private final Timer timer;
+        private final OperationEvent event = new OperationEvent();
+        private final long started = System.nanoTime();
+        private boolean closed;
+
+        private Timing(Timer timer) {
+            this.timer = timer;
+            event.begin();
+        }
+
+        /** Row or item count reported with the JFR event. */
+        public Timing rows(long rows) {
+            event.rows = rows;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            timer.record(System.nanoTime() - started);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = timer.name;
+                event.commit();
+            }
+        }
+    }
+
+    public static final class Counter {
+        private final String name;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long value() {
+            return value.sum();
+        }
+    }
+}
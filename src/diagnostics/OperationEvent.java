@@ -0,0 +1,22 @@
+package diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight Recorder event for one {@link Metrics.Timing}; the event duration is the operation's. */
+@Name("spendid.Operation")
+@Label("Operation")
+@Category("Spendid")
+@Description("A timed load, save, table, paint, import or export operation")
+@StackTrace(false)
+final class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Rows")
+    long rows;
+}
@@ -0,0 +1,104 @@
+package diagnostics;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Wall-clock phases of one application start, measured from JVM launch.
+ * Phases that run on different threads overlap, so the report lists each
+ * phase with its start offset as well as its length. Every phase is also
+ * recorded as a {@link Metrics} timer named {@code startup.<phase>}; a
+ * milestone's timer holds the time from launch.
+ */
+public final class StartupTimings {
+    private static final long LAUNCHED = launched();
+    private static final List<Phase> PHASES = new ArrayList<>();
+    private static final Set<String> MILESTONES = new HashSet<>();
+    private static boolean finished;
+
+    private StartupTimings() {
+    }
+
+    /** One phase: when it started relative to JVM launch, how long it took and on which thread. */
+    public static final class Phase implements AutoCloseable {
+        private final String name;
+        private final String thread = Thread.currentThread().getName();
+        private final long started = System.nanoTime();
+        private final Metrics.Timing timing;
+        private long nanos = -1; // -1 while running, 0 for a milestone
+
+        private Phase(String name, Metrics.Timing timing) {
+            this.name = name;
+            this.timing = timing;
+        }
+
+        @Override
+        public void close() {
+            synchronized (StartupTimings.class) {
+                if (nanos >= 0) return;
+                nanos = System.nanoTime() - started;
+                PHASES.add(this);
+            }
+            timing.close();
+        }
+    }
+
+    /** Starts timing startup phase {@code name}; close the result when the phase ends. */
+    public static Phase begin(String name) {
+        return new Phase(name, Metrics.time("startup." + name));
+    }
+
+    /** Records a milestone, e.g. the first rows appearing, the first time it is reached. */
+    public static void mark(String name) {
+        Phase milestone = new Phase(name, null);
+        synchronized (StartupTimings.class) {
+            if (finished || !MILESTONES.add(name)) return;
+            milestone.nanos = 0;
+            PHASES.add(milestone);
+        }
+        Metrics.timer("startup." + name).record(milestone.started - LAUNCHED);
+    }
+
+    /**
+     * Ends the startup with milestone {@code name} and, when the
+     * {@code spendid.startupTimings} system property is set, prints the
+     * phases to standard error. Only the first call counts.
+     */
+    public static void finish(String name) {
+        mark(name);
+        synchronized (StartupTimings.class) {
+            if (finished) return;
+            finished = true;
+        }
+        if (Boolean.getBoolean("spendid.startupTimings")) {
+            PrintWriter out = new PrintWriter(System.err);
+            write(out);
+            out.flush();
+        }
+    }
+
+    /** Writes the phases recorded so far, in the order they started. */
+    public static void write(PrintWriter out) {
+        List<Phase> phases;
+        synchronized (StartupTimings.class) {
+            phases = new ArrayList<>(PHASES);
+        }
+        phases.sort((a, b) -> Long.compare(a.started, b.started));
+        out.printf("%-24s %10s %10s  %s%n", "Startup phase", "At ms", "Took ms", "Thread");
+        for (Phase phase : phases) {
+            String took = phase.nanos == 0 ? "" : String.format("%,.1f", Metrics.millis(phase.nanos));
+            out.printf("%-24s %,10.1f %10s  %s%n", phase.name, Metrics.millis(phase.started - LAUNCHED), took,
+                    phase.thread);
+        }
+    }
+
+    // System.nanoTime() at JVM launch, as near as the management bean's millisecond start time allows
+    private static long launched() {
+        long sinceLaunchMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        return System.nanoTime() - sinceLaunchMillis * 1_000_000;
+    }
+}
@@ -0,0 +1,240 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The categories as a tree, such as Food › Groceries, with a stable int id
+ * per node. A row's category string is the node's path from the top, so the
+ * store and its files keep plain strings; the tree maps each of the store's
+ * category ids to its node once and from then on works on ints only.
+ * <p>
+ * Every node carries the income and expense totals of its whole subtree. A
+ * row change is added to its node and each ancestor, O(depth), so the total of
+ * any node at any level is read in O(1) without a scan or a string compare.
+ * Node 0 is the unnamed root; rows without a category count only there.
+ * Must be used from the thread that mutates the store.
+ */
+public class CategoryTree implements TransactionStore.Listener {
+    public static final int ROOT = 0;
+    public static final String SEPARATOR = " › ";
+
+    private final TransactionStore store;
+    private final Map<String, Integer> byPath = new HashMap<>();
+    private final List<Runnable> listeners = new ArrayList<>();
+    private String[] names = new String[16];
+    private String[] paths = new String[16];
+    private int[] parents = new int[16];
+    private IntList[] children = new IntList[16];
+    private long[] incomeCents = new long[16];
+    private long[] expenseCents = new long[16];
+    private int[] incomeCounts = new int[16];
+    private int[] expenseCounts = new int[16];
+    private int[] nodeOfCategory = new int[0]; // by store category id; -1 until first seen
+    private int size;
+
+    public CategoryTree(TransactionStore store) {
+        this.store = store;
+        add(ROOT, "", -1);
+        store.addListener(this);
+        rowsInserted(0, store.size());
+    }
+
+    /** Called after a node has been added. */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * A path with each level trimmed and joined by {@link #SEPARATOR}; either
+     * "›" or ">" separates levels in {@code text}, and empty levels are dropped.
+     */
+    public static String normalize(String text) {
+        StringBuilder path = new StringBuilder();
+        for (String level : text.split("[›>]")) {
+            level = level.trim();
+            if (level.isEmpty()) continue;
+            if (path.length() > 0) path.append(SEPARATOR);
+            path.append(level);
+        }
+        return path.toString();
+    }
+
+    /** The node for {@code path}, adding it and any missing ancestors. */
+    public int intern(String path) {
+        String normalized = normalize(path == null ? "" : path);
+        Integer id = byPath.get(normalized);
+        if (id != null) return id;
+        int cut = normalized.lastIndexOf(SEPARATOR);
+        int parent = cut < 0 ? ROOT : intern(normalized.substring(0, cut));
+        int node = size;
+        add(node, cut < 0 ? normalized : normalized.substring(cut + SEPARATOR.length()), parent);
+        for (Runnable listener : listeners) listener.run();
+        return node;
+    }
+
+    /** The node for {@code path}, or -1 if there is none. */
+    public int find(String path) {
+        Integer id = byPath.get(normalize(path == null ? "" : path));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Re-creates a node with the id it had when it was saved. Only for filling
+     * an empty tree, parents before their children.
+     */
+    public void restore(int node, int parent, String name) {
+        if (node < size || !exists(parent) || name.isEmpty() || !normalize(name).equals(name)) {
+            throw new IllegalArgumentException("Cannot restore category " + node + " '" + name + "' under " + parent);
+        }
+        if (nodeOfCategory.length > 0) throw new IllegalStateException("Categories are already in use");
+        String path = parent == ROOT ? name : paths[parent] + SEPARATOR + name;
+        if (byPath.containsKey(path)) throw new IllegalArgumentException("Duplicate category '" + path + "'");
+        // Ids of nodes that were never saved are skipped, and stay free
+        while (size < node) add(size, null, -1);
+        add(node, name, parent);
+    }
+
+    /** Upper bound (exclusive) of the node ids. */
+    public int size() {
+        return size;
+    }
+
+    /** Whether {@code node} is a category, rather than an id skipped by {@link #restore}. */
+    public boolean exists(int node) {
+        return node >= 0 && node < size && paths[node] != null;
+    }
+
+    public String name(int node) {
+        return names[node];
+    }
+
+    /** The full name, such as "Food › Groceries"; empty for the root. */
+    public String path(int node) {
+        return paths[node];
+    }
+
+    /** The parent node, or -1 for the root. */
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public int depth(int node) {
+        int depth = 0;
+        for (int n = parents[node]; n >= 0; n = parents[n]) depth++;
+        return depth;
+    }
+
+    /** The child nodes, oldest first. */
+    public int[] children(int node) {
+        return children[node] == null ? new int[0] : children[node].toArray();
+    }
+
+    /** Every node below {@code node}, each before its children; siblings oldest first. */
+    public int[] descendants(int node) {
+        IntList order = new IntList();
+        collect(node, order);
+        return order.toArray();
+    }
+
+    private void collect(int node, IntList order) {
+        if (children[node] == null) return;
+        for (int i = 0; i < children[node].size(); i++) {
+            int child = children[node].get(i);
+            order.add(child);
+            collect(child, order);
+        }
+    }
+
+    /** Cents of the given type in the node's whole subtree. */
+    public long cents(int node, boolean income) {
+        return income ? incomeCents[node] : expenseCents[node];
+    }
+
+    /** Rows of the given type in the node's whole subtree. */
+    public int count(int node, boolean income) {
+        return income ? incomeCounts[node] : expenseCounts[node];
+    }
+
+    /** The node of one of the store's category ids. */
+    public int nodeOf(int categoryId) {
+        if (categoryId >= nodeOfCategory.length) {
+            int old = nodeOfCategory.length;
+            nodeOfCategory = Arrays.copyOf(nodeOfCategory, Math.max(store.categories().size(), categoryId + 1));
+            Arrays.fill(nodeOfCategory, old, nodeOfCategory.length, -1);
+        }
+        int node = nodeOfCategory[categoryId];
+        if (node < 0) {
+            node = intern(store.categories().get(categoryId));
+            nodeOfCategory[categoryId] = node;
+        }
+        return node;
+    }
+
+    /** Adds {@code value} to {@code totals[n]} for {@code node} and each of its ancestors, O(depth). */
+    public void addToPath(long[] totals, int node, long value) {
+        for (int n = node; n >= 0; n = parents[n]) totals[n] += value;
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        for (int row = from; row < to; row++) {
+            apply(row, 1);
+        }
+    }
+
+    @Override
+    public void rowsRemoving(int from, int to) {
+        for (int row = from; row < to; row++) {
+            apply(row, -1);
+        }
+    }
+
+    @Override
+    public void rowUpdating(int row) {
+        apply(row, -1);
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        apply(row, 1);
+    }
+
+    private void apply(int row, int sign) {
+        long cents = sign * store.getCents(row);
+        boolean income = store.isIncome(row);
+        long[] totals = income ? incomeCents : expenseCents;
+        int[] counts = income ? incomeCounts : expenseCounts;
+        for (int n = nodeOf(store.getCategoryId(row)); n >= 0; n = parents[n]) {
+            totals[n] += cents;
+            counts[n] += sign;
+        }
+    }
+
+    private void add(int node, String name, int parent) {
+        if (node == names.length) {
+            int capacity = node * 2;
+            names = Arrays.copyOf(names, capacity);
+            paths = Arrays.copyOf(paths, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            children = Arrays.copyOf(children, capacity);
+            incomeCents = Arrays.copyOf(incomeCents, capacity);
+            expenseCents = Arrays.copyOf(expenseCents, capacity);
+            incomeCounts = Arrays.copyOf(incomeCounts, capacity);
+            expenseCounts = Arrays.copyOf(expenseCounts, capacity);
+        }
+        names[node] = name;
+        parents[node] = parent;
+        size = node + 1;
+        if (name == null) return;
+        paths[node] = parent <= ROOT ? name : paths[parent] + SEPARATOR + name;
+        byPath.put(paths[node], node);
+        if (parent >= 0) {
+            if (children[parent] == null) children[parent] = new IntList(4);
+            children[parent].add(node);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Turns the per-row callbacks of a {@link TransactionStore} into batches of
+ * {@link TransactionChange}s. Changes are collected until the scheduled flush
+ * runs (on the EDT, once per event-queue turn when the scheduler is
+ * {@code SwingUtilities::invokeLater}), and neighbouring ranges of the same
+ * kind are merged on the way, so a bulk edit of thousands of rows reaches the
+ * listeners as one batch of a few ranges. Must be used from the thread that
+ * mutates the store.
+ */
+public class ChangeCoalescer implements TransactionStore.Listener {
+    private final Executor scheduler;
+    private final List<BatchListener> listeners = new ArrayList<>();
+    private List<TransactionChange> pending = new ArrayList<>();
+    private boolean scheduled;
+
+    /** Receives the changes made since the previous batch, in order. */
+    public interface BatchListener {
+        void changesApplied(List<TransactionChange> changes);
+    }
+
+    public ChangeCoalescer(TransactionStore store, Executor scheduler) {
+        this.scheduler = scheduler;
+        store.addListener(this);
+    }
+
+    public void addListener(BatchListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        TransactionChange last = last(TransactionChange.Kind.INSERTED);
+        if (last != null && last.to() == from) {
+            replaceLast(new TransactionChange(TransactionChange.Kind.INSERTED, last.from(), to));
+        } else {
+            add(new TransactionChange(TransactionChange.Kind.INSERTED, from, to));
+        }
+    }
+
+    @Override
+    public void rowsRemoved(int from, int to) {
+        TransactionChange last = last(TransactionChange.Kind.REMOVED);
+        if (last != null && last.from() == from) {
+            // Removing at the same position again, e.g. deleting rows top-down
+            replaceLast(new TransactionChange(TransactionChange.Kind.REMOVED, from, last.to() + (to - from)));
+        } else if (last != null && to == last.from()) {
+            // Removing the rows just above, e.g. deleting rows bottom-up
+            replaceLast(new TransactionChange(TransactionChange.Kind.REMOVED, from, last.to()));
+        } else {
+            add(new TransactionChange(TransactionChange.Kind.REMOVED, from, to));
+        }
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        TransactionChange last = last(TransactionChange.Kind.UPDATED);
+        if (last != null && row >= last.from() && row <= last.to()) {
+            if (row == last.to()) {
+                replaceLast(new TransactionChange(TransactionChange.Kind.UPDATED, last.from(), row + 1));
+            }
+        } else {
+            add(new TransactionChange(TransactionChange.Kind.UPDATED, row, row + 1));
+        }
+    }
+
+    /** Delivers what has been collected so far without waiting for the scheduled flush. */
+    public void flush() {
+        if (pending.isEmpty()) return;
+        List<TransactionChange> batch = pending;
+        pending = new ArrayList<>();
+        for (BatchListener listener : listeners) listener.changesApplied(batch);
+    }
+
+    private TransactionChange last(TransactionChange.Kind kind) {
+        if (pending.isEmpty()) return null;
+        TransactionChange last = pending.get(pending.size() - 1);
+        return last.kind() == kind ? last : null;
+    }
+
+    private void replaceLast(TransactionChange change) {
+        pending.set(pending.size() - 1, change);
+    }
+
+    private void add(TransactionChange change) {
+        pending.add(change);
+        if (!scheduled) {
+            scheduled = true;
+            scheduler.execute(() -> {
+                scheduled = false;
+                flush();
+            });
+        }
+    }
+}
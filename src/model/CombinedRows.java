@@ -0,0 +1,87 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Several {@link TransactionRows} read back to back as one, e.g. archived
+ * month partitions followed by the live store. Category ids are translated
+ * into one merged dictionary. The segments must not change while this view is
+ * in use; pass copies of anything that is still being edited.
+ */
+public class CombinedRows implements TransactionRows {
+    private final TransactionRows[] segments;
+    private final int[] starts;
+    private final int[][] categoryMaps;
+    private final StringDictionary categories = new StringDictionary();
+    private final int size;
+
+    public CombinedRows(List<? extends TransactionRows> segments) {
+        this.segments = segments.toArray(new TransactionRows[0]);
+        this.starts = new int[this.segments.length];
+        this.categoryMaps = new int[this.segments.length][];
+        int total = 0;
+        for (int i = 0; i < this.segments.length; i++) {
+            TransactionRows segment = this.segments[i];
+            starts[i] = total;
+            total += segment.size();
+            StringDictionary own = segment.categories();
+            categoryMaps[i] = new int[own.size()];
+            for (int id = 0; id < own.size(); id++) {
+                categoryMaps[i][id] = categories.intern(own.get(id));
+            }
+        }
+        this.size = total;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getCents(int row) {
+        int segment = segmentOf(row);
+        return segments[segment].getCents(row - starts[segment]);
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        int segment = segmentOf(row);
+        return segments[segment].getEpochDay(row - starts[segment]);
+    }
+
+    @Override
+    public boolean isIncome(int row) {
+        int segment = segmentOf(row);
+        return segments[segment].isIncome(row - starts[segment]);
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        int segment = segmentOf(row);
+        return categoryMaps[segment][segments[segment].getCategoryId(row - starts[segment])];
+    }
+
+    @Override
+    public String getNotes(int row) {
+        int segment = segmentOf(row);
+        return segments[segment].getNotes(row - starts[segment]);
+    }
+
+    @Override
+    public StringDictionary categories() {
+        return categories;
+    }
+
+    // Last segment starting at or before row; empty segments share a start with the next one
+    private int segmentOf(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        int index = Arrays.binarySearch(starts, row);
+        if (index < 0) return -index - 2;
+        while (index + 1 < starts.length && starts[index + 1] == row) index++;
+        return index;
+    }
+}
@@ -0,0 +1,228 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Date-ordered index over a {@link TransactionStore}. Per-day and per-month
+ * Fenwick trees hold income, expense, net and per-category expense sums, so
+ * the total over any date range, and the running balance at any date, is
+ * O(log n) instead of a scan. The rows themselves are kept in a
+ * {@link RowOrder}, for callers that need the matching rows in date order and
+ * for the balance after a single row. The index follows the store through its
+ * listener callbacks; adding, editing or removing a row anywhere in the store
+ * is O(log n).
+ */
+public class DateIndex implements TransactionStore.Listener {
+    private static final int INITIAL_DAYS = 1024;
+    private static final int INITIAL_MONTHS = 64;
+
+    private final TransactionStore store;
+    private final Domain days = new Domain(INITIAL_DAYS);
+    private final Domain months = new Domain(INITIAL_MONTHS);
+    private final RowOrder order = new RowOrder();
+
+    public DateIndex(TransactionStore store) {
+        this.store = store;
+        store.addListener(this);
+        rowsInserted(0, store.size());
+    }
+
+    public static int monthIndex(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    public static int monthIndex(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    public boolean isEmpty() {
+        return order.isEmpty();
+    }
+
+    public LocalDate firstDate() {
+        return order.isEmpty() ? null : LocalDate.ofEpochDay(order.firstDay());
+    }
+
+    public LocalDate lastDate() {
+        return order.isEmpty() ? null : LocalDate.ofEpochDay(order.lastDay());
+    }
+
+    /** Income or expense cents dated within {@code [fromDay, toDay]}. */
+    public long sumCents(boolean income, int fromDay, int toDay) {
+        return days.sum(income ? days.income : days.expense, fromDay, toDay);
+    }
+
+    /** Income or expense cents dated on {@code day}, O(1). */
+    public long dayCents(boolean income, int day) {
+        return days.get(income ? days.income : days.expense, day);
+    }
+
+    /** Income minus expenses of every row dated on or before {@code throughDay}. */
+    public long balanceCents(int throughDay) {
+        return days.sum(days.net, Integer.MIN_VALUE, throughDay);
+    }
+
+    /**
+     * Running balance after {@code row} with rows taken in date order, and in
+     * row order within a day, O(log n).
+     */
+    public long balanceAtRow(int row) {
+        return order.balanceThrough(row);
+    }
+
+    public int count(int fromDay, int toDay) {
+        return (int) days.sum(days.count, fromDay, toDay);
+    }
+
+    public long categoryExpenseCents(int categoryId, int fromDay, int toDay) {
+        return categoryId < days.categoryExpense.size() ? days.sum(days.categoryExpense.get(categoryId), fromDay, toDay) : 0;
+    }
+
+    public int categoryExpenseCount(int categoryId, int fromDay, int toDay) {
+        return categoryId < days.categoryCount.size() ? (int) days.sum(days.categoryCount.get(categoryId), fromDay, toDay) : 0;
+    }
+
+    /** Per-month totals for {@code count} consecutive months starting at {@code first}. */
+    public long[] monthlyCents(boolean income, YearMonth first, int count) {
+        long[] totals = new long[count];
+        int start = monthIndex(first);
+        FenwickTree tree = income ? months.income : months.expense;
+        for (int i = 0; i < count; i++) {
+            totals[i] = months.sum(tree, start + i, start + i);
+        }
+        return totals;
+    }
+
+    /** Visits the rows dated within {@code [fromDay, toDay]} in date order (row order within a day). */
+    public void forEachRow(int fromDay, int toDay, IntConsumer action) {
+        if (fromDay > toDay) return;
+        order.forEachRow(fromDay, toDay, action);
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        for (int row = from; row < to; row++) {
+            apply(row, store.getEpochDay(row), 1);
+        }
+        order.insert(store, from, to);
+    }
+
+    @Override
+    public void rowsRemoving(int from, int to) {
+        if (from == 0 && to == store.size()) {
+            days.clear();
+            months.clear();
+            order.clear();
+            return;
+        }
+        for (int row = from; row < to; row++) {
+            apply(row, store.getEpochDay(row), -1);
+        }
+        order.remove(from, to);
+    }
+
+    @Override
+    public void rowUpdating(int row) {
+        apply(row, store.getEpochDay(row), -1);
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        int day = store.getEpochDay(row);
+        apply(row, day, 1);
+        order.update(row, day, store.isIncome(row) ? store.getCents(row) : -store.getCents(row));
+    }
+
+    private void apply(int row, int day, int sign) {
+        long cents = store.getCents(row) * sign;
+        boolean income = store.isIncome(row);
+        int categoryId = store.getCategoryId(row);
+        days.add(day, cents, income, categoryId, sign);
+        months.add(monthIndex(day), cents, income, categoryId, sign);
+    }
+
+    /** A set of Fenwick trees sharing one growable key range (days or months). */
+    private static final class Domain {
+        int base;
+        boolean initialized;
+        final FenwickTree income;
+        final FenwickTree expense;
+        final FenwickTree count;
+        final FenwickTree net;
+        final List<FenwickTree> categoryExpense = new ArrayList<>();
+        final List<FenwickTree> categoryCount = new ArrayList<>();
+
+        Domain(int capacity) {
+            income = new FenwickTree(capacity);
+            expense = new FenwickTree(capacity);
+            count = new FenwickTree(capacity);
+            net = new FenwickTree(capacity);
+        }
+
+        void add(int key, long cents, boolean isIncome, int categoryId, int sign) {
+            int index = indexOf(key);
+            count.add(index, sign);
+            if (isIncome) {
+                income.add(index, cents);
+                net.add(index, cents);
+                return;
+            }
+            expense.add(index, cents);
+            net.add(index, -cents);
+            while (categoryExpense.size() <= categoryId) {
+                categoryExpense.add(new FenwickTree(income.size()));
+                categoryCount.add(new FenwickTree(income.size()));
+            }
+            categoryExpense.get(categoryId).add(index, cents);
+            categoryCount.get(categoryId).add(index, sign);
+        }
+
+        long sum(FenwickTree tree, int fromKey, int toKey) {
+            if (!initialized) return 0;
+            long from = Math.max((long) fromKey - base, 0);
+            long to = Math.min((long) toKey - base, tree.size() - 1);
+            return from > to ? 0 : tree.rangeSum((int) from, (int) to);
+        }
+
+        long get(FenwickTree tree, int key) {
+            long index = (long) key - base;
+            return !initialized || index < 0 || index >= tree.size() ? 0 : tree.get((int) index);
+        }
+
+        void clear() {
+            initialized = false;
+            for (FenwickTree tree : all()) tree.clear();
+        }
+
+        private int indexOf(int key) {
+            if (!initialized) {
+                base = key - income.size() / 2;
+                initialized = true;
+            }
+            int size = income.size();
+            // Keys come from store rows, which keep to TransactionStore.MIN_DATE..MAX_DATE; toIntExact
+            // catches anything else rather than letting the range wrap around
+            if (key < base || (long) key >= (long) base + size) {
+                long newBase = Math.min(base, key);
+                long newEnd = Math.max((long) base + size, (long) key + 1);
+                int newSize = Math.toIntExact(Math.max(size * 2L, newEnd - newBase));
+                int start = Math.toIntExact(key < base ? newEnd - newSize : newBase);
+                for (FenwickTree tree : all()) tree.resize(newSize, base - start);
+                base = start;
+            }
+            return key - base;
+        }
+
+        private List<FenwickTree> all() {
+            List<FenwickTree> trees = new ArrayList<>(List.of(income, expense, count, net));
+            trees.addAll(categoryExpense);
+            trees.addAll(categoryCount);
+            return trees;
+        }
+    }
+}
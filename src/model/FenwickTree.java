@@ -0,0 +1,69 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Binary indexed tree over {@code long} values: point updates and prefix sums
+ * in O(log n). The raw values are kept alongside so the tree can be resized
+ * (and shifted, when the index domain grows to the left) in linear time.
+ */
+public class FenwickTree {
+    private long[] tree;
+    private long[] values;
+
+    public FenwickTree(int size) {
+        tree = new long[size + 1];
+        values = new long[size];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public void add(int index, long delta) {
+        values[index] += delta;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    public long get(int index) {
+        return values[index];
+    }
+
+    /** Sum of the values at indexes {@code [0, index]}; negative indexes sum to zero. */
+    public long prefixSum(int index) {
+        long sum = 0;
+        for (int i = Math.min(index, values.length - 1) + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /** Sum of the values at indexes {@code [from, to]}, clamped to the tree. */
+    public long rangeSum(int from, int to) {
+        if (to < from) return 0;
+        return prefixSum(to) - prefixSum(from - 1);
+    }
+
+    /**
+     * Grows the tree to {@code newSize}, moving every existing value {@code shift}
+     * slots to the right.
+     */
+    public void resize(int newSize, int shift) {
+        long[] moved = new long[newSize];
+        System.arraycopy(values, 0, moved, shift, Math.min(values.length, newSize - shift));
+        values = moved;
+        tree = new long[newSize + 1];
+        for (int i = 1; i <= newSize; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= newSize) tree[parent] += tree[i];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(tree, 0);
+        Arrays.fill(values, 0);
+    }
+}
@@ -0,0 +1,65 @@
+package model;
+
+import java.util.Arrays;
+
+/** Growable list of primitive ints, used for row lists in the indexes. */
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+        return values[index];
+    }
+
+    public void add(int value) {
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    /** Inserts {@code value} keeping the list in ascending order. */
+    public void addSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) index = -index - 1;
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+
+    /** Removes {@code value} from a sorted list; returns false if it was not present. */
+    public boolean removeSorted(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) return false;
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    /** Adds {@code delta} to every element that is at least {@code threshold}. */
+    public void shift(int threshold, int delta) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] >= threshold) values[i] += delta;
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
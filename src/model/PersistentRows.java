@@ -0,0 +1,441 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Immutable transaction columns that change by making a new version.
+ * {@link #set}, {@link #insert} and {@link #remove} copy only the path from
+ * the root to the leaf they touch, O(log n), and share every other node with
+ * the version they were made from, so keeping many versions costs little more
+ * than keeping one. Leaves hold up to {@value #WIDTH} rows in the same
+ * primitive columns as {@link TransactionStore}; a branch records where each
+ * child's rows end, so leaves need not be full. Category and note ids index
+ * into the dictionaries of the store the rows came from, which only grow, so
+ * old versions stay readable.
+ */
+public final class PersistentRows implements TransactionRows {
+    private static final int WIDTH = 32;
+
+    private final Node root; // null when empty
+    private final StringDictionary categories;
+    private final StringDictionary notes;
+
+    private PersistentRows(Node root, StringDictionary categories, StringDictionary notes) {
+        this.root = root;
+        this.categories = categories;
+        this.notes = notes;
+    }
+
+    /** An empty version using the dictionaries of {@code store}. */
+    public static PersistentRows empty(TransactionStore store) {
+        return new PersistentRows(null, store.categories(), store.notes());
+    }
+
+    /** Rows {@code [from, to)} of {@code store}, packed into full leaves in O(n). */
+    public static PersistentRows of(TransactionStore store, int from, int to) {
+        Node[] level = new Node[(to - from + WIDTH - 1) / WIDTH];
+        for (int i = 0; i < level.length; i++) {
+            int start = from + i * WIDTH;
+            level[i] = Leaf.copy(store, start, Math.min(to, start + WIDTH));
+        }
+        while (level.length > 1) {
+            Node[] parents = new Node[(level.length + WIDTH - 1) / WIDTH];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = new Branch(Arrays.copyOfRange(level, i * WIDTH, Math.min(level.length, (i + 1) * WIDTH)));
+            }
+            level = parents;
+        }
+        return new PersistentRows(level.length == 0 ? null : level[0], store.categories(), store.notes());
+    }
+
+    public static PersistentRows of(TransactionStore store) {
+        return of(store, 0, store.size());
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size();
+    }
+
+    @Override
+    public long getCents(int row) {
+        return read(row, (leaf, i) -> leaf.cents[i]);
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        return (int) read(row, (leaf, i) -> leaf.epochDays[i]);
+    }
+
+    @Override
+    public boolean isIncome(int row) {
+        return read(row, (leaf, i) -> (leaf.incomeBits >>> i) & 1) != 0;
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        return (int) read(row, (leaf, i) -> leaf.categoryIds[i]);
+    }
+
+    public int getNoteId(int row) {
+        return (int) read(row, (leaf, i) -> leaf.noteIds[i]);
+    }
+
+    @Override
+    public String getNotes(int row) {
+        return notes.get(getNoteId(row));
+    }
+
+    @Override
+    public StringDictionary categories() {
+        return categories;
+    }
+
+    /** This version with row {@code row} replaced. */
+    public PersistentRows set(int row, boolean income, int categoryId, long cents, int epochDay, int noteId) {
+        checkRow(row, size());
+        return with(root.set(row, income, categoryId, cents, epochDay, noteId));
+    }
+
+    /** This version with a row inserted before {@code row}; {@code size()} appends. */
+    public PersistentRows insert(int row, boolean income, int categoryId, long cents, int epochDay, int noteId) {
+        checkRow(row, size() + 1);
+        if (root == null) {
+            return with(new Leaf(new long[] { cents }, new int[] { epochDay }, new int[] { categoryId },
+                    new int[] { noteId }, income ? 1L : 0L));
+        }
+        Node[] split = root.insert(row, income, categoryId, cents, epochDay, noteId);
+        return with(split.length == 1 ? split[0] : new Branch(split));
+    }
+
+    /** This version with row {@code row} of {@code store} inserted before {@code at}. */
+    public PersistentRows insert(int at, TransactionStore store, int row) {
+        return insert(at, store.isIncome(row), store.getCategoryId(row), store.getCents(row), store.getEpochDay(row),
+                store.getNoteId(row));
+    }
+
+    /**
+     * This version with rows {@code [from, to)} of {@code store} appended: the
+     * last leaf is topped up and the rest is added in whole leaves, so a long
+     * range costs one path copy per {@value #WIDTH} rows.
+     */
+    public PersistentRows append(TransactionStore store, int from, int to) {
+        PersistentRows result = this;
+        int row = from;
+        while (row < to && result.root != null && result.lastLeafSize() < WIDTH) {
+            result = result.insert(result.size(), store, row++);
+        }
+        Node node = result.root;
+        for (int end; row < to; row = end) {
+            end = Math.min(to, row + WIDTH);
+            Leaf leaf = Leaf.copy(store, row, end);
+            if (node == null) {
+                node = leaf;
+            } else {
+                Node[] split = node.push(leaf);
+                node = split.length == 1 ? split[0] : new Branch(split);
+            }
+        }
+        return node == result.root ? result : with(node);
+    }
+
+    /** This version with row {@code row} removed. */
+    public PersistentRows remove(int row) {
+        checkRow(row, size());
+        Node node = root.remove(row);
+        // A branch left with one child is replaced by it, so the tree gets lower as it shrinks
+        while (node instanceof Branch && ((Branch) node).children.length == 1) {
+            node = ((Branch) node).children[0];
+        }
+        return with(node);
+    }
+
+    private PersistentRows with(Node newRoot) {
+        return new PersistentRows(newRoot, categories, notes);
+    }
+
+    private int lastLeafSize() {
+        Node node = root;
+        while (node instanceof Branch) {
+            Node[] children = ((Branch) node).children;
+            node = children[children.length - 1];
+        }
+        return node.size();
+    }
+
+    private long read(int row, Column column) {
+        checkRow(row, size());
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            int child = branch.childAt(row);
+            row -= branch.start(child);
+            node = branch.children[child];
+        }
+        return column.read((Leaf) node, row);
+    }
+
+    private static void checkRow(int row, int bound) {
+        if (row < 0 || row >= bound) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + bound);
+        }
+    }
+
+    private interface Column {
+        long read(Leaf leaf, int index);
+    }
+
+    private abstract static class Node {
+        abstract int size();
+
+        abstract Node set(int row, boolean income, int categoryId, long cents, int epochDay, int noteId);
+
+        /** The node after the insertion, or two halves if it overflowed. */
+        abstract Node[] insert(int row, boolean income, int categoryId, long cents, int epochDay, int noteId);
+
+        /** The node after the removal, or null if it is now empty. */
+        abstract Node remove(int row);
+
+        /** The node with {@code leaf} added after its last leaf, or two halves if it overflowed. */
+        abstract Node[] push(Leaf leaf);
+    }
+
+    private static final class Leaf extends Node {
+        final long[] cents;
+        final int[] epochDays;
+        final int[] categoryIds;
+        final int[] noteIds;
+        final long incomeBits;
+
+        Leaf(long[] cents, int[] epochDays, int[] categoryIds, int[] noteIds, long incomeBits) {
+            this.cents = cents;
+            this.epochDays = epochDays;
+            this.categoryIds = categoryIds;
+            this.noteIds = noteIds;
+            this.incomeBits = incomeBits;
+        }
+
+        static Leaf copy(TransactionStore store, int from, int to) {
+            int n = to - from;
+            long[] cents = new long[n];
+            int[] epochDays = new int[n];
+            int[] categoryIds = new int[n];
+            int[] noteIds = new int[n];
+            long incomeBits = 0;
+            for (int i = 0; i < n; i++) {
+                int row = from + i;
+                cents[i] = store.getCents(row);
+                epochDays[i] = store.getEpochDay(row);
+                categoryIds[i] = store.getCategoryId(row);
+                noteIds[i] = store.getNoteId(row);
+                if (store.isIncome(row)) incomeBits |= 1L << i;
+            }
+            return new Leaf(cents, epochDays, categoryIds, noteIds, incomeBits);
+        }
+
+        @Override
+        int size() {
+            return cents.length;
+        }
+
+        @Override
+        Node set(int row, boolean income, int categoryId, long cents, int epochDay, int noteId) {
+            Leaf copy = new Leaf(this.cents.clone(), epochDays.clone(), categoryIds.clone(), noteIds.clone(),
+                    income ? incomeBits | (1L << row) : incomeBits & ~(1L << row));
+            copy.cents[row] = cents;
+            copy.epochDays[row] = epochDay;
+            copy.categoryIds[row] = categoryId;
+            copy.noteIds[row] = noteId;
+            return copy;
+        }
+
+        @Override
+        Node[] insert(int row, boolean income, int categoryId, long cents, int epochDay, int noteId) {
+            int n = size();
+            long low = incomeBits & ((1L << row) - 1);
+            long high = (incomeBits >>> row) << (row + 1);
+            Leaf grown = new Leaf(insert(this.cents, row, cents), insert(epochDays, row, epochDay),
+                    insert(categoryIds, row, categoryId), insert(noteIds, row, noteId),
+                    low | high | (income ? 1L << row : 0));
+            if (n + 1 <= WIDTH) return new Node[] { grown };
+            int half = (n + 1) / 2;
+            return new Node[] { grown.slice(0, half), grown.slice(half, n + 1) };
+        }
+
+        @Override
+        Node remove(int row) {
+            int n = size();
+            if (n == 1) return null;
+            long low = incomeBits & ((1L << row) - 1);
+            long high = (incomeBits >>> (row + 1)) << row;
+            return new Leaf(remove(cents, row), remove(epochDays, row), remove(categoryIds, row), remove(noteIds, row),
+                    low | high);
+        }
+
+        @Override
+        Node[] push(Leaf leaf) {
+            return new Node[] { this, leaf };
+        }
+
+        Leaf slice(int from, int to) {
+            long bits = (incomeBits >>> from) & ((1L << (to - from)) - 1);
+            return new Leaf(Arrays.copyOfRange(cents, from, to), Arrays.copyOfRange(epochDays, from, to),
+                    Arrays.copyOfRange(categoryIds, from, to), Arrays.copyOfRange(noteIds, from, to), bits);
+        }
+
+        // The two leaves as one; only called when the result fits
+        Leaf concat(Leaf next) {
+            int n = size();
+            return new Leaf(concat(cents, next.cents), concat(epochDays, next.epochDays),
+                    concat(categoryIds, next.categoryIds), concat(noteIds, next.noteIds),
+                    incomeBits | (next.incomeBits << n));
+        }
+
+        private static long[] insert(long[] values, int at, long value) {
+            long[] grown = new long[values.length + 1];
+            System.arraycopy(values, 0, grown, 0, at);
+            grown[at] = value;
+            System.arraycopy(values, at, grown, at + 1, values.length - at);
+            return grown;
+        }
+
+        private static int[] insert(int[] values, int at, int value) {
+            int[] grown = new int[values.length + 1];
+            System.arraycopy(values, 0, grown, 0, at);
+            grown[at] = value;
+            System.arraycopy(values, at, grown, at + 1, values.length - at);
+            return grown;
+        }
+
+        private static long[] remove(long[] values, int at) {
+            long[] shrunk = new long[values.length - 1];
+            System.arraycopy(values, 0, shrunk, 0, at);
+            System.arraycopy(values, at + 1, shrunk, at, shrunk.length - at);
+            return shrunk;
+        }
+
+        private static int[] remove(int[] values, int at) {
+            int[] shrunk = new int[values.length - 1];
+            System.arraycopy(values, 0, shrunk, 0, at);
+            System.arraycopy(values, at + 1, shrunk, at, shrunk.length - at);
+            return shrunk;
+        }
+
+        private static long[] concat(long[] a, long[] b) {
+            long[] both = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, both, a.length, b.length);
+            return both;
+        }
+
+        private static int[] concat(int[] a, int[] b) {
+            int[] both = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, both, a.length, b.length);
+            return both;
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Node[] children;
+        final int[] ends; // ends[i]: rows in children 0..i
+
+        Branch(Node[] children) {
+            this.children = children;
+            this.ends = new int[children.length];
+            int total = 0;
+            for (int i = 0; i < children.length; i++) {
+                total += children[i].size();
+                ends[i] = total;
+            }
+        }
+
+        int childAt(int row) {
+            int index = Arrays.binarySearch(ends, row + 1);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        int start(int child) {
+            return child == 0 ? 0 : ends[child - 1];
+        }
+
+        @Override
+        int size() {
+            return ends[ends.length - 1];
+        }
+
+        @Override
+        Node set(int row, boolean income, int categoryId, long cents, int epochDay, int noteId) {
+            int child = childAt(row);
+            Node[] copy = children.clone();
+            copy[child] = children[child].set(row - start(child), income, categoryId, cents, epochDay, noteId);
+            return new Branch(copy);
+        }
+
+        @Override
+        Node[] insert(int row, boolean income, int categoryId, long cents, int epochDay, int noteId) {
+            // Appending goes into the last child, which is where the next append will look too
+            int child = row == size() ? children.length - 1 : childAt(row);
+            Node[] split = children[child].insert(row - start(child), income, categoryId, cents, epochDay, noteId);
+            Node[] copy;
+            if (split.length == 1) {
+                copy = children.clone();
+                copy[child] = split[0];
+            } else {
+                copy = new Node[children.length + 1];
+                System.arraycopy(children, 0, copy, 0, child);
+                copy[child] = split[0];
+                copy[child + 1] = split[1];
+                System.arraycopy(children, child + 1, copy, child + 2, children.length - child - 1);
+            }
+            return split(copy);
+        }
+
+        // One branch over the children, or two if there are too many for one
+        private static Node[] split(Node[] children) {
+            if (children.length <= WIDTH) return new Node[] { new Branch(children) };
+            int half = children.length / 2;
+            return new Node[] { new Branch(Arrays.copyOfRange(children, 0, half)),
+                    new Branch(Arrays.copyOfRange(children, half, children.length)) };
+        }
+
+        @Override
+        Node[] push(Leaf leaf) {
+            int last = children.length - 1;
+            Node[] split = children[last].push(leaf);
+            Node[] copy = Arrays.copyOf(children, children.length + split.length - 1);
+            copy[last] = split[0];
+            if (split.length == 2) copy[last + 1] = split[1];
+            return split(copy);
+        }
+
+        @Override
+        Node remove(int row) {
+            int child = childAt(row);
+            Node shrunk = children[child].remove(row - start(child));
+            if (shrunk == null) {
+                if (children.length == 1) return null;
+                Node[] copy = new Node[children.length - 1];
+                System.arraycopy(children, 0, copy, 0, child);
+                System.arraycopy(children, child + 1, copy, child, copy.length - child);
+                return new Branch(copy);
+            }
+            // A leaf that fell under half full is merged into a neighbour it fits into
+            if (shrunk instanceof Leaf && shrunk.size() < WIDTH / 2 && children.length > 1) {
+                int neighbour = child + 1 < children.length ? child + 1 : child - 1;
+                Node other = children[neighbour];
+                if (other instanceof Leaf && other.size() + shrunk.size() <= WIDTH) {
+                    int first = Math.min(child, neighbour);
+                    Leaf merged = first == child ? ((Leaf) shrunk).concat((Leaf) other)
+                            : ((Leaf) other).concat((Leaf) shrunk);
+                    Node[] copy = new Node[children.length - 1];
+                    System.arraycopy(children, 0, copy, 0, first);
+                    copy[first] = merged;
+                    System.arraycopy(children, first + 2, copy, first + 1, copy.length - first - 1);
+                    return new Branch(copy);
+                }
+            }
+            Node[] copy = children.clone();
+            copy[child] = shrunk;
+            return new Branch(copy);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package model;
+
+import diagnostics.LogHistogram;
+
+import java.time.YearMonth;
+
+/**
+ * Result of a {@link ReportEngine} run: category × month × type totals and
+ * counts, plus count/sum/min/max/percentile statistics per category and type.
+ * Category ids refer to the dictionary of the rows the report was built from;
+ * the names are captured so the report stays readable after the store moves on.
+ */
+public class PivotReport {
+    private final String[] categoryNames;
+    private final YearMonth firstMonth;
+    private final int monthCount;
+    private final long[] cellCents;
+    private final int[] cellCounts;
+    private final LogHistogram[] histograms;
+    private final long[] groupCents;
+    private final int rows;
+    private final long elapsedNanos;
+    private final int parallelism;
+
+    PivotReport(String[] categoryNames, YearMonth firstMonth, int monthCount, long[] cellCents, int[] cellCounts,
+            LogHistogram[] histograms, long[] groupCents, int rows, long elapsedNanos, int parallelism) {
+        this.categoryNames = categoryNames;
+        this.firstMonth = firstMonth;
+        this.monthCount = monthCount;
+        this.cellCents = cellCents;
+        this.cellCounts = cellCounts;
+        this.histograms = histograms;
+        this.groupCents = groupCents;
+        this.rows = rows;
+        this.elapsedNanos = elapsedNanos;
+        this.parallelism = parallelism;
+    }
+
+    public int rowCount() {
+        return rows;
+    }
+
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public int categoryCount() {
+        return categoryNames.length;
+    }
+
+    public String categoryName(int categoryId) {
+        return categoryNames[categoryId];
+    }
+
+    /** First month with data, or null for an empty report. */
+    public YearMonth firstMonth() {
+        return firstMonth;
+    }
+
+    public int monthCount() {
+        return monthCount;
+    }
+
+    public YearMonth month(int monthIndex) {
+        return firstMonth.plusMonths(monthIndex);
+    }
+
+    public long cellCents(int categoryId, int monthIndex, boolean income) {
+        return cellCents[cell(categoryId, monthIndex, income)];
+    }
+
+    public int cellCount(int categoryId, int monthIndex, boolean income) {
+        return cellCounts[cell(categoryId, monthIndex, income)];
+    }
+
+    public long count(int categoryId, boolean income) {
+        return histograms[group(categoryId, income)].count();
+    }
+
+    public long sumCents(int categoryId, boolean income) {
+        return groupCents[group(categoryId, income)];
+    }
+
+    public long averageCents(int categoryId, boolean income) {
+        long count = count(categoryId, income);
+        return count == 0 ? 0 : Math.round((double) sumCents(categoryId, income) / count);
+    }
+
+    /** Smallest amount; {@link #percentileCents} at 0 and 1 give the exact extremes. */
+    public long minCents(int categoryId, boolean income) {
+        return percentileCents(categoryId, income, 0);
+    }
+
+    public long maxCents(int categoryId, boolean income) {
+        return percentileCents(categoryId, income, 1);
+    }
+
+    /** Approximate percentile (within about 1%) of the amounts in one category and type. */
+    public long percentileCents(int categoryId, boolean income, double fraction) {
+        return histograms[group(categoryId, income)].percentile(fraction);
+    }
+
+    static int group(int categoryId, boolean income) {
+        return categoryId * 2 + (income ? 1 : 0);
+    }
+
+    private int cell(int categoryId, int monthIndex, boolean income) {
+        return (categoryId * monthCount + monthIndex) * 2 + (income ? 1 : 0);
+    }
+}
@@ -0,0 +1,1007 @@
+package model;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.time.temporal.TemporalUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A filter such as {@code expense AND category in (Food, Transport) AND
+ * amount > 500 AND date in last quarter}, parsed once into a tree of terms.
+ * {@link #select} runs it over the columns of a {@link TransactionRows}: the
+ * candidate rows are a bitset, and each term narrows it in place with a loop
+ * of its own over primitive columns, so no row is materialized. Category and
+ * text terms are decided once per dictionary entry, not per row. A date or
+ * category term that every match must satisfy is answered from the
+ * {@link DateIndex} or the {@link TextIndex} posting lists instead, when that
+ * leaves fewer rows to check than a scan; the result explains the path taken.
+ * <p>
+ * Words are matched without regard to case, and terms next to each other are
+ * ANDed; AND, OR, NOT and parentheses combine them. The terms are
+ * <ul>
+ * <li>{@code income}, {@code expense}, {@code type = income|expense}</li>
+ * <li>{@code category = Food}, {@code category in (Food, Eating Out)}, which
+ * take in subcategories such as {@code Food › Groceries}</li>
+ * <li>{@code amount OP 12.50}, {@code amount between 10 and 20}</li>
+ * <li>{@code date OP 2025-01-31}, {@code date between 2025-01 and 2025-03},
+ * {@code date in 2025}, {@code date in 2025-06}, and {@code date in} a period:
+ * {@code today}, {@code yesterday}, {@code this|last week|month|quarter|year}
+ * or {@code last 30 days|weeks|months|years}</li>
+ * <li>{@code notes contains coffee}, and any other word or quoted text, which
+ * must appear in the category or the notes</li>
+ * </ul>
+ * where OP is one of {@code = != < <= > >=}. Syntax errors throw
+ * {@link IllegalArgumentException}.
+ */
+public final class Query {
+    // An index is used when it leaves fewer than 1/INDEX_FRACTION of the rows to check
+    private static final int INDEX_FRACTION = 2;
+
+    private final String text;
+    private final Node root;
+
+    private Query(String text, Node root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    public static Query parse(String text) {
+        return new Query(text, new Parser(text).parse());
+    }
+
+    /** The text the query was parsed from. */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * The rows of {@code rows} that match. {@code dates} and {@code text}, if
+     * not null, must index {@code rows}; relative dates such as "last month"
+     * are taken from {@code today}.
+     */
+    public Result select(TransactionRows rows, DateIndex dates, TextIndex text, LocalDate today) {
+        long started = System.nanoTime();
+        Run run = new Run(rows, dates, text, today);
+        int size = rows.size();
+        long[] bits = new long[(size + 63) >>> 6];
+        run.line(0, toString());
+
+        List<Node> terms = new ArrayList<>(root instanceof And ? ((And) root).terms : List.of(root));
+        Term seed = null;
+        int seedRows = size;
+        StringBuilder estimates = new StringBuilder();
+        for (Node node : terms) {
+            if (!(node instanceof Term)) continue;
+            Term term = (Term) node;
+            int estimate = term.estimate(run);
+            if (estimate < 0) continue;
+            estimates.append(estimates.length() == 0 ? "" : ", ").append(term.index()).append(" index: ")
+                    .append(format(estimate));
+            if (estimate < seedRows) {
+                seed = term;
+                seedRows = estimate;
+            }
+        }
+        if (seed != null && seedRows < size / INDEX_FRACTION) {
+            seed.seed(run, bits);
+            terms.remove(seed);
+            run.line(1, seed.describe(run) + ": " + seed.index() + " index -> " + format(count(bits)) + " of "
+                    + format(size) + " rows");
+        } else {
+            int full = size >>> 6;
+            Arrays.fill(bits, 0, full, -1L);
+            if ((size & 63) != 0) bits[full] = (1L << size) - 1;
+            run.line(1, "full scan of " + format(size) + " rows"
+                    + (estimates.length() == 0 ? ", no index applies" : " (" + estimates + " rows)"));
+        }
+        terms.sort(Comparator.comparingInt(Node::cost));
+        for (Node term : terms) {
+            term.narrow(run, bits, 1);
+        }
+        int matched = count(bits);
+        run.line(0, "= " + format(matched) + " rows in "
+                + String.format(Locale.ROOT, "%.1f ms", (System.nanoTime() - started) / 1e6));
+        return new Result(bits, matched, run.plan.toString());
+    }
+
+    /** The query with keywords and values spelled out the same way whatever the input. */
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    /** The rows a query matched, and how they were found. */
+    public static final class Result {
+        private final long[] bits;
+        private final int size;
+        private final String explain;
+
+        private Result(long[] bits, int size, String explain) {
+            this.bits = bits;
+            this.size = size;
+            this.explain = explain;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(int row) {
+            return row >= 0 && row >>> 6 < bits.length && (bits[row >>> 6] & 1L << row) != 0;
+        }
+
+        /** The matching rows, ascending. */
+        public IntList rows() {
+            IntList rows = new IntList(Math.max(size, 1));
+            for (int word = 0; word < bits.length; word++) {
+                for (long rest = bits[word]; rest != 0; rest &= rest - 1) {
+                    rows.add(word << 6 | Long.numberOfTrailingZeros(rest));
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * One line per step: the index or scan that produced the first
+         * candidates, then each term with the candidates it was given and kept.
+         */
+        public String explain() {
+            return explain;
+        }
+    }
+
+    private static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits) count += Long.bitCount(word);
+        return count;
+    }
+
+    private static String format(int rows) {
+        return String.format("%,d", rows);
+    }
+
+    private static final class Run {
+        final TransactionRows rows;
+        final DateIndex dates;
+        final TextIndex text;
+        final LocalDate today;
+        final StringBuilder plan = new StringBuilder();
+
+        Run(TransactionRows rows, DateIndex dates, TextIndex text, LocalDate today) {
+            this.rows = rows;
+            this.dates = dates;
+            this.text = text;
+            this.today = today;
+        }
+
+        void line(int depth, String text) {
+            plan.append("  ".repeat(depth)).append(text).append('\n');
+        }
+    }
+
+    private abstract static class Node {
+        /** Clears the bits of the rows that do not match, and notes what it did. */
+        abstract void narrow(Run run, long[] bits, int depth);
+
+        /** Order within a conjunction: checks on a single column first, then those per dictionary entry. */
+        int cost() {
+            return 3;
+        }
+
+        String nested() {
+            return toString();
+        }
+    }
+
+    private abstract static class Term extends Node {
+        @Override
+        final void narrow(Run run, long[] bits, int depth) {
+            int before = count(bits);
+            filter(run, bits);
+            run.line(depth, describe(run) + ": scan " + format(before) + " -> " + format(count(bits)));
+        }
+
+        abstract void filter(Run run, long[] bits);
+
+        /** How many rows the term matches according to its index, or -1 if there is none to use. */
+        int estimate(Run run) {
+            return -1;
+        }
+
+        String index() {
+            return null;
+        }
+
+        /** Sets the bits of the matching rows from the index. */
+        void seed(Run run, long[] bits) {
+            throw new UnsupportedOperationException();
+        }
+
+        String describe(Run run) {
+            return toString();
+        }
+    }
+
+    private static final class And extends Node {
+        final List<Node> terms;
+
+        And(List<Node> terms) {
+            this.terms = terms;
+        }
+
+        @Override
+        void narrow(Run run, long[] bits, int depth) {
+            run.line(depth, "all of: " + format(count(bits)) + " rows");
+            List<Node> ordered = new ArrayList<>(terms);
+            ordered.sort(Comparator.comparingInt(Node::cost));
+            for (Node term : ordered) term.narrow(run, bits, depth + 1);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Node term : terms) {
+                if (text.length() > 0) text.append(" AND ");
+                text.append(term instanceof Or ? "(" + term + ")" : term.nested());
+            }
+            return text.toString();
+        }
+
+        @Override
+        String nested() {
+            return "(" + this + ")";
+        }
+    }
+
+    private static final class Or extends Node {
+        final List<Node> terms;
+
+        Or(List<Node> terms) {
+            this.terms = terms;
+        }
+
+        // Each alternative only looks at the candidates the ones before it did not match
+        @Override
+        void narrow(Run run, long[] bits, int depth) {
+            run.line(depth, "any of: " + format(count(bits)) + " rows");
+            long[] matched = new long[bits.length];
+            long[] candidates = new long[bits.length];
+            for (Node term : terms) {
+                for (int i = 0; i < bits.length; i++) candidates[i] = bits[i] & ~matched[i];
+                term.narrow(run, candidates, depth + 1);
+                for (int i = 0; i < bits.length; i++) matched[i] |= candidates[i];
+            }
+            System.arraycopy(matched, 0, bits, 0, bits.length);
+        }
+
+        @Override
+        int cost() {
+            return 4;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Node term : terms) {
+                if (text.length() > 0) text.append(" OR ");
+                text.append(term.nested());
+            }
+            return text.toString();
+        }
+
+        @Override
+        String nested() {
+            return "(" + this + ")";
+        }
+    }
+
+    private static final class Not extends Node {
+        final Node term;
+
+        Not(Node term) {
+            this.term = term;
+        }
+
+        @Override
+        void narrow(Run run, long[] bits, int depth) {
+            run.line(depth, "not: " + format(count(bits)) + " rows");
+            long[] excluded = bits.clone();
+            term.narrow(run, excluded, depth + 1);
+            for (int i = 0; i < bits.length; i++) bits[i] &= ~excluded[i];
+        }
+
+        @Override
+        int cost() {
+            return term.cost();
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + term.nested();
+        }
+    }
+
+    private static final class TypeTerm extends Term {
+        final boolean income;
+
+        TypeTerm(boolean income) {
+            this.income = income;
+        }
+
+        @Override
+        void filter(Run run, long[] bits) {
+            TransactionRows rows = run.rows;
+            for (int word = 0; word < bits.length; word++) {
+                long kept = bits[word];
+                for (long rest = kept; rest != 0; rest &= rest - 1) {
+                    int row = word << 6 | Long.numberOfTrailingZeros(rest);
+                    if (rows.isIncome(row) != income) kept &= ~(rest & -rest);
+                }
+                bits[word] = kept;
+            }
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "type = " + (income ? TransactionStore.INCOME : TransactionStore.EXPENSE);
+        }
+    }
+
+    private static final class AmountTerm extends Term {
+        final long minCents;
+        final long maxCents;
+        final String label;
+
+        AmountTerm(long minCents, long maxCents, String label) {
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+            this.label = label;
+        }
+
+        @Override
+        void filter(Run run, long[] bits) {
+            TransactionRows rows = run.rows;
+            for (int word = 0; word < bits.length; word++) {
+                long kept = bits[word];
+                for (long rest = kept; rest != 0; rest &= rest - 1) {
+                    long cents = rows.getCents(word << 6 | Long.numberOfTrailingZeros(rest));
+                    if (cents < minCents || cents > maxCents) kept &= ~(rest & -rest);
+                }
+                bits[word] = kept;
+            }
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * A fixed range of days, or one relative to the day the query runs: the
+     * calendar {@code unit} {@code offset} units from the current one, or the
+     * last {@code trailing} units up to and including today.
+     */
+    private static final class DateTerm extends Term {
+        final int fromDay;
+        final int toDay;
+        final TemporalUnit unit;
+        final int offset;
+        final int trailing;
+        final String label;
+
+        DateTerm(int fromDay, int toDay, TemporalUnit unit, int offset, int trailing, String label) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.unit = unit;
+            this.offset = offset;
+            this.trailing = trailing;
+            this.label = label;
+        }
+
+        static DateTerm fixed(int fromDay, int toDay, String label) {
+            return new DateTerm(fromDay, toDay, null, 0, 0, label);
+        }
+
+        int from(LocalDate today) {
+            if (unit == null) return fromDay;
+            try {
+                if (trailing > 0) return TransactionStore.clampEpochDay(today.minus(trailing, unit).plusDays(1), false);
+                return TransactionStore.clampEpochDay(start(today).plus(offset, unit), false);
+            } catch (DateTimeException e) {
+                // "last 999999999 years" reaches past LocalDate.MIN, and so past every row
+                return TransactionStore.MIN_EPOCH_DAY;
+            }
+        }
+
+        int to(LocalDate today) {
+            if (unit == null) return toDay;
+            if (trailing > 0) return (int) today.toEpochDay();
+            return (int) start(today).plus(offset + 1, unit).minusDays(1).toEpochDay();
+        }
+
+        private LocalDate start(LocalDate today) {
+            if (unit == ChronoUnit.WEEKS) return today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            if (unit == ChronoUnit.MONTHS) return today.withDayOfMonth(1);
+            if (unit == IsoFields.QUARTER_YEARS) return today.with(IsoFields.DAY_OF_QUARTER, 1);
+            if (unit == ChronoUnit.YEARS) return today.withDayOfYear(1);
+            return today;
+        }
+
+        @Override
+        void filter(Run run, long[] bits) {
+            TransactionRows rows = run.rows;
+            int from = from(run.today);
+            int to = to(run.today);
+            for (int word = 0; word < bits.length; word++) {
+                long kept = bits[word];
+                for (long rest = kept; rest != 0; rest &= rest - 1) {
+                    int day = rows.getEpochDay(word << 6 | Long.numberOfTrailingZeros(rest));
+                    if (day < from || day > to) kept &= ~(rest & -rest);
+                }
+                bits[word] = kept;
+            }
+        }
+
+        @Override
+        int estimate(Run run) {
+            return run.dates == null ? -1 : run.dates.count(from(run.today), to(run.today));
+        }
+
+        @Override
+        String index() {
+            return "date";
+        }
+
+        @Override
+        void seed(Run run, long[] bits) {
+            run.dates.forEachRow(from(run.today), to(run.today), row -> bits[row >>> 6] |= 1L << row);
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+
+        @Override
+        String describe(Run run) {
+            if (unit == null) return label;
+            int from = from(run.today);
+            int to = to(run.today);
+            return label + " (" + LocalDate.ofEpochDay(from) + (from == to ? "" : " to " + LocalDate.ofEpochDay(to)) + ")";
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /** Categories by path, each with everything filed under it. */
+    private static final class CategoryTerm extends Term {
+        final List<String> paths;
+
+        CategoryTerm(List<String> paths) {
+            this.paths = paths;
+        }
+
+        boolean[] mask(StringDictionary categories) {
+            String[] prefixes = new String[paths.size()];
+            for (int i = 0; i < prefixes.length; i++) prefixes[i] = paths.get(i).toLowerCase(Locale.ROOT);
+            boolean[] mask = new boolean[categories.size()];
+            for (int id = 0; id < mask.length; id++) {
+                String path = CategoryTree.normalize(categories.get(id)).toLowerCase(Locale.ROOT);
+                for (String prefix : prefixes) {
+                    if (path.equals(prefix) || path.startsWith(prefix + CategoryTree.SEPARATOR)) {
+                        mask[id] = true;
+                        break;
+                    }
+                }
+            }
+            return mask;
+        }
+
+        @Override
+        void filter(Run run, long[] bits) {
+            TransactionRows rows = run.rows;
+            boolean[] mask = mask(rows.categories());
+            for (int word = 0; word < bits.length; word++) {
+                long kept = bits[word];
+                for (long rest = kept; rest != 0; rest &= rest - 1) {
+                    int id = rows.getCategoryId(word << 6 | Long.numberOfTrailingZeros(rest));
+                    if (id >= mask.length || !mask[id]) kept &= ~(rest & -rest);
+                }
+                bits[word] = kept;
+            }
+        }
+
+        @Override
+        int estimate(Run run) {
+            if (run.text == null) return -1;
+            boolean[] mask = mask(run.rows.categories());
+            int rows = 0;
+            for (int id = 0; id < mask.length; id++) {
+                if (mask[id]) rows += run.text.categoryRowCount(id);
+            }
+            return rows;
+        }
+
+        @Override
+        String index() {
+            return "category";
+        }
+
+        @Override
+        void seed(Run run, long[] bits) {
+            boolean[] mask = mask(run.rows.categories());
+            for (int id = 0; id < mask.length; id++) {
+                if (mask[id]) run.text.addCategoryRows(id, bits);
+            }
+        }
+
+        @Override
+        int cost() {
+            return 2;
+        }
+
+        @Override
+        public String toString() {
+            if (paths.size() == 1) return "category = " + quoteIfNeeded(paths.get(0));
+            StringBuilder text = new StringBuilder("category in (");
+            for (int i = 0; i < paths.size(); i++) {
+                if (i > 0) text.append(", ");
+                text.append(quoteIfNeeded(paths.get(i)));
+            }
+            return text.append(')').toString();
+        }
+    }
+
+    /** Text that must appear, ignoring case, in the notes, or in the notes or the category. */
+    private static final class TextTerm extends Term {
+        final String needle;
+        final boolean inCategory;
+
+        TextTerm(String needle, boolean inCategory) {
+            this.needle = needle;
+            this.inCategory = inCategory;
+        }
+
+        boolean[] mask(StringDictionary dictionary) {
+            boolean[] mask = new boolean[dictionary.size()];
+            for (int id = 0; id < mask.length; id++) mask[id] = contains(dictionary.get(id));
+            return mask;
+        }
+
+        boolean contains(String text) {
+            for (int i = 0; i + needle.length() <= text.length(); i++) {
+                if (text.regionMatches(true, i, needle, 0, needle.length())) return true;
+            }
+            return false;
+        }
+
+        // The store's notes are interned, so they are checked once per distinct note; other
+        // rows hand out the same string for the same note often enough to skip repeats
+        @Override
+        void filter(Run run, long[] bits) {
+            TransactionRows rows = run.rows;
+            boolean[] categoryMask = inCategory ? mask(rows.categories()) : new boolean[0];
+            TransactionStore store = rows instanceof TransactionStore ? (TransactionStore) rows : null;
+            boolean[] noteMask = store == null ? null : mask(store.notes());
+            String lastNote = null;
+            boolean lastMatch = false;
+            for (int word = 0; word < bits.length; word++) {
+                long kept = bits[word];
+                for (long rest = kept; rest != 0; rest &= rest - 1) {
+                    int row = word << 6 | Long.numberOfTrailingZeros(rest);
+                    int categoryId = rows.getCategoryId(row);
+                    if (categoryId < categoryMask.length && categoryMask[categoryId]) continue;
+                    boolean match;
+                    if (noteMask != null) {
+                        int noteId = store.getNoteId(row);
+                        match = noteId < noteMask.length && noteMask[noteId];
+                    } else {
+                        String note = rows.getNotes(row);
+                        if (note != lastNote) {
+                            lastNote = note;
+                            lastMatch = note != null && contains(note);
+                        }
+                        match = lastMatch;
+                    }
+                    if (!match) kept &= ~(rest & -rest);
+                }
+                bits[word] = kept;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return inCategory ? quote(needle) : "notes contains " + quote(needle);
+        }
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\"", "'") + '"';
+    }
+
+    private static String quoteIfNeeded(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Parser.isSymbol(text.charAt(i))) return quote(text);
+        }
+        return text.isEmpty() ? quote(text) : text;
+    }
+
+    /** Recursive descent over the tokens of the query text; see the grammar in the class comment. */
+    private static final class Parser {
+        private static final int WORD = 0;
+        private static final int STRING = 1;
+        private static final int SYMBOL = 2;
+        private static final int END = 3;
+
+        private final String text;
+        private int position;
+        private int kind;
+        private String token;
+        private int tokenStart;
+
+        Parser(String text) {
+            this.text = text;
+            next();
+        }
+
+        static boolean isSymbol(char c) {
+            return c == '(' || c == ')' || c == ',' || c == '=' || c == '!' || c == '<' || c == '>' || c == '"'
+                    || c == '\'';
+        }
+
+        Node parse() {
+            if (kind == END) throw error("Enter a filter");
+            Node node = or();
+            if (kind != END) throw error("Unexpected " + describe());
+            return node;
+        }
+
+        private Node or() {
+            List<Node> terms = new ArrayList<>();
+            terms.add(and());
+            while (acceptWord("or")) terms.add(and());
+            return terms.size() == 1 ? terms.get(0) : new Or(terms);
+        }
+
+        private Node and() {
+            List<Node> terms = new ArrayList<>();
+            add(terms, unary());
+            while (true) {
+                if (acceptWord("and")) {
+                    add(terms, unary());
+                } else if (kind == STRING || kind == WORD && !isWord("or") || isSymbol("(")) {
+                    add(terms, unary());
+                } else {
+                    break;
+                }
+            }
+            return terms.size() == 1 ? terms.get(0) : new And(terms);
+        }
+
+        private static void add(List<Node> terms, Node term) {
+            if (term instanceof And) {
+                terms.addAll(((And) term).terms);
+            } else {
+                terms.add(term);
+            }
+        }
+
+        private Node unary() {
+            if (acceptWord("not")) return new Not(unary());
+            if (acceptSymbol("(")) {
+                Node node = or();
+                expectSymbol(")");
+                return node;
+            }
+            if (kind == STRING) {
+                String value = token;
+                next();
+                return new TextTerm(value, true);
+            }
+            if (kind != WORD) throw error("Expected a term but found " + describe());
+            String original = token;
+            String word = original.toLowerCase(Locale.ROOT);
+            next();
+            switch (word) {
+                case "income":
+                    return new TypeTerm(true);
+                case "expense":
+                    return new TypeTerm(false);
+                case "type":
+                    return type();
+                case "category":
+                    return category();
+                case "amount":
+                    return amount();
+                case "date":
+                    return date();
+                case "notes":
+                    if (!acceptWord("contains")) throw error("Expected \"contains\" after notes");
+                    return new TextTerm(value("text"), false);
+                default:
+                    return new TextTerm(original, true);
+            }
+        }
+
+        private Node type() {
+            String op = operator();
+            if (!op.equals("=") && !op.equals("!=")) throw error("Expected = or != after type");
+            Node term;
+            if (acceptWord("income")) {
+                term = new TypeTerm(true);
+            } else if (acceptWord("expense")) {
+                term = new TypeTerm(false);
+            } else {
+                throw error("Expected income or expense but found " + describe());
+            }
+            return op.equals("=") ? term : new Not(term);
+        }
+
+        private Node category() {
+            List<String> paths = new ArrayList<>();
+            if (acceptWord("in")) {
+                expectSymbol("(");
+                do {
+                    paths.add(CategoryTree.normalize(words()));
+                } while (acceptSymbol(","));
+                expectSymbol(")");
+                return new CategoryTerm(paths);
+            }
+            String op = operator();
+            if (!op.equals("=") && !op.equals("!=")) throw error("Expected in, = or != after category");
+            paths.add(CategoryTree.normalize(value("category")));
+            Node term = new CategoryTerm(paths);
+            return op.equals("=") ? term : new Not(term);
+        }
+
+        private Node amount() {
+            if (acceptWord("between")) {
+                long from = cents();
+                if (!acceptWord("and")) throw error("Expected and after the first amount");
+                long to = cents();
+                return new AmountTerm(from, to, "amount between " + amount(from) + " and " + amount(to));
+            }
+            String op = operator();
+            long cents = cents();
+            String label = "amount " + op + " " + amount(cents);
+            switch (op) {
+                case "=": return new AmountTerm(cents, cents, label);
+                case "!=": return new Not(new AmountTerm(cents, cents, "amount = " + amount(cents)));
+                case "<": return new AmountTerm(Long.MIN_VALUE, cents - 1, label);
+                case "<=": return new AmountTerm(Long.MIN_VALUE, cents, label);
+                case ">": return new AmountTerm(cents + 1, Long.MAX_VALUE, label);
+                default: return new AmountTerm(cents, Long.MAX_VALUE, label);
+            }
+        }
+
+        private static String amount(long cents) {
+            return BigDecimal.valueOf(cents, 2).toPlainString();
+        }
+
+        private long cents() {
+            if (kind != WORD) throw error("Expected an amount but found " + describe());
+            try {
+                long cents = new BigDecimal(token).movePointRight(2).longValueExact();
+                next();
+                return cents;
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw error("Expected an amount with at most two decimals but found " + describe());
+            }
+        }
+
+        private Node date() {
+            if (acceptWord("between")) {
+                String first = token;
+                int[] from = dateRange();
+                if (!acceptWord("and")) throw error("Expected and after the first date");
+                String last = token;
+                int[] to = dateRange();
+                return DateTerm.fixed(from[0], to[1], "date between " + first + " and " + last);
+            }
+            if (acceptWord("in")) return period("date in ");
+            String op = operator();
+            if (op.equals("=")) return period("date = ");
+            String value = token;
+            int[] range = dateRange();
+            String label = "date " + op + " " + value;
+            switch (op) {
+                case "!=": return new Not(DateTerm.fixed(range[0], range[1], "date = " + value));
+                case "<": return DateTerm.fixed(Integer.MIN_VALUE, range[0] - 1, label);
+                case "<=": return DateTerm.fixed(Integer.MIN_VALUE, range[1], label);
+                case ">": return DateTerm.fixed(range[1] + 1, Integer.MAX_VALUE, label);
+                default: return DateTerm.fixed(range[0], Integer.MAX_VALUE, label);
+            }
+        }
+
+        // A period relative to today, or a year, month or day
+        private Node period(String prefix) {
+            if (acceptWord("today")) return new DateTerm(0, 0, ChronoUnit.DAYS, 0, 0, prefix + "today");
+            if (acceptWord("yesterday")) return new DateTerm(0, 0, ChronoUnit.DAYS, -1, 0, prefix + "yesterday");
+            if (acceptWord("this")) {
+                String name = token;
+                return new DateTerm(0, 0, unit(false), 0, 0, prefix + "this " + name.toLowerCase(Locale.ROOT));
+            }
+            if (acceptWord("last")) {
+                if (kind == WORD && token.chars().allMatch(Character::isDigit)) {
+                    int count;
+                    try {
+                        count = Integer.parseInt(token);
+                    } catch (NumberFormatException e) {
+                        throw error("Too many units: " + token);
+                    }
+                    if (count == 0) throw error("Expected a number above 0");
+                    next();
+                    String name = token;
+                    return new DateTerm(0, 0, unit(true), 0, count,
+                            prefix + "last " + count + " " + name.toLowerCase(Locale.ROOT));
+                }
+                String name = token;
+                return new DateTerm(0, 0, unit(false), -1, 0, prefix + "last " + name.toLowerCase(Locale.ROOT));
+            }
+            String value = token;
+            int[] range = dateRange();
+            return DateTerm.fixed(range[0], range[1], prefix + value);
+        }
+
+        private TemporalUnit unit(boolean plural) {
+            String name = kind == WORD ? token.toLowerCase(Locale.ROOT) : "";
+            if (plural && name.endsWith("s")) name = name.substring(0, name.length() - 1);
+            TemporalUnit unit;
+            switch (name) {
+                case "day": unit = ChronoUnit.DAYS; break;
+                case "week": unit = ChronoUnit.WEEKS; break;
+                case "month": unit = ChronoUnit.MONTHS; break;
+                case "quarter": unit = IsoFields.QUARTER_YEARS; break;
+                case "year": unit = ChronoUnit.YEARS; break;
+                default: throw error("Expected day, week, month, quarter or year but found " + describe());
+            }
+            next();
+            return unit;
+        }
+
+        // First and last day of a yyyy, yyyy-mm or yyyy-mm-dd token
+        private int[] dateRange() {
+            if (kind != WORD) throw error("Expected a date but found " + describe());
+            String value = token;
+            try {
+                int[] range;
+                if (value.matches("\\d{4}")) {
+                    int year = Integer.parseInt(value);
+                    range = new int[] { (int) LocalDate.of(year, 1, 1).toEpochDay(), (int) LocalDate.of(year, 12, 31).toEpochDay() };
+                } else if (value.matches("\\d{4}-\\d{2}")) {
+                    YearMonth month = YearMonth.parse(value);
+                    range = new int[] { (int) month.atDay(1).toEpochDay(), (int) month.atEndOfMonth().toEpochDay() };
+                } else {
+                    int day = (int) LocalDate.parse(value).toEpochDay();
+                    range = new int[] { day, day };
+                }
+                next();
+                return range;
+            } catch (DateTimeException e) {
+                throw error("Expected a date like 2025-01-31, 2025-01 or 2025 but found " + describe());
+            }
+        }
+
+        private String operator() {
+            if (kind == SYMBOL && !token.equals("(") && !token.equals(")") && !token.equals(",")) {
+                String op = token;
+                next();
+                return op;
+            }
+            throw error("Expected =, !=, <, <=, > or >= but found " + describe());
+        }
+
+        private String value(String what) {
+            if (kind != WORD && kind != STRING) throw error("Expected a " + what + " but found " + describe());
+            String value = token;
+            next();
+            return value;
+        }
+
+        // Words up to the next comma or parenthesis, so list entries need no quotes
+        private String words() {
+            if (kind == STRING) return value("category");
+            StringBuilder value = new StringBuilder();
+            while (kind == WORD) {
+                if (value.length() > 0) value.append(' ');
+                value.append(token);
+                next();
+            }
+            if (value.length() == 0) throw error("Expected a category but found " + describe());
+            return value.toString();
+        }
+
+        private boolean isWord(String word) {
+            return kind == WORD && token.equalsIgnoreCase(word);
+        }
+
+        private boolean acceptWord(String word) {
+            if (!isWord(word)) return false;
+            next();
+            return true;
+        }
+
+        private boolean isSymbol(String symbol) {
+            return kind == SYMBOL && token.equals(symbol);
+        }
+
+        private boolean acceptSymbol(String symbol) {
+            if (!isSymbol(symbol)) return false;
+            next();
+            return true;
+        }
+
+        private void expectSymbol(String symbol) {
+            if (!acceptSymbol(symbol)) throw error("Expected \"" + symbol + "\" but found " + describe());
+        }
+
+        private String describe() {
+            switch (kind) {
+                case END: return "the end";
+                case STRING: return quote(token);
+                default: return "\"" + token + "\"";
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " (column " + (tokenStart + 1) + ").");
+        }
+
+        private void next() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+            tokenStart = position;
+            if (position == text.length()) {
+                kind = END;
+                token = "";
+                return;
+            }
+            char c = text.charAt(position);
+            if (c == '"' || c == '\'') {
+                int end = text.indexOf(c, position + 1);
+                if (end < 0) throw error("Unclosed quote");
+                kind = STRING;
+                token = text.substring(position + 1, end);
+                position = end + 1;
+            } else if (isSymbol(c)) {
+                kind = SYMBOL;
+                boolean twoChars = (c == '!' || c == '<' || c == '>') && position + 1 < text.length()
+                        && text.charAt(position + 1) == '=';
+                token = text.substring(position, position + (twoChars ? 2 : 1));
+                if (token.equals("!")) throw error("Expected != but found \"!\"");
+                position += token.length();
+            } else {
+                int start = position;
+                while (position < text.length() && !Character.isWhitespace(text.charAt(position))
+                        && !isSymbol(text.charAt(position))) {
+                    position++;
+                }
+                kind = WORD;
+                token = text.substring(start, position);
+            }
+        }
+    }
+}
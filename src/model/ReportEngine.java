@@ -0,0 +1,198 @@
+package model;
+
+import diagnostics.LogHistogram;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Builds {@link PivotReport}s with a fork-join reduction. The rows are split
+ * into chunks, each leaf task fills its own partial aggregate (pivot cells,
+ * sums and amount histograms), and partials are merged pairwise on the way
+ * back up, so no state is shared between threads while scanning. The rows
+ * must not change during a run; hand it a {@link TransactionStore#copy()}.
+ */
+public class ReportEngine {
+    private static final int CHUNK_ROWS = 1 << 16;
+
+    private final ForkJoinPool pool;
+
+    public ReportEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ReportEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public PivotReport run(TransactionRows rows) {
+        long started = System.nanoTime();
+        int size = rows.size();
+        StringDictionary dictionary = rows.categories();
+        String[] names = new String[dictionary.size()];
+        for (int id = 0; id < names.length; id++) names[id] = dictionary.get(id);
+
+        // First pass: the date range, which fixes the month axis of the pivot
+        long range = size == 0 ? 0 : pool.invoke(new RangeTask(rows, 0, size));
+        Layout layout = size == 0 ? new Layout(names.length, 0, -1)
+                : new Layout(names.length, (int) (range >> 32), (int) range);
+
+        Partial total = size == 0 ? new Partial(layout) : pool.invoke(new ScanTask(rows, layout, 0, size));
+        YearMonth firstMonth = size == 0 ? null : YearMonth.from(LocalDate.ofEpochDay(layout.firstDay));
+        return new PivotReport(names, firstMonth, layout.monthCount, total.cellCents, total.cellCounts,
+                total.histograms(), total.groupCents, size, System.nanoTime() - started, pool.getParallelism());
+    }
+
+    /** Month axis and array shapes shared by every partial of one run. */
+    private static final class Layout {
+        final int categories;
+        final int firstDay;
+        final int monthCount;
+        final int[] monthOfDay; // month index for each day in [firstDay, lastDay]
+
+        Layout(int categories, int firstDay, int lastDay) {
+            this.categories = categories;
+            this.firstDay = firstDay;
+            this.monthOfDay = new int[Math.max(lastDay - firstDay + 1, 0)];
+            if (monthOfDay.length == 0) {
+                monthCount = 0;
+                return;
+            }
+            YearMonth first = YearMonth.from(LocalDate.ofEpochDay(firstDay));
+            YearMonth month = first;
+            int index = 0;
+            int nextMonthDay = (int) month.plusMonths(1).atDay(1).toEpochDay();
+            for (int day = firstDay; day <= lastDay; day++) {
+                if (day == nextMonthDay) {
+                    month = month.plusMonths(1);
+                    index++;
+                    nextMonthDay = (int) month.plusMonths(1).atDay(1).toEpochDay();
+                }
+                monthOfDay[day - firstDay] = index;
+            }
+            monthCount = index + 1;
+        }
+    }
+
+    private static final class Partial {
+        final Layout layout;
+        final long[] cellCents;
+        final int[] cellCounts;
+        final long[] groupCents;
+        final LogHistogram[] groups;
+
+        Partial(Layout layout) {
+            this.layout = layout;
+            int cells = layout.categories * layout.monthCount * 2;
+            cellCents = new long[cells];
+            cellCounts = new int[cells];
+            groupCents = new long[layout.categories * 2];
+            groups = new LogHistogram[layout.categories * 2];
+        }
+
+        void add(long cents, int epochDay, boolean income, int categoryId) {
+            int type = income ? 1 : 0;
+            int cell = (categoryId * layout.monthCount + layout.monthOfDay[epochDay - layout.firstDay]) * 2 + type;
+            cellCents[cell] += cents;
+            cellCounts[cell]++;
+            int group = PivotReport.group(categoryId, income);
+            groupCents[group] += cents;
+            if (groups[group] == null) groups[group] = new LogHistogram();
+            groups[group].add(cents);
+        }
+
+        Partial merge(Partial other) {
+            for (int i = 0; i < cellCents.length; i++) {
+                cellCents[i] += other.cellCents[i];
+                cellCounts[i] += other.cellCounts[i];
+            }
+            for (int i = 0; i < groups.length; i++) {
+                groupCents[i] += other.groupCents[i];
+                if (other.groups[i] == null) continue;
+                if (groups[i] == null) {
+                    groups[i] = other.groups[i];
+                } else {
+                    groups[i].merge(other.groups[i]);
+                }
+            }
+            return this;
+        }
+
+        LogHistogram[] histograms() {
+            LogHistogram[] result = new LogHistogram[groups.length];
+            for (int i = 0; i < groups.length; i++) {
+                result[i] = groups[i] == null ? new LogHistogram() : groups[i];
+            }
+            return result;
+        }
+    }
+
+    private static final class ScanTask extends RecursiveTask<Partial> {
+        private final TransactionRows rows;
+        private final Layout layout;
+        private final int from;
+        private final int to;
+
+        ScanTask(TransactionRows rows, Layout layout, int from, int to) {
+            this.rows = rows;
+            this.layout = layout;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= CHUNK_ROWS) {
+                Partial partial = new Partial(layout);
+                for (int row = from; row < to; row++) {
+                    partial.add(rows.getCents(row), rows.getEpochDay(row), rows.isIncome(row), rows.getCategoryId(row));
+                }
+                return partial;
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(rows, layout, from, middle);
+            left.fork();
+            Partial right = new ScanTask(rows, layout, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // Result packs the smallest epoch day in the high 32 bits and the largest in the low 32
+    private static final class RangeTask extends RecursiveTask<Long> {
+        private final TransactionRows rows;
+        private final int from;
+        private final int to;
+
+        RangeTask(TransactionRows rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= CHUNK_ROWS * 4) {
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int row = from; row < to; row++) {
+                    int day = rows.getEpochDay(row);
+                    if (day < min) min = day;
+                    if (day > max) max = day;
+                }
+                return pack(min, max);
+            }
+            int middle = (from + to) >>> 1;
+            RangeTask left = new RangeTask(rows, from, middle);
+            left.fork();
+            long right = new RangeTask(rows, middle, to).compute();
+            long leftRange = left.join();
+            return pack(Math.min((int) (leftRange >> 32), (int) (right >> 32)), Math.max((int) leftRange, (int) right));
+        }
+
+        private static long pack(int min, int max) {
+            return ((long) min << 32) | (max & 0xFFFFFFFFL);
+        }
+    }
+}
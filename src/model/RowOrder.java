@@ -0,0 +1,488 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The rows of a store in two orders at once, for {@link DateIndex}: as they
+ * stand in the store, and by date. Both orders are treaps over the same nodes,
+ * held in parallel arrays (about 64 bytes a row) rather than one object per
+ * row. The store-order treap is keyed by subtree size, so a row's node is
+ * found from its row number, and its row number from the node, in O(log n),
+ * and inserting or removing rows renumbers nothing. The date-order treap is
+ * keyed by day and then by a label that increases along store order. Labels
+ * are kept with the list-labelling scheme of Bender et al. ("Two simplified
+ * algorithms for maintaining order in a list"), O(log n) amortized per insert,
+ * so placing a row among others of its day never needs their row numbers.
+ * Each date-order node carries the signed cents of its subtree, which makes
+ * the balance through any row one walk to the root.
+ */
+final class RowOrder {
+    private static final int NONE = -1;
+    private static final int LABEL_BITS = 62;
+    private static final long LABELS = 1L << LABEL_BITS;
+    private static final long APPEND_GAP = 1L << 32;
+    private static final double DENSITY = 1.4; // between 1 and 2; must leave room for every row at LABEL_BITS
+
+    private int[] rowLeft = new int[0];
+    private int[] rowRight = new int[0];
+    private int[] rowParent = new int[0];
+    private int[] rowSize = new int[0];
+    private int[] dateLeft = new int[0];
+    private int[] dateRight = new int[0];
+    private int[] dateParent = new int[0];
+    private int[] day = new int[0];
+    private int[] cachedRow = new int[0];
+    private int[] cachedShift = new int[0];
+    private long[] label = new long[0];
+    private long[] net = new long[0];
+    private long[] dateSum = new long[0];
+    private int rowRoot = NONE;
+    private int dateRoot = NONE;
+    private int allocated;
+    private int free = NONE; // freed nodes, linked through dateLeft
+    private int shifts; // bumped whenever rows move, which invalidates cachedRow
+    private int splitLeft;
+    private int splitRight;
+
+    int size() {
+        return sizeOf(rowRoot);
+    }
+
+    boolean isEmpty() {
+        return rowRoot == NONE;
+    }
+
+    int firstDay() {
+        int node = dateRoot;
+        while (dateLeft[node] != NONE) node = dateLeft[node];
+        return day[node];
+    }
+
+    int lastDay() {
+        int node = dateRoot;
+        while (dateRight[node] != NONE) node = dateRight[node];
+        return day[node];
+    }
+
+    /**
+     * Adds store rows {@code [from, to)}, which have just been inserted into
+     * {@code store}. When the labels between the neighbouring rows have room
+     * for the whole batch, it is built into treaps of its own in one pass and
+     * joined to the others, which keeps a load from empty to O(n log n) with a
+     * small constant; otherwise the rows go in one at a time.
+     */
+    void insert(TransactionStore store, int from, int to) {
+        if (from < size()) shifts++;
+        int previous = from > 0 ? nodeAt(from - 1) : NONE;
+        int next = from < size() ? nodeAt(from) : NONE;
+        long low = previous == NONE ? -1 : label[previous];
+        long high = next == NONE ? LABELS : label[next];
+        long step = Math.min(next == NONE ? APPEND_GAP : LABELS, (high - low) / (to - from + 1));
+        int[] nodes = new int[to - from];
+        for (int row = from; row < to; row++) {
+            int node = allocate();
+            day[node] = store.getEpochDay(row);
+            net[node] = store.isIncome(row) ? store.getCents(row) : -store.getCents(row);
+            cachedRow[node] = row;
+            cachedShift[node] = shifts;
+            nodes[row - from] = node;
+        }
+        if (step == 0) {
+            for (int i = 0; i < nodes.length; i++) {
+                rowSplit(rowRoot, from + i);
+                setRowRoot(rowMerge(rowMerge(splitLeft, nodes[i]), splitRight));
+                label(nodes[i], i == 0 ? previous : nodes[i - 1], next);
+                dateInsert(nodes[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < nodes.length; i++) label[nodes[i]] = low + step * (i + 1);
+        rowSplit(rowRoot, from);
+        int after = splitRight;
+        setRowRoot(rowMerge(rowMerge(splitLeft, build(nodes, rowLeft, rowRight, true)), after));
+
+        // By day, then by position in the batch, which is label order
+        long[] keys = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            keys[i] = (long) (day[nodes[i]] - TransactionStore.MIN_EPOCH_DAY) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] byDate = new int[nodes.length];
+        for (int i = 0; i < keys.length; i++) byDate[i] = nodes[(int) keys[i]];
+        dateRoot = dateUnion(dateRoot, build(byDate, dateLeft, dateRight, false));
+        if (dateRoot != NONE) dateParent[dateRoot] = NONE;
+    }
+
+    /** Drops rows {@code [from, to)}. */
+    void remove(int from, int to) {
+        if (to < size()) shifts++;
+        rowSplit(rowRoot, from);
+        int before = splitLeft;
+        rowSplit(splitRight, to - from);
+        int removed = splitLeft;
+        setRowRoot(rowMerge(before, splitRight));
+        release(removed);
+    }
+
+    /** Moves {@code row} to its new day and amount; its place in store order is unchanged. */
+    void update(int row, int newDay, long newNet) {
+        int node = nodeAt(row);
+        dateRemove(node);
+        day[node] = newDay;
+        net[node] = newNet;
+        dateInsert(node);
+    }
+
+    void clear() {
+        rowRoot = NONE;
+        dateRoot = NONE;
+        allocated = 0;
+        free = NONE;
+        shifts++;
+    }
+
+    /** Signed cents of {@code row} and every row before it in date order. */
+    long balanceThrough(int row) {
+        int node = nodeAt(row);
+        long balance = net[node] + sumOf(dateLeft[node]);
+        for (int child = node, parent = dateParent[node]; parent != NONE; child = parent, parent = dateParent[parent]) {
+            if (dateRight[parent] == child) balance += net[parent] + sumOf(dateLeft[parent]);
+        }
+        return balance;
+    }
+
+    /** Visits the rows dated within {@code [fromDay, toDay]} in date order, store order within a day. */
+    void forEachRow(int fromDay, int toDay, IntConsumer action) {
+        int first = NONE;
+        for (int node = dateRoot; node != NONE; ) {
+            if (day[node] >= fromDay) {
+                first = node;
+                node = dateLeft[node];
+            } else {
+                node = dateRight[node];
+            }
+        }
+        for (int node = first; node != NONE && day[node] <= toDay; node = dateNext(node)) {
+            action.accept(rowOf(node));
+        }
+    }
+
+    private int rowOf(int node) {
+        if (cachedShift[node] != shifts) {
+            int row = sizeOf(rowLeft[node]);
+            for (int child = node, parent = rowParent[node]; parent != NONE; child = parent, parent = rowParent[parent]) {
+                if (rowRight[parent] == child) row += sizeOf(rowLeft[parent]) + 1;
+            }
+            cachedRow[node] = row;
+            cachedShift[node] = shifts;
+        }
+        return cachedRow[node];
+    }
+
+    private int nodeAt(int row) {
+        int node = rowRoot;
+        while (true) {
+            int left = sizeOf(rowLeft[node]);
+            if (row < left) {
+                node = rowLeft[node];
+            } else if (row == left) {
+                return node;
+            } else {
+                row -= left + 1;
+                node = rowRight[node];
+            }
+        }
+    }
+
+    // Gives node a label between its neighbours in store order, spreading out the labels nearby when
+    // there is no room
+    private void label(int node, int previous, int next) {
+        long low = previous == NONE ? -1 : label[previous];
+        long high = next == NONE ? LABELS : label[next];
+        if (high - low > 1) {
+            label[node] = low + (next == NONE ? Math.min(APPEND_GAP, (high - low) / 2) : (high - low) / 2);
+            return;
+        }
+        label[node] = previous == NONE ? high : low;
+        // The smallest aligned label range around node holding few enough rows for its size
+        int first = node;
+        int last = node;
+        int count = 1;
+        for (int bits = 1; ; bits++) {
+            long range = 1L << bits;
+            long base = label[node] & -range;
+            for (int p = rowPrevious(first); p != NONE && label[p] >= base; p = rowPrevious(p)) {
+                first = p;
+                count++;
+            }
+            for (int n = rowNext(last); n != NONE && label[n] < base + range; n = rowNext(n)) {
+                last = n;
+                count++;
+            }
+            if (count < range / Math.pow(DENSITY, bits) || bits == LABEL_BITS) {
+                long step = range / count;
+                long value = base;
+                for (int n = first; ; n = rowNext(n)) {
+                    label[n] = value;
+                    value += step;
+                    if (n == last) return;
+                }
+            }
+        }
+    }
+
+    private int allocate() {
+        int node;
+        if (free != NONE) {
+            node = free;
+            free = dateLeft[node];
+        } else {
+            if (allocated == label.length) grow(Math.max(16, allocated * 2));
+            node = allocated++;
+        }
+        rowLeft[node] = rowRight[node] = rowParent[node] = NONE;
+        rowSize[node] = 1;
+        dateLeft[node] = dateRight[node] = dateParent[node] = NONE;
+        return node;
+    }
+
+    // Takes every node of a detached store-order subtree out of the date order and onto the free list
+    private void release(int root) {
+        if (root == NONE) return;
+        release(rowLeft[root]);
+        release(rowRight[root]);
+        dateRemove(root);
+        dateLeft[root] = free;
+        free = root;
+    }
+
+    private void grow(int capacity) {
+        rowLeft = Arrays.copyOf(rowLeft, capacity);
+        rowRight = Arrays.copyOf(rowRight, capacity);
+        rowParent = Arrays.copyOf(rowParent, capacity);
+        rowSize = Arrays.copyOf(rowSize, capacity);
+        dateLeft = Arrays.copyOf(dateLeft, capacity);
+        dateRight = Arrays.copyOf(dateRight, capacity);
+        dateParent = Arrays.copyOf(dateParent, capacity);
+        day = Arrays.copyOf(day, capacity);
+        cachedRow = Arrays.copyOf(cachedRow, capacity);
+        cachedShift = Arrays.copyOf(cachedShift, capacity);
+        label = Arrays.copyOf(label, capacity);
+        net = Arrays.copyOf(net, capacity);
+        dateSum = Arrays.copyOf(dateSum, capacity);
+    }
+
+    // A treap of nodes, which are in key order, built in one pass with a stack of its right spine
+    private int build(int[] nodes, int[] left, int[] right, boolean storeOrder) {
+        int[] spine = new int[nodes.length];
+        int depth = 0;
+        for (int node : nodes) {
+            int popped = NONE;
+            while (depth > 0 && priority(spine[depth - 1]) < priority(node)) popped = spine[--depth];
+            left[node] = popped;
+            right[node] = NONE;
+            if (depth > 0) right[spine[depth - 1]] = node;
+            spine[depth++] = node;
+        }
+        if (depth == 0) return NONE;
+        pullAll(spine[0], storeOrder);
+        return spine[0];
+    }
+
+    private void pullAll(int node, boolean storeOrder) {
+        int[] left = storeOrder ? rowLeft : dateLeft;
+        int[] right = storeOrder ? rowRight : dateRight;
+        if (left[node] != NONE) pullAll(left[node], storeOrder);
+        if (right[node] != NONE) pullAll(right[node], storeOrder);
+        if (storeOrder) {
+            rowPull(node);
+        } else {
+            datePull(node);
+        }
+    }
+
+    // Hashed rather than random, so the same data always builds the same trees
+    private static int priority(int node) {
+        int h = node * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        return h ^ h >>> 13;
+    }
+
+    // Store order
+
+    private int sizeOf(int node) {
+        return node == NONE ? 0 : rowSize[node];
+    }
+
+    private void rowPull(int node) {
+        rowSize[node] = 1 + sizeOf(rowLeft[node]) + sizeOf(rowRight[node]);
+        if (rowLeft[node] != NONE) rowParent[rowLeft[node]] = node;
+        if (rowRight[node] != NONE) rowParent[rowRight[node]] = node;
+    }
+
+    private void setRowRoot(int node) {
+        rowRoot = node;
+        if (node != NONE) rowParent[node] = NONE;
+    }
+
+    // The first count rows of tree go to splitLeft, the rest to splitRight
+    private void rowSplit(int tree, int count) {
+        if (tree == NONE) {
+            splitLeft = splitRight = NONE;
+        } else if (sizeOf(rowLeft[tree]) < count) {
+            rowSplit(rowRight[tree], count - sizeOf(rowLeft[tree]) - 1);
+            rowRight[tree] = splitLeft;
+            rowPull(tree);
+            splitLeft = tree;
+        } else {
+            rowSplit(rowLeft[tree], count);
+            rowLeft[tree] = splitRight;
+            rowPull(tree);
+            splitRight = tree;
+        }
+    }
+
+    private int rowMerge(int left, int right) {
+        if (left == NONE) return right;
+        if (right == NONE) return left;
+        if (priority(left) > priority(right)) {
+            rowRight[left] = rowMerge(rowRight[left], right);
+            rowPull(left);
+            return left;
+        }
+        rowLeft[right] = rowMerge(left, rowLeft[right]);
+        rowPull(right);
+        return right;
+    }
+
+    private int rowNext(int node) {
+        if (rowRight[node] != NONE) {
+            node = rowRight[node];
+            while (rowLeft[node] != NONE) node = rowLeft[node];
+            return node;
+        }
+        int parent = rowParent[node];
+        while (parent != NONE && rowRight[parent] == node) {
+            node = parent;
+            parent = rowParent[parent];
+        }
+        return parent;
+    }
+
+    private int rowPrevious(int node) {
+        if (rowLeft[node] != NONE) {
+            node = rowLeft[node];
+            while (rowRight[node] != NONE) node = rowRight[node];
+            return node;
+        }
+        int parent = rowParent[node];
+        while (parent != NONE && rowLeft[parent] == node) {
+            node = parent;
+            parent = rowParent[parent];
+        }
+        return parent;
+    }
+
+    // Date order
+
+    private long sumOf(int node) {
+        return node == NONE ? 0 : dateSum[node];
+    }
+
+    private void datePull(int node) {
+        dateSum[node] = net[node] + sumOf(dateLeft[node]) + sumOf(dateRight[node]);
+        if (dateLeft[node] != NONE) dateParent[dateLeft[node]] = node;
+        if (dateRight[node] != NONE) dateParent[dateRight[node]] = node;
+    }
+
+    private boolean dateBefore(int a, int b) {
+        return day[a] != day[b] ? day[a] < day[b] : label[a] < label[b];
+    }
+
+    private void dateInsert(int node) {
+        dateLeft[node] = dateRight[node] = NONE;
+        datePull(node);
+        dateSplit(dateRoot, node);
+        dateRoot = dateMerge(dateMerge(splitLeft, node), splitRight);
+        dateParent[dateRoot] = NONE;
+    }
+
+    private void dateRemove(int node) {
+        int merged = dateMerge(dateLeft[node], dateRight[node]);
+        int parent = dateParent[node];
+        if (merged != NONE) dateParent[merged] = parent;
+        if (parent == NONE) {
+            dateRoot = merged;
+        } else if (dateLeft[parent] == node) {
+            dateLeft[parent] = merged;
+        } else {
+            dateRight[parent] = merged;
+        }
+        for (int ancestor = parent; ancestor != NONE; ancestor = dateParent[ancestor]) {
+            dateSum[ancestor] = net[ancestor] + sumOf(dateLeft[ancestor]) + sumOf(dateRight[ancestor]);
+        }
+    }
+
+    // The nodes of tree before key go to splitLeft, the rest to splitRight
+    private void dateSplit(int tree, int key) {
+        if (tree == NONE) {
+            splitLeft = splitRight = NONE;
+        } else if (dateBefore(tree, key)) {
+            dateSplit(dateRight[tree], key);
+            dateRight[tree] = splitLeft;
+            datePull(tree);
+            splitLeft = tree;
+        } else {
+            dateSplit(dateLeft[tree], key);
+            dateLeft[tree] = splitRight;
+            datePull(tree);
+            splitRight = tree;
+        }
+    }
+
+    private int dateMerge(int left, int right) {
+        if (left == NONE) return right;
+        if (right == NONE) return left;
+        if (priority(left) > priority(right)) {
+            dateRight[left] = dateMerge(dateRight[left], right);
+            datePull(left);
+            return left;
+        }
+        dateLeft[right] = dateMerge(left, dateLeft[right]);
+        datePull(right);
+        return right;
+    }
+
+    private int dateUnion(int a, int b) {
+        if (a == NONE) return b;
+        if (b == NONE) return a;
+        if (priority(a) < priority(b)) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        dateSplit(b, a);
+        int before = splitLeft;
+        int after = splitRight;
+        dateLeft[a] = dateUnion(dateLeft[a], before);
+        dateRight[a] = dateUnion(dateRight[a], after);
+        datePull(a);
+        return a;
+    }
+
+    private int dateNext(int node) {
+        if (dateRight[node] != NONE) {
+            node = dateRight[node];
+            while (dateLeft[node] != NONE) node = dateLeft[node];
+            return node;
+        }
+        int parent = dateParent[node];
+        while (parent != NONE && dateRight[parent] == node) {
+            node = parent;
+            parent = dateParent[parent];
+        }
+        return parent;
+    }
+}
@@ -0,0 +1,71 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps repeated strings (categories, notes) to dense int ids so columns can
+ * store an {@code int} per row instead of a reference.
+ */
+public class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /** Returns the id of {@code value}, assigning a new one if it is not known yet. */
+    public int intern(String value) {
+        if (value == null) value = "";
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            values.add(value);
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    /** Returns the id of {@code value}, or -1 if it has never been interned. */
+    public int find(String value) {
+        Integer id = ids.get(value == null ? "" : value);
+        return id == null ? -1 : id;
+    }
+
+    public String get(int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Drops the values whose id is not marked in {@code used} and renumbers the
+     * rest densely, in their old order. Returns the new id of each old id, or -1
+     * for a dropped one.
+     */
+    public int[] compact(boolean[] used) {
+        int[] remap = new int[values.size()];
+        List<String> kept = new ArrayList<>();
+        ids.clear();
+        for (int id = 0; id < remap.length; id++) {
+            if (id < used.length && used[id]) {
+                remap[id] = kept.size();
+                ids.put(values.get(id), kept.size());
+                kept.add(values.get(id));
+            } else {
+                remap[id] = -1;
+            }
+        }
+        values.clear();
+        values.addAll(kept);
+        return remap;
+    }
+
+    public StringDictionary copy() {
+        StringDictionary copy = new StringDictionary();
+        copy.ids.putAll(ids);
+        copy.values.addAll(values);
+        return copy;
+    }
+}
@@ -0,0 +1,208 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index for searching categories and notes. Both are interned in a
+ * {@link StringDictionary}, so each distinct text is tokenized only once: a
+ * sorted token map leads to dictionary ids, and each id has a posting list of
+ * the rows that use it. A query is a list of token prefixes that must all
+ * match (in the category or the notes), optionally narrowed by type and date.
+ * The index follows the store through its listener callbacks.
+ */
+public class TextIndex implements TransactionStore.Listener {
+    private final TransactionStore store;
+    private final Field categories;
+    private final Field notes;
+
+    public TextIndex(TransactionStore store) {
+        this.store = store;
+        this.categories = new Field(store.categories());
+        this.notes = new Field(store.notes());
+        store.addListener(this);
+        rowsInserted(0, store.size());
+    }
+
+    /** Lower-cased letter/digit runs of {@code text}, without duplicates. */
+    public static Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Rows whose category or notes contain a word starting with every token of
+     * {@code text}, in row order. {@code income} (null for both types) and the
+     * inclusive date bounds (null for open) narrow the result further.
+     */
+    public IntList search(String text, Boolean income, LocalDate from, LocalDate to) {
+        int size = store.size();
+        int fromDay = TransactionStore.clampEpochDay(from, false);
+        int toDay = TransactionStore.clampEpochDay(to, true);
+
+        long[] matched = null;
+        for (String token : tokens(text == null ? "" : text)) {
+            long[] rows = new long[(size + 63) >>> 6];
+            categories.collect(token, rows);
+            notes.collect(token, rows);
+            if (matched == null) {
+                matched = rows;
+            } else {
+                for (int i = 0; i < matched.length; i++) matched[i] &= rows[i];
+            }
+        }
+
+        IntList result = new IntList(matched == null ? Math.max(size, 1) : 64);
+        if (matched == null) {
+            for (int row = 0; row < size; row++) {
+                if (accept(row, income, fromDay, toDay)) result.add(row);
+            }
+            return result;
+        }
+        for (int word = 0; word < matched.length; word++) {
+            for (long bits = matched[word]; bits != 0; bits &= bits - 1) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (accept(row, income, fromDay, toDay)) result.add(row);
+            }
+        }
+        return result;
+    }
+
+    /** How many rows use the category with dictionary id {@code id}. */
+    public int categoryRowCount(int id) {
+        return categories.rows(id).size();
+    }
+
+    /** Sets the bit of every row that uses the category with dictionary id {@code id}. */
+    public void addCategoryRows(int id, long[] rows) {
+        IntList posting = categories.rows(id);
+        for (int i = 0; i < posting.size(); i++) {
+            int row = posting.get(i);
+            rows[row >>> 6] |= 1L << row;
+        }
+    }
+
+    private boolean accept(int row, Boolean income, int fromDay, int toDay) {
+        if (income != null && store.isIncome(row) != income) return false;
+        int day = store.getEpochDay(row);
+        return day >= fromDay && day <= toDay;
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        if (to < store.size()) {
+            categories.shiftRows(from, to - from);
+            notes.shiftRows(from, to - from);
+        }
+        for (int row = from; row < to; row++) {
+            insert(row);
+        }
+    }
+
+    @Override
+    public void rowsRemoving(int from, int to) {
+        if (from == 0 && to == store.size()) {
+            categories.clearRows();
+            notes.clearRows();
+            return;
+        }
+        for (int row = from; row < to; row++) {
+            categories.rows(store.getCategoryId(row)).removeSorted(row);
+            notes.rows(store.getNoteId(row)).removeSorted(row);
+        }
+        categories.shiftRows(to, from - to);
+        notes.shiftRows(to, from - to);
+    }
+
+    @Override
+    public void rowUpdating(int row) {
+        categories.rows(store.getCategoryId(row)).removeSorted(row);
+        notes.rows(store.getNoteId(row)).removeSorted(row);
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        insert(row);
+    }
+
+    @Override
+    public void notesCompacted() {
+        notes.reset();
+        for (int row = 0, size = store.size(); row < size; row++) {
+            notes.rows(store.getNoteId(row)).add(row);
+        }
+    }
+
+    private void insert(int row) {
+        categories.rows(store.getCategoryId(row)).addSorted(row);
+        notes.rows(store.getNoteId(row)).addSorted(row);
+    }
+
+    /** Token map and per-id posting lists for one dictionary-backed column. */
+    private static final class Field {
+        private final StringDictionary dictionary;
+        private final TreeMap<String, IntList> idsByToken = new TreeMap<>();
+        private final List<IntList> rowsById = new ArrayList<>();
+
+        Field(StringDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        // Dictionary ids only grow between compactions, so new entries are tokenized the first time a row uses them
+        IntList rows(int id) {
+            while (rowsById.size() <= id) {
+                int next = rowsById.size();
+                for (String token : tokens(dictionary.get(next))) {
+                    idsByToken.computeIfAbsent(token, t -> new IntList(2)).add(next);
+                }
+                rowsById.add(new IntList(4));
+            }
+            return rowsById.get(id);
+        }
+
+        void collect(String prefix, long[] rows) {
+            long[] seen = new long[(rowsById.size() + 63) >>> 6];
+            Map<String, IntList> matches = idsByToken.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+            for (IntList ids : matches.values()) {
+                for (int i = 0; i < ids.size(); i++) {
+                    int id = ids.get(i);
+                    if ((seen[id >>> 6] & 1L << id) != 0) continue;
+                    seen[id >>> 6] |= 1L << id;
+                    IntList posting = rowsById.get(id);
+                    for (int j = 0; j < posting.size(); j++) {
+                        int row = posting.get(j);
+                        rows[row >>> 6] |= 1L << row;
+                    }
+                }
+            }
+        }
+
+        void shiftRows(int threshold, int delta) {
+            for (IntList posting : rowsById) posting.shift(threshold, delta);
+        }
+
+        void clearRows() {
+            for (IntList posting : rowsById) posting.clear();
+        }
+
+        void reset() {
+            idsByToken.clear();
+            rowsById.clear();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Daily income, expenses and running balance over a contiguous range of days,
+ * summed once into day, week and month buckets. A chart asks for the finest
+ * {@link Level} that has no more than a few buckets per pixel of the visible
+ * window and thins those with {@link Level#downsample}, so drawing any window
+ * costs O(pixels) however many rows or days lie behind it.
+ */
+public final class TimeSeries {
+    public enum Resolution {
+        DAY("Daily"),
+        WEEK("Weekly"),
+        MONTH("Monthly");
+
+        private final String label;
+
+        Resolution(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public enum Measure { INCOME, EXPENSE, BALANCE }
+
+    private final int firstDay;
+    private final int lastDay;
+    private final Level[] levels = new Level[Resolution.values().length];
+
+    private TimeSeries(int firstDay, long openingBalance, long[] dayIncome, long[] dayExpense) {
+        this.firstDay = firstDay;
+        this.lastDay = firstDay + dayIncome.length - 1;
+        for (Resolution resolution : Resolution.values()) {
+            levels[resolution.ordinal()] = new Level(resolution, openingBalance, dayIncome, dayExpense);
+        }
+    }
+
+    /**
+     * Summarizes the days from {@code firstDay} on; {@code dayIncome[i]} and
+     * {@code dayExpense[i]} are the cents dated {@code firstDay + i}, and
+     * {@code openingBalance} the balance before the first day.
+     */
+    public static TimeSeries of(int firstDay, long openingBalance, long[] dayIncome, long[] dayExpense) {
+        if (dayIncome.length != dayExpense.length || dayIncome.length == 0) {
+            throw new IllegalArgumentException("Need the same, non-zero number of income and expense days");
+        }
+        return new TimeSeries(firstDay, openingBalance, dayIncome, dayExpense);
+    }
+
+    public int firstDay() {
+        return firstDay;
+    }
+
+    public int lastDay() {
+        return lastDay;
+    }
+
+    public Level level(Resolution resolution) {
+        return levels[resolution.ordinal()];
+    }
+
+    /**
+     * The finest level with at most {@code maxBuckets} buckets within
+     * {@code [fromDay, toDay]}, or the month level if none has that few.
+     */
+    public Level levelFor(int fromDay, int toDay, int maxBuckets) {
+        for (Level level : levels) {
+            if (level.bucketOf(toDay) - level.bucketOf(fromDay) + 1 <= maxBuckets) return level;
+        }
+        return levels[levels.length - 1];
+    }
+
+    /**
+     * One resolution: buckets in date order, each with its income, expenses
+     * and the balance at its end. The first and last bucket may be partial
+     * weeks or months.
+     */
+    public final class Level {
+        private final Resolution resolution;
+        private final int origin; // day or month index that bucket 0 is counted from
+        private final int[] starts;
+        private final long[] income;
+        private final long[] expense;
+        private final long[] balance;
+
+        private Level(Resolution resolution, long openingBalance, long[] dayIncome, long[] dayExpense) {
+            this.resolution = resolution;
+            LocalDate first = LocalDate.ofEpochDay(firstDay);
+            switch (resolution) {
+                case WEEK -> origin = (int) first.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).toEpochDay();
+                case MONTH -> origin = DateIndex.monthIndex(firstDay);
+                default -> origin = firstDay;
+            }
+            int size = index(lastDay) + 1;
+            starts = new int[size];
+            income = new long[size];
+            expense = new long[size];
+            balance = new long[size];
+
+            long running = openingBalance;
+            int bucket = -1;
+            for (int i = 0; i < dayIncome.length; i++) {
+                int day = firstDay + i;
+                int index = index(day);
+                if (index != bucket) {
+                    bucket = index;
+                    starts[bucket] = day;
+                }
+                income[bucket] += dayIncome[i];
+                expense[bucket] += dayExpense[i];
+                running += dayIncome[i] - dayExpense[i];
+                balance[bucket] = running;
+            }
+        }
+
+        private int index(int day) {
+            switch (resolution) {
+                case WEEK: return Math.floorDiv(day - origin, 7);
+                case MONTH: return DateIndex.monthIndex(day) - origin;
+                default: return day - origin;
+            }
+        }
+
+        public Resolution resolution() {
+            return resolution;
+        }
+
+        public int size() {
+            return starts.length;
+        }
+
+        /** The bucket holding {@code day}, clamped to the first or last one, O(1). */
+        public int bucketOf(int day) {
+            return Math.max(0, Math.min(index(Math.max(day, firstDay)), starts.length - 1));
+        }
+
+        public int startDay(int bucket) {
+            return starts[bucket];
+        }
+
+        public int endDay(int bucket) {
+            return bucket + 1 < starts.length ? starts[bucket + 1] - 1 : lastDay;
+        }
+
+        /** Income or expense cents of the bucket, or the balance at its end. */
+        public long get(Measure measure, int bucket) {
+            switch (measure) {
+                case INCOME: return income[bucket];
+                case EXPENSE: return expense[bucket];
+                default: return balance[bucket];
+            }
+        }
+
+        /**
+         * Largest-Triangle-Three-Buckets: picks at most {@code threshold} of the
+         * buckets {@code [from, to)} that keep the shape of {@code measure},
+         * always including the first and last. The others are split into equal
+         * groups and each group contributes the bucket forming the largest
+         * triangle with the previous pick and the average of the next group.
+         * Returns bucket indexes in ascending order; O(to - from).
+         */
+        public int[] downsample(Measure measure, int from, int to, int threshold) {
+            int count = to - from;
+            if (threshold >= count || threshold < 3) {
+                int[] all = new int[Math.max(count, 0)];
+                for (int i = 0; i < all.length; i++) all[i] = from + i;
+                return all;
+            }
+
+            int[] picked = new int[threshold];
+            picked[0] = from;
+            double every = (double) (count - 2) / (threshold - 2);
+            int previous = from;
+            for (int i = 0; i < threshold - 2; i++) {
+                int nextStart = from + (int) ((i + 1) * every) + 1;
+                int nextEnd = Math.min(from + (int) ((i + 2) * every) + 1, to);
+                double averageX = 0;
+                double averageY = 0;
+                for (int bucket = nextStart; bucket < nextEnd; bucket++) {
+                    averageX += x(bucket);
+                    averageY += get(measure, bucket);
+                }
+                averageX /= nextEnd - nextStart;
+                averageY /= nextEnd - nextStart;
+
+                double previousX = x(previous);
+                double previousY = get(measure, previous);
+                double maxArea = -1;
+                int best = nextStart - 1;
+                for (int bucket = from + (int) (i * every) + 1; bucket < nextStart; bucket++) {
+                    double area = Math.abs((previousX - averageX) * (get(measure, bucket) - previousY)
+                            - (previousX - x(bucket)) * (averageY - previousY));
+                    if (area > maxArea) {
+                        maxArea = area;
+                        best = bucket;
+                    }
+                }
+                picked[i + 1] = best;
+                previous = best;
+            }
+            picked[threshold - 1] = to - 1;
+            return picked;
+        }
+
+        // Buckets are placed at their middle day, so partial weeks and months sit where their days are
+        private double x(int bucket) {
+            return (startDay(bucket) + endDay(bucket)) / 2.0;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Income/expense totals and per-category sums kept up to date as the store
+ * changes, so readers pay O(#categories) instead of a scan over every row.
+ * Amounts are accumulated as exact cents.
+ */
+public class TransactionAggregates implements TransactionStore.Listener {
+    private final TransactionStore store;
+    private long incomeCents;
+    private long expenseCents;
+    private long[] incomeByCategory = new long[8];
+    private long[] expenseByCategory = new long[8];
+    private int[] incomeCountByCategory = new int[8];
+    private int[] expenseCountByCategory = new int[8];
+
+    public TransactionAggregates(TransactionStore store) {
+        this.store = store;
+        store.addListener(this);
+        rowsInserted(0, store.size());
+    }
+
+    public TransactionStore store() {
+        return store;
+    }
+
+    public long getIncomeCents() {
+        return incomeCents;
+    }
+
+    public long getExpenseCents() {
+        return expenseCents;
+    }
+
+    public BigDecimal getTotalIncome() {
+        return BigDecimal.valueOf(incomeCents, 2);
+    }
+
+    public BigDecimal getTotalExpenses() {
+        return BigDecimal.valueOf(expenseCents, 2);
+    }
+
+    /** Upper bound (exclusive) of the category ids that may have totals. */
+    public int categoryCount() {
+        return store.categories().size();
+    }
+
+    public long getCategoryCents(int categoryId, boolean income) {
+        long[] totals = income ? incomeByCategory : expenseByCategory;
+        return categoryId < totals.length ? totals[categoryId] : 0;
+    }
+
+    /** Number of rows of the given type in a category; zero means the category has no bar. */
+    public int getCategoryCount(int categoryId, boolean income) {
+        int[] counts = income ? incomeCountByCategory : expenseCountByCategory;
+        return categoryId < counts.length ? counts[categoryId] : 0;
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        for (int row = from; row < to; row++) {
+            apply(row, 1);
+        }
+    }
+
+    @Override
+    public void rowsRemoving(int from, int to) {
+        for (int row = from; row < to; row++) {
+            apply(row, -1);
+        }
+    }
+
+    @Override
+    public void rowUpdating(int row) {
+        apply(row, -1);
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        apply(row, 1);
+    }
+
+    private void apply(int row, int sign) {
+        long cents = store.getCents(row) * sign;
+        int categoryId = store.getCategoryId(row);
+        ensureCategory(categoryId);
+        if (store.isIncome(row)) {
+            incomeCents += cents;
+            incomeByCategory[categoryId] += cents;
+            incomeCountByCategory[categoryId] += sign;
+        } else {
+            expenseCents += cents;
+            expenseByCategory[categoryId] += cents;
+            expenseCountByCategory[categoryId] += sign;
+        }
+    }
+
+    private void ensureCategory(int categoryId) {
+        if (categoryId < expenseByCategory.length) return;
+        int capacity = Math.max(categoryId + 1, expenseByCategory.length * 2);
+        incomeByCategory = Arrays.copyOf(incomeByCategory, capacity);
+        expenseByCategory = Arrays.copyOf(expenseByCategory, capacity);
+        incomeCountByCategory = Arrays.copyOf(incomeCountByCategory, capacity);
+        expenseCountByCategory = Arrays.copyOf(expenseCountByCategory, capacity);
+    }
+}
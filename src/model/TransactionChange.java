@@ -0,0 +1,42 @@
+package model;
+
+/**
+ * A contiguous range of rows that was inserted, updated or removed, in the
+ * row numbering of the moment it happened. Produced by {@link ChangeCoalescer}.
+ */
+public final class TransactionChange {
+    public enum Kind { INSERTED, UPDATED, REMOVED }
+
+    private final Kind kind;
+    private final int from;
+    private final int to;
+
+    TransactionChange(Kind kind, int from, int to) {
+        this.kind = kind;
+        this.from = from;
+        this.to = to;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /** First row of the range. */
+    public int from() {
+        return from;
+    }
+
+    /** End of the range, exclusive. */
+    public int to() {
+        return to;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " [" + from + ", " + to + ")";
+    }
+}
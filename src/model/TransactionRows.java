@@ -0,0 +1,35 @@
+package model;
+
+import java.time.LocalDate;
+
+/**
+ * Read-only, index-addressed view of transaction columns. Implemented by the
+ * in-memory {@link TransactionStore} and by on-disk formats that can be read in
+ * place, so bulk consumers do not care where the rows live.
+ */
+public interface TransactionRows {
+    int size();
+
+    long getCents(int row);
+
+    int getEpochDay(int row);
+
+    boolean isIncome(int row);
+
+    int getCategoryId(int row);
+
+    String getNotes(int row);
+
+    /** Dictionary that {@link #getCategoryId(int)} indexes into. */
+    StringDictionary categories();
+
+    default String getCategory(int row) {
+        return categories().get(getCategoryId(row));
+    }
+
+    /** Materializes one row as a {@link Transaction}. */
+    default Transaction get(int row) {
+        return new Transaction(isIncome(row) ? TransactionStore.INCOME : TransactionStore.EXPENSE, getCategory(row),
+                getCents(row) / 100.0, LocalDate.ofEpochDay(getEpochDay(row)), getNotes(row));
+    }
+}
@@ -0,0 +1,464 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented transaction storage. Each field lives in its own primitive
+ * array: amounts as cents, dates as epoch days, the income/expense type as a
+ * bitset, and category/notes as ids into a {@link StringDictionary}. Rows are
+ * addressed by index; {@link #get(int)} materializes a {@link Transaction} only
+ * when a caller really needs one. Registered {@link Listener}s are told about
+ * every mutation so derived structures can be kept up to date incrementally.
+ */
+public class TransactionStore implements TransactionRows {
+    public static final String INCOME = "Income";
+    public static final String EXPENSE = "Expense";
+
+    /** Dates outside these bounds are rejected, so the per-day indexes stay a sane size. */
+    public static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    public static final LocalDate MAX_DATE = LocalDate.of(2199, 12, 31);
+    public static final int MIN_EPOCH_DAY = (int) MIN_DATE.toEpochDay();
+    public static final int MAX_EPOCH_DAY = (int) MAX_DATE.toEpochDay();
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private long[] incomeBits = new long[INITIAL_CAPACITY / 64];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private int[] noteIds = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private final StringDictionary categories;
+    private final StringDictionary notes;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    /**
+     * Mutation callbacks. The "-ing" variants run before the rows change, while
+     * the old values can still be read; the others run afterwards.
+     */
+    public interface Listener {
+        default void rowsInserted(int from, int to) {}
+        default void rowsRemoving(int from, int to) {}
+        default void rowsRemoved(int from, int to) {}
+        default void rowUpdating(int row) {}
+        default void rowUpdated(int row) {}
+        /** Note ids were renumbered by {@link TransactionStore#compactNotes()}. */
+        default void notesCompacted() {}
+    }
+
+    public TransactionStore() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    private TransactionStore(StringDictionary categories, StringDictionary notes) {
+        this.categories = categories;
+        this.notes = notes;
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /** The epoch day of {@code date}; throws if it is outside {@link #MIN_DATE}..{@link #MAX_DATE}. */
+    public static int toEpochDay(LocalDate date) {
+        return checkDay(date.toEpochDay());
+    }
+
+    /** The epoch day of a range bound, clamped to the dates a row can have; null is open (the outermost day). */
+    public static int clampEpochDay(LocalDate date, boolean upper) {
+        if (date == null) return upper ? MAX_EPOCH_DAY : MIN_EPOCH_DAY;
+        return (int) Math.max(MIN_EPOCH_DAY - 1, Math.min(MAX_EPOCH_DAY + 1, date.toEpochDay()));
+    }
+
+    private static int checkDay(long epochDay) {
+        if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY) {
+            throw new IllegalArgumentException("Date " + LocalDate.ofEpochDay(epochDay) + " is outside "
+                    + MIN_DATE + " to " + MAX_DATE + ".");
+        }
+        return (int) epochDay;
+    }
+
+    // Bulk paths check every row before the first one is written, so a bad row changes nothing
+    private static void checkDays(TransactionRows source, int from, int to) {
+        for (int row = from; row < to; row++) checkDay(source.getEpochDay(row));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getCents(int row) {
+        checkRow(row);
+        return cents[row];
+    }
+
+    public double getAmount(int row) {
+        return getCents(row) / 100.0;
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        checkRow(row);
+        return epochDays[row];
+    }
+
+    public LocalDate getDate(int row) {
+        return LocalDate.ofEpochDay(getEpochDay(row));
+    }
+
+    @Override
+    public boolean isIncome(int row) {
+        checkRow(row);
+        return (incomeBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public String getType(int row) {
+        return isIncome(row) ? INCOME : EXPENSE;
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        checkRow(row);
+        return categoryIds[row];
+    }
+
+    @Override
+    public String getCategory(int row) {
+        return categories.get(getCategoryId(row));
+    }
+
+    public int getNoteId(int row) {
+        checkRow(row);
+        return noteIds[row];
+    }
+
+    @Override
+    public String getNotes(int row) {
+        return notes.get(getNoteId(row));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public StringDictionary categories() {
+        return categories;
+    }
+
+    public StringDictionary notes() {
+        return notes;
+    }
+
+    @Override
+    public Transaction get(int row) {
+        return new Transaction(getType(row), getCategory(row), getAmount(row), getDate(row), getNotes(row));
+    }
+
+    public int add(Transaction t) {
+        return add(INCOME.equals(t.getType()), categories.intern(t.getCategory()), toCents(t.getAmount()),
+                toEpochDay(t.getDate()), notes.intern(t.getNotes()));
+    }
+
+    public int add(boolean income, int categoryId, long amountCents, int epochDay, int noteId) {
+        checkDay(epochDay);
+        int row = append(income, categoryId, amountCents, epochDay, noteId);
+        for (Listener listener : listeners) listener.rowsInserted(row, row + 1);
+        return row;
+    }
+
+    public void addAll(List<Transaction> transactions) {
+        for (Transaction t : transactions) toEpochDay(t.getDate());
+        ensureCapacity(size + transactions.size());
+        int from = size;
+        for (Transaction t : transactions) {
+            append(INCOME.equals(t.getType()), categories.intern(t.getCategory()), toCents(t.getAmount()),
+                    toEpochDay(t.getDate()), notes.intern(t.getNotes()));
+        }
+        if (size > from) {
+            for (Listener listener : listeners) listener.rowsInserted(from, size);
+        }
+    }
+
+    /** Appends every row of {@code batch}, translating its dictionary ids into this store's. */
+    public void addAll(TransactionStore batch) {
+        int[] categoryMap = new int[batch.categories.size()];
+        for (int id = 0; id < categoryMap.length; id++) {
+            categoryMap[id] = categories.intern(batch.categories.get(id));
+        }
+        int[] noteMap = new int[batch.notes.size()];
+        for (int id = 0; id < noteMap.length; id++) {
+            noteMap[id] = notes.intern(batch.notes.get(id));
+        }
+        checkDays(batch, 0, batch.size);
+        ensureCapacity(size + batch.size);
+        int from = size;
+        for (int row = 0; row < batch.size; row++) {
+            append(batch.isIncome(row), categoryMap[batch.categoryIds[row]], batch.cents[row], batch.epochDays[row],
+                    noteMap[batch.noteIds[row]]);
+        }
+        if (size > from) {
+            for (Listener listener : listeners) listener.rowsInserted(from, size);
+        }
+    }
+
+    /** Appends rows {@code [from, to)} of another column source, e.g. a mapped file. */
+    public void addAll(TransactionRows source, int from, int to) {
+        StringDictionary sourceCategories = source.categories();
+        int[] categoryMap = new int[sourceCategories.size()];
+        for (int id = 0; id < categoryMap.length; id++) {
+            categoryMap[id] = categories.intern(sourceCategories.get(id));
+        }
+        checkDays(source, from, to);
+        ensureCapacity(size + (to - from));
+        int first = size;
+        for (int row = from; row < to; row++) {
+            append(source.isIncome(row), categoryMap[source.getCategoryId(row)], source.getCents(row),
+                    source.getEpochDay(row), notes.intern(source.getNotes(row)));
+        }
+        if (size > first) {
+            for (Listener listener : listeners) listener.rowsInserted(first, size);
+        }
+    }
+
+    /** Inserts a row before {@code row}, moving it and every row after it down by one; {@code size()} appends. */
+    public void insert(int row, Transaction t) {
+        insert(row, INCOME.equals(t.getType()), categories.intern(t.getCategory()), toCents(t.getAmount()),
+                toEpochDay(t.getDate()), notes.intern(t.getNotes()));
+    }
+
+    public void insert(int row, boolean income, int categoryId, long amountCents, int epochDay, int noteId) {
+        if (row < 0 || row > size) {
+            throw new IndexOutOfBoundsException("Insert at " + row + " of " + size);
+        }
+        checkDay(epochDay);
+        ensureCapacity(size + 1);
+        int tail = size - row;
+        System.arraycopy(cents, row, cents, row + 1, tail);
+        System.arraycopy(epochDays, row, epochDays, row + 1, tail);
+        System.arraycopy(categoryIds, row, categoryIds, row + 1, tail);
+        System.arraycopy(noteIds, row, noteIds, row + 1, tail);
+        insertTypeBit(row);
+        size++;
+        write(row, income, categoryId, amountCents, epochDay, noteId);
+        for (Listener listener : listeners) listener.rowsInserted(row, row + 1);
+    }
+
+    /** Inserts rows {@code [from, to)} of another column source before {@code row}, as one change. */
+    public void insertAll(int row, TransactionRows source, int from, int to) {
+        if (row < 0 || row > size) {
+            throw new IndexOutOfBoundsException("Insert at " + row + " of " + size);
+        }
+        int count = to - from;
+        if (count <= 0) return;
+        checkDays(source, from, to);
+        StringDictionary sourceCategories = source.categories();
+        ensureCapacity(size + count);
+        int tail = size - row;
+        System.arraycopy(cents, row, cents, row + count, tail);
+        System.arraycopy(epochDays, row, epochDays, row + count, tail);
+        System.arraycopy(categoryIds, row, categoryIds, row + count, tail);
+        System.arraycopy(noteIds, row, noteIds, row + count, tail);
+        for (int i = size - 1; i >= row; i--) {
+            setTypeBit(i + count, (incomeBits[i >>> 6] & (1L << i)) != 0);
+        }
+        size += count;
+        for (int i = 0; i < count; i++) {
+            int sourceRow = from + i;
+            write(row + i, source.isIncome(sourceRow), categories.intern(sourceCategories.get(source.getCategoryId(sourceRow))),
+                    source.getCents(sourceRow), source.getEpochDay(sourceRow), notes.intern(source.getNotes(sourceRow)));
+        }
+        for (Listener listener : listeners) listener.rowsInserted(row, row + count);
+    }
+
+    public void set(int row, Transaction t) {
+        set(row, INCOME.equals(t.getType()), categories.intern(t.getCategory()), toCents(t.getAmount()),
+                toEpochDay(t.getDate()), notes.intern(t.getNotes()));
+    }
+
+    public void set(int row, boolean income, int categoryId, long amountCents, int epochDay, int noteId) {
+        checkRow(row);
+        checkDay(epochDay);
+        for (Listener listener : listeners) listener.rowUpdating(row);
+        write(row, income, categoryId, amountCents, epochDay, noteId);
+        for (Listener listener : listeners) listener.rowUpdated(row);
+    }
+
+    public void remove(int row) {
+        checkRow(row);
+        for (Listener listener : listeners) listener.rowsRemoving(row, row + 1);
+        int tail = size - row - 1;
+        System.arraycopy(cents, row + 1, cents, row, tail);
+        System.arraycopy(epochDays, row + 1, epochDays, row, tail);
+        System.arraycopy(categoryIds, row + 1, categoryIds, row, tail);
+        System.arraycopy(noteIds, row + 1, noteIds, row, tail);
+        removeTypeBit(row);
+        size--;
+        for (Listener listener : listeners) listener.rowsRemoved(row, row + 1);
+    }
+
+    /** Removes rows {@code [from, to)} as one change. */
+    public void removeRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + size);
+        }
+        if (from == to) return;
+        for (Listener listener : listeners) listener.rowsRemoving(from, to);
+        int count = to - from;
+        int tail = size - to;
+        System.arraycopy(cents, to, cents, from, tail);
+        System.arraycopy(epochDays, to, epochDays, from, tail);
+        System.arraycopy(categoryIds, to, categoryIds, from, tail);
+        System.arraycopy(noteIds, to, noteIds, from, tail);
+        for (int i = to; i < size; i++) {
+            setTypeBit(i - count, (incomeBits[i >>> 6] & (1L << i)) != 0);
+        }
+        size -= count;
+        for (Listener listener : listeners) listener.rowsRemoved(from, to);
+    }
+
+    public void clear() {
+        int removed = size;
+        if (removed == 0) return;
+        for (Listener listener : listeners) listener.rowsRemoving(0, removed);
+        Arrays.fill(incomeBits, 0L);
+        size = 0;
+        for (Listener listener : listeners) listener.rowsRemoved(0, removed);
+    }
+
+    /**
+     * Drops the notes no row uses any more (edited or deleted ones) from the
+     * notes dictionary and renumbers the note ids of the rows. Returns false if
+     * there was nothing to drop.
+     */
+    public boolean compactNotes() {
+        boolean[] used = new boolean[notes.size()];
+        int distinct = 0;
+        for (int row = 0; row < size; row++) {
+            if (!used[noteIds[row]]) {
+                used[noteIds[row]] = true;
+                distinct++;
+            }
+        }
+        if (distinct == used.length) return false;
+        int[] remap = notes.compact(used);
+        for (int row = 0; row < size; row++) noteIds[row] = remap[noteIds[row]];
+        for (Listener listener : listeners) listener.notesCompacted();
+        return true;
+    }
+
+    /** Sums the amounts of all rows of one type without touching any other column. */
+    public long sumCents(boolean income) {
+        long total = 0;
+        for (int word = 0, words = wordCount(); word < words; word++) {
+            long bits = incomeBits[word];
+            int base = word << 6;
+            int end = Math.min(64, size - base);
+            for (int bit = 0; bit < end; bit++) {
+                if ((((bits >>> bit) & 1L) != 0) == income) {
+                    total += cents[base + bit];
+                }
+            }
+        }
+        return total;
+    }
+
+    /** Per-category sums for one type, indexed by category id. */
+    public long[] sumCentsByCategory(boolean income) {
+        long[] totals = new long[categories.size()];
+        for (int row = 0; row < size; row++) {
+            if (((incomeBits[row >>> 6] & (1L << row)) != 0) == income) {
+                totals[categoryIds[row]] += cents[row];
+            }
+        }
+        return totals;
+    }
+
+    /** Independent copy without listeners that can be handed to another thread, e.g. for a snapshot. */
+    public TransactionStore copy() {
+        TransactionStore copy = new TransactionStore(categories.copy(), notes.copy());
+        copy.cents = Arrays.copyOf(cents, Math.max(size, 1));
+        copy.epochDays = Arrays.copyOf(epochDays, Math.max(size, 1));
+        copy.categoryIds = Arrays.copyOf(categoryIds, Math.max(size, 1));
+        copy.noteIds = Arrays.copyOf(noteIds, Math.max(size, 1));
+        copy.incomeBits = Arrays.copyOf(incomeBits, Math.max(wordCount(), 1));
+        copy.size = size;
+        return copy;
+    }
+
+    private int append(boolean income, int categoryId, long amountCents, int epochDay, int noteId) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        write(row, income, categoryId, amountCents, epochDay, noteId);
+        return row;
+    }
+
+    private void write(int row, boolean income, int categoryId, long amountCents, int epochDay, int noteId) {
+        cents[row] = amountCents;
+        epochDays[row] = epochDay;
+        categoryIds[row] = categoryId;
+        noteIds[row] = noteId;
+        setTypeBit(row, income);
+    }
+
+    private void setTypeBit(int row, boolean income) {
+        if (income) {
+            incomeBits[row >>> 6] |= 1L << row;
+        } else {
+            incomeBits[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    // Shifts every type bit above row down by one, word by word.
+    private void removeTypeBit(int row) {
+        int word = row >>> 6;
+        long lowMask = (1L << row) - 1;
+        long w = incomeBits[word];
+        incomeBits[word] = (w & lowMask) | ((w >>> 1) & ~lowMask);
+        for (int i = word + 1, words = wordCount(); i < words; i++) {
+            incomeBits[i - 1] |= (incomeBits[i] & 1L) << 63;
+            incomeBits[i] >>>= 1;
+        }
+    }
+
+    // Shifts every type bit from row on up by one, word by word from the top; the bit at row is left for write()
+    private void insertTypeBit(int row) {
+        int word = row >>> 6;
+        for (int i = size >>> 6; i > word; i--) {
+            incomeBits[i] = (incomeBits[i] << 1) | (incomeBits[i - 1] >>> 63);
+        }
+        long lowMask = (1L << row) - 1;
+        long w = incomeBits[word];
+        incomeBits[word] = (w & lowMask) | ((w << 1) & ~lowMask);
+    }
+
+    private int wordCount() {
+        return (size + 63) >>> 6;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= cents.length) return;
+        int capacity = Math.max(required, cents.length + (cents.length >> 1));
+        cents = Arrays.copyOf(cents, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        noteIds = Arrays.copyOf(noteIds, capacity);
+        incomeBits = Arrays.copyOf(incomeBits, (capacity + 63) >>> 6);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+}
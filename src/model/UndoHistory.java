@@ -0,0 +1,276 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Undo and redo for a {@link TransactionStore}. Everything changed in one
+ * event-queue turn (an add, an edit, a bulk delete) is one step. A step is a
+ * log of what changed: the rows inserted or removed at each position, and each
+ * updated row's values before and after. The rows are held in
+ * {@link PersistentRows}, so a run of single deletes merges into one change
+ * in O(log n) per row rather than by copying. A step therefore costs memory
+ * and time in proportion to the rows it touched, never to the size of the
+ * store. Undo and redo replay a step's changes through the store, backwards
+ * and forwards, so the indexes, the table and the journal see ordinary edits.
+ * Only the newest {@code limit} steps are kept.
+ * <p>
+ * Changes made while {@code tracking} is false, such as a load or records
+ * another process appended, are not the user's to undo; they clear the
+ * history. Must be used from the thread that mutates the store.
+ */
+public class UndoHistory implements TransactionStore.Listener {
+    private final TransactionStore store;
+    private final BooleanSupplier tracking;
+    private final Executor scheduler;
+    private final int limit;
+    private final Deque<Step> undoSteps = new ArrayDeque<>();
+    private final Deque<Step> redoSteps = new ArrayDeque<>();
+    private final List<Runnable> listeners = new ArrayList<>();
+    private List<Change> changes = new ArrayList<>();
+    private int updatingRow = -1;
+    private PersistentRows updating;
+    private boolean scheduled;
+    private boolean replaying;
+
+    private enum Kind { INSERTED, REMOVED, UPDATED }
+
+    /** Rows inserted or removed at one position, or a row's values before and after an update. */
+    private static final class Change {
+        final Kind kind;
+        final int at;
+        final PersistentRows rows;
+
+        Change(Kind kind, int at, PersistentRows rows) {
+            this.kind = kind;
+            this.at = at;
+            this.rows = rows;
+        }
+
+        void revert(TransactionStore store) {
+            switch (kind) {
+                case INSERTED -> removeRows(store);
+                case REMOVED -> insertRows(store);
+                case UPDATED -> write(store, 0);
+            }
+        }
+
+        void apply(TransactionStore store) {
+            switch (kind) {
+                case INSERTED -> insertRows(store);
+                case REMOVED -> removeRows(store);
+                case UPDATED -> write(store, 1);
+            }
+        }
+
+        private void insertRows(TransactionStore store) {
+            store.insertAll(at, rows, 0, rows.size());
+        }
+
+        private void removeRows(TransactionStore store) {
+            store.removeRange(at, at + rows.size());
+        }
+
+        private void write(TransactionStore store, int version) {
+            store.set(at, rows.isIncome(version), rows.getCategoryId(version), rows.getCents(version),
+                    rows.getEpochDay(version), rows.getNoteId(version));
+        }
+    }
+
+    private static final class Step {
+        final List<Change> changes;
+
+        Step(List<Change> changes) {
+            this.changes = changes;
+        }
+
+        String describe() {
+            int inserted = 0, removed = 0, updated = 0;
+            for (Change change : changes) {
+                switch (change.kind) {
+                    case INSERTED -> inserted += change.rows.size();
+                    case REMOVED -> removed += change.rows.size();
+                    case UPDATED -> updated++;
+                }
+            }
+            int rows = inserted + removed + updated;
+            String verb = rows == inserted ? "Add" : rows == removed ? "Delete" : rows == updated ? "Edit" : "Change";
+            return rows == 1 ? verb + " Transaction" : String.format("%s %,d Transactions", verb, rows);
+        }
+    }
+
+    /**
+     * Starts recording the changes to {@code store}. A step ends when the task
+     * handed to {@code scheduler} runs, normally {@code SwingUtilities::invokeLater}.
+     */
+    public UndoHistory(TransactionStore store, BooleanSupplier tracking, Executor scheduler, int limit) {
+        this.store = store;
+        this.tracking = tracking;
+        this.scheduler = scheduler;
+        this.limit = limit;
+        store.addListener(this);
+    }
+
+    /** Called whenever what can be undone or redone may have changed. */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public boolean canUndo() {
+        return !changes.isEmpty() || !undoSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return changes.isEmpty() && !redoSteps.isEmpty();
+    }
+
+    /** What {@link #undo} would revert, e.g. "Delete 3 Transactions"; null if nothing. */
+    public String undoDescription() {
+        if (!changes.isEmpty()) return new Step(changes).describe();
+        return undoSteps.isEmpty() ? null : undoSteps.peekFirst().describe();
+    }
+
+    public String redoDescription() {
+        return canRedo() ? redoSteps.peekFirst().describe() : null;
+    }
+
+    public void undo() {
+        endStep();
+        Step step = undoSteps.pollFirst();
+        if (step == null) return;
+        replay(() -> {
+            for (int i = step.changes.size() - 1; i >= 0; i--) step.changes.get(i).revert(store);
+        });
+        redoSteps.addFirst(step);
+        fireChanged();
+    }
+
+    public void redo() {
+        endStep();
+        Step step = redoSteps.pollFirst();
+        if (step == null) return;
+        replay(() -> {
+            for (Change change : step.changes) change.apply(store);
+        });
+        undoSteps.addFirst(step);
+        fireChanged();
+    }
+
+    /** Forgets every step, e.g. after a change the history cannot replay. */
+    public void clear() {
+        boolean had = canUndo() || canRedo();
+        undoSteps.clear();
+        redoSteps.clear();
+        changes = new ArrayList<>();
+        if (had) fireChanged();
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        if (!track()) return;
+        Change last = last(Kind.INSERTED);
+        if (last != null && last.at + last.rows.size() == from) {
+            replaceLast(new Change(Kind.INSERTED, last.at, last.rows.append(store, from, to)));
+        } else {
+            add(new Change(Kind.INSERTED, from, PersistentRows.of(store, from, to)));
+        }
+    }
+
+    @Override
+    public void rowsRemoving(int from, int to) {
+        if (!track()) return;
+        Change last = last(Kind.REMOVED);
+        if (last != null && last.at == from) {
+            // Removing at the same position again, e.g. deleting rows top-down
+            replaceLast(new Change(Kind.REMOVED, from, last.rows.append(store, from, to)));
+        } else if (last != null && to == last.at) {
+            // Removing the rows just above, e.g. deleting rows bottom-up
+            PersistentRows merged = last.rows;
+            for (int row = to - 1; row >= from; row--) merged = merged.insert(0, store, row);
+            replaceLast(new Change(Kind.REMOVED, from, merged));
+        } else {
+            add(new Change(Kind.REMOVED, from, PersistentRows.of(store, from, to)));
+        }
+    }
+
+    @Override
+    public void rowUpdating(int row) {
+        if (!track()) return;
+        updatingRow = row;
+        updating = PersistentRows.of(store, row, row + 1);
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        if (replaying || updatingRow != row) return;
+        updatingRow = -1;
+        PersistentRows rows = updating.insert(1, store, row);
+        updating = null;
+        add(new Change(Kind.UPDATED, row, rows));
+    }
+
+    // Recorded rows hold note ids from before the renumbering
+    @Override
+    public void notesCompacted() {
+        clear();
+    }
+
+    // False for changes the history does not record: its own replays, and untracked ones, which reset it
+    private boolean track() {
+        if (replaying) return false;
+        if (!tracking.getAsBoolean()) {
+            clear();
+            return false;
+        }
+        return true;
+    }
+
+    private void replay(Runnable changes) {
+        replaying = true;
+        try {
+            changes.run();
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private Change last(Kind kind) {
+        if (changes.isEmpty()) return null;
+        Change last = changes.get(changes.size() - 1);
+        return last.kind == kind ? last : null;
+    }
+
+    private void replaceLast(Change change) {
+        changes.set(changes.size() - 1, change);
+    }
+
+    private void add(Change change) {
+        boolean first = changes.isEmpty();
+        changes.add(change);
+        if (!scheduled) {
+            scheduled = true;
+            scheduler.execute(() -> {
+                scheduled = false;
+                endStep();
+            });
+        }
+        if (first) fireChanged();
+    }
+
+    private void endStep() {
+        if (changes.isEmpty()) return;
+        undoSteps.addFirst(new Step(changes));
+        while (undoSteps.size() > limit) undoSteps.removeLast();
+        redoSteps.clear();
+        changes = new ArrayList<>();
+        fireChanged();
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : listeners) listener.run();
+    }
+}
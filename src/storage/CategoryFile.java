@@ -0,0 +1,73 @@
+package storage;
+
+import model.CategoryTree;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the user's categories, with their ids, in a small UTF-8 text file
+ * next to the data: one "id, tab, parent id, tab, name" line per category,
+ * parents first. The ids stay the same from one run to the next, and a
+ * category outlives the last row that used it.
+ */
+public final class CategoryFile {
+    private static final String HEADER = "# Spendid categories 1";
+
+    private CategoryFile() {
+    }
+
+    /** The categories file that belongs with {@code snapshotFile}. */
+    public static File fileFor(File snapshotFile) {
+        return new File(snapshotFile.getAbsoluteFile().getParentFile(), "categories.txt");
+    }
+
+    /**
+     * Restores the saved categories into an empty tree; false, leaving the tree
+     * alone, if there is no file yet.
+     */
+    public static boolean read(File file, CategoryTree tree) throws IOException {
+        if (!file.exists()) return false;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) throw new IOException(file + ": not a categories file");
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                String[] fields = line.split("\t", 3);
+                try {
+                    tree.restore(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), fields[2]);
+                } catch (RuntimeException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return true;
+    }
+
+    public static void write(File file, CategoryTree tree) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            // Ids only grow, so a parent is always written before its children
+            for (int node = CategoryTree.ROOT + 1; node < tree.size(); node++) {
+                if (!tree.exists(node)) continue;
+                writer.write(node + "\t" + tree.parent(node) + "\t" + tree.name(node));
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package storage;
+
+import diagnostics.Metrics;
+import model.StringDictionary;
+import model.TransactionRows;
+import model.TransactionStore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.IntPredicate;
+
+/**
+ * Streams rows to an RFC 4180 CSV file through a {@link FileChannel}. Text is
+ * staged in a reusable char buffer and encoded into a reusable byte buffer,
+ * so there is no per-row formatting or string allocation beyond the notes that
+ * actually need quoting. Rows can be narrowed by date range and a row filter.
+ */
+public class CsvExporter {
+    private static final String HEADER = "Type,Category,Amount,Date,Notes";
+    private static final int PROGRESS_STEP = 50_000;
+
+    private final TransactionRows rows;
+    private int fromDay = Integer.MIN_VALUE;
+    private int toDay = Integer.MAX_VALUE;
+    private IntPredicate rowFilter = row -> true;
+
+    public interface Progress {
+        void update(int scanned, int total);
+    }
+
+    public CsvExporter(TransactionRows rows) {
+        this.rows = rows;
+    }
+
+    /** Limits the export to dates in {@code [from, to]}; either bound may be null. */
+    public CsvExporter between(LocalDate from, LocalDate to) {
+        fromDay = TransactionStore.clampEpochDay(from, false);
+        toDay = TransactionStore.clampEpochDay(to, true);
+        return this;
+    }
+
+    public CsvExporter filter(IntPredicate rowFilter) {
+        this.rowFilter = rowFilter;
+        return this;
+    }
+
+    /** Writes the matching rows to {@code target} and returns how many were written. */
+    public int export(Path target, Progress progress) throws IOException {
+        try (Metrics.Timing ignored = Metrics.time("csv.export").rows(rows.size())) {
+            return write(target, progress);
+        }
+    }
+
+    private int write(Path target, Progress progress) throws IOException {
+        StringDictionary categories = rows.categories();
+        String[] quotedCategories = new String[categories.size()];
+        for (int id = 0; id < quotedCategories.length; id++) {
+            quotedCategories[id] = quote(categories.get(id));
+        }
+
+        int written = 0;
+        int total = rows.size();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Encoder out = new Encoder(channel);
+            out.append(HEADER).append("\r\n");
+
+            int cachedDay = Integer.MIN_VALUE;
+            String cachedDate = "";
+            for (int row = 0; row < total; row++) {
+                if (row % PROGRESS_STEP == 0) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException("Export cancelled");
+                    }
+                    if (progress != null) progress.update(row, total);
+                }
+                int day = rows.getEpochDay(row);
+                if (day < fromDay || day > toDay || !rowFilter.test(row)) continue;
+
+                if (day != cachedDay) {
+                    cachedDay = day;
+                    cachedDate = LocalDate.ofEpochDay(day).toString();
+                }
+                out.append(rows.isIncome(row) ? "Income," : "Expense,");
+                out.append(quotedCategories[rows.getCategoryId(row)]).append(',');
+                out.appendCents(rows.getCents(row)).append(',');
+                out.append(cachedDate).append(',');
+                out.append(quote(rows.getNotes(row))).append("\r\n");
+                written++;
+            }
+            out.flush();
+        }
+        if (progress != null) progress.update(total, total);
+        return written;
+    }
+
+    // RFC 4180: fields containing a comma, quote or line break are wrapped in
+    // quotes, and embedded quotes are doubled.
+    static String quote(String field) {
+        if (field == null) return "";
+        boolean needsQuotes = false;
+        for (int i = 0; i < field.length() && !needsQuotes; i++) {
+            char c = field.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    private static final class Encoder {
+        private final FileChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(1 << 15);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 17);
+
+        Encoder(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        Encoder append(char c) throws IOException {
+            if (!chars.hasRemaining()) encode(false);
+            chars.put(c);
+            return this;
+        }
+
+        Encoder append(String s) throws IOException {
+            int offset = 0;
+            while (offset < s.length()) {
+                if (!chars.hasRemaining()) encode(false);
+                int n = Math.min(chars.remaining(), s.length() - offset);
+                chars.put(s, offset, offset + n);
+                offset += n;
+            }
+            return this;
+        }
+
+        // Formats cents as a plain decimal (e.g. -1234.05) without going through String.format.
+        Encoder appendCents(long cents) throws IOException {
+            if (chars.remaining() < 24) encode(false);
+            if (cents < 0) {
+                chars.put('-');
+                cents = -cents;
+            }
+            long whole = cents / 100;
+            int fraction = (int) (cents % 100);
+            if (whole == 0) {
+                chars.put('0');
+            } else {
+                int start = chars.position();
+                while (whole > 0) {
+                    chars.put((char) ('0' + whole % 10));
+                    whole /= 10;
+                }
+                for (int i = start, j = chars.position() - 1; i < j; i++, j--) {
+                    char tmp = chars.get(i);
+                    chars.put(i, chars.get(j));
+                    chars.put(j, tmp);
+                }
+            }
+            chars.put('.').put((char) ('0' + fraction / 10)).put((char) ('0' + fraction % 10));
+            return this;
+        }
+
+        void flush() throws IOException {
+            encode(true);
+            writeBytes();
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            chars.flip();
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    writeBytes();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    break;
+                }
+            }
+            if (endOfInput) {
+                while (encoder.flush(bytes).isOverflow()) writeBytes();
+            }
+            chars.compact();
+        }
+
+        private void writeBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package storage;
+
+import diagnostics.Metrics;
+import model.StringDictionary;
+import model.TransactionRows;
+import model.TransactionStore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Reads CSV files in the layout written by {@link CsvExporter}
+ * (Type,Category,Amount,Date,Notes) into a {@link TransactionStore}. Files
+ * are mapped and split in place by a {@link CsvSplitter}; amounts become
+ * cents without going through {@code double}, ISO dates are read without a
+ * formatter, and a category or note is decoded once per distinct value in a
+ * file rather than once per row.
+ */
+public class CsvImporter {
+    private static final int FIELDS = 5;
+    /** Rows per batch handed over by {@link #importDirectory}. */
+    public static final int DEFAULT_BATCH_ROWS = 50_000;
+
+    private final TransactionStore target;
+
+    public interface Progress {
+        void update(int parsed, int files);
+    }
+
+    /** What {@link #importDirectory} read and added. */
+    public static final class DirectoryImport {
+        private final int files;
+        private final int rows;
+        private final int added;
+
+        private DirectoryImport(int files, int rows, int added) {
+            this.files = files;
+            this.rows = rows;
+            this.added = added;
+        }
+
+        public int files() {
+            return files;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public int added() {
+            return added;
+        }
+
+        public int duplicates() {
+            return rows - added;
+        }
+    }
+
+    public CsvImporter(TransactionStore target) {
+        this.target = target;
+    }
+
+    /** Appends every row of {@code file} to the store and returns how many were read; nothing if it fails to parse. */
+    public int importFile(Path file) throws IOException {
+        try (Metrics.Timing timing = Metrics.time("csv.import")) {
+            ParsedFile parsed = ParsedFile.read(file);
+            Batcher batcher = new Batcher(Integer.MAX_VALUE, target::addAll);
+            for (int row = 0; row < parsed.size; row++) batcher.add(parsed, row);
+            batcher.flush();
+            timing.rows(parsed.size);
+            return parsed.size;
+        }
+    }
+
+    /**
+     * Imports every {@code *.csv} file directly inside {@code directory},
+     * skipping rows that are already in {@code existing} or in an earlier file,
+     * so overlapping statement exports add each transaction once. A row is
+     * only a duplicate while its file holds no more copies of it than were
+     * seen before: two identical purchases on one statement are both kept.
+     * <p>
+     * Files are parsed concurrently on up to {@code threads} threads, and if
+     * any fails to parse nothing is imported. The new rows then go to
+     * {@code sink} in batches of at most {@code batchRows}, in file name order,
+     * on the calling thread. {@code existing} is read before the first batch
+     * is handed over, so the sink may append to it.
+     */
+    public static DirectoryImport importDirectory(Path directory, TransactionRows existing, int threads,
+            int batchRows, Consumer<TransactionStore> sink, Progress progress) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.{csv,CSV}")) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) files.add(file);
+            }
+        }
+        files.sort(null);
+
+        try (Metrics.Timing timing = Metrics.time("csv.importDirectory")) {
+            List<ParsedFile> parsed = parseAll(files, threads, progress);
+            int rows = 0;
+            for (ParsedFile file : parsed) rows += file.size;
+
+            // Fingerprints were taken while parsing, so this loop only probes the filters
+            DuplicateFilter known = DuplicateFilter.of(existing);
+            Batcher batcher = new Batcher(batchRows, sink);
+            for (ParsedFile file : parsed) {
+                DuplicateFilter seen = new DuplicateFilter(file.size);
+                for (int row = 0; row < file.size; row++) {
+                    long fingerprint = file.fingerprints[row];
+                    seen.add(fingerprint);
+                    if (seen.count(fingerprint) <= known.count(fingerprint)) continue;
+                    known.add(fingerprint);
+                    batcher.add(file, row);
+                }
+            }
+            batcher.flush();
+            timing.rows(rows);
+            return new DirectoryImport(files.size(), rows, batcher.added);
+        }
+    }
+
+    // Parses on a bounded pool and returns the results in the order of files
+    private static List<ParsedFile> parseAll(List<Path> files, int threads, Progress progress) throws IOException {
+        if (files.isEmpty()) return List.of();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())), task -> {
+            Thread thread = new Thread(task, "csv-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<ParsedFile>> futures = new ArrayList<>();
+            for (Path file : files) futures.add(pool.submit(() -> ParsedFile.read(file)));
+            List<ParsedFile> parsed = new ArrayList<>();
+            for (Future<ParsedFile> future : futures) {
+                parsed.add(future.get());
+                progress.update(parsed.size(), files.size());
+            }
+            return parsed;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CSV import interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ISO yyyy-mm-dd is read field by field; other layouts fall back to LocalDate.parse.
+    // Dates the store would reject are rejected here too, with the file position.
+    static int parseEpochDay(CharSequence text) {
+        LocalDate date = null;
+        if (text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 7);
+            int day = digits(text, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) date = LocalDate.of(year, month, day);
+        }
+        if (date == null) date = LocalDate.parse(text);
+        if (date.isBefore(TransactionStore.MIN_DATE) || date.isAfter(TransactionStore.MAX_DATE)) {
+            throw new DateTimeException("outside " + TransactionStore.MIN_DATE + " to " + TransactionStore.MAX_DATE);
+        }
+        return (int) date.toEpochDay();
+    }
+
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Plain decimals ("-1234.5") are parsed digit by digit; anything else
+    // (grouping commas, a currency sign, exponents) goes through BigDecimal.
+    static long parseCents(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        if (negative) i++;
+        long whole = 0;
+        int digits = 0;
+        for (; i < length && isDigit(text.charAt(i)) && digits < 16; i++, digits++) {
+            whole = whole * 10 + (text.charAt(i) - '0');
+        }
+        int fraction = 0;
+        int fractionDigits = 0;
+        if (i < length && text.charAt(i) == '.') {
+            for (i++; i < length && isDigit(text.charAt(i)) && fractionDigits < 2; i++, fractionDigits++) {
+                fraction = fraction * 10 + (text.charAt(i) - '0');
+            }
+        }
+        if (i == length && digits + fractionDigits > 0) {
+            long cents = whole * 100 + (fractionDigits == 1 ? fraction * 10 : fraction);
+            return negative ? -cents : cents;
+        }
+        String cleaned = text.toString().replace(",", "").replace("₱", "").trim();
+        // BigDecimal would also read digits from other scripts
+        for (int c = 0; c < cleaned.length(); c++) {
+            if (Character.isDigit(cleaned.charAt(c)) && !isDigit(cleaned.charAt(c))) {
+                throw new NumberFormatException("Not an amount: " + cleaned);
+            }
+        }
+        return new BigDecimal(cleaned).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * One file's rows in columns. Notes stay where they are in the mapped
+     * file until a row is actually added, so rows skipped as duplicates never
+     * have theirs decoded; each row's fingerprint is taken from the raw bytes
+     * on the parsing thread.
+     */
+    private static final class ParsedFile {
+        final CsvSplitter csv;
+        final StringDictionary categories = new StringDictionary();
+        int size;
+        boolean[] income = new boolean[1024];
+        int[] categoryIds = new int[1024];
+        long[] cents = new long[1024];
+        int[] epochDays = new int[1024];
+        long[] noteMarks = new long[1024]; // -1 for none
+        long[] fingerprints = new long[1024];
+
+        private ParsedFile(CsvSplitter csv) {
+            this.csv = csv;
+        }
+
+        static ParsedFile read(Path file) throws IOException {
+            String source = file.toString();
+            ParsedFile rows;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) throw new IOException(source + ": larger than 2 GB");
+                rows = new ParsedFile(new CsvSplitter(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                        FIELDS, source));
+            }
+            rows.parse(source);
+            return rows;
+        }
+
+        private void parse(String source) throws IOException {
+            FieldDictionary categoryIds = new FieldDictionary(csv, categories);
+            long[] categoryHashes = new long[16];
+            int hashedCategories = 0;
+            long noNoteHash = DuplicateFilter.hash("");
+            while (csv.next()) {
+                int line = csv.recordLine;
+                if (csv.fieldCount == 1 && csv.length(0) == 0) continue;
+                if (line == 1 && "Type".contentEquals(csv.chars(0))) continue;
+                if (csv.fieldCount < 4) {
+                    throw new IOException(source + ":" + line + ": expected at least 4 fields, found " + csv.fieldCount);
+                }
+
+                boolean isIncome;
+                if (csv.equalsIgnoreCase(0, TransactionStore.INCOME)) {
+                    isIncome = true;
+                } else if (csv.equalsIgnoreCase(0, TransactionStore.EXPENSE)) {
+                    isIncome = false;
+                } else {
+                    throw new IOException(source + ":" + line + ": unknown type \"" + csv.text(0) + "\"");
+                }
+
+                long amount;
+                try {
+                    amount = parseCents(csv.chars(2));
+                } catch (NumberFormatException | ArithmeticException e) {
+                    throw new IOException(source + ":" + line + ": invalid amount \"" + csv.text(2) + "\"");
+                }
+
+                int day;
+                try {
+                    day = parseEpochDay(csv.chars(3));
+                } catch (DateTimeException e) {
+                    throw new IOException(source + ":" + line + ": invalid date \"" + csv.text(3) + "\"");
+                }
+
+                int categoryId = categoryIds.intern(csv.mark(1));
+                for (; hashedCategories < categories.size(); hashedCategories++) {
+                    if (hashedCategories == categoryHashes.length) categoryHashes = Arrays.copyOf(categoryHashes, hashedCategories * 2);
+                    categoryHashes[hashedCategories] = DuplicateFilter.hash(categories.get(hashedCategories));
+                }
+                long noteMark = -1;
+                long noteHash = noNoteHash;
+                if (csv.fieldCount > 4) {
+                    noteMark = csv.mark(4);
+                    noteHash = DuplicateFilter.hash(csv.isPlain(noteMark) ? csv.chars(noteMark) : csv.text(noteMark));
+                }
+                add(isIncome, categoryId, amount, day, noteMark,
+                        DuplicateFilter.fingerprint(day, isIncome, amount, categoryHashes[categoryId], noteHash));
+            }
+        }
+
+        private void add(boolean isIncome, int categoryId, long amount, int day, long noteMark, long fingerprint) {
+            if (size == cents.length) {
+                int capacity = size * 2;
+                income = Arrays.copyOf(income, capacity);
+                categoryIds = Arrays.copyOf(categoryIds, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                noteMarks = Arrays.copyOf(noteMarks, capacity);
+                fingerprints = Arrays.copyOf(fingerprints, capacity);
+            }
+            income[size] = isIncome;
+            categoryIds[size] = categoryId;
+            cents[size] = amount;
+            epochDays[size] = day;
+            noteMarks[size] = noteMark;
+            fingerprints[size] = fingerprint;
+            size++;
+        }
+    }
+
+    /** Interns fields by their raw bytes, so each distinct value in a file is decoded once. */
+    private static final class FieldDictionary {
+        private final CsvSplitter csv;
+        private final StringDictionary dictionary;
+        private int[] hashes = new int[64];
+        private long[] marks = new long[64];
+        private int[] ids = new int[64];
+        private int size;
+
+        FieldDictionary(CsvSplitter csv, StringDictionary dictionary) {
+            this.csv = csv;
+            this.dictionary = dictionary;
+            Arrays.fill(ids, -1);
+        }
+
+        int intern(long mark) {
+            int hash = csv.hash(mark);
+            int mask = ids.length - 1;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (ids[slot] >= 0) {
+                if (hashes[slot] == hash && csv.sameBytes(mark, marks[slot])) return ids[slot];
+                slot = (slot + 1) & mask;
+            }
+            int id = dictionary.intern(csv.text(mark));
+            put(slot, hash, mark, id);
+            if (++size * 2 > ids.length) grow();
+            return id;
+        }
+
+        private void put(int slot, int hash, long mark, int id) {
+            hashes[slot] = hash;
+            marks[slot] = mark;
+            ids[slot] = id;
+        }
+
+        private void grow() {
+            int[] oldHashes = hashes;
+            long[] oldMarks = marks;
+            int[] oldIds = ids;
+            hashes = new int[oldIds.length * 2];
+            marks = new long[hashes.length];
+            ids = new int[hashes.length];
+            Arrays.fill(ids, -1);
+            int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] < 0) continue;
+                int slot = (oldHashes[i] ^ oldHashes[i] >>> 16) & mask;
+                while (ids[slot] >= 0) slot = (slot + 1) & mask;
+                put(slot, oldHashes[i], oldMarks[i], oldIds[i]);
+            }
+        }
+    }
+
+    /** Copies the rows kept from parsed files into stores of their own, one per batch, for the sink. */
+    private static final class Batcher {
+        private final int batchRows;
+        private final Consumer<TransactionStore> sink;
+        private TransactionStore batch;
+        private ParsedFile file;
+        private int[] categoryIds; // the file's category ids in the batch's dictionary, -1 until used
+        private FieldDictionary notes;
+        private int noNote;
+        int added;
+
+        Batcher(int batchRows, Consumer<TransactionStore> sink) {
+            this.batchRows = batchRows;
+            this.sink = sink;
+        }
+
+        void add(ParsedFile from, int row) {
+            if (batch == null) {
+                batch = new TransactionStore();
+                noNote = batch.notes().intern("");
+                file = null;
+            }
+            if (from != file) {
+                file = from;
+                categoryIds = new int[from.categories.size()];
+                Arrays.fill(categoryIds, -1);
+                notes = new FieldDictionary(from.csv, batch.notes());
+            }
+            int categoryId = from.categoryIds[row];
+            if (categoryIds[categoryId] < 0) categoryIds[categoryId] = batch.categories().intern(from.categories.get(categoryId));
+            long noteMark = from.noteMarks[row];
+            batch.add(from.income[row], categoryIds[categoryId], from.cents[row], from.epochDays[row],
+                    noteMark < 0 ? noNote : notes.intern(noteMark));
+            added++;
+            if (batch.size() >= batchRows) flush();
+        }
+
+        void flush() {
+            if (batch == null) return;
+            sink.accept(batch);
+            batch = null;
+        }
+    }
+}
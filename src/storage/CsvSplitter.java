@@ -0,0 +1,198 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits RFC 4180 CSV bytes into records without copying them: each field is
+ * a byte range of the buffer, usually a mapped file, read in place by the
+ * number and date parsers and decoded to a string only when asked. Fields
+ * past the ones asked for are skipped. Text after a closing quote, up to the
+ * next comma, is ignored.
+ */
+final class CsvSplitter {
+    private final ByteBuffer bytes;
+    private final String source;
+    private final int limit;
+    private final int[] starts;
+    private final int[] ends;
+    private final boolean[] escaped; // quoted, with doubled quotes still in the range
+    private final View view = new View();
+    private int position;
+    private int line = 1;
+    int recordLine;
+    int fieldCount;
+
+    CsvSplitter(ByteBuffer bytes, int fields, String source) {
+        this.bytes = bytes;
+        this.source = source;
+        this.limit = bytes.limit();
+        starts = new int[fields];
+        ends = new int[fields];
+        escaped = new boolean[fields];
+        if (limit >= 3 && bytes.get(0) == (byte) 0xEF && bytes.get(1) == (byte) 0xBB && bytes.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+    }
+
+    /** Moves to the next record; false at the end of the buffer. */
+    boolean next() throws IOException {
+        if (position >= limit) return false;
+        recordLine = line;
+        int field = 0;
+        while (true) {
+            int start = position;
+            int end;
+            boolean doubled = false;
+            if (position < limit && bytes.get(position) == '"') {
+                start = ++position;
+                while (true) {
+                    if (position >= limit) throw new IOException(source + ":" + recordLine + ": unterminated quoted field");
+                    byte b = bytes.get(position);
+                    if (b == '"') {
+                        if (position + 1 < limit && bytes.get(position + 1) == '"') {
+                            doubled = true;
+                            position += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    if (b == '\n') line++;
+                    position++;
+                }
+                end = position++;
+                while (position < limit && !isDelimiter(bytes.get(position))) position++;
+            } else {
+                while (position < limit && !isDelimiter(bytes.get(position))) position++;
+                end = position;
+            }
+            if (field < starts.length) {
+                starts[field] = start;
+                ends[field] = end;
+                escaped[field] = doubled;
+            }
+            field++;
+
+            if (position >= limit) break;
+            byte b = bytes.get(position++);
+            if (b == ',') continue;
+            if (b == '\r' && position < limit && bytes.get(position) == '\n') position++;
+            line++;
+            break;
+        }
+        fieldCount = field;
+        return true;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '\n' || b == '\r';
+    }
+
+    int length(int field) {
+        return ends[field] - starts[field];
+    }
+
+    /** Whether {@code field} holds {@code ascii}, ignoring case. */
+    boolean equalsIgnoreCase(int field, String ascii) {
+        if (length(field) != ascii.length() || escaped[field]) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            int c = bytes.get(starts[field] + i);
+            if (Character.toLowerCase(c) != Character.toLowerCase(ascii.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    // Characters are the raw bytes, which is all the digit parsers look at; toString() decodes properly.
+    // The view is shared, so it is only good until the next call.
+    CharSequence chars(int field) {
+        return chars(mark(field));
+    }
+
+    CharSequence chars(long mark) {
+        view.mark = mark;
+        return view;
+    }
+
+    String text(int field) {
+        return text(mark(field));
+    }
+
+    /**
+     * A field's position, quoting included, as one {@code long}; it stays
+     * valid for as long as the buffer does, after the splitter has moved on.
+     */
+    long mark(int field) {
+        return (long) starts[field] << 32 | ends[field] | (escaped[field] ? 1L << 31 : 0);
+    }
+
+    private static int start(long mark) {
+        return (int) (mark >>> 32);
+    }
+
+    private static int end(long mark) {
+        return (int) (mark & Integer.MAX_VALUE);
+    }
+
+    private static boolean escaped(long mark) {
+        return (mark & (1L << 31)) != 0;
+    }
+
+    /** The marked field decoded from UTF-8, with doubled quotes undone. */
+    String text(long mark) {
+        byte[] copy = new byte[end(mark) - start(mark)];
+        bytes.get(start(mark), copy);
+        String text = new String(copy, StandardCharsets.UTF_8);
+        return escaped(mark) ? text.replace("\"\"", "\"") : text;
+    }
+
+    /** Whether the marked field is ASCII without doubled quotes, so {@link #chars(long)} reads it exactly. */
+    boolean isPlain(long mark) {
+        if (escaped(mark)) return false;
+        for (int i = start(mark); i < end(mark); i++) {
+            if (bytes.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    /** Hash of the marked field's raw bytes; equal for fields that {@link #sameBytes} says are equal. */
+    int hash(long mark) {
+        int h = escaped(mark) ? 1 : 0;
+        for (int i = start(mark); i < end(mark); i++) h = 31 * h + bytes.get(i);
+        return h;
+    }
+
+    /** Whether two marked fields have the same raw bytes and quoting. */
+    boolean sameBytes(long a, long b) {
+        int length = end(a) - start(a);
+        if (length != end(b) - start(b) || escaped(a) != escaped(b)) return false;
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(start(a) + i) != bytes.get(start(b) + i)) return false;
+        }
+        return true;
+    }
+
+    private final class View implements CharSequence {
+        long mark;
+
+        @Override
+        public int length() {
+            return end(mark) - start(mark);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(start(mark) + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text(mark);
+        }
+    }
+}
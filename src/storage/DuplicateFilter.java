@@ -0,0 +1,133 @@
+package storage;
+
+import model.TransactionRows;
+
+/**
+ * How many rows carry each fingerprint of (date, type, amount, category,
+ * notes), for telling rows that are already present from new ones. Counting
+ * rather than just remembering a fingerprint lets a statement that really
+ * lists the same purchase twice keep both. The counts live in an exact
+ * open-addressing table keyed by the 64-bit fingerprint; a Bloom filter in
+ * front of it answers most lookups for rows never seen (the common case on a
+ * first import) from a few bits, without probing the much larger table.
+ */
+final class DuplicateFilter {
+    private static final int BLOOM_HASHES = 7;
+    private static final int BLOOM_BITS_PER_KEY = 10; // about 1% false positives with 7 hashes
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+    private long[] bloom;
+
+    DuplicateFilter(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 512) * 2 - 1) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        bloom = new long[bloomWords(capacity)];
+    }
+
+    /** A filter that knows every row of {@code rows}. */
+    static DuplicateFilter of(TransactionRows rows) {
+        DuplicateFilter filter = new DuplicateFilter(rows.size());
+        for (int row = 0; row < rows.size(); row++) filter.add(fingerprint(rows, row));
+        return filter;
+    }
+
+    static long fingerprint(TransactionRows rows, int row) {
+        return fingerprint(rows.getEpochDay(row), rows.isIncome(row), rows.getCents(row), hash(rows.getCategory(row)),
+                hash(rows.getNotes(row)));
+    }
+
+    /** Never 0, which marks a free slot. The text hashes come from {@link #hash}. */
+    static long fingerprint(int epochDay, boolean income, long cents, long categoryHash, long noteHash) {
+        long h = mix(epochDay * 2L + (income ? 1 : 0));
+        h = mix(h + cents);
+        h = mix(h + categoryHash);
+        h = mix(h + noteHash);
+        return h == 0 ? 1 : h;
+    }
+
+    // 64-bit FNV-1a over the characters
+    static long hash(CharSequence text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) h = (h ^ text.charAt(i)) * 0x100000001b3L;
+        return h;
+    }
+
+    /** How many rows with {@code fingerprint} have been added. */
+    int count(long fingerprint) {
+        if (!mightContain(fingerprint)) return 0;
+        int slot = slot(fingerprint);
+        return keys[slot] == fingerprint ? counts[slot] : 0;
+    }
+
+    void add(long fingerprint) {
+        int slot = slot(fingerprint);
+        if (keys[slot] == fingerprint) {
+            counts[slot]++;
+            return;
+        }
+        keys[slot] = fingerprint;
+        counts[slot] = 1;
+        setBloomBits(fingerprint);
+        if (++size * 2 > keys.length) grow();
+    }
+
+    // Linear probing; the slot holding the fingerprint, or the free one where it would go
+    private int slot(long fingerprint) {
+        int mask = keys.length - 1;
+        int slot = (int) (fingerprint ^ fingerprint >>> 32) & mask;
+        while (keys[slot] != 0 && keys[slot] != fingerprint) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[keys.length];
+        bloom = new long[bloomWords(keys.length)];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) continue;
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+            setBloomBits(oldKeys[i]);
+        }
+    }
+
+    // Sized for the table at its fullest (half its slots), rounded to a power of two
+    private static int bloomWords(int capacity) {
+        return Math.max(1, Integer.highestOneBit(capacity / 2 * BLOOM_BITS_PER_KEY / 64 * 2 - 1));
+    }
+
+    // Double hashing: the i-th bit is h1 + i * h2, both taken from the fingerprint
+    private void setBloomBits(long fingerprint) {
+        int mask = bloom.length * 64 - 1;
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long fingerprint) {
+        int mask = bloom.length * 64 - 1;
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bloom[bit >>> 6] & 1L << bit) == 0) return false;
+        }
+        return true;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ z >>> 30) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ z >>> 27) * 0x94d049bb133111ebL;
+        return z ^ z >>> 31;
+    }
+}
@@ -0,0 +1,75 @@
+package storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the saved filters in a JSON file next to the data: an array of
+ * {@code {"name": ..., "query": ...}} objects, in the order they were saved.
+ * The queries are kept as typed and parsed when they are used, so relative
+ * dates such as "last month" move with the calendar.
+ */
+public final class FilterFile {
+    private static final String[] FIELDS = { "name", "query" };
+
+    private FilterFile() {
+    }
+
+    /** The filters file that belongs with {@code snapshotFile}. */
+    public static File fileFor(File snapshotFile) {
+        return new File(snapshotFile.getAbsoluteFile().getParentFile(), "filters.json");
+    }
+
+    /** Query text by name; empty if there is no file yet. */
+    public static Map<String, String> read(File file) throws IOException {
+        Map<String, String> filters = new LinkedHashMap<>();
+        if (!file.exists()) return filters;
+        try (JsonReader reader = new JsonReader(FileChannel.open(file.toPath()), file.toString())) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String name = null;
+                String query = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName(FIELDS)) {
+                        case 0 -> name = reader.nextString();
+                        case 1 -> query = reader.nextString();
+                        default -> reader.skipValue();
+                    }
+                }
+                if (name == null || query == null) throw reader.syntaxError("filter without a \"name\" or \"query\"");
+                reader.endObject();
+                filters.put(name, query);
+            }
+            reader.endArray();
+        }
+        return filters;
+    }
+
+    public static void write(File file, Map<String, String> filters) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (JsonWriter writer = new JsonWriter(FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), 1)) {
+            writer.beginArray();
+            for (Map.Entry<String, String> filter : filters.entrySet()) {
+                writer.beginObject();
+                writer.name("name").value(filter.getKey());
+                writer.name("query").value(filter.getValue());
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
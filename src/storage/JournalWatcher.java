@@ -0,0 +1,56 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches the directory of a snapshot file and calls back whenever the
+ * snapshot, its journals or its lock file are created or modified, by this
+ * process or another one. The callback runs on the watcher's daemon thread
+ * and should only schedule work. Some platforms poll for changes, so a
+ * notification may lag by a few seconds.
+ */
+public class JournalWatcher implements Closeable {
+    private final WatchService service;
+
+    public JournalWatcher(File snapshotFile, Runnable onChange) throws IOException {
+        Path directory = snapshotFile.getAbsoluteFile().getParentFile().toPath();
+        String prefix = snapshotFile.getName();
+        service = FileSystems.getDefault().newWatchService();
+        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> watch(prefix, onChange), "journal-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch(String prefix, Runnable onChange) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // An overflow means events were dropped, which may have included ours
+                    relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || event.context().toString().startsWith(prefix);
+                }
+                if (relevant) onChange.run();
+                if (!key.reset()) return;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
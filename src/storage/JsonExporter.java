@@ -0,0 +1,120 @@
+package storage;
+
+import diagnostics.Metrics;
+import model.StringDictionary;
+import model.TransactionRows;
+import model.TransactionStore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.IntPredicate;
+
+/**
+ * Streams rows to a JSON file as an array of objects with the fields of the
+ * CSV layout ({@code type}, {@code category}, {@code amount}, {@code date},
+ * {@code notes}), one object per line, through a {@link JsonWriter}. Amounts
+ * are exact decimal numbers. Nothing is allocated per row: categories and
+ * notes are written straight from the row's dictionaries and dates from a
+ * reused buffer.
+ */
+public class JsonExporter {
+    private static final int PROGRESS_STEP = 50_000;
+
+    private final TransactionRows rows;
+    private int fromDay = Integer.MIN_VALUE;
+    private int toDay = Integer.MAX_VALUE;
+    private IntPredicate rowFilter = row -> true;
+
+    public interface Progress {
+        void update(int scanned, int total);
+    }
+
+    public JsonExporter(TransactionRows rows) {
+        this.rows = rows;
+    }
+
+    /** Limits the export to dates in {@code [from, to]}; either bound may be null. */
+    public JsonExporter between(LocalDate from, LocalDate to) {
+        fromDay = TransactionStore.clampEpochDay(from, false);
+        toDay = TransactionStore.clampEpochDay(to, true);
+        return this;
+    }
+
+    public JsonExporter filter(IntPredicate rowFilter) {
+        this.rowFilter = rowFilter;
+        return this;
+    }
+
+    /** Writes the matching rows to {@code target} and returns how many were written. */
+    public int export(Path target, Progress progress) throws IOException {
+        try (Metrics.Timing ignored = Metrics.time("json.export").rows(rows.size())) {
+            return write(target, progress);
+        }
+    }
+
+    private int write(Path target, Progress progress) throws IOException {
+        StringDictionary categories = rows.categories();
+        int written = 0;
+        int total = rows.size();
+        try (JsonWriter out = new JsonWriter(FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), 1)) {
+            out.beginArray();
+            char[] date = new char[10];
+            CharSequence dateBuffer = CharBuffer.wrap(date);
+            CharSequence dateText = dateBuffer;
+            int cachedDay = Integer.MIN_VALUE;
+            for (int row = 0; row < total; row++) {
+                if (row % PROGRESS_STEP == 0) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException("Export cancelled");
+                    }
+                    if (progress != null) progress.update(row, total);
+                }
+                int day = rows.getEpochDay(row);
+                if (day < fromDay || day > toDay || !rowFilter.test(row)) continue;
+
+                if (day != cachedDay) {
+                    cachedDay = day;
+                    dateText = formatDate(day, date) ? dateBuffer : LocalDate.ofEpochDay(day).toString();
+                }
+                out.beginObject();
+                out.name("type").value(rows.isIncome(row) ? "Income" : "Expense");
+                out.name("category").value(categories.get(rows.getCategoryId(row)));
+                out.name("amount").centsValue(rows.getCents(row));
+                out.name("date").value(dateText);
+                out.name("notes").value(rows.getNotes(row));
+                out.endObject();
+                written++;
+            }
+            out.endArray();
+        }
+        if (progress != null) progress.update(total, total);
+        return written;
+    }
+
+    // yyyy-mm-dd into a reused array, since rows are not always in date order; false for
+    // years that do not have four digits
+    private static boolean formatDate(int epochDay, char[] date) {
+        LocalDate value = LocalDate.ofEpochDay(epochDay);
+        int year = value.getYear();
+        if (year < 0 || year > 9999) return false;
+        digits(date, 0, year, 4);
+        date[4] = '-';
+        digits(date, 5, value.getMonthValue(), 2);
+        date[7] = '-';
+        digits(date, 8, value.getDayOfMonth(), 2);
+        return true;
+    }
+
+    private static void digits(char[] target, int at, int value, int width) {
+        for (int i = at + width - 1; i >= at; i--) {
+            target[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package storage;
+
+import diagnostics.Metrics;
+import model.StringDictionary;
+import model.TransactionStore;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads a JSON array of transactions in the layout written by
+ * {@link JsonExporter} with a {@link JsonReader}, one object at a time, into
+ * column batches. Field names are matched without creating strings, amounts
+ * become cents without going through {@code double}, and a category or note
+ * is turned into a string only the first time it appears; unknown fields are
+ * skipped. {@code type}, {@code amount} and {@code date} are required.
+ */
+public final class JsonImporter {
+    private static final String[] FIELDS = { "type", "category", "amount", "date", "notes" };
+
+    private JsonImporter() {
+    }
+
+    /**
+     * Reads every transaction in {@code file} and hands them to {@code sink}
+     * in batches of at most {@code batchRows}, as they fill up; returns how
+     * many were read. Batches before a malformed record have already been
+     * handed over when the error is thrown.
+     */
+    public static int importFile(Path file, int batchRows, Consumer<TransactionStore> sink) throws IOException {
+        try (Metrics.Timing timing = Metrics.time("json.import");
+                JsonReader in = new JsonReader(FileChannel.open(file, StandardOpenOption.READ), file.toString())) {
+            int rows = 0;
+            TransactionStore batch = null;
+            TextIds categories = null;
+            TextIds notes = null;
+            in.beginArray();
+            while (in.hasNext()) {
+                if (batch == null) {
+                    batch = new TransactionStore();
+                    categories = new TextIds(batch.categories());
+                    notes = new TextIds(batch.notes());
+                }
+                readTransaction(in, batch, categories, notes);
+                rows++;
+                if (batch.size() >= batchRows) {
+                    sink.accept(batch);
+                    batch = null;
+                }
+            }
+            in.endArray();
+            in.peek(); // only whitespace may follow
+            if (batch != null) sink.accept(batch);
+            timing.rows(rows);
+            return rows;
+        }
+    }
+
+    private static void readTransaction(JsonReader in, TransactionStore batch, TextIds categories, TextIds notes)
+            throws IOException {
+        int type = -1; // 1 income, 0 expense
+        int categoryId = -1;
+        long cents = 0;
+        boolean hasAmount = false;
+        int day = 0;
+        boolean hasDate = false;
+        int noteId = -1;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName(FIELDS)) {
+                case 0 -> {
+                    CharSequence text = in.nextChars();
+                    if (equalsIgnoreCase(text, TransactionStore.INCOME)) {
+                        type = 1;
+                    } else if (equalsIgnoreCase(text, TransactionStore.EXPENSE)) {
+                        type = 0;
+                    } else {
+                        throw in.syntaxError("unknown type \"" + text + "\"");
+                    }
+                }
+                case 1 -> categoryId = nextText(in, categories);
+                case 2 -> {
+                    cents = in.nextCents();
+                    hasAmount = true;
+                }
+                case 3 -> {
+                    CharSequence text = in.nextChars();
+                    try {
+                        day = CsvImporter.parseEpochDay(text);
+                    } catch (DateTimeException e) {
+                        throw in.syntaxError("invalid date \"" + text + "\"");
+                    }
+                    hasDate = true;
+                }
+                case 4 -> noteId = nextText(in, notes);
+                default -> in.skipValue();
+            }
+        }
+        if (type < 0) throw in.syntaxError("transaction without a \"type\"");
+        if (!hasAmount) throw in.syntaxError("transaction without an \"amount\"");
+        if (!hasDate) throw in.syntaxError("transaction without a \"date\"");
+        in.endObject();
+        batch.add(type == 1, categoryId < 0 ? categories.id("") : categoryId, cents, day,
+                noteId < 0 ? notes.id("") : noteId);
+    }
+
+    // A string or null, which reads as empty
+    private static int nextText(JsonReader in, TextIds ids) throws IOException {
+        if (in.peek() == JsonReader.Token.NULL) {
+            in.nextNull();
+            return ids.id("");
+        }
+        return ids.id(in.nextChars());
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence text, String ascii) {
+        if (text.length() != ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            if (Character.toLowerCase(text.charAt(i)) != Character.toLowerCase(ascii.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the dictionary id of text in the reader's scratch buffer, making a
+     * string only for text not seen before. Open addressing over the ids,
+     * hashed like {@link String#hashCode} so the strings' cached hashes serve
+     * when the table grows.
+     */
+    private static final class TextIds {
+        private final StringDictionary dictionary;
+        private int[] slots = new int[64]; // id + 1; 0 marks a free slot
+        private int size;
+
+        TextIds(StringDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        int id(CharSequence text) {
+            int hash = 0;
+            for (int i = 0; i < text.length(); i++) hash = 31 * hash + text.charAt(i);
+            int mask = slots.length - 1;
+            int slot = spread(hash) & mask;
+            while (slots[slot] != 0) {
+                int id = slots[slot] - 1;
+                if (dictionary.get(id).contentEquals(text)) return id;
+                slot = (slot + 1) & mask;
+            }
+            int id = dictionary.intern(text.toString());
+            slots[slot] = id + 1;
+            if (++size * 2 > slots.length) grow();
+            return id;
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length - 1;
+            for (int entry : old) {
+                if (entry == 0) continue;
+                int slot = spread(dictionary.get(entry - 1).hashCode()) & mask;
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = entry;
+            }
+        }
+
+        private static int spread(int hash) {
+            return hash ^ hash >>> 16;
+        }
+    }
+}
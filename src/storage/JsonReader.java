@@ -0,0 +1,490 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Pulls a JSON document token by token from a channel through one fixed
+ * buffer, so memory stays the same however long the document is and no tree
+ * of values is ever built. Names can be matched against a known list, and
+ * strings and numbers read as a {@link CharSequence} over a reusable scratch
+ * buffer, without creating a string; {@link #nextString} is only needed for
+ * text that is kept. Input must be UTF-8. Errors are {@link IOException}s
+ * naming the source and line.
+ */
+public class JsonReader implements Closeable {
+    public enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    // What the innermost open value expects next
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    // Smallest code point that UTF-8 writes with 1 + extra bytes, by extra
+    private static final int[] MIN_CODE_POINT = { 0, 0x80, 0x800, 0x10000 };
+
+    private final ReadableByteChannel channel;
+    private final String source;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final byte[] bytes = buffer.array();
+    private int position;
+    private int limit;
+    private int line = 1;
+    private int[] scopes = new int[32];
+    private int depth = 1;
+    private Token peeked;
+    private boolean peekedBoolean;
+    private char[] scratch = new char[256];
+    private int scratchLength;
+    private final View view = new View();
+
+    public JsonReader(ReadableByteChannel channel, String source) {
+        this.channel = channel;
+        this.source = source;
+        scopes[0] = EMPTY_DOCUMENT;
+    }
+
+    /** The kind of the next token, without consuming it. */
+    public Token peek() throws IOException {
+        if (peeked != null) return peeked;
+        int c;
+        switch (scopes[depth - 1]) {
+            case EMPTY_ARRAY:
+                scopes[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                if (c == -1) throw syntaxError("unexpected end of input");
+                position--;
+                return peeked = peekValue();
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                if (c != ',') throw syntaxError("expected ',' or ']'");
+                return peeked = peekValue();
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                boolean empty = scopes[depth - 1] == EMPTY_OBJECT;
+                scopes[depth - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+                if (c == '}') return peeked = Token.END_OBJECT;
+                if (!empty) {
+                    if (c != ',') throw syntaxError("expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw syntaxError("expected a name");
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                scopes[depth - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') throw syntaxError("expected ':'");
+                return peeked = peekValue();
+            case EMPTY_DOCUMENT:
+                scopes[depth - 1] = NONEMPTY_DOCUMENT;
+                return peeked = peekValue();
+            default:
+                if (nextNonWhitespace() != -1) throw syntaxError("unexpected data after the document");
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{': return Token.BEGIN_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case '"': return Token.STRING;
+            case 't':
+                literal("rue");
+                peekedBoolean = true;
+                return Token.BOOLEAN;
+            case 'f':
+                literal("alse");
+                peekedBoolean = false;
+                return Token.BOOLEAN;
+            case 'n':
+                literal("ull");
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber(c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError(c == -1 ? "unexpected end of input" : "unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /** Whether the current array or object has another element. */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        readString();
+        return new String(scratch, 0, scratchLength);
+    }
+
+    /**
+     * Reads the next name and returns its index in {@code names}, or -1 if it
+     * is none of them (the caller then usually calls {@link #skipValue}).
+     */
+    public int nextName(String[] names) throws IOException {
+        expect(Token.NAME);
+        readString();
+        for (int i = 0; i < names.length; i++) {
+            if (view.contentEquals(names[i])) return i;
+        }
+        return -1;
+    }
+
+    public String nextString() throws IOException {
+        return nextChars().toString();
+    }
+
+    /**
+     * The next string, or number as written, over the scratch buffer; only
+     * good until the reader is used again.
+     */
+    public CharSequence nextChars() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            readString();
+        } else if (token == Token.NUMBER) {
+            peeked = null;
+        } else {
+            throw syntaxError("expected a string but found " + token);
+        }
+        return view;
+    }
+
+    public long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        boolean negative = scratch[0] == '-';
+        // Summed as a negative number, whose range includes Long.MIN_VALUE
+        long value = 0;
+        try {
+            for (int i = negative ? 1 : 0; i < scratchLength; i++) {
+                char c = scratch[i];
+                if (c < '0' || c > '9') throw syntaxError("expected a whole number but found " + view);
+                value = Math.subtractExact(Math.multiplyExact(value, 10), c - '0');
+            }
+            return negative ? value : Math.negateExact(value);
+        } catch (ArithmeticException e) {
+            throw syntaxError("number out of range " + view);
+        }
+    }
+
+    public double nextDouble() throws IOException {
+        expect(Token.NUMBER);
+        try {
+            return Double.parseDouble(view.toString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("bad number " + view);
+        }
+    }
+
+    /** A decimal amount, written as a number or a string, as exact cents. */
+    public long nextCents() throws IOException {
+        CharSequence text = nextChars();
+        try {
+            return CsvImporter.parseCents(text);
+        } catch (RuntimeException e) {
+            throw syntaxError("bad amount '" + text + "'");
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return peekedBoolean;
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /** Skips the next value, with everything nested in it. */
+    public void skipValue() throws IOException {
+        int open = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT -> {
+                    beginObject();
+                    open++;
+                }
+                case BEGIN_ARRAY -> {
+                    beginArray();
+                    open++;
+                }
+                case END_OBJECT -> {
+                    endObject();
+                    open--;
+                }
+                case END_ARRAY -> {
+                    endArray();
+                    open--;
+                }
+                case NAME, STRING -> {
+                    peeked = null;
+                    readString();
+                }
+                case END_DOCUMENT -> throw syntaxError("unexpected end of input");
+                default -> peeked = null;
+            }
+        } while (open > 0);
+    }
+
+    /** An error at the current position, for callers that find a value they cannot use. */
+    public IOException syntaxError(String message) {
+        return new IOException(source + ":" + line + ": " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void expect(Token token) throws IOException {
+        Token found = peek();
+        if (found != token) throw syntaxError("expected " + token + " but found " + found);
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == scopes.length) scopes = Arrays.copyOf(scopes, depth * 2);
+        scopes[depth++] = scope;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return bytes[position++] & 0xFF;
+    }
+
+    // Keeps the last byte read, so the caller can still step back over it
+    private boolean fill() throws IOException {
+        int keep = Math.min(position, 1);
+        System.arraycopy(bytes, position - keep, bytes, 0, keep);
+        buffer.clear().position(keep);
+        int n;
+        do {
+            n = channel.read(buffer);
+        } while (n == 0);
+        position = keep;
+        limit = buffer.position();
+        return n > 0;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '\n') {
+                line++;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return c;
+            }
+        }
+    }
+
+    private void literal(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) throw syntaxError("unexpected literal");
+        }
+    }
+
+    // -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?, as in RFC 8259; a number character after it
+    // (as in "01", "1-2" or "1.5.2") is an error rather than the start of the next token
+    private void readNumber(int first) throws IOException {
+        scratchLength = 0;
+        int c = first;
+        if (c == '-') c = appendAndRead(c);
+        if (c == '0') {
+            c = appendAndRead(c);
+        } else {
+            c = readDigits(c);
+        }
+        if (c == '.') c = readDigits(appendAndRead(c));
+        if (c == 'e' || c == 'E') {
+            c = appendAndRead(c);
+            if (c == '+' || c == '-') c = appendAndRead(c);
+            c = readDigits(c);
+        }
+        if (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) throw badNumber(c);
+        if (c != -1) position--;
+    }
+
+    // One or more digits starting with c; returns the character after them
+    private int readDigits(int c) throws IOException {
+        if (c < '0' || c > '9') throw badNumber(c);
+        while (c >= '0' && c <= '9') c = appendAndRead(c);
+        return c;
+    }
+
+    private int appendAndRead(int c) throws IOException {
+        append((char) c);
+        return read();
+    }
+
+    private IOException badNumber(int c) {
+        if (c != -1) append((char) c);
+        return syntaxError("bad number " + view);
+    }
+
+    // Reads up to the closing quote (the opening one is consumed) into the scratch buffer
+    private void readString() throws IOException {
+        scratchLength = 0;
+        while (true) {
+            // ASCII without escapes runs straight from the buffer
+            int start = position;
+            int i = position;
+            while (i < limit) {
+                byte b = bytes[i];
+                if (b == '"' || b == '\\' || b < 0x20) break;
+                i++;
+            }
+            if (i > start) {
+                ensureScratch(i - start);
+                for (int j = start; j < i; j++) scratch[scratchLength++] = (char) bytes[j];
+                position = i;
+            }
+            int c = read();
+            if (c == '"') return;
+            if (c == -1) throw syntaxError("unterminated string");
+            if (c == '\\') {
+                append(escape());
+            } else if (c < 0x20) {
+                throw syntaxError("control character in string");
+            } else if (c >= 0x80) {
+                decode(c);
+            } else {
+                append((char) c); // the first character after a refill
+            }
+        }
+    }
+
+    private char escape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) throw syntaxError("bad \\u escape");
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("bad escape");
+        }
+    }
+
+    // One UTF-8 sequence that starts with lead, as one or two chars
+    private void decode(int lead) throws IOException {
+        int extra;
+        int codePoint;
+        if (lead >= 0xF0 && lead < 0xF8) {
+            extra = 3;
+            codePoint = lead & 0x07;
+        } else if (lead >= 0xE0) {
+            extra = 2;
+            codePoint = lead & 0x0F;
+        } else if (lead >= 0xC0) {
+            extra = 1;
+            codePoint = lead & 0x1F;
+        } else {
+            throw syntaxError("malformed UTF-8");
+        }
+        if (lead >= 0xF8) throw syntaxError("malformed UTF-8");
+        for (int i = 0; i < extra; i++) {
+            int c = read();
+            if ((c & 0xC0) != 0x80) throw syntaxError("malformed UTF-8");
+            codePoint = codePoint << 6 | (c & 0x3F);
+        }
+        // Overlong forms, UTF-16 surrogates and values past U+10FFFF are not characters
+        if (codePoint < MIN_CODE_POINT[extra] || codePoint > Character.MAX_CODE_POINT
+                || codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            throw syntaxError("malformed UTF-8");
+        }
+        if (codePoint > 0xFFFF) {
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        } else {
+            append((char) codePoint);
+        }
+    }
+
+    private void append(char c) {
+        ensureScratch(1);
+        scratch[scratchLength++] = c;
+    }
+
+    private void ensureScratch(int more) {
+        if (scratchLength + more > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + more));
+        }
+    }
+
+    private final class View implements CharSequence {
+        @Override
+        public int length() {
+            return scratchLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return scratch[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(scratch, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(scratch, 0, scratchLength);
+        }
+
+        boolean contentEquals(String text) {
+            if (text.length() != scratchLength) return false;
+            for (int i = 0; i < scratchLength; i++) {
+                if (scratch[i] != text.charAt(i)) return false;
+            }
+            return true;
+        }
+    }
+}
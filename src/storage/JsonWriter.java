@@ -0,0 +1,248 @@
+package storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Writes a JSON document token by token to a channel as UTF-8, through one
+ * fixed buffer, so no value tree or intermediate string is built however many
+ * values go out. Values nested up to {@code lineDepth} levels start on lines
+ * of their own, indented by two spaces per level; deeper ones are written
+ * inline. Misuse, such as a value where a name is due, throws
+ * {@link IllegalStateException}.
+ */
+public class JsonWriter implements Closeable {
+    private final WritableByteChannel channel;
+    private final int lineDepth;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final byte[] bytes = buffer.array();
+    private int position;
+    private boolean[] objects = new boolean[32]; // per open level: an object, rather than an array
+    private boolean[] nonEmpty = new boolean[32];
+    private int depth;
+    private boolean nameWritten;
+
+    public JsonWriter(WritableByteChannel channel, int lineDepth) {
+        this.channel = channel;
+        this.lineDepth = lineDepth;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open(true, '{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close(true, '}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open(false, '[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(false, ']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        if (depth == 0 || !objects[depth - 1] || nameWritten) throw new IllegalStateException("Not expecting a name");
+        separate();
+        string(name);
+        put(':');
+        if (depth <= lineDepth) put(' ');
+        nameWritten = true;
+        return this;
+    }
+
+    public JsonWriter value(CharSequence value) throws IOException {
+        if (value == null) return nullValue();
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        if (value < 0) {
+            put('-');
+            if (value == Long.MIN_VALUE) {
+                ascii("9223372036854775808");
+                return this;
+            }
+            value = -value;
+        }
+        digits(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) throw new IllegalArgumentException("Not a JSON number: " + value);
+        beforeValue();
+        ascii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    /** An amount of cents as an exact decimal number with two places, e.g. -1234.05. */
+    public JsonWriter centsValue(long cents) throws IOException {
+        beforeValue();
+        if (cents < 0) {
+            put('-');
+            cents = -cents;
+        }
+        digits(cents / 100);
+        int fraction = (int) (cents % 100);
+        put('.');
+        put((char) ('0' + fraction / 10));
+        put((char) ('0' + fraction % 10));
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        ascii("null");
+        return this;
+    }
+
+    /** Writes out whatever is buffered. */
+    public void flush() throws IOException {
+        buffer.position(0).limit(position);
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+        position = 0;
+    }
+
+    /** Ends the document with a line break, flushes and closes the channel. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (depth != 0) throw new IllegalStateException("Unclosed " + (objects[depth - 1] ? "object" : "array"));
+            put('\n');
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private JsonWriter open(boolean object, char bracket) throws IOException {
+        beforeValue();
+        if (depth == objects.length) {
+            objects = Arrays.copyOf(objects, depth * 2);
+            nonEmpty = Arrays.copyOf(nonEmpty, depth * 2);
+        }
+        objects[depth] = object;
+        nonEmpty[depth] = false;
+        depth++;
+        put(bracket);
+        return this;
+    }
+
+    private JsonWriter close(boolean object, char bracket) throws IOException {
+        if (depth == 0 || objects[depth - 1] != object || nameWritten) {
+            throw new IllegalStateException("Not expecting the end of " + (object ? "an object" : "an array"));
+        }
+        depth--;
+        if (nonEmpty[depth] && depth < lineDepth) newline();
+        put(bracket);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (nameWritten) {
+            nameWritten = false;
+            return;
+        }
+        if (depth == 0) return;
+        if (objects[depth - 1]) throw new IllegalStateException("Expecting a name");
+        separate();
+    }
+
+    // The comma and line break before an array element or an object member
+    private void separate() throws IOException {
+        if (nonEmpty[depth - 1]) put(',');
+        nonEmpty[depth - 1] = true;
+        if (depth <= lineDepth) newline();
+    }
+
+    private void newline() throws IOException {
+        put('\n');
+        for (int i = 0; i < Math.min(depth, lineDepth); i++) {
+            put(' ');
+            put(' ');
+        }
+    }
+
+    private void string(CharSequence text) throws IOException {
+        put('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> ascii("\\\"");
+                case '\\' -> ascii("\\\\");
+                case '\n' -> ascii("\\n");
+                case '\r' -> ascii("\\r");
+                case '\t' -> ascii("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        ascii("\\u00");
+                        put(Character.forDigit(c >> 4, 16));
+                        put(Character.forDigit(c & 0xF, 16));
+                    } else if (c < 0x80) {
+                        put(c);
+                    } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                            && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        utf8(Character.toCodePoint(c, text.charAt(++i)));
+                    } else {
+                        utf8(Character.isSurrogate(c) ? '\uFFFD' : c);
+                    }
+                }
+            }
+        }
+        put('"');
+    }
+
+    private void utf8(int codePoint) throws IOException {
+        if (position + 4 > bytes.length) flush();
+        if (codePoint < 0x800) {
+            bytes[position++] = (byte) (0xC0 | codePoint >> 6);
+        } else if (codePoint < 0x10000) {
+            bytes[position++] = (byte) (0xE0 | codePoint >> 12);
+            bytes[position++] = (byte) (0x80 | (codePoint >> 6 & 0x3F));
+        } else {
+            bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+            bytes[position++] = (byte) (0x80 | (codePoint >> 12 & 0x3F));
+            bytes[position++] = (byte) (0x80 | (codePoint >> 6 & 0x3F));
+        }
+        bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    private void digits(long value) throws IOException {
+        if (position + 20 > bytes.length) flush();
+        int start = position;
+        do {
+            bytes[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = tmp;
+        }
+    }
+
+    private void ascii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) put(text.charAt(i));
+    }
+
+    private void put(char c) throws IOException {
+        if (position == bytes.length) flush();
+        bytes[position++] = (byte) c;
+    }
+}
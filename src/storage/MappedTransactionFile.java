@@ -0,0 +1,241 @@
+package storage;
+
+import model.StringDictionary;
+import model.TransactionRows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fixed-width binary transaction file read through a {@link MappedByteBuffer}.
+ * Opening only maps the file and reads the header and the category table;
+ * rows are decoded on access, straight from the page cache. Small files that
+ * are replaced while in use (month partitions) are read into a heap buffer
+ * instead, so their footprint is known and they never pin the file.
+ *
+ * <pre>
+ * header (64 bytes)  magic, version, sequence, row count, category count,
+ *                    category table offset, notes heap offset and length
+ * records            24 bytes each: cents (long), epoch day (int),
+ *                    category id (int), flags (int, bit 0 = income),
+ *                    notes offset into the heap (int)
+ * category table     per category: length (int) + UTF-8 bytes
+ * notes heap         per distinct note: length (int) + UTF-8 bytes
+ * </pre>
+ */
+public final class MappedTransactionFile implements TransactionRows {
+    public static final int MAGIC = 0x5350444D; // "SPDM"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 24;
+    private static final int FLAG_INCOME = 1;
+
+    private final ByteBuffer buffer;
+    private final long sequence;
+    private final int size;
+    private final int heapOffset;
+    private final StringDictionary categories = new StringDictionary();
+    private final Map<Integer, String> noteCache = new ConcurrentHashMap<>();
+
+    private MappedTransactionFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped transaction file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported transaction file version " + version);
+        }
+        sequence = buffer.getLong(8);
+        size = buffer.getInt(16);
+        int categoryCount = buffer.getInt(20);
+        int categoriesOffset = (int) buffer.getLong(24);
+        heapOffset = (int) buffer.getLong(32);
+
+        int position = categoriesOffset;
+        for (int id = 0; id < categoryCount; id++) {
+            int length = buffer.getInt(position);
+            categories.intern(decode(position + 4, length));
+            position += 4 + length;
+        }
+    }
+
+    public static MappedTransactionFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map in one piece");
+            }
+            return new MappedTransactionFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Reads the whole file onto the heap instead of mapping it. */
+    public static MappedTransactionFile read(File file) throws IOException {
+        return new MappedTransactionFile(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    /** Sequence recorded in the header of {@code file}; 0 if it is missing or in another format. */
+    public static long readSequence(File file) throws IOException {
+        if (!file.exists()) return 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+            }
+            return header.position() < 16 || header.getInt(0) != MAGIC ? 0 : header.getLong(8);
+        }
+    }
+
+    /** Sequence number of the last journal record folded into this file. */
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Length of the underlying file in bytes. */
+    public int byteSize() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public long getCents(int row) {
+        return buffer.getLong(offset(row));
+    }
+
+    @Override
+    public int getEpochDay(int row) {
+        return buffer.getInt(offset(row) + 8);
+    }
+
+    @Override
+    public int getCategoryId(int row) {
+        return buffer.getInt(offset(row) + 12);
+    }
+
+    @Override
+    public boolean isIncome(int row) {
+        return (buffer.getInt(offset(row) + 16) & FLAG_INCOME) != 0;
+    }
+
+    @Override
+    public String getNotes(int row) {
+        int noteOffset = buffer.getInt(offset(row) + 20);
+        String note = noteCache.get(noteOffset);
+        if (note == null) {
+            int position = heapOffset + noteOffset;
+            note = decode(position + 4, buffer.getInt(position));
+            noteCache.put(noteOffset, note);
+        }
+        return note;
+    }
+
+    @Override
+    public StringDictionary categories() {
+        return categories;
+    }
+
+    /** Writes {@code rows} to {@code target} in this format. Distinct notes are stored once. */
+    public static void write(TransactionRows rows, long sequence, File target) throws IOException {
+        StringDictionary categories = rows.categories();
+        int count = rows.size();
+
+        Map<String, Integer> noteOffsets = new HashMap<>();
+        List<String> heap = new ArrayList<>();
+        int[] recordNotes = new int[count];
+        long heapLength = 0;
+        for (int row = 0; row < count; row++) {
+            String note = rows.getNotes(row);
+            Integer existing = noteOffsets.get(note);
+            if (existing == null) {
+                existing = (int) heapLength;
+                noteOffsets.put(note, existing);
+                heap.add(note);
+                heapLength += 4 + note.getBytes(StandardCharsets.UTF_8).length;
+                if (heapLength > Integer.MAX_VALUE) {
+                    throw new IOException("Notes heap exceeds 2 GB");
+                }
+            }
+            recordNotes[row] = existing;
+        }
+
+        long categoriesOffset = HEADER_SIZE + (long) count * RECORD_SIZE;
+        long categoriesLength = 0;
+        for (int id = 0; id < categories.size(); id++) {
+            categoriesLength += 4 + categories.get(id).getBytes(StandardCharsets.UTF_8).length;
+        }
+        long heapOffset = categoriesOffset + categoriesLength;
+
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(1 << 20);
+            out.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(count).putInt(categories.size())
+                    .putLong(categoriesOffset).putLong(heapOffset).putLong(heapLength);
+            out.position(HEADER_SIZE);
+
+            for (int row = 0; row < count; row++) {
+                if (out.remaining() < RECORD_SIZE) drain(channel, out);
+                out.putLong(rows.getCents(row))
+                        .putInt(rows.getEpochDay(row))
+                        .putInt(rows.getCategoryId(row))
+                        .putInt(rows.isIncome(row) ? FLAG_INCOME : 0)
+                        .putInt(recordNotes[row]);
+            }
+            for (int id = 0; id < categories.size(); id++) {
+                putString(channel, out, categories.get(id));
+            }
+            for (String note : heap) {
+                putString(channel, out, note);
+            }
+            drain(channel, out);
+            channel.force(false);
+        }
+    }
+
+    private static void putString(FileChannel channel, ByteBuffer out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (out.remaining() < 4) drain(channel, out);
+        out.putInt(bytes.length);
+        int written = 0;
+        while (written < bytes.length) {
+            if (!out.hasRemaining()) drain(channel, out);
+            int chunk = Math.min(out.remaining(), bytes.length - written);
+            out.put(bytes, written, chunk);
+            written += chunk;
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private int offset(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return HEADER_SIZE + row * RECORD_SIZE;
+    }
+
+    private String decode(int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,406 @@
+package storage;
+
+import diagnostics.Metrics;
+import model.CombinedRows;
+import model.TransactionRows;
+import model.TransactionStore;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Older months moved out of the live snapshot, one {@link MappedTransactionFile}
+ * per month ({@code 2024-03.dat}) plus a small manifest with each month's
+ * totals and daily income and expenses. Dashboards and running balances read only the
+ * manifest; the rows of a month are read on
+ * first use and kept in an LRU cache that evicts whole months once their size
+ * exceeds the memory budget. Each partition remembers the journal sequence it
+ * was last merged at, so archiving the same state twice (e.g. after a crash
+ * before the live snapshot was rewritten) does not duplicate rows.
+ */
+public class PartitionArchive {
+    public static final long DEFAULT_BUDGET_BYTES = 32L << 20;
+
+    private static final int MANIFEST_MAGIC = 0x53504458; // "SPDX"
+    private static final int MANIFEST_VERSION = 3;
+    private static final String MANIFEST = "manifest.bin";
+
+    private final File directory;
+    private final long budgetBytes;
+    private final TreeMap<YearMonth, MonthSummary> summaries = new TreeMap<>();
+    private final LinkedHashMap<YearMonth, MappedTransactionFile> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+
+    /** Totals of one archived month, as recorded in the manifest. */
+    public static final class MonthSummary {
+        private final YearMonth month;
+        private final long fileLength;
+        private final long sequence;
+        private final int rows;
+        private final String[] categories;
+        private final long[] incomeCents;
+        private final long[] expenseCents;
+        private final int[] incomeCounts;
+        private final int[] expenseCounts;
+        private final long[] dayIncomeCents; // by day of month
+        private final long[] dayExpenseCents;
+
+        private MonthSummary(YearMonth month, long fileLength, long sequence, int rows, String[] categories,
+                long[] incomeCents, long[] expenseCents, int[] incomeCounts, int[] expenseCounts, long[] dayIncomeCents,
+                long[] dayExpenseCents) {
+            this.month = month;
+            this.fileLength = fileLength;
+            this.sequence = sequence;
+            this.rows = rows;
+            this.categories = categories;
+            this.incomeCents = incomeCents;
+            this.expenseCents = expenseCents;
+            this.incomeCounts = incomeCounts;
+            this.expenseCounts = expenseCounts;
+            this.dayIncomeCents = dayIncomeCents;
+            this.dayExpenseCents = dayExpenseCents;
+        }
+
+        static MonthSummary of(YearMonth month, long fileLength, long sequence, TransactionRows rows) {
+            int categoryCount = rows.categories().size();
+            String[] names = new String[categoryCount];
+            for (int id = 0; id < categoryCount; id++) names[id] = rows.categories().get(id);
+            long[] income = new long[categoryCount];
+            long[] expense = new long[categoryCount];
+            int[] incomeCounts = new int[categoryCount];
+            int[] expenseCounts = new int[categoryCount];
+            long[] dayIncome = new long[month.lengthOfMonth()];
+            long[] dayExpense = new long[month.lengthOfMonth()];
+            for (int row = 0; row < rows.size(); row++) {
+                int id = rows.getCategoryId(row);
+                int dayOfMonth = LocalDate.ofEpochDay(rows.getEpochDay(row)).getDayOfMonth();
+                if (rows.isIncome(row)) {
+                    income[id] += rows.getCents(row);
+                    incomeCounts[id]++;
+                    dayIncome[dayOfMonth - 1] += rows.getCents(row);
+                } else {
+                    expense[id] += rows.getCents(row);
+                    expenseCounts[id]++;
+                    dayExpense[dayOfMonth - 1] += rows.getCents(row);
+                }
+            }
+            return new MonthSummary(month, fileLength, sequence, rows.size(), names, income, expense, incomeCounts,
+                    expenseCounts, dayIncome, dayExpense);
+        }
+
+        public YearMonth month() {
+            return month;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public long totalCents(boolean income) {
+            long total = 0;
+            for (long cents : income ? incomeCents : expenseCents) total += cents;
+            return total;
+        }
+
+        public int categoryCount() {
+            return categories.length;
+        }
+
+        /** Income minus expenses dated within the first {@code days} days of the month. */
+        public long netCents(int days) {
+            long net = 0;
+            for (int i = 0; i < Math.min(days, dayIncomeCents.length); i++) net += dayIncomeCents[i] - dayExpenseCents[i];
+            return net;
+        }
+
+        /** Income or expense cents dated on day {@code dayOfMonth} (1-based). */
+        public long dayCents(boolean income, int dayOfMonth) {
+            return (income ? dayIncomeCents : dayExpenseCents)[dayOfMonth - 1];
+        }
+
+        public String categoryName(int index) {
+            return categories[index];
+        }
+
+        public long categoryCents(int index, boolean income) {
+            return income ? incomeCents[index] : expenseCents[index];
+        }
+
+        public int categoryRows(int index, boolean income) {
+            return income ? incomeCounts[index] : expenseCounts[index];
+        }
+    }
+
+    public PartitionArchive(File directory) {
+        this(directory, DEFAULT_BUDGET_BYTES);
+    }
+
+    public PartitionArchive(File directory, long budgetBytes) {
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /** Archive directory that belongs to a snapshot file, e.g. {@code transactions.dat.parts}. */
+    public static File directoryFor(File snapshotFile) {
+        return new File(snapshotFile.getPath() + ".parts");
+    }
+
+    /**
+     * Reads the manifest and checks it against the partition files on disk.
+     * Months whose file is missing from the manifest or has a different length
+     * (an interrupted write) are summarized again from the file itself.
+     */
+    public synchronized void reload() throws IOException {
+        reload(true);
+    }
+
+    /** As {@link #reload()}, writing the corrected manifest back only if {@code repair}. */
+    public synchronized void reload(boolean repair) throws IOException {
+        summaries.clear();
+        clearCache();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".dat"));
+        if (files == null) return;
+
+        Map<YearMonth, MonthSummary> recorded = readManifest();
+        boolean changed = false;
+        for (File file : files) {
+            YearMonth month;
+            try {
+                month = YearMonth.parse(file.getName().substring(0, file.getName().length() - 4));
+            } catch (RuntimeException notAPartition) {
+                continue;
+            }
+            MonthSummary summary = recorded.get(month);
+            if (summary == null || summary.fileLength != file.length()) {
+                MappedTransactionFile rows = MappedTransactionFile.read(file);
+                summary = MonthSummary.of(month, file.length(), rows.sequence(), rows);
+                changed = true;
+            }
+            summaries.put(month, summary);
+        }
+        if (repair && (changed || !recorded.keySet().equals(summaries.keySet()))) writeManifest();
+    }
+
+    /** Archived months in ascending order. */
+    public synchronized List<MonthSummary> summaries() {
+        return new ArrayList<>(summaries.values());
+    }
+
+    public synchronized int totalRows() {
+        int total = 0;
+        for (MonthSummary summary : summaries.values()) total += summary.rows;
+        return total;
+    }
+
+    /** Highest journal sequence merged into any partition. */
+    public synchronized long sequence() {
+        long sequence = 0;
+        for (MonthSummary summary : summaries.values()) sequence = Math.max(sequence, summary.sequence);
+        return sequence;
+    }
+
+    public synchronized boolean isEmpty() {
+        return summaries.isEmpty();
+    }
+
+    /** Rows of one archived month, read from disk if the month is not cached. */
+    public synchronized TransactionRows rows(YearMonth month) throws IOException {
+        MappedTransactionFile rows = resident.get(month);
+        if (rows != null) return rows;
+        if (!summaries.containsKey(month)) {
+            throw new IOException("No archived partition for " + month);
+        }
+        try (Metrics.Timing ignored = Metrics.time("archive.pageIn")) {
+            rows = MappedTransactionFile.read(partitionFile(month));
+        }
+        resident.put(month, rows);
+        residentBytes += rows.byteSize();
+        // Whole months go, least recently used first, but the one just read always stays
+        Iterator<Map.Entry<YearMonth, MappedTransactionFile>> eldest = resident.entrySet().iterator();
+        while (residentBytes > budgetBytes && resident.size() > 1) {
+            residentBytes -= eldest.next().getValue().byteSize();
+            eldest.remove();
+            Metrics.counter("archive.evictions").increment();
+        }
+        return rows;
+    }
+
+    /**
+     * Moves the rows of {@code source} dated before {@code beforeDay} into their
+     * month partitions, appending to what is already archived. {@code sequence}
+     * is the journal sequence {@code source} reflects; months already merged at
+     * that sequence are left alone.
+     */
+    public synchronized void archive(TransactionRows source, int beforeDay, long sequence) throws IOException {
+        TreeMap<YearMonth, TransactionStore> incoming = new TreeMap<>();
+        for (int row = 0; row < source.size(); row++) {
+            int day = source.getEpochDay(row);
+            if (day >= beforeDay) continue;
+            TransactionStore month = incoming.computeIfAbsent(YearMonth.from(LocalDate.ofEpochDay(day)),
+                    m -> new TransactionStore());
+            month.add(source.isIncome(row), month.categories().intern(source.getCategory(row)), source.getCents(row),
+                    day, month.notes().intern(source.getNotes(row)));
+        }
+        if (incoming.isEmpty()) return;
+
+        Files.createDirectories(directory.toPath());
+        for (Map.Entry<YearMonth, TransactionStore> entry : incoming.entrySet()) {
+            YearMonth month = entry.getKey();
+            File file = partitionFile(month);
+            TransactionStore merged = new TransactionStore();
+            if (file.exists()) {
+                MappedTransactionFile existing = MappedTransactionFile.read(file);
+                if (existing.sequence() >= sequence) continue;
+                merged.addAll(existing, 0, existing.size());
+            }
+            merged.addAll(entry.getValue());
+            writePartition(month, merged, sequence);
+        }
+        writeManifest();
+    }
+
+    /** Deletes row {@code index} of an archived month; the partition file is rewritten. */
+    public synchronized void remove(YearMonth month, int index) throws IOException {
+        MappedTransactionFile existing = MappedTransactionFile.read(partitionFile(month));
+        TransactionStore kept = new TransactionStore();
+        kept.addAll(existing, 0, index);
+        kept.addAll(existing, index + 1, existing.size());
+        if (kept.size() == 0) {
+            evict(month);
+            Files.delete(partitionFile(month).toPath());
+            summaries.remove(month);
+            } else {
+            writePartition(month, kept, existing.sequence());
+        }
+        writeManifest();
+    }
+
+    /**
+     * Every archived month, oldest first, followed by {@code live}. All months
+     * are read for the duration, so the cache may exceed its budget until the
+     * result is dropped.
+     */
+    public CombinedRows withHistory(TransactionRows live) throws IOException {
+        List<TransactionRows> segments = new ArrayList<>();
+        for (MonthSummary summary : summaries()) {
+            segments.add(rows(summary.month));
+        }
+        segments.add(live);
+        return new CombinedRows(segments);
+    }
+
+    private void writePartition(YearMonth month, TransactionRows rows, long sequence) throws IOException {
+        File file = partitionFile(month);
+        File tmp = new File(directory, month + ".dat.tmp");
+        MappedTransactionFile.write(rows, sequence, tmp);
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        evict(month);
+        summaries.put(month, MonthSummary.of(month, file.length(), sequence, rows));
+    }
+
+    private Map<YearMonth, MonthSummary> readManifest() throws IOException {
+        File file = new File(directory, MANIFEST);
+        if (!file.exists()) return Collections.emptyMap();
+        Map<YearMonth, MonthSummary> recorded = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+                return Collections.emptyMap();
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                YearMonth month = YearMonth.of(in.readInt(), in.readInt());
+                long fileLength = in.readLong();
+                long sequence = in.readLong();
+                int rows = in.readInt();
+                int categoryCount = in.readInt();
+                String[] names = new String[categoryCount];
+                long[] income = new long[categoryCount];
+                long[] expense = new long[categoryCount];
+                int[] incomeCounts = new int[categoryCount];
+                int[] expenseCounts = new int[categoryCount];
+                for (int id = 0; id < categoryCount; id++) {
+                    names[id] = in.readUTF();
+                    income[id] = in.readLong();
+                    expense[id] = in.readLong();
+                    incomeCounts[id] = in.readInt();
+                    expenseCounts[id] = in.readInt();
+                }
+                long[] dayIncome = new long[in.readInt()];
+                long[] dayExpense = new long[dayIncome.length];
+                for (int day = 0; day < dayIncome.length; day++) {
+                    dayIncome[day] = in.readLong();
+                    dayExpense[day] = in.readLong();
+                }
+                recorded.put(month, new MonthSummary(month, fileLength, sequence, rows, names, income, expense,
+                        incomeCounts, expenseCounts, dayIncome, dayExpense));
+            }
+        } catch (EOFException torn) {
+            return Collections.emptyMap();
+        }
+        return recorded;
+    }
+
+    private void writeManifest() throws IOException {
+        File file = new File(directory, MANIFEST);
+        File tmp = new File(directory, MANIFEST + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            out.writeInt(summaries.size());
+            for (MonthSummary summary : summaries.values()) {
+                out.writeInt(summary.month.getYear());
+                out.writeInt(summary.month.getMonthValue());
+                out.writeLong(summary.fileLength);
+                out.writeLong(summary.sequence);
+                out.writeInt(summary.rows);
+                out.writeInt(summary.categories.length);
+                for (int id = 0; id < summary.categories.length; id++) {
+                    out.writeUTF(summary.categories[id]);
+                    out.writeLong(summary.incomeCents[id]);
+                    out.writeLong(summary.expenseCents[id]);
+                    out.writeInt(summary.incomeCounts[id]);
+                    out.writeInt(summary.expenseCounts[id]);
+                }
+                out.writeInt(summary.dayIncomeCents.length);
+                for (int day = 0; day < summary.dayIncomeCents.length; day++) {
+                    out.writeLong(summary.dayIncomeCents[day]);
+                    out.writeLong(summary.dayExpenseCents[day]);
+                }
+            }
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void evict(YearMonth month) {
+        MappedTransactionFile dropped = resident.remove(month);
+        if (dropped != null) residentBytes -= dropped.byteSize();
+    }
+
+    private void clearCache() {
+        resident.clear();
+        residentBytes = 0;
+    }
+
+    private File partitionFile(YearMonth month) {
+        return new File(directory, month + ".dat");
+    }
+}
@@ -0,0 +1,433 @@
+package storage;
+
+import diagnostics.Metrics;
+import model.Transaction;
+import model.TransactionRows;
+import model.TransactionStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs all journal I/O on one background thread. The service listens to the
+ * store, so every mutation is queued as a journal record on the thread that
+ * made it (normally the EDT) and drained in order by a delayed flush task; a
+ * burst of edits turns into a single write and flush. Failures are handed to
+ * the error handler instead of being swallowed.
+ * <p>
+ * With {@link #follow}, records that other processes append are applied to
+ * the store as they arrive. Every drain catches up under the journal lock
+ * before writing. Edits made against a state another process has since
+ * changed are rebased onto the files by content (an edited or deleted row is
+ * looked up by its old values, and skipped if it is gone), after which the
+ * store is loaded again.
+ */
+public class PersistenceService implements Closeable, TransactionStore.Listener {
+    private static final long FLUSH_DELAY_MS = 150;
+
+    private final TransactionJournal journal;
+    private final TransactionStore store;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "persistence");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Queue<JournalWrite> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean snapshotQueued = new AtomicBoolean();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean();
+    private final AtomicBoolean reloadRequested = new AtomicBoolean();
+    private final AtomicInteger unwrittenEdits = new AtomicInteger();
+    private volatile boolean compactionDue;
+    private volatile boolean loaded;
+    private volatile boolean diverged; // local edits crossed another process's; a reload is due
+    private volatile long appliedThrough; // last sequence from another process the store reflects
+    private volatile Executor storeThread;
+    private volatile Runnable reloadHandler;
+    private JournalWatcher watcher;
+    private boolean recording = true;
+    private Transaction updating;
+    private TransactionStore removing;
+    private final Consumer<Exception> errorHandler;
+
+    private interface JournalWrite {
+        void apply(TransactionJournal journal) throws IOException;
+    }
+
+    public PersistenceService(TransactionJournal journal, TransactionStore store, Consumer<Exception> errorHandler) {
+        this.journal = journal;
+        this.store = store;
+        this.errorHandler = errorHandler;
+        store.addListener(this);
+    }
+
+    /**
+     * Turns journaling of store mutations on or off, e.g. off while the store
+     * is being filled from the journal itself.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /** False while the store is being loaded or changes from another process are applied to it. */
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Watches the data files and applies what other processes append to the
+     * store on {@code storeThread}, the thread that mutates it. {@code reload}
+     * runs there when the store has to be loaded again instead.
+     */
+    public void follow(Executor storeThread, Runnable reload) throws IOException {
+        this.storeThread = storeThread;
+        this.reloadHandler = reload;
+        watcher = new JournalWatcher(journal.snapshotFile(), this::scheduleSync);
+    }
+
+    /** Streams the persisted state into {@code sink} on the persistence thread. */
+    public CompletableFuture<Void> load(TransactionJournal.ReplaySink sink) {
+        loaded = false;
+        return CompletableFuture.runAsync(() -> {
+            // Edits still queued were made against the old contents; they go out first
+            drain();
+            try (Metrics.Timing ignored = Metrics.time("journal.load")) {
+                journal.load(sink);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            compactionDue = journal.needsCompaction();
+            appliedThrough = journal.sequence();
+            diverged = false;
+            reloadRequested.set(false);
+            loaded = true;
+        }, executor);
+    }
+
+    // Rows inserted at the end are journaled as adds, others as insertions at their position. The
+    // rows are copied now because the store may have changed again by the time the queue is drained
+    @Override
+    public void rowsInserted(int from, int to) {
+        if (!recording) return;
+        TransactionStore rows = new TransactionStore();
+        rows.addAll(store, from, to);
+        enqueue(new Edit(to == store.size() ? -1 : from, rows, true, null, null));
+    }
+
+    @Override
+    public void rowUpdating(int row) {
+        if (recording) updating = store.get(row);
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        if (!recording) return;
+        enqueue(new Edit(row, null, false, updating, store.get(row)));
+        updating = null;
+    }
+
+    @Override
+    public void rowsRemoving(int from, int to) {
+        if (!recording) return;
+        removing = new TransactionStore();
+        removing.addAll(store, from, to);
+    }
+
+    @Override
+    public void rowsRemoved(int from, int to) {
+        if (!recording) return;
+        enqueue(new Edit(from, removing, false, null, null));
+        removing = null;
+    }
+
+    /**
+     * Deletes a row of an archived month. Archived rows are not journaled; the
+     * month's partition is rewritten on the persistence thread instead.
+     */
+    public CompletableFuture<Void> removeArchived(YearMonth month, int index) {
+        return CompletableFuture.runAsync(() -> {
+            try (Closeable ignored = journal.lock()) {
+                journal.removeArchived(month, index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /** Reads the rows of an archived month on the persistence thread, so the caller never waits on the file. */
+    public CompletableFuture<TransactionRows> archivedRows(YearMonth month) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return journal.archive().rows(month);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Queues a full snapshot of the store as it is right now. Must be called on
+     * the thread that mutates the store so the copy lines up with the queue.
+     */
+    public void snapshot() {
+        snapshotQueued.set(true);
+        compactionDue = false;
+        TransactionStore copy = store.copy();
+        long basedOn = appliedThrough;
+        pending.add(journal -> {
+            try {
+                // A copy that misses records from another process would drop them; try again later
+                if (!diverged && basedOn >= journal.foreignSequence()) {
+                    journal.compact(copy);
+                }
+            } finally {
+                snapshotQueued.set(false);
+            }
+        });
+        flushNow();
+    }
+
+    /** Drains the queue immediately instead of waiting for the coalescing delay. */
+    public Future<?> flushNow() {
+        return executor.submit(this::drain);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watcher != null) watcher.close();
+        executor.submit(this::drain);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    // compactionDue is refreshed by the persistence thread, so the caller never
+    // blocks on the journal's lock here.
+    private void enqueue(JournalWrite write) {
+        if (write instanceof Edit) unwrittenEdits.incrementAndGet();
+        pending.add(write);
+        if (compactionDue && !snapshotQueued.get()) {
+            snapshot();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::drain, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        flushScheduled.set(false);
+        if (pending.isEmpty()) return;
+        try (Closeable lock = journal.lock(); Metrics.Timing ignored = Metrics.time("journal.write")) {
+            catchUp();
+            TransactionStore current = diverged ? journal.reread() : null;
+            JournalWrite write;
+            while ((write = pending.poll()) != null) {
+                if (!(write instanceof Edit)) {
+                    write.apply(journal);
+                    continue;
+                }
+                Edit edit = (Edit) write;
+                if (current == null && edit.basedOn < journal.foreignSequence()) {
+                    diverged = true;
+                    current = journal.reread();
+                }
+                if (current == null) {
+                    edit.apply(journal);
+                } else {
+                    edit.rebase(journal, current);
+                }
+                unwrittenEdits.decrementAndGet();
+            }
+            journal.flush();
+            compactionDue = journal.needsCompaction();
+        } catch (IOException | RuntimeException e) {
+            errorHandler.accept(e);
+        }
+        if (diverged) requestReload();
+    }
+
+    private void scheduleSync() {
+        if (syncScheduled.compareAndSet(false, true)) {
+            executor.execute(this::sync);
+        }
+    }
+
+    private void sync() {
+        syncScheduled.set(false);
+        if (!loaded) return;
+        try (Closeable ignored = journal.lock()) {
+            catchUp();
+        } catch (IOException | RuntimeException e) {
+            errorHandler.accept(e);
+        }
+        if (diverged) requestReload();
+    }
+
+    // Reads what other processes appended and hands it to the store's thread. Needs the journal lock.
+    private void catchUp() throws IOException {
+        if (!loaded || diverged) return;
+        RemoteChanges changes = new RemoteChanges();
+        if (!journal.catchUp(changes)) {
+            diverged = true;
+        } else if (!changes.isEmpty()) {
+            Executor target = storeThread;
+            long through = journal.sequence();
+            if (target == null) {
+                diverged = true;
+            } else {
+                target.execute(() -> changes.apply(through));
+            }
+        }
+    }
+
+    private void requestReload() {
+        Executor target = storeThread;
+        if (target != null && reloadRequested.compareAndSet(false, true)) {
+            target.execute(reloadHandler);
+        }
+    }
+
+    // Nearest row to where the edit was made that still holds the values it had then
+    private static int find(TransactionStore rows, Transaction t, int near) {
+        int size = rows.size();
+        for (int distance = 0; distance <= Math.max(near, size - near); distance++) {
+            int below = near - distance;
+            int above = near + distance;
+            if (below >= 0 && below < size && same(rows.get(below), t)) return below;
+            if (distance > 0 && above < size && same(rows.get(above), t)) return above;
+        }
+        return -1;
+    }
+
+    private static boolean same(Transaction a, Transaction b) {
+        return a.getType().equals(b.getType()) && a.getCategory().equals(b.getCategory())
+                && Double.compare(a.getAmount(), b.getAmount()) == 0 && a.getDate().equals(b.getDate())
+                && Objects.equals(a.getNotes(), b.getNotes());
+    }
+
+    /**
+     * A store mutation waiting to be journaled, with what a rebase needs: the
+     * rows it replaced or removed, and how far the store had caught up with
+     * other processes when it was made.
+     */
+    private final class Edit implements JournalWrite {
+        final int index; // -1 for appended rows
+        final TransactionStore rows; // appended, inserted or removed rows
+        final boolean inserted;
+        final Transaction before;
+        final Transaction after;
+        final long basedOn = appliedThrough;
+
+        Edit(int index, TransactionStore rows, boolean inserted, Transaction before, Transaction after) {
+            this.index = index;
+            this.rows = rows;
+            this.inserted = inserted;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public void apply(TransactionJournal journal) throws IOException {
+            if (after != null) {
+                journal.appendSet(index, after);
+            } else if (index < 0) {
+                for (int row = 0; row < rows.size(); row++) journal.appendAdd(rows.get(row));
+            } else if (inserted) {
+                for (int row = 0; row < rows.size(); row++) journal.appendInsert(index + row, rows.get(row));
+            } else {
+                for (int row = 0; row < rows.size(); row++) journal.appendRemove(index);
+            }
+        }
+
+        void rebase(TransactionJournal journal, TransactionStore current) throws IOException {
+            if (after != null) {
+                int at = find(current, before, index);
+                if (at >= 0) {
+                    journal.appendSet(at, after);
+                    current.set(at, after);
+                }
+            } else if (index < 0) {
+                for (int row = 0; row < rows.size(); row++) {
+                    journal.appendAdd(rows.get(row));
+                    current.add(rows.get(row));
+                }
+            } else if (inserted) {
+                // Where the rows around the insertion point went is not known; the same position will do
+                int at = Math.min(index, current.size());
+                for (int row = 0; row < rows.size(); row++) {
+                    journal.appendInsert(at + row, rows.get(row));
+                    current.insert(at + row, rows.get(row));
+                }
+            } else {
+                for (int row = 0; row < rows.size(); row++) {
+                    int at = find(current, rows.get(row), index);
+                    if (at >= 0) {
+                        journal.appendRemove(at);
+                        current.remove(at);
+                    }
+                }
+            }
+        }
+    }
+
+    // Records appended by another process, collected on the persistence thread
+    private final class RemoteChanges implements TransactionJournal.ReplaySink {
+        private final List<Consumer<TransactionStore>> changes = new ArrayList<>();
+
+        @Override
+        public void append(TransactionStore batch) {
+            changes.add(s -> s.addAll(batch));
+        }
+
+        @Override
+        public void set(int index, Transaction t) {
+            changes.add(s -> s.set(index, t));
+        }
+
+        @Override
+        public void remove(int index) {
+            changes.add(s -> s.remove(index));
+        }
+
+        @Override
+        public void insert(int index, Transaction t) {
+            changes.add(s -> s.insert(index, t));
+        }
+
+        boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        // On the store's thread. Queued local edits were made without these records;
+        // the next drain rebases them instead, so the store is left alone here.
+        void apply(long through) {
+            if (!recording || unwrittenEdits.get() > 0) return;
+            recording = false;
+            try {
+                for (Consumer<TransactionStore> change : changes) change.accept(store);
+            } finally {
+                recording = true;
+            }
+            appliedThrough = through;
+        }
+    }
+}
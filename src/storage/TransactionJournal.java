@@ -0,0 +1,861 @@
+package storage;
+
+import diagnostics.Metrics;
+import model.Transaction;
+import model.TransactionRows;
+import model.TransactionStore;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Snapshot plus append-only journal. Every mutation is appended as a small
+ * length-prefixed record, so a save costs O(1) instead of rewriting the file.
+ * Once enough records pile up the journal is rotated and folded into a new
+ * snapshot on a background thread. Snapshots use the memory-mapped
+ * {@link MappedTransactionFile} format; older snapshots are migrated to it the
+ * first time they are loaded. Each record carries a sequence number and
+ * the snapshot remembers the last one it contains, so replay can skip records
+ * that were already compacted even if a rotation was interrupted. With a
+ * {@link PartitionArchive}, rows older than the last few months are moved into
+ * month partitions on load, so the live snapshot only holds recent data.
+ * Records hold amounts as cents and strings as length-prefixed UTF-8; a
+ * record length that runs past the end of the file is a torn tail.
+ * <p>
+ * Several processes may share the files. Writers serialize on an exclusive
+ * lock of {@code <snapshot>.lock}, and catch up with what others appended
+ * before appending themselves ({@link #catchUp}). The lock file also holds a
+ * generation number that is bumped whenever the state is rewritten rather than
+ * appended to (archiving, batch imports); a follower that sees it change loads
+ * again instead of tailing.
+ */
+public class TransactionJournal implements Closeable {
+    private static final byte OP_ADD = 1;
+    private static final byte OP_SET = 2;
+    private static final byte OP_REMOVE = 3;
+    private static final byte OP_INSERT = 4;
+    // The same with the amount in cents and strings as length-prefixed UTF-8; 1 to 4 are still read
+    private static final byte OP_ADD_CENTS = 5;
+    private static final byte OP_SET_CENTS = 6;
+    private static final byte OP_INSERT_CENTS = 7;
+    private static final int RECORD_HEADER = 9; // op and sequence
+
+    private static final int STREAMED_SNAPSHOT_MAGIC = 0x5350444E; // "SPDN"
+    private static final int COMPACT_THRESHOLD = 10_000;
+    private static final int FIRST_BATCH = 500;
+    private static final int BATCH = 20_000;
+    // The current month and the three before it, which covers every dashboard period except "This year"
+    private static final int RETAINED_MONTHS = 4;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File rotatedFile;
+    private final File lockFile;
+    private final PartitionArchive archive;
+    private final ReentrantLock processLock = new ReentrantLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(128);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private DataOutputStream out;
+    private long sequence;
+    private int recordsSinceSnapshot;
+    private Future<?> pendingCompaction;
+    private FileChannel lockChannel; // guarded by processLock, like fileLock
+    private FileLock fileLock;
+    private long generation;
+    private Object journalKey; // identity of the journal file journalPosition refers to
+    private long journalPosition; // bytes of the journal already read or written by this process
+    private long foreignSequence; // last sequence appended by another process
+    private boolean contiguous;
+
+    /**
+     * Receives the replayed contents in order. Consecutive adds arrive as
+     * batches; the first batch is kept small so a UI can show something early.
+     */
+    public interface ReplaySink {
+        void append(TransactionStore batch);
+        void set(int index, Transaction t);
+        void remove(int index);
+        void insert(int index, Transaction t);
+        default void progress(int loaded, int expected) {}
+    }
+
+    public TransactionJournal(File snapshotFile) {
+        this(snapshotFile, null);
+    }
+
+    /** A journal whose older months are moved into {@code archive} on every load. */
+    public TransactionJournal(File snapshotFile, PartitionArchive archive) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = new File(snapshotFile.getPath() + ".journal");
+        this.rotatedFile = new File(snapshotFile.getPath() + ".journal.old");
+        this.lockFile = new File(snapshotFile.getPath() + ".lock");
+        this.archive = archive;
+    }
+
+    public File snapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Reads the snapshot and journal files through once without decoding
+     * them, so that a {@link #load} starting soon after finds them in the page
+     * cache. Needs no lock; a file replaced meanwhile was merely read in vain.
+     */
+    public void prefetch() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        for (File file : new File[] { snapshotFile, rotatedFile, journalFile }) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                while (channel.read(buffer) > 0) {
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                // Missing or unreadable; load reports what matters
+            }
+        }
+    }
+
+    /** Archive that old months are moved into, or null. */
+    public PartitionArchive archive() {
+        return archive;
+    }
+
+    /**
+     * Takes the lock every process writing these files shares: an exclusive
+     * {@link FileLock} on the lock file, reentrant within this process. Close
+     * the result to release it. Appends, compaction and {@link #catchUp} need
+     * it; {@link #load} takes it itself.
+     */
+    public Closeable lock() throws IOException {
+        processLock.lock();
+        boolean locked = false;
+        try {
+            if (processLock.getHoldCount() == 1) {
+                if (lockChannel == null) {
+                    lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                }
+                fileLock = lockChannel.lock();
+            }
+            locked = true;
+        } finally {
+            if (!locked) processLock.unlock();
+        }
+        return () -> {
+            try {
+                if (processLock.getHoldCount() == 1) {
+                    fileLock.release();
+                    fileLock = null;
+                }
+            } finally {
+                processLock.unlock();
+            }
+        };
+    }
+
+    /** Highest sequence another process appended that {@link #catchUp} has read. */
+    public synchronized long foreignSequence() {
+        return foreignSequence;
+    }
+
+    public synchronized long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Delivers the records other processes appended since this journal last
+     * read or wrote, following the journal through a rotation by another
+     * process, and truncates a record torn by a writer that died. Returns
+     * false if the records cannot be followed: the state was rewritten, or
+     * records were compacted into a snapshot before they could be read. The
+     * caller should then load again. Requires the lock.
+     */
+    public synchronized boolean catchUp(ReplaySink sink) throws IOException {
+        requireLock();
+        if (readGeneration() != generation) {
+            return false;
+        }
+        Object key = identity(journalFile);
+        if (key != null && key.equals(journalKey) && journalFile.length() == journalPosition) {
+            return true;
+        }
+
+        long before = sequence;
+        contiguous = true;
+        Batch batch = new Batch(sink);
+        if (key == null || !key.equals(journalKey) || journalFile.length() < journalPosition) {
+            // Rotated by another process; the part not read yet is in the rotated file or already in the snapshot
+            closeStream();
+            journalPosition = 0;
+            if (rotatedFile.exists()) {
+                replay(rotatedFile, 0, batch, sequence);
+            }
+        }
+        if (key != null) {
+            journalPosition = replay(journalFile, journalPosition, batch, sequence);
+            if (journalFile.length() > journalPosition) {
+                try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                    raf.setLength(journalPosition);
+                }
+            }
+        }
+        batch.flush();
+        if (out == null) {
+            openStream();
+        }
+        if (sequence > before) {
+            foreignSequence = sequence;
+        }
+        return contiguous && MappedTransactionFile.readSequence(snapshotFile) <= sequence;
+    }
+
+    /**
+     * Reads the persisted state into a new store, without archiving, and picks
+     * up appending where the files end. Used to rebase edits made against a
+     * state another process has moved on from. Requires the lock.
+     */
+    public synchronized TransactionStore reread() throws IOException {
+        requireLock();
+        TransactionStore store = new TransactionStore();
+        read(into(store), false, true);
+        return store;
+    }
+
+    /**
+     * Replaces the persisted state with {@code contents} in one go: a new
+     * snapshot at the current sequence and an empty journal. Other processes
+     * following the files load again. Requires the lock.
+     */
+    public synchronized void rewrite(TransactionStore contents) throws IOException {
+        requireLock();
+        closeStream();
+        writeSnapshot(contents, sequence);
+        Files.deleteIfExists(rotatedFile.toPath());
+        Files.deleteIfExists(journalFile.toPath());
+        recordsSinceSnapshot = 0;
+        bumpGeneration();
+        openStream();
+    }
+
+    /** Deletes row {@code index} of an archived month; other processes load again. Requires the lock. */
+    public synchronized void removeArchived(YearMonth month, int index) throws IOException {
+        requireLock();
+        archive.remove(month, index);
+        bumpGeneration();
+    }
+
+    /** Replaces the contents of {@code store} with the persisted state. */
+    public void load(TransactionStore store) throws IOException {
+        store.clear();
+        load(into(store));
+    }
+
+    /**
+     * Streams the snapshot and then the rotated and live journals into
+     * {@code sink}, and reopens the journal for appending. A torn record at the
+     * end of the live journal (e.g. after a crash mid-write) is truncated away.
+     * With an archive, the state is first rebuilt off to the side, old months
+     * are archived and the rest is written as a fresh snapshot before being
+     * handed to {@code sink}. Other processes are kept out meanwhile.
+     */
+    public void load(ReplaySink sink) throws IOException {
+        awaitCompaction();
+        try (Closeable ignored = lock()) {
+            read(sink, true, true);
+        }
+    }
+
+    /**
+     * Replaces the contents of {@code store} with the persisted state and
+     * leaves every file as it is: no months are archived, a torn record at the
+     * end of the journal is skipped rather than truncated, the journal is not
+     * reopened for appending and the archive's manifest is not repaired. For
+     * runs that only report; nothing may be appended afterwards.
+     */
+    public void loadReadOnly(TransactionStore store) throws IOException {
+        store.clear();
+        // Nothing was ever saved, and there is no directory to hold the lock file
+        if (!snapshotFile.getAbsoluteFile().getParentFile().isDirectory()) return;
+        awaitCompaction();
+        try (Closeable ignored = lock()) {
+            read(into(store), false, false);
+            if (archive != null) archive.reload(false);
+        }
+    }
+
+    private synchronized void read(ReplaySink sink, boolean archiveOld, boolean writable) throws IOException {
+        closeStream();
+        long snapshotSequence = 0;
+        TransactionStore staged = archive == null || !archiveOld ? null : new TransactionStore();
+        Batch batch = new Batch(staged == null ? sink : into(staged));
+
+        if (snapshotFile.exists()) {
+            snapshotSequence = readSnapshot(batch);
+        }
+
+        sequence = snapshotSequence;
+        recordsSinceSnapshot = 0;
+        if (rotatedFile.exists()) {
+            replay(rotatedFile, 0, batch, snapshotSequence);
+        }
+        long validLength = journalFile.exists() ? replay(journalFile, 0, batch, snapshotSequence) : 0;
+        batch.flush();
+        if (writable && journalFile.exists() && journalFile.length() > validLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+
+        generation = readGeneration();
+        foreignSequence = 0;
+        if (staged != null) {
+            archive.reload();
+            // A snapshot lost after archiving must not reuse sequences the partitions already hold
+            sequence = Math.max(sequence, archive.sequence());
+            Batch delivery = new Batch(sink);
+            delivery.expected = staged.size();
+            delivery.addRange(archiveOldMonths(staged));
+            delivery.flush();
+        }
+
+        if (writable) openStream();
+    }
+
+    /**
+     * Moves rows older than {@link #RETAINED_MONTHS} into the archive and makes
+     * the remainder the new snapshot. The partitions are written before the
+     * snapshot, and they skip a merge they already hold, so a crash in between
+     * only repeats the work on the next load.
+     */
+    private TransactionStore archiveOldMonths(TransactionStore staged) throws IOException {
+        int cutoff = (int) YearMonth.now().minusMonths(RETAINED_MONTHS - 1).atDay(1).toEpochDay();
+        TransactionStore kept = new TransactionStore();
+        for (int row = 0; row < staged.size(); row++) {
+            if (staged.getEpochDay(row) < cutoff) continue;
+            kept.add(staged.isIncome(row), kept.categories().intern(staged.getCategory(row)), staged.getCents(row),
+                    staged.getEpochDay(row), kept.notes().intern(staged.getNotes(row)));
+        }
+        if (kept.size() == staged.size()) {
+            return staged;
+        }
+        archive.archive(staged, cutoff, sequence);
+        writeSnapshot(kept, sequence);
+        Files.deleteIfExists(rotatedFile.toPath());
+        Files.deleteIfExists(journalFile.toPath());
+        recordsSinceSnapshot = 0;
+        bumpGeneration();
+        return kept;
+    }
+
+    public synchronized void appendAdd(Transaction t) throws IOException {
+        beginRecord(OP_ADD_CENTS);
+        writeTransaction(t);
+        commitRecord();
+    }
+
+    public synchronized void appendSet(int index, Transaction t) throws IOException {
+        beginRecord(OP_SET_CENTS);
+        record.writeInt(index);
+        writeTransaction(t);
+        commitRecord();
+    }
+
+    public synchronized void appendRemove(int index) throws IOException {
+        beginRecord(OP_REMOVE);
+        record.writeInt(index);
+        commitRecord();
+    }
+
+    public synchronized void appendInsert(int index, Transaction t) throws IOException {
+        beginRecord(OP_INSERT_CENTS);
+        record.writeInt(index);
+        writeTransaction(t);
+        commitRecord();
+    }
+
+    /** Pushes appended records to the operating system. */
+    public synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+            journalPosition = journalFile.length();
+        }
+    }
+
+    public synchronized boolean needsCompaction() {
+        return recordsSinceSnapshot >= COMPACT_THRESHOLD;
+    }
+
+    /**
+     * Rotates the live journal and writes {@code contents} as the new snapshot in
+     * the background. The caller must pass a copy (see {@link TransactionStore#copy()})
+     * that reflects every record appended so far, including those of other
+     * processes, and must not modify it afterwards. Returns {@code null} if a
+     * compaction is already running. Requires the lock; the background part
+     * takes it again, and skips the snapshot if another process has written a
+     * newer one or rewritten the state meanwhile.
+     */
+    public synchronized Future<?> compact(TransactionStore contents) throws IOException {
+        requireLock();
+        if (pendingCompaction != null && !pendingCompaction.isDone()) {
+            return null;
+        }
+        closeStream();
+        if (journalFile.exists()) {
+            if (rotatedFile.exists()) {
+                appendFile(journalFile, rotatedFile);
+                Files.delete(journalFile.toPath());
+            } else {
+                Files.move(journalFile.toPath(), rotatedFile.toPath());
+            }
+        }
+        openStream();
+        recordsSinceSnapshot = 0;
+
+        long snapshotSequence = sequence;
+        long snapshotGeneration = generation;
+        pendingCompaction = compactor.submit(() -> {
+            try (Closeable ignored = lock()) {
+                if (readGeneration() != snapshotGeneration) return null;
+                if (MappedTransactionFile.readSequence(snapshotFile) < snapshotSequence) {
+                    writeSnapshot(contents, snapshotSequence);
+                }
+                // Another process may have rotated newer records into the file since
+                if (lastSequence(rotatedFile) <= snapshotSequence) {
+                    Files.deleteIfExists(rotatedFile.toPath());
+                }
+            }
+            return null;
+        });
+        return pendingCompaction;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeStream();
+        if (lockChannel != null) {
+            lockChannel.close();
+        }
+    }
+
+    private void beginRecord(byte op) throws IOException {
+        requireLock();
+        if (out == null) {
+            throw new IOException("Journal is not open");
+        }
+        recordBytes.reset();
+        record.writeByte(op);
+        record.writeLong(sequence + 1);
+    }
+
+    private void commitRecord() throws IOException {
+        out.writeInt(recordBytes.size());
+        recordBytes.writeTo(out);
+        sequence++;
+        recordsSinceSnapshot++;
+        Metrics.counter("journal.records").increment();
+    }
+
+    // Strings of any length, unlike writeUTF, so a record can always be written once the store has changed
+    private void writeTransaction(Transaction t) throws IOException {
+        writeString(t.getType());
+        writeString(t.getCategory());
+        record.writeLong(TransactionStore.toCents(t.getAmount()));
+        record.writeLong(t.getDate().toEpochDay());
+        writeString(t.getNotes() == null ? "" : t.getNotes());
+    }
+
+    private void writeString(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        record.writeInt(bytes.length);
+        record.write(bytes);
+    }
+
+    private static Transaction readTransaction(DataInputStream in, boolean cents) throws IOException {
+        if (!cents) {
+            String type = in.readUTF();
+            String category = in.readUTF();
+            double amount = in.readDouble();
+            LocalDate date = LocalDate.ofEpochDay(in.readLong());
+            String notes = in.readUTF();
+            return new Transaction(type, category, amount, date, notes);
+        }
+        String type = readString(in);
+        String category = readString(in);
+        long amountCents = in.readLong();
+        LocalDate date = LocalDate.ofEpochDay(in.readLong());
+        String notes = readString(in);
+        return new Transaction(type, category, amountCents / 100.0, date, notes);
+    }
+
+    // The record is already in memory, so a length beyond its end is corruption rather than an allocation
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) throw new EOFException("String length " + length + " past the record");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Feeds the snapshot into {@code batch} and returns the sequence number it covers. */
+    private long readSnapshot(Batch batch) throws IOException {
+        int magic;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(snapshotFile))) {
+            magic = in.readInt();
+        } catch (EOFException empty) {
+            return 0;
+        }
+        if (magic != MappedTransactionFile.MAGIC) {
+            migrateSnapshot();
+        }
+        MappedTransactionFile mapped = MappedTransactionFile.open(snapshotFile);
+        batch.expected = mapped.size();
+        batch.addRange(mapped);
+        return mapped.sequence();
+    }
+
+    /**
+     * One-time conversion of a serialized-List or streamed snapshot to the mapped
+     * format. The original file is kept next to it with a .bak suffix.
+     */
+    private void migrateSnapshot() throws IOException {
+        TransactionStore contents = new TransactionStore();
+        Batch batch = new Batch(new ReplaySink() {
+            @Override
+            public void append(TransactionStore rows) {
+                contents.addAll(rows);
+            }
+
+            @Override
+            public void set(int index, Transaction t) {
+                throw new IllegalStateException("Snapshots contain no updates");
+            }
+
+            @Override
+            public void remove(int index) {
+                throw new IllegalStateException("Snapshots contain no removals");
+            }
+
+            @Override
+            public void insert(int index, Transaction t) {
+                throw new IllegalStateException("Snapshots contain no insertions");
+            }
+        });
+
+        long snapshotSequence;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+            in.mark(4);
+            if (in.readInt() == STREAMED_SNAPSHOT_MAGIC) {
+                snapshotSequence = readStreamedSnapshot(in, batch);
+            } else {
+                in.reset();
+                snapshotSequence = readLegacySnapshot(in, batch);
+            }
+        }
+        batch.flush();
+
+        Files.copy(snapshotFile.toPath(), new File(snapshotFile.getPath() + ".bak").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        writeSnapshot(contents, snapshotSequence);
+    }
+
+    private long readStreamedSnapshot(DataInputStream in, Batch batch) throws IOException {
+        int version = in.readInt();
+        if (version != 1) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        long snapshotSequence = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            boolean income = in.readBoolean();
+            String category = in.readUTF();
+            long cents = in.readLong();
+            int epochDay = in.readInt();
+            String notes = in.readUTF();
+            batch.add(income, category, cents, epochDay, notes);
+        }
+        return snapshotSequence;
+    }
+
+    // The original format: one serialized List, optionally followed by a sequence number.
+    private long readLegacySnapshot(InputStream in, Batch batch) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        try {
+            @SuppressWarnings("unchecked")
+            List<Transaction> loaded = (List<Transaction>) ois.readObject();
+            for (Transaction t : loaded) {
+                batch.add(t);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unrecognized snapshot " + snapshotFile, e);
+        }
+        try {
+            return ois.readLong();
+        } catch (EOFException noSequence) {
+            return 0;
+        }
+    }
+
+    /**
+     * Applies the records of {@code file} from byte {@code start} on, skipping
+     * those up to {@code snapshotSequence}, and returns the length of its
+     * intact prefix. A record length that does not fit in what is left of the
+     * file ends the prefix like a short read, since a torn write can leave any
+     * bytes there.
+     */
+    private long replay(File file, long start, Batch batch, long snapshotSequence) throws IOException {
+        long position = start;
+        FileInputStream stream = new FileInputStream(file);
+        long fileLength = stream.getChannel().size();
+        stream.getChannel().position(start);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (true) {
+                int length;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    if (!isRecordLength(length, fileLength - position - 4)) break;
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException torn) {
+                    break;
+                }
+                position += 4 + length;
+
+                DataInputStream r = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = r.readByte();
+                long seq = r.readLong();
+                if (seq <= snapshotSequence) {
+                    continue;
+                }
+                boolean cents = op >= OP_ADD_CENTS;
+                try {
+                    switch (op) {
+                        case OP_ADD, OP_ADD_CENTS -> batch.add(readTransaction(r, cents));
+                        case OP_SET, OP_SET_CENTS -> {
+                            int index = r.readInt();
+                            batch.flush();
+                            batch.sink.set(index, readTransaction(r, cents));
+                        }
+                        case OP_REMOVE -> {
+                            batch.flush();
+                            batch.sink.remove(r.readInt());
+                        }
+                        case OP_INSERT, OP_INSERT_CENTS -> {
+                            int index = r.readInt();
+                            batch.flush();
+                            batch.sink.insert(index, readTransaction(r, cents));
+                        }
+                        default -> throw new IOException("Corrupt journal record at offset " + (position - 4 - length));
+                    }
+                } catch (EOFException e) {
+                    throw new IOException("Corrupt journal record at offset " + (position - 4 - length), e);
+                }
+                if (seq != sequence + 1) {
+                    contiguous = false;
+                }
+                sequence = seq;
+                recordsSinceSnapshot++;
+            }
+        }
+        return position;
+    }
+
+    private void writeSnapshot(TransactionStore contents, long snapshotSequence) throws IOException {
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (Metrics.Timing ignored = Metrics.time("snapshot.write").rows(contents.size())) {
+            MappedTransactionFile.write(contents, snapshotSequence, tmp);
+        }
+        try {
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Highest sequence in an intact prefix of a journal file; 0 if there is none
+    private static long lastSequence(File file) throws IOException {
+        long last = 0;
+        long remaining = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                remaining -= 4;
+                if (!isRecordLength(length, remaining)) return last;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                remaining -= length;
+                last = Math.max(last, ByteBuffer.wrap(payload, 1, 8).getLong());
+            }
+        } catch (FileNotFoundException | EOFException end) {
+            return last;
+        }
+    }
+
+    private static boolean isRecordLength(int length, long remaining) {
+        return length >= RECORD_HEADER && length <= remaining;
+    }
+
+    private void requireLock() {
+        if (!processLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("The journal lock is not held");
+        }
+    }
+
+    private long readGeneration() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        while (buffer.hasRemaining() && lockChannel.read(buffer, buffer.position()) > 0) {
+        }
+        return buffer.hasRemaining() ? 0 : buffer.getLong(0);
+    }
+
+    private void bumpGeneration() throws IOException {
+        generation = readGeneration() + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(8).putLong(0, generation);
+        while (buffer.hasRemaining()) {
+            lockChannel.write(buffer, buffer.position());
+        }
+        lockChannel.force(false);
+    }
+
+    // fileKey() is null on some platforms; the creation time tells files apart well enough there
+    private static Object identity(File file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static void appendFile(File from, File to) throws IOException {
+        try (InputStream in = new FileInputStream(from); OutputStream o = new FileOutputStream(to, true)) {
+            in.transferTo(o);
+        }
+    }
+
+    // Called without the lock, which the background compaction needs in order to finish
+    private void awaitCompaction() throws IOException {
+        Future<?> pending;
+        synchronized (this) {
+            pending = pendingCompaction;
+            pendingCompaction = null;
+        }
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("Snapshot compaction failed", e.getCause());
+        }
+    }
+
+    private static ReplaySink into(TransactionStore store) {
+        return new ReplaySink() {
+            @Override
+            public void append(TransactionStore batch) {
+                store.addAll(batch);
+            }
+
+            @Override
+            public void set(int index, Transaction t) {
+                store.set(index, t);
+            }
+
+            @Override
+            public void remove(int index) {
+                store.remove(index);
+            }
+
+            @Override
+            public void insert(int index, Transaction t) {
+                store.insert(index, t);
+            }
+        };
+    }
+
+    private void openStream() throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+        journalKey = identity(journalFile);
+        journalPosition = journalFile.length();
+    }
+
+    private void closeStream() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    // Collects consecutive adds into columnar batches before handing them to the sink.
+    private static final class Batch {
+        final ReplaySink sink;
+        TransactionStore rows = new TransactionStore();
+        int limit = FIRST_BATCH;
+        int loaded;
+        int expected;
+
+        Batch(ReplaySink sink) {
+            this.sink = sink;
+        }
+
+        void add(Transaction t) {
+            rows.add(t);
+            if (rows.size() >= limit) flush();
+        }
+
+        void add(boolean income, String category, long cents, int epochDay, String notes) {
+            rows.add(income, rows.categories().intern(category), cents, epochDay, rows.notes().intern(notes));
+            if (rows.size() >= limit) flush();
+        }
+
+        void addRange(TransactionRows source) {
+            flush();
+            for (int from = 0, to; from < source.size(); from = to) {
+                to = Math.min(source.size(), from + limit);
+                rows.addAll(source, from, to);
+                flush();
+            }
+        }
+
+        void flush() {
+            if (rows.size() == 0) return;
+            loaded += rows.size();
+            sink.append(rows);
+            sink.progress(loaded, Math.max(expected, loaded));
+            rows = new TransactionStore();
+            limit = BATCH;
+        }
+    }
+}
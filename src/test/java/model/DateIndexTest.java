@@ -0,0 +1,108 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Every check is against a plain pass over the store
+class DateIndexTest {
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @Test
+    void followsEditsAnywhereInTheStore() {
+        Random random = new Random(42);
+        TransactionStore store = new TransactionStore();
+        DateIndex index = new DateIndex(store);
+        for (int i = 0; i < 500; i++) store.add(transaction(random));
+        for (int step = 0; step < 400; step++) {
+            int size = store.size();
+            switch (random.nextInt(6)) {
+                case 0 -> store.add(transaction(random));
+                case 1 -> store.insert(random.nextInt(size + 1), transaction(random));
+                case 2 -> store.set(random.nextInt(size), transaction(random));
+                case 3 -> store.remove(random.nextInt(size));
+                case 4 -> {
+                    int from = random.nextInt(size);
+                    store.removeRange(from, Math.min(size, from + random.nextInt(20)));
+                }
+                default -> {
+                    TransactionStore batch = new TransactionStore();
+                    for (int i = random.nextInt(30); i > 0; i--) batch.add(transaction(random));
+                    store.insertAll(random.nextInt(size + 1), batch, 0, batch.size());
+                }
+            }
+            if (step % 50 == 0) assertMatches(store, index);
+        }
+        assertMatches(store, index);
+    }
+
+    @Test
+    void repeatedInsertsAtOnePlaceKeepTheirOrder() {
+        Random random = new Random(7);
+        TransactionStore store = new TransactionStore();
+        DateIndex index = new DateIndex(store);
+        for (int i = 0; i < 100; i++) store.add(transaction(random));
+        // Each insert halves the label gap before row 50 and row 0, so both run out and get spread again
+        for (int i = 0; i < 300; i++) {
+            store.insert(50, transaction(random));
+            store.insert(0, transaction(random));
+        }
+        assertMatches(store, index);
+    }
+
+    @Test
+    void emptiesAndRefills() {
+        Random random = new Random(3);
+        TransactionStore store = new TransactionStore();
+        DateIndex index = new DateIndex(store);
+        for (int i = 0; i < 50; i++) store.add(transaction(random));
+        store.clear();
+        assertTrue(index.isEmpty());
+        assertNull(index.firstDate());
+        for (int i = 0; i < 50; i++) store.add(transaction(random));
+        assertMatches(store, index);
+    }
+
+    private static void assertMatches(TransactionStore store, DateIndex index) {
+        List<Integer> byDate = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) byDate.add(row);
+        byDate.sort(Comparator.comparingInt(store::getEpochDay));
+        long balance = 0;
+        for (int row : byDate) {
+            balance += store.isIncome(row) ? store.getCents(row) : -store.getCents(row);
+            assertEquals(balance, index.balanceAtRow(row), "row " + row);
+        }
+        assertEquals(store.getDate(byDate.get(0)), index.firstDate());
+        assertEquals(store.getDate(byDate.get(byDate.size() - 1)), index.lastDate());
+
+        int fromDay = (int) START.plusDays(10).toEpochDay();
+        int toDay = (int) START.plusDays(20).toEpochDay();
+        List<Integer> expected = new ArrayList<>();
+        long expense = 0;
+        for (int row : byDate) {
+            int day = store.getEpochDay(row);
+            if (day < fromDay || day > toDay) continue;
+            expected.add(row);
+            if (!store.isIncome(row)) expense += store.getCents(row);
+        }
+        List<Integer> visited = new ArrayList<>();
+        index.forEachRow(fromDay, toDay, visited::add);
+        assertEquals(expected, visited);
+        assertEquals(expense, index.sumCents(false, fromDay, toDay));
+        assertEquals(expected.size(), index.count(fromDay, toDay));
+    }
+
+    // Few days, so most days hold many rows
+    private static Transaction transaction(Random random) {
+        return new Transaction(random.nextInt(3) == 0 ? TransactionStore.INCOME : TransactionStore.EXPENSE, "Food",
+                random.nextInt(10_000) / 100.0, START.plusDays(random.nextInt(40)), "");
+    }
+}
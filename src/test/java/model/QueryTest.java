@@ -0,0 +1,177 @@
+package model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Every query runs three ways, seeded from the indexes, scanned, and scanned over a PersistentRows copy,
+// and each must match a plain predicate over the transactions
+class QueryTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 30);
+    private static final String[] CATEGORIES = {
+            "Food", "Food" + CategoryTree.SEPARATOR + "Groceries", "Transport", "Salary", "Eating Out" };
+    private static final String[] NOTES = { "coffee beans", "bus ticket", "", "Weekly COFFEE run", "rent" };
+
+    private static TransactionStore store;
+    private static DateIndex dateIndex;
+    private static TextIndex textIndex;
+    private static List<Transaction> transactions;
+
+    @BeforeAll
+    static void setUp() {
+        store = new TransactionStore();
+        dateIndex = new DateIndex(store);
+        textIndex = new TextIndex(store);
+        for (int i = 0; i < 2000; i++) {
+            store.add(new Transaction(i % 5 == 3 ? TransactionStore.INCOME : TransactionStore.EXPENSE,
+                    CATEGORIES[i % CATEGORIES.length], (i * 37 % 1000) + (i % 4) * 0.25,
+                    LocalDate.of(2024, 1, 1).plusDays(i * 7 % 400), NOTES[i * 3 % NOTES.length]));
+        }
+        transactions = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) transactions.add(store.get(row));
+    }
+
+    @Test
+    void normalizedFormSpellsOutKeywordsAndValues() {
+        assertEquals("type = Expense AND category = food", Query.parse("EXPENSE and category=food").toString());
+        assertEquals("type = Income OR NOT amount >= 12.50", Query.parse("income or not amount >= 12.5").toString());
+        assertEquals("NOT type = Income", Query.parse("type != income").toString());
+        assertEquals("category in (Food, Eating Out) AND date in last 3 months",
+                Query.parse("category in (Food, Eating Out) date in last 3 months").toString());
+        assertEquals("notes contains \"coffee beans\" AND \"coffee\"",
+                Query.parse("notes contains \"coffee beans\" coffee").toString());
+        assertEquals("amount between 10.00 and 20.00", Query.parse("amount between 10 and 20").toString());
+        // Keywords are only keywords where the grammar expects them
+        assertEquals("\"last\" AND \"0\" AND \"days\"", Query.parse("last 0 days").toString());
+    }
+
+    @Test
+    void errorsNameTheColumn() {
+        assertError("Enter a filter (column 1).", "");
+        assertError("Expected an amount but found the end (column 9).", "amount >");
+        assertError("Expected an amount with at most two decimals but found \"1.234\" (column 10).", "amount > 1.234");
+        assertError("Expected \")\" but found the end (column 18).", "category in (Food");
+        assertError("Expected \")\" but found the end (column 8).", "(income");
+        assertError("Unexpected \")\" (column 5).", "foo )");
+        assertError("Expected a date like 2025-01-31, 2025-01 or 2025 but found \"next\" (column 9).", "date in next week");
+        assertError("Expected a date like 2025-01-31, 2025-01 or 2025 but found \"2024-13\" (column 8).", "date = 2024-13");
+        assertError("Expected a number above 0 (column 14).", "date in last 0 days");
+    }
+
+    @Test
+    void typeAndCategoryTerms() {
+        assertMatches("expense", t -> !income(t));
+        assertMatches("type != income", t -> !income(t));
+        assertMatches("category = food", t -> inCategory(t, "Food"));
+        assertMatches("category = \"food › groceries\"", t -> inCategory(t, "Food › Groceries"));
+        assertMatches("category != food", t -> !inCategory(t, "Food"));
+        assertMatches("category in (Transport, Salary)", t -> inCategory(t, "Transport") || inCategory(t, "Salary"));
+    }
+
+    @Test
+    void amountTerms() {
+        assertMatches("amount > 500", t -> cents(t) > 50000);
+        assertMatches("amount <= 20.25", t -> cents(t) <= 2025);
+        assertMatches("amount = 37.25", t -> cents(t) == 3725);
+        assertMatches("amount between 10 and 20.50", t -> cents(t) >= 1000 && cents(t) <= 2050);
+    }
+
+    @Test
+    void dateTerms() {
+        assertMatches("date in 2024-03", t -> t.getDate().getYear() == 2024 && t.getDate().getMonthValue() == 3);
+        assertMatches("date in 2025", t -> t.getDate().getYear() == 2025);
+        assertMatches("date between 2024-02 and 2024-03",
+                t -> !t.getDate().isBefore(LocalDate.of(2024, 2, 1)) && !t.getDate().isAfter(LocalDate.of(2024, 3, 31)));
+        assertMatches("date < 2024-02-01", t -> t.getDate().isBefore(LocalDate.of(2024, 2, 1)));
+        assertMatches("date >= 2024-12-25", t -> !t.getDate().isBefore(LocalDate.of(2024, 12, 25)));
+        assertMatches("date in last 30 days",
+                t -> t.getDate().isAfter(TODAY.minusDays(30)) && !t.getDate().isAfter(TODAY));
+        assertMatches("date in this month", t -> t.getDate().getYear() == 2024 && t.getDate().getMonthValue() == 6);
+        assertMatches("date in last month", t -> t.getDate().getYear() == 2024 && t.getDate().getMonthValue() == 5);
+        // Dates outside what the store can hold still parse and match nothing or everything
+        assertMatches("date < 1000-01-01", t -> false);
+        assertMatches("date <= 9999-12-31", t -> true);
+    }
+
+    @Test
+    void textTerms() {
+        assertMatches("coffee", t -> contains(t.getCategory(), "coffee") || contains(t.getNotes(), "coffee"));
+        assertMatches("\"ating o\"", t -> contains(t.getCategory(), "ating o") || contains(t.getNotes(), "ating o"));
+        assertMatches("notes contains bus", t -> contains(t.getNotes(), "bus"));
+    }
+
+    @Test
+    void combinedTerms() {
+        assertMatches("expense AND (category = food OR coffee) AND NOT amount < 100",
+                t -> !income(t) && (inCategory(t, "Food") || contains(t.getCategory(), "coffee")
+                        || contains(t.getNotes(), "coffee")) && cents(t) >= 10000);
+        assertMatches("date in 2024-03 income OR category = transport notes contains ticket",
+                t -> t.getDate().getYear() == 2024 && t.getDate().getMonthValue() == 3 && income(t)
+                        || inCategory(t, "Transport") && contains(t.getNotes(), "ticket"));
+    }
+
+    @Test
+    void selectiveTermSeedsFromItsIndex() {
+        Query query = Query.parse("date in 2024-03 expense");
+        String seeded = query.select(store, dateIndex, textIndex, TODAY).explain();
+        assertTrue(seeded.contains("date index -> "), seeded);
+        assertTrue(!seeded.contains("full scan"), seeded);
+
+        String scanned = query.select(store, null, null, TODAY).explain();
+        assertTrue(scanned.contains("no index applies"), scanned);
+
+        // Half the rows or more is cheaper to scan than to seed
+        String broad = Query.parse("date >= 2024-01-01").select(store, dateIndex, textIndex, TODAY).explain();
+        assertTrue(broad.contains("full scan of ") && broad.contains("date index: "), broad);
+    }
+
+    private static void assertMatches(String text, Predicate<Transaction> expected) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < transactions.size(); row++) {
+            if (expected.test(transactions.get(row))) rows.add(row);
+        }
+        Query query = Query.parse(text);
+        assertEquals(rows, rows(query.select(store, dateIndex, textIndex, TODAY)), text + " (indexed)");
+        assertEquals(rows, rows(query.select(store, null, null, TODAY)), text + " (scanned)");
+        assertEquals(rows, rows(query.select(PersistentRows.of(store), null, null, TODAY)), text + " (persistent)");
+    }
+
+    private static List<Integer> rows(Query.Result result) {
+        IntList rows = result.rows();
+        List<Integer> list = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) list.add(rows.get(i));
+        assertEquals(list.size(), result.size());
+        return list;
+    }
+
+    private static void assertError(String expected, String text) {
+        assertEquals(expected, assertThrows(IllegalArgumentException.class, () -> Query.parse(text)).getMessage(), text);
+    }
+
+    private static boolean inCategory(Transaction t, String category) {
+        String name = t.getCategory().toLowerCase(Locale.ROOT);
+        String parent = category.toLowerCase(Locale.ROOT);
+        return name.equals(parent) || name.startsWith(parent + CategoryTree.SEPARATOR);
+    }
+
+    private static boolean contains(String text, String part) {
+        return text.toLowerCase(Locale.ROOT).contains(part.toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean income(Transaction t) {
+        return TransactionStore.INCOME.equals(t.getType());
+    }
+
+    private static long cents(Transaction t) {
+        return Math.round(t.getAmount() * 100);
+    }
+}
@@ -0,0 +1,172 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Steps end when the queued scheduler task runs, which endTurn() does in place of the event queue
+class UndoHistoryTest {
+    private final Queue<Runnable> scheduled = new ArrayDeque<>();
+    private TransactionStore store;
+    private UndoHistory history;
+    private boolean tracking;
+
+    @BeforeEach
+    void setUp() {
+        store = new TransactionStore();
+        for (int i = 0; i < 300; i++) store.add(transaction(i));
+        tracking = true;
+        history = new UndoHistory(store, () -> tracking, scheduled::add, 100);
+    }
+
+    @Test
+    void undoAndRedoRoundTripEachKindOfStep() {
+        List<String> initial = rows(store);
+
+        store.add(transaction(1000));
+        endTurn();
+        List<String> afterAdd = rows(store);
+
+        store.set(5, transaction(2000));
+        store.set(250, transaction(2001));
+        endTurn();
+        List<String> afterEdit = rows(store);
+
+        store.removeRange(10, 150);
+        store.remove(0);
+        endTurn();
+        List<String> afterDelete = rows(store);
+
+        store.insert(3, transaction(3000));
+        endTurn();
+        List<String> afterInsert = rows(store);
+
+        assertEquals("Add Transaction", history.undoDescription());
+        history.undo();
+        assertEquals(afterDelete, rows(store));
+        assertEquals("Delete 141 Transactions", history.undoDescription());
+        history.undo();
+        assertEquals(afterEdit, rows(store));
+        assertEquals("Edit 2 Transactions", history.undoDescription());
+        history.undo();
+        assertEquals(afterAdd, rows(store));
+        history.undo();
+        assertEquals(initial, rows(store));
+        assertFalse(history.canUndo());
+
+        history.redo();
+        assertEquals(afterAdd, rows(store));
+        history.redo();
+        assertEquals(afterEdit, rows(store));
+        history.redo();
+        assertEquals(afterDelete, rows(store));
+        history.redo();
+        assertEquals(afterInsert, rows(store));
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    void stepCoversEverythingChangedInOneTurn() {
+        List<String> initial = rows(store);
+        // Bottom-up single deletes, as the table does them, then an edit and an add
+        for (int row = 200; row >= 100; row -= 10) store.remove(row);
+        store.set(0, transaction(4000));
+        store.add(transaction(4001));
+        endTurn();
+        List<String> changed = rows(store);
+
+        history.undo();
+        assertEquals(initial, rows(store));
+        history.redo();
+        assertEquals(changed, rows(store));
+    }
+
+    @Test
+    void changesAfterAnUndoReplayInOrder() {
+        store.removeRange(0, 100);
+        endTurn();
+        history.undo();
+        // The next change is recorded against the rows the undo restored
+        store.set(50, transaction(5000));
+        endTurn();
+        List<String> edited = rows(store);
+        assertFalse(history.canRedo());
+
+        history.undo();
+        history.redo();
+        assertEquals(edited, rows(store));
+        history.undo();
+        history.undo();
+        history.redo();
+        history.redo();
+        assertEquals(edited, rows(store));
+    }
+
+    @Test
+    void untrackedChangeClearsHistory() {
+        store.add(transaction(6000));
+        endTurn();
+        assertTrue(history.canUndo());
+
+        tracking = false;
+        store.add(transaction(6001));
+        tracking = true;
+        assertFalse(history.canUndo());
+        assertNull(history.undoDescription());
+    }
+
+    @Test
+    void notesCompactionClearsHistory() {
+        store.set(0, transaction(7000));
+        endTurn();
+        assertTrue(store.compactNotes());
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    void persistentRowsFollowEdits() {
+        PersistentRows rows = PersistentRows.of(store);
+        PersistentRows original = rows;
+        store.set(7, transaction(8000));
+        rows = rows.set(7, store.isIncome(7), store.getCategoryId(7), store.getCents(7), store.getEpochDay(7),
+                store.getNoteId(7));
+        store.insert(20, transaction(8001));
+        rows = rows.insert(20, store, 20);
+        store.remove(299);
+        rows = rows.remove(299);
+        rows = rows.append(store, store.size(), store.size());
+
+        assertEquals(rows(store), rows(rows));
+        // Earlier versions are untouched
+        assertEquals(300, original.size());
+        assertEquals(transaction(7).getNotes(), original.getNotes(7));
+    }
+
+    private void endTurn() {
+        while (!scheduled.isEmpty()) scheduled.poll().run();
+    }
+
+    private static Transaction transaction(int i) {
+        return new Transaction(i % 4 == 0 ? TransactionStore.INCOME : TransactionStore.EXPENSE, "Category " + i % 7,
+                10 + i, LocalDate.of(2024, 1, 1).plusDays(i % 200), "note " + i);
+    }
+
+    private static List<String> rows(TransactionRows rows) {
+        List<String> list = new ArrayList<>(rows.size());
+        for (int row = 0; row < rows.size(); row++) {
+            list.add(rows.isIncome(row) + " " + rows.getCategory(row) + " " + rows.getCents(row) + " "
+                    + rows.getEpochDay(row) + " " + rows.getNotes(row));
+        }
+        return list;
+    }
+}
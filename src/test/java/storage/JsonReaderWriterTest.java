@@ -0,0 +1,190 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonReaderWriterTest {
+
+    @Test
+    void escapedAndNonAsciiStringsRoundTrip() throws IOException {
+        String text = "quote \" backslash \\ slash / newline \n return \r tab \t bell \u0007 unit \u001f"
+                + " é ñ 中文 € 😀 𝄞";
+        JsonReader reader = reader(write(text));
+        assertEquals(text, reader.nextString());
+    }
+
+    @Test
+    void longStringsCrossTheReadBuffer() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40_000; i++) text.append(i % 3 == 0 ? "é" : i % 3 == 1 ? "😀" : "a\"");
+        assertEquals(text.toString(), reader(write(text.toString())).nextString());
+    }
+
+    @Test
+    void loneSurrogateIsWrittenAsReplacementCharacter() throws IOException {
+        assertEquals("a\uFFFDb\uFFFD", reader(write("a\uD83Db\uDE00")).nextString());
+    }
+
+    @Test
+    void unicodeEscapesDecodeIncludingSurrogatePairs() throws IOException {
+        assertEquals("A é 😀 /", reader("\"\\u0041 \\u00e9 \\ud83d\\ude00 \\/\"").nextString());
+        assertEquals("😀", reader("\"\\uD83D\\uDE00\"").nextString());
+    }
+
+    @Test
+    void wholeNumbersAtTheEdgesOfLong() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonWriter writer = new JsonWriter(Channels.newChannel(out), 0)) {
+            writer.beginArray().value(Long.MIN_VALUE).value(Long.MAX_VALUE).value(0).value(-1).endArray();
+        }
+        JsonReader reader = reader(out.toString(StandardCharsets.UTF_8));
+        reader.beginArray();
+        assertEquals(Long.MIN_VALUE, reader.nextLong());
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        assertEquals(0, reader.nextLong());
+        assertEquals(-1, reader.nextLong());
+        reader.endArray();
+    }
+
+    @Test
+    void wholeNumberOverflowIsASyntaxError() {
+        assertEquals("test:1: number out of range 9223372036854775808",
+                assertThrows(IOException.class, () -> reader("9223372036854775808").nextLong()).getMessage());
+        assertEquals("test:1: number out of range -9223372036854775809",
+                assertThrows(IOException.class, () -> reader("-9223372036854775809").nextLong()).getMessage());
+        assertThrows(IOException.class, () -> reader("1.5").nextLong());
+        assertThrows(IOException.class, () -> reader("1e3").nextLong());
+    }
+
+    @Test
+    void numbersFollowTheJsonGrammar() throws IOException {
+        assertEquals(1500.0, reader("1.5e3").nextDouble());
+        assertEquals(-0.25, reader("-0.25").nextDouble());
+        assertEquals(0.0, reader("0").nextDouble());
+        assertEquals(2e-7, reader("2E-7").nextDouble());
+        for (String bad : new String[] { "01", "-01", "1-2", "--1", "-", "+1", "1.", ".5", "1.5.2", "1e", "1e+", "1ee2", "0x10" }) {
+            assertTrue(readAll("[" + bad + "]").getMessage().startsWith("test:1: "), bad);
+        }
+        JsonReader reader = reader("[-0,10]");
+        reader.beginArray();
+        assertEquals(0, reader.nextLong());
+        assertEquals(10, reader.nextLong());
+    }
+
+    @Test
+    void centsRoundTripExactly() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonWriter writer = new JsonWriter(Channels.newChannel(out), 0)) {
+            writer.beginArray().centsValue(-123405).centsValue(7).centsValue(0).value("19.99").endArray();
+        }
+        assertEquals("[-1234.05,0.07,0.00,\"19.99\"]\n", out.toString(StandardCharsets.UTF_8));
+        JsonReader reader = reader(out.toString(StandardCharsets.UTF_8));
+        reader.beginArray();
+        assertEquals(-123405, reader.nextCents());
+        assertEquals(7, reader.nextCents());
+        assertEquals(0, reader.nextCents());
+        assertEquals(1999, reader.nextCents());
+    }
+
+    @Test
+    void malformedInputReportsTheLine() {
+        assertError("test:2: unterminated string", "[\n\"abc");
+        assertError("test:1: bad escape", "[\"a\\x\"]");
+        assertError("test:1: bad \\u escape", "[\"\\u12g4\"]");
+        assertError("test:2: control character in string", "[\n\"a\tb\"]");
+        assertError("test:3: unexpected character 'x'", "[\n1,\nx]");
+        assertError("test:1: unexpected literal", "[tru]");
+        assertError("test:1: unexpected end of input", "[1,");
+    }
+
+    @Test
+    void malformedUtf8IsRejected() {
+        int[][] sequences = {
+                { 0xC3, '(' },              // missing continuation byte
+                { 0xC0, 0xAF },             // overlong '/'
+                { 0xE0, 0x80, 0xAF },       // overlong '/'
+                { 0xF0, 0x80, 0x80, 0xAF }, // overlong '/'
+                { 0xED, 0xA0, 0x80 },       // U+D800
+                { 0xED, 0xBF, 0xBF },       // U+DFFF
+                { 0xF4, 0x90, 0x80, 0x80 }, // U+110000
+        };
+        for (int[] sequence : sequences) {
+            byte[] bytes = new byte[sequence.length + 4];
+            bytes[0] = '[';
+            bytes[1] = '"';
+            for (int i = 0; i < sequence.length; i++) bytes[2 + i] = (byte) sequence[i];
+            bytes[bytes.length - 2] = '"';
+            bytes[bytes.length - 1] = ']';
+            IOException e = assertThrows(IOException.class, () -> {
+                JsonReader reader = new JsonReader(Channels.newChannel(new ByteArrayInputStream(bytes)), "test");
+                reader.beginArray();
+                reader.nextString();
+            });
+            assertEquals("test:1: malformed UTF-8", e.getMessage());
+        }
+    }
+
+    @Test
+    void shortestUtf8FormsAtEachLengthAreRead() throws IOException {
+        String text = "\u0080\u07FF\u0800\uD7FF\uE000\uFFFF\uD800\uDC00\uDBFF\uDFFF";
+        byte[] quoted = ("[\"" + text + "\"]").getBytes(StandardCharsets.UTF_8);
+        JsonReader reader = new JsonReader(Channels.newChannel(new ByteArrayInputStream(quoted)), "test");
+        reader.beginArray();
+        assertEquals(text, reader.nextString());
+    }
+
+    @Test
+    void skipValueSkipsNestedValues() throws IOException {
+        JsonReader reader = reader("{\"skip\": {\"a\": [1, {\"b\": \"}\"}], \"c\": null}, \"keep\": true}");
+        reader.beginObject();
+        assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        assertEquals("keep", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    @Test
+    void writerRejectsMisuse() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(Channels.newChannel(out), 0);
+        assertThrows(IllegalStateException.class, () -> writer.beginObject().value("no name"));
+        assertThrows(IllegalArgumentException.class, () -> new JsonWriter(Channels.newChannel(out), 0).value(Double.NaN));
+    }
+
+    private static void assertError(String expected, String json) {
+        assertEquals(expected, readAll(json).getMessage(), json);
+    }
+
+    private static IOException readAll(String json) {
+        return assertThrows(IOException.class, () -> {
+            JsonReader reader = reader(json);
+            reader.beginArray();
+            while (reader.hasNext()) reader.skipValue();
+            reader.endArray();
+        }, json);
+    }
+
+    private static String write(String value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonWriter writer = new JsonWriter(Channels.newChannel(out), 0)) {
+            writer.value(value);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(Channels.newChannel(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))), "test");
+    }
+}
@@ -0,0 +1,171 @@
+package storage;
+
+import model.Transaction;
+import model.TransactionStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two journals on the same files stand in for two processes. They take the lock in turn, since
+// file locks held by one JVM through two channels would overlap.
+class TransactionJournalTest {
+    @TempDir
+    File dir;
+
+    @Test
+    void catchUpFollowsRotationByAnotherProcess() throws Exception {
+        File writerFile = new File(dir, "writer/transactions.dat");
+        File followerFile = new File(dir, "follower/transactions.dat");
+        Files.createDirectories(writerFile.getParentFile().toPath());
+        Files.createDirectories(followerFile.getParentFile().toPath());
+
+        TransactionJournal writer = new TransactionJournal(writerFile);
+        TransactionStore written = new TransactionStore();
+        writer.load(written);
+        append(writer, written, transaction("first", 1));
+
+        // The follower's files are copies, so replacing them below changes their identity the way a rename does
+        copy(writerFile, followerFile, ".journal");
+        TransactionJournal follower = new TransactionJournal(followerFile);
+        TransactionStore followed = new TransactionStore();
+        follower.load(followed);
+        assertEquals(List.of("first"), notes(followed));
+
+        try (Closeable ignored = writer.lock()) {
+            writer.appendAdd(transaction("second", 2));
+            written.add(transaction("second", 2));
+            // The background snapshot waits for the lock, so the rotated file is still there to be copied
+            writer.compact(written.copy());
+            writer.appendAdd(transaction("third", 3));
+            writer.flush();
+            copy(writerFile, followerFile, ".journal.old");
+            copy(writerFile, followerFile, ".journal");
+        }
+
+        try (Closeable ignored = follower.lock()) {
+            assertTrue(follower.catchUp(sink(followed)));
+        }
+        assertEquals(List.of("first", "second", "third"), notes(followed));
+        assertEquals(3, follower.foreignSequence());
+        writer.close();
+        follower.close();
+    }
+
+    @Test
+    void catchUpRereadsJournalTruncatedByAnotherProcess() throws Exception {
+        File file = new File(dir, "transactions.dat");
+        TransactionJournal writer = new TransactionJournal(file);
+        writer.load(new TransactionStore());
+        append(writer, null, transaction("first", 1));
+        long firstRecordEnd = new File(file.getPath() + ".journal").length();
+        append(writer, null, transaction("second with a longer note", 2));
+
+        TransactionJournal follower = new TransactionJournal(file);
+        TransactionStore followed = new TransactionStore();
+        follower.load(followed);
+        assertEquals(2, followed.size());
+
+        // Cut back to the first record, below where the follower stopped reading, then append again
+        try (Closeable ignored = writer.lock();
+             RandomAccessFile raf = new RandomAccessFile(file.getPath() + ".journal", "rw")) {
+            raf.setLength(firstRecordEnd);
+        }
+        append(writer, null, transaction("third", 3));
+
+        try (Closeable ignored = follower.lock()) {
+            assertTrue(follower.catchUp(sink(followed)));
+        }
+        // The first record is not delivered twice
+        assertEquals(List.of("first", "second with a longer note", "third"), notes(followed));
+        writer.close();
+        follower.close();
+    }
+
+    @Test
+    void catchUpTruncatesTornRecordAndKeepsFollowing() throws Exception {
+        File file = new File(dir, "transactions.dat");
+        File journal = new File(file.getPath() + ".journal");
+        TransactionJournal writer = new TransactionJournal(file);
+        writer.load(new TransactionStore());
+        TransactionJournal follower = new TransactionJournal(file);
+        TransactionStore followed = new TransactionStore();
+        follower.load(followed);
+
+        append(writer, null, transaction("first", 1));
+        long clean = journal.length();
+        // A writer that died mid-record: a length that runs past the end of the file
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.seek(clean);
+            raf.writeInt(1000);
+            raf.writeByte(5);
+        }
+
+        try (Closeable ignored = follower.lock()) {
+            assertTrue(follower.catchUp(sink(followed)));
+        }
+        assertEquals(clean, journal.length());
+        assertEquals(List.of("first"), notes(followed));
+        writer.close();
+        follower.close();
+    }
+
+    private static void append(TransactionJournal journal, TransactionStore store, Transaction t) throws IOException {
+        try (Closeable ignored = journal.lock()) {
+            journal.catchUp(sink(new TransactionStore()));
+            journal.appendAdd(t);
+            journal.flush();
+        }
+        if (store != null) store.add(t);
+    }
+
+    private static void copy(File from, File to, String suffix) throws IOException {
+        Files.copy(new File(from.getPath() + suffix).toPath(), new File(to.getPath() + suffix).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Transaction transaction(String notes, int day) {
+        return new Transaction(TransactionStore.EXPENSE, "Food", 12.5, LocalDate.now().withDayOfMonth(day), notes);
+    }
+
+    private static List<String> notes(TransactionStore store) {
+        List<String> notes = new ArrayList<>();
+        for (int row = 0; row < store.size(); row++) notes.add(store.getNotes(row));
+        return notes;
+    }
+
+    private static TransactionJournal.ReplaySink sink(TransactionStore store) {
+        return new TransactionJournal.ReplaySink() {
+            @Override
+            public void append(TransactionStore batch) {
+                store.addAll(batch);
+            }
+
+            @Override
+            public void set(int index, Transaction t) {
+                store.set(index, t);
+            }
+
+            @Override
+            public void remove(int index) {
+                store.remove(index);
+            }
+
+            @Override
+            public void insert(int index, Transaction t) {
+                store.insert(index, t);
+            }
+        };
+    }
+}
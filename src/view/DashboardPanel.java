@@ -1,28 +1,124 @@
 package view;
 
-import model.Transaction;
-import org.json.JSONObject;
+import diagnostics.Metrics;
+import model.CategoryTree;
+import model.DateIndex;
+import model.IntList;
+import model.TimeSeries;
+import model.TransactionAggregates;
+import model.TransactionStore;
+import storage.JsonReader;
+import storage.JsonWriter;
+import storage.PartitionArchive;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 public class DashboardPanel extends JPanel {
-    private List<Transaction> transactions;
+    public enum Period {
+        ALL_TIME("All time"),
+        THIS_MONTH("This month"),
+        LAST_30_DAYS("Last 30 days"),
+        LAST_90_DAYS("Last 90 days"),
+        THIS_YEAR("This year");
+
+        private final String label;
+
+        Period(String label) {
+            this.label = label;
+        }
+
+        LocalDate start(LocalDate today) {
+            switch (this) {
+                case THIS_MONTH: return today.withDayOfMonth(1);
+                case LAST_30_DAYS: return today.minusDays(29);
+                case LAST_90_DAYS: return today.minusDays(89);
+                case THIS_YEAR: return today.withDayOfYear(1);
+                default: return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final TransactionStore store;
+    private final TransactionAggregates aggregates;
+    private final DateIndex dateIndex;
+    private final CategoryTree categories;
+    private final PartitionArchive archive;
+    private String filterName; // the saved filter the cards and charts are limited to; null for all rows
+    private Supplier<IntList> filter;
+    private IntList filteredRows; // the filter's rows, until the data changes
+    private JComboBox<Period> periodSelector;
+    private static final Color INCOME_COLOR = new Color(0, 200, 0);
+    private static final Color EXPENSE_COLOR = new Color(220, 20, 60);
+    private static final Color GOAL_COLOR = new Color(255, 215, 0);
+    private static final Color GOAL_LINE_COLOR = new Color(255, 215, 0, 180);
+    private static final Color BAR_COLOR = new Color(100, 181, 246);
+    private static final Color BALANCE_COLOR = new Color(186, 104, 200);
+    private static final int SERIES_BUCKETS_PER_PIXEL = 4;
+    private static final int SERIES_MIN_DAYS = 7;
+    private static final double SERIES_ZOOM_STEP = 0.8;
+    private static final int TOP_MARGIN = 20;
+    private static final int CARD_HEIGHT = 80;
+    private static final int CARD_SPACING = 30;
+    private static final int BAR_WIDTH = 50;
+    private static final int BAR_GAP = 30;
+    private static final int CHART_GAP = 40;
+    private static final int LABEL_HEIGHT = 20;
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy");
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MMMM yyyy");
+
     private Font customFont;
-    private final Map<Rectangle, String> barTooltips = new HashMap<>();
+    private Font cardTitleFont;
+    private Font cardAmountFont;
+    private Font labelFont;
+    private BufferedImage layer;
+    private boolean layerValid;
+    private int[] barLeft = new int[0];
+    private int[] barTop = new int[0];
+    private int barBottom;
+    private String[] barTooltips = new String[0];
+    private int[] barNodes = new int[0]; // the category of each bar; -1 if it has nothing further to show
+    private int shownCategory = CategoryTree.ROOT; // whose subcategories the bars are
+    private Rectangle upBounds = new Rectangle();
+    private TimeSeries series; // day/week/month summaries, rebuilt after a data change
+    private boolean seriesValid;
+    private boolean zoomed; // the time series shows [zoomFromDay, zoomToDay] rather than the period
+    private int zoomFromDay;
+    private int zoomToDay;
+    private Rectangle seriesBounds = new Rectangle();
+    private TimeSeries.Level shownLevel;
+    private int shownFromDay;
+    private int shownToDay;
     private final Color darkBackground = new Color(30, 30, 30);
     private final Color cardBackground = new Color(45, 45, 45);
     private double savingsGoal = 10000;
     private final String SETTINGS_PATH = "settings.json";
+    private static final String[] SETTINGS = { "savingsGoal" };
     private JLabel editIconLabel;
 
-    public DashboardPanel(List<Transaction> transactions) {
-        this.transactions = transactions;
+    public DashboardPanel(TransactionStore store, TransactionAggregates aggregates, DateIndex dateIndex,
+            CategoryTree categories, PartitionArchive archive) {
+        this.store = store;
+        this.aggregates = aggregates;
+        this.dateIndex = dateIndex;
+        this.categories = categories;
+        this.archive = archive;
         setLayout(null);
         setBackground(darkBackground);
         loadFont();
@@ -30,28 +126,99 @@ public class DashboardPanel extends JPanel {
 
         ToolTipManager.sharedInstance().registerComponent(this);
         setupMouseTooltip();
+        setupCategoryDrillDown();
+        setupSeriesZoom();
         addEditButton();
+        addPeriodSelector();
     }
 
     private void setupMouseTooltip() {
         addMouseMotionListener(new MouseAdapter() {
             @Override
             public void mouseMoved(MouseEvent e) {
-                for (Map.Entry<Rectangle, String> entry : barTooltips.entrySet()) {
-                    if (entry.getKey().contains(e.getPoint())) {
-                        setToolTipText(entry.getValue());
-                        return;
-                    }
+                setToolTipText(tooltipAt(e.getPoint()));
+            }
+        });
+    }
+
+    // Clicking a bar or its label shows its subcategories; clicking the category name above the bars goes back up
+    private void setupCategoryDrillDown() {
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (upBounds.contains(e.getPoint())) {
+                    shownCategory = categories.parent(shownCategory);
+                    invalidateLayer();
+                    return;
+                }
+                int bar = barAt(e.getPoint(), true);
+                if (bar >= 0 && barNodes[bar] >= 0) {
+                    shownCategory = barNodes[bar];
+                    invalidateLayer();
                 }
-                setToolTipText(null);
             }
         });
     }
 
+    // Wheel zooms the time series around the pointer, dragging pans it and a double click resets it
+    private void setupSeriesZoom() {
+        MouseAdapter zoom = new MouseAdapter() {
+            private int dragX;
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (shownLevel == null || !seriesBounds.contains(e.getPoint())) return;
+                double factor = Math.pow(SERIES_ZOOM_STEP, -e.getPreciseWheelRotation());
+                double pivot = dayAt(e.getX());
+                showSeries(pivot - (pivot - shownFromDay) * factor, pivot + (shownToDay - pivot) * factor);
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (shownLevel == null || !seriesBounds.contains(e.getPoint())) return;
+                double days = (double) (dragX - e.getX()) * (shownToDay - shownFromDay) / seriesBounds.width;
+                if (Math.abs(days) < 1) return;
+                dragX = e.getX();
+                int span = shownToDay - shownFromDay;
+                int from = (int) Math.round(shownFromDay + days);
+                from = Math.max(series.firstDay(), Math.min(from, series.lastDay() - span));
+                showSeries(from, from + span);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && zoomed && seriesBounds.contains(e.getPoint())) {
+                    zoomed = false;
+                    invalidateLayer();
+                }
+            }
+        };
+        addMouseWheelListener(zoom);
+        addMouseListener(zoom);
+        addMouseMotionListener(zoom);
+    }
+
+    private void showSeries(double fromDay, double toDay) {
+        int from = (int) Math.max(Math.floor(fromDay), series.firstDay());
+        int to = (int) Math.min(Math.ceil(toDay), series.lastDay());
+        if (to - from < SERIES_MIN_DAYS) return;
+        zoomed = true;
+        zoomFromDay = from;
+        zoomToDay = to;
+        invalidateLayer();
+    }
+
+    private double dayAt(int x) {
+        return shownFromDay + (double) (x - seriesBounds.x) * (shownToDay - shownFromDay) / seriesBounds.width;
+    }
+
     private void addEditButton() {
-        ImageIcon icon = new ImageIcon(getClass().getClassLoader().getResource("img/pencil.png"));
-        Image scaled = icon.getImage().getScaledInstance(14, 14, Image.SCALE_SMOOTH);
-        editIconLabel = new JLabel(new ImageIcon(scaled));
+        editIconLabel = new JLabel(Resources.icon(Resources.EDIT_ICON, 14));
         editIconLabel.setToolTipText("Edit savings goal");
         editIconLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
 
@@ -64,7 +231,7 @@ public class DashboardPanel extends JPanel {
                     try {
                         savingsGoal = Double.parseDouble(input);
                         saveSettings();
-                        repaint();
+                        invalidateLayer();
                     } catch (NumberFormatException ex) {
                         JOptionPane.showMessageDialog(DashboardPanel.this, "Invalid number.", "Error", JOptionPane.ERROR_MESSAGE);
                     }
@@ -74,130 +241,520 @@ public class DashboardPanel extends JPanel {
         add(editIconLabel);
     }
 
+    private void addPeriodSelector() {
+        periodSelector = new JComboBox<>(Period.values());
+        periodSelector.setToolTipText("Period shown on the dashboard");
+        periodSelector.addActionListener(e -> {
+            zoomed = false;
+            invalidateLayer();
+        });
+        add(periodSelector);
+    }
+
     private void loadFont() {
-        try {
-            customFont = Font.createFont(Font.TRUETYPE_FONT, getClass().getClassLoader()
-                    .getResourceAsStream("fonts/SF-Pro-Display-Medium.ttf")).deriveFont(18f);
-        } catch (Exception e) {
-            customFont = getFont().deriveFont(Font.BOLD, 18f);
-        }
+        customFont = Resources.font(Resources.UI_FONT, 18f);
+        cardTitleFont = customFont.deriveFont(Font.PLAIN, 14f);
+        cardAmountFont = customFont.deriveFont(Font.BOLD, 20f);
+        labelFont = getFont().deriveFont(Font.PLAIN, 12f);
     }
 
     private void saveSettings() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(SETTINGS_PATH))) {
-            JSONObject obj = new JSONObject();
-            obj.put("savingsGoal", savingsGoal);
-            writer.write(obj.toString(2));
+        try (JsonWriter writer = new JsonWriter(FileChannel.open(Paths.get(SETTINGS_PATH), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), Integer.MAX_VALUE)) {
+            writer.beginObject();
+            writer.name("savingsGoal").value(savingsGoal);
+            writer.endObject();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // Settings this version does not know are skipped, so a newer file still loads
     private void loadSettings() {
         File file = new File(SETTINGS_PATH);
         if (file.exists()) {
-            try {
-                String json = new String(java.nio.file.Files.readAllBytes(file.toPath()));
-                JSONObject obj = new JSONObject(json);
-                savingsGoal = obj.optDouble("savingsGoal", 10000);
+            try (JsonReader reader = new JsonReader(FileChannel.open(file.toPath()), SETTINGS_PATH)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName(SETTINGS) == 0) {
+                        savingsGoal = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
-    public void updateDashboard(List<Transaction> transactions) {
-        this.transactions = transactions;
+    /**
+     * Picks up archived months that were added, changed or removed: their
+     * categories are added to the category tree here, so painting only looks
+     * them up.
+     */
+    public void archiveChanged() {
+        if (archive != null) {
+            for (PartitionArchive.MonthSummary month : archive.summaries()) {
+                for (int i = 0; i < month.categoryCount(); i++) categories.intern(month.categoryName(i));
+            }
+        }
+        updateDashboard();
+    }
+
+    /** Marks the cached chart stale after a data change and schedules a repaint. */
+    public void updateDashboard() {
+        filteredRows = null;
+        seriesValid = false;
+        invalidateLayer();
+    }
+
+    /**
+     * Limits the cards and charts to the store rows {@code filter} returns, in
+     * ascending order, under the given name; it is run again after each data
+     * change. Archived months are left out while a filter is set. A null filter
+     * shows everything again.
+     */
+    public void setFilter(String name, Supplier<IntList> filter) {
+        this.filterName = name;
+        this.filter = filter;
+        filteredRows = null;
+        seriesValid = false;
+        zoomed = false;
+        invalidateLayer();
+    }
+
+    private IntList filteredRows() {
+        if (filteredRows == null) filteredRows = filter.get();
+        return filteredRows;
+    }
+
+    private void invalidateLayer() {
+        layerValid = false;
         repaint();
     }
 
+    @Override
+    public void doLayout() {
+        int cardWidth = getWidth() / 4;
+        editIconLabel.setBounds(CARD_SPACING * 3 + cardWidth * 2 + 110, TOP_MARGIN + 8, 16, 16);
+        periodSelector.setBounds(getWidth() - 180, TOP_MARGIN + CARD_HEIGHT + 8, 150, 26);
+    }
+
+    // Cards and chart are rendered once into an image and blitted on every repaint; the image is
+    // rebuilt only after updateDashboard(), a period or goal change, or a size/scale change.
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        if (customFont == null) loadFont();
-
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        try (Metrics.Timing ignored = Metrics.time("dashboard.paint")) {
+            paintLayer((Graphics2D) g);
+        }
+    }
 
+    private void paintLayer(Graphics2D g2) {
         int width = getWidth();
         int height = getHeight();
+        if (width <= 0 || height <= 0) return;
+
+        double scale = g2.getTransform().getScaleX();
+        int pixelWidth = (int) Math.ceil(width * scale);
+        int pixelHeight = (int) Math.ceil(height * scale);
+        if (layer == null || layer.getWidth() != pixelWidth || layer.getHeight() != pixelHeight) {
+            layer = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_RGB);
+            layerValid = false;
+        }
+        if (!layerValid) {
+            Graphics2D lg = layer.createGraphics();
+            try (Metrics.Timing ignored = Metrics.time("dashboard.render")) {
+                lg.scale(scale, scale);
+                renderLayer(lg, width, height);
+            } finally {
+                lg.dispose();
+            }
+            layerValid = true;
+        }
+        g2.drawImage(layer, 0, 0, width, height, null);
+    }
+
+    private void renderLayer(Graphics2D g2, int width, int height) {
+        if (customFont == null) loadFont();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setColor(darkBackground);
+        g2.fillRect(0, 0, width, height);
+
+        // "All time" reads the running aggregates; other periods are range queries on the date index
+        Period period = (Period) periodSelector.getSelectedItem();
+        LocalDate today = LocalDate.now();
+        LocalDate start = period.start(today);
+        int fromDay = start == null ? 0 : (int) start.toEpochDay();
+        int toDay = (int) today.toEpochDay();
+
+        // Archived months predate the live ones, so only "All time" and "This year" reach them.
+        // Their totals come from the manifest, without reading any partition.
+        long archivedIncome = 0;
+        long archivedExpenses = 0;
+        java.util.List<PartitionArchive.MonthSummary> archivedMonths = new ArrayList<>();
+        if (archive != null && filter == null) {
+            for (PartitionArchive.MonthSummary month : archive.summaries()) {
+                if (start != null && month.month().atDay(1).isBefore(start)) continue;
+                archivedMonths.add(month);
+                archivedIncome += month.totalCents(true);
+                archivedExpenses += month.totalCents(false);
+            }
+        }
 
-        double totalIncome = transactions.stream().filter(t -> t.getType().equals("Income"))
-                .mapToDouble(Transaction::getAmount).sum();
-        double totalExpenses = transactions.stream().filter(t -> t.getType().equals("Expense"))
-                .mapToDouble(Transaction::getAmount).sum();
+        BigDecimal totalIncome;
+        BigDecimal totalExpenses;
+        if (filter != null) {
+            // A filter's rows are summed directly; it has usually narrowed them down a long way
+            IntList rows = filteredRows();
+            long income = 0;
+            long expenses = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                int day = store.getEpochDay(row);
+                if (start != null && (day < fromDay || day > toDay)) continue;
+                if (store.isIncome(row)) {
+                    income += store.getCents(row);
+                } else {
+                    expenses += store.getCents(row);
+                }
+            }
+            totalIncome = BigDecimal.valueOf(income, 2);
+            totalExpenses = BigDecimal.valueOf(expenses, 2);
+        } else {
+            totalIncome = (start == null ? aggregates.getTotalIncome()
+                    : BigDecimal.valueOf(dateIndex.sumCents(true, fromDay, toDay), 2)).add(BigDecimal.valueOf(archivedIncome, 2));
+            totalExpenses = (start == null ? aggregates.getTotalExpenses()
+                    : BigDecimal.valueOf(dateIndex.sumCents(false, fromDay, toDay), 2)).add(BigDecimal.valueOf(archivedExpenses, 2));
+        }
 
         // --- Metric Cards ---
         int cardWidth = width / 4;
-        int cardHeight = 80;
-        int spacing = 30;
-        int topMargin = 20;
-
-        drawMetricCard(g2, spacing, topMargin, cardWidth, cardHeight, "Total Income", totalIncome, new Color(0, 200, 0));
-        drawMetricCard(g2, spacing * 2 + cardWidth, topMargin, cardWidth, cardHeight, "Total Expenses", totalExpenses, new Color(220, 20, 60));
-        drawMetricCard(g2, spacing * 3 + cardWidth * 2, topMargin, cardWidth, cardHeight, "Savings Goal", savingsGoal, new Color(255, 215, 0));
-
-        // Position edit icon beside "Savings Goal"
-        int iconX = spacing * 3 + cardWidth * 2 + 110;
-        int iconY = topMargin + 8;
-        editIconLabel.setBounds(iconX, iconY, 16, 16);
+        drawMetricCard(g2, CARD_SPACING, TOP_MARGIN, cardWidth, CARD_HEIGHT, "Total Income", totalIncome, INCOME_COLOR);
+        drawMetricCard(g2, CARD_SPACING * 2 + cardWidth, TOP_MARGIN, cardWidth, CARD_HEIGHT, "Total Expenses", totalExpenses, EXPENSE_COLOR);
+        drawMetricCard(g2, CARD_SPACING * 3 + cardWidth * 2, TOP_MARGIN, cardWidth, CARD_HEIGHT, "Savings Goal", BigDecimal.valueOf(savingsGoal), GOAL_COLOR);
+        if (filterName != null) {
+            String caption = "Filter: " + filterName;
+            g2.setFont(labelFont);
+            g2.setColor(Color.LIGHT_GRAY);
+            g2.drawString(caption, width - 190 - g2.getFontMetrics().stringWidth(caption), TOP_MARGIN + CARD_HEIGHT + 26);
+        }
 
-        // --- Bar Chart ---
-        int chartTop = topMargin + cardHeight + 40;
+        // --- Bar Chart, with the time series to its right ---
+        int chartTop = TOP_MARGIN + CARD_HEIGHT + 50;
         int chartLeft = 50;
-        int chartWidth = width - 100;
+        int chartWidth = (width - 100 - CHART_GAP) / 2;
         int chartHeight = height - chartTop - 40;
+        drawTimeSeries(g2, chartLeft + chartWidth + CHART_GAP, chartTop, chartWidth, chartHeight, start, today);
 
-        List<Transaction> expenseTx = transactions.stream()
-                .filter(t -> t.getType().equals("Expense"))
-                .collect(Collectors.toList());
+        drawCategoryBars(g2, chartLeft, chartTop, chartWidth, chartHeight, archivedMonths,
+                start == null ? -1 : fromDay, toDay);
+    }
 
-        Map<String, Double> categoryTotals = new HashMap<>();
-        for (Transaction t : expenseTx) {
-            categoryTotals.merge(t.getCategory(), t.getAmount(), Double::sum);
+    // One bar per subcategory of the shown category, in id order, which keeps bar positions stable
+    // between repaints; each bar is its whole subtree. "All time" reads the tree's running totals,
+    // while a period rolls the date index's per-category sums up the tree. Archived categories are
+    // matched by name, once per render, and added the same way; archiveChanged() put them in the tree.
+    private void drawCategoryBars(Graphics2D g2, int chartLeft, int chartTop, int chartWidth, int chartHeight,
+            java.util.List<PartitionArchive.MonthSummary> archivedMonths, int fromDay, int toDay) {
+        CategoryTree tree = categories;
+        long[] cents = new long[tree.size()];
+        long[] rows = new long[tree.size()];
+        for (PartitionArchive.MonthSummary month : archivedMonths) {
+            for (int i = 0; i < month.categoryCount(); i++) {
+                int node = tree.find(month.categoryName(i));
+                if (node < 0) continue; // archived since the last archiveChanged()
+                tree.addToPath(cents, node, month.categoryCents(i, false));
+                tree.addToPath(rows, node, month.categoryRows(i, false));
+            }
+        }
+        if (filter != null) {
+            IntList matched = filteredRows();
+            for (int i = 0; i < matched.size(); i++) {
+                int row = matched.get(i);
+                int day = store.getEpochDay(row);
+                if (store.isIncome(row) || fromDay >= 0 && (day < fromDay || day > toDay)) continue;
+                int node = tree.nodeOf(store.getCategoryId(row));
+                tree.addToPath(cents, node, store.getCents(row));
+                tree.addToPath(rows, node, 1);
+            }
+        } else if (fromDay < 0) {
+            for (int node = 0; node < tree.size(); node++) {
+                cents[node] += tree.cents(node, false);
+                rows[node] += tree.count(node, false);
+            }
+        } else {
+            for (int id = 0; id < aggregates.categoryCount(); id++) {
+                int count = dateIndex.categoryExpenseCount(id, fromDay, toDay);
+                if (count == 0) continue;
+                int node = tree.nodeOf(id);
+                tree.addToPath(cents, node, dateIndex.categoryExpenseCents(id, fromDay, toDay));
+                tree.addToPath(rows, node, count);
+            }
         }
 
-        if (categoryTotals.isEmpty()) return;
-
-        double maxAmount = Math.max(Collections.max(categoryTotals.values()), savingsGoal);
-        int barWidth = 50;
-        int gap = 30;
-
-        int totalBars = categoryTotals.size();
-        int totalWidth = (barWidth + gap) * totalBars - gap;
-        int startX = chartLeft + (chartWidth - totalWidth) / 2;
-
-        int x = startX;
-        barTooltips.clear();
-
-        for (Map.Entry<String, Double> entry : categoryTotals.entrySet()) {
-            double amount = entry.getValue();
-            int barHeight = (int) ((amount / maxAmount) * chartHeight);
-            int y = chartTop + chartHeight - barHeight;
+        // Rows filed under the shown category itself, rather than a subcategory, get a bar of their own
+        int shown = tree.exists(shownCategory) ? shownCategory : CategoryTree.ROOT;
+        int[] children = tree.children(shown);
+        long ownCents = cents[shown];
+        long ownRows = rows[shown];
+        for (int child : children) {
+            ownCents -= cents[child];
+            ownRows -= rows[child];
+        }
+        IntList barList = new IntList();
+        if (shown != CategoryTree.ROOT && ownRows > 0) barList.add(shown);
+        for (int child : children) {
+            if (rows[child] > 0) barList.add(child);
+        }
+        int totalBars = barList.size();
+        long maxCents = 0;
+        for (int i = 0; i < totalBars; i++) {
+            int node = barList.get(i);
+            maxCents = Math.max(maxCents, node == shown ? ownCents : cents[node]);
+        }
 
-            Rectangle bar = new Rectangle(x, y, barWidth, barHeight);
-            g2.setColor(new Color(100, 181, 246));
-            g2.fill(bar);
+        g2.setFont(labelFont);
+        FontMetrics fm = g2.getFontMetrics();
+        upBounds = new Rectangle();
+        if (shown != CategoryTree.ROOT) {
+            String up = "‹ " + tree.path(shown);
+            g2.setColor(Color.LIGHT_GRAY);
+            g2.drawString(up, chartLeft, chartTop - 12);
+            upBounds = new Rectangle(chartLeft, chartTop - 12 - fm.getAscent(), fm.stringWidth(up), fm.getHeight());
+        }
 
-            barTooltips.put(bar, entry.getKey() + ": ₱" + String.format("%,.2f", amount));
+        barLeft = new int[totalBars];
+        barTop = new int[totalBars];
+        barTooltips = new String[totalBars];
+        barNodes = new int[totalBars];
+        if (totalBars == 0) return;
+
+        double maxAmount = Math.max(maxCents / 100.0, savingsGoal);
+        int totalWidth = (BAR_WIDTH + BAR_GAP) * totalBars - BAR_GAP;
+        int x = chartLeft + (chartWidth - totalWidth) / 2;
+        barBottom = chartTop + chartHeight;
+
+        for (int bar = 0; bar < totalBars; bar++) {
+            int node = barList.get(bar);
+            boolean own = node == shown;
+            boolean more = !own && hasRows(tree.children(node), rows);
+            String category = tree.name(node) + (more ? " ›" : "");
+            BigDecimal amount = BigDecimal.valueOf(own ? ownCents : cents[node], 2);
+            int barHeight = (int) ((amount.doubleValue() / maxAmount) * chartHeight);
+            int y = barBottom - barHeight;
+
+            g2.setColor(BAR_COLOR);
+            g2.fillRect(x, y, BAR_WIDTH, barHeight);
+
+            // Bars are laid out left to right, so barLeft stays sorted for the hover search
+            barLeft[bar] = x;
+            barTop[bar] = y;
+            barNodes[bar] = more ? node : -1;
+            barTooltips[bar] = tree.path(node) + (own ? " (not in a subcategory)" : "") + ": " + formatAmount(amount)
+                    + (more ? " (click for subcategories)" : "");
 
             g2.setColor(Color.WHITE);
-            g2.setFont(getFont().deriveFont(Font.PLAIN, 12f));
-            FontMetrics fm = g2.getFontMetrics();
-            int labelX = x + (barWidth - fm.stringWidth(entry.getKey())) / 2;
-            g2.drawString(entry.getKey(), labelX, chartTop + chartHeight + 15);
+            int labelX = x + (BAR_WIDTH - fm.stringWidth(category)) / 2;
+            g2.drawString(category, labelX, barBottom + LABEL_HEIGHT - 5);
 
-            x += barWidth + gap;
+            x += BAR_WIDTH + BAR_GAP;
         }
 
         // Draw savings goal as yellow bar
         int goalHeight = (int) ((savingsGoal / maxAmount) * chartHeight);
         int y = chartTop + chartHeight - goalHeight;
-        g2.setColor(new Color(255, 215, 0, 180));
+        g2.setColor(GOAL_LINE_COLOR);
         g2.fillRect(chartLeft, y, chartWidth, 4);
     }
 
-    private void drawMetricCard(Graphics2D g2, int x, int y, int w, int h, String title, double amount, Color borderColor) {
+    private static boolean hasRows(int[] nodes, long[] rows) {
+        for (int node : nodes) {
+            if (rows[node] > 0) return true;
+        }
+        return false;
+    }
+
+    // Daily income, expenses and balance over the period, or over the zoomed window. The summaries
+    // hold a bucket per day, week and month; the finest level with a few buckets per pixel is thinned
+    // to one point per pixel, so a redraw costs the same for a month of rows or decades of them.
+    private void drawTimeSeries(Graphics2D g2, int left, int top, int width, int height, LocalDate start,
+            LocalDate today) {
+        shownLevel = null;
+        seriesBounds = new Rectangle(left, top, width, height);
+        TimeSeries series = timeSeries();
+        if (series == null || width <= 0 || height <= 0) return;
+
+        int fromDay = zoomed ? zoomFromDay
+                : Math.max(series.firstDay(), start == null ? series.firstDay() : (int) start.toEpochDay());
+        int toDay = zoomed ? zoomToDay : start == null ? series.lastDay() : (int) today.toEpochDay();
+        if (fromDay >= toDay) return;
+
+        TimeSeries.Level level = series.levelFor(fromDay, toDay, width * SERIES_BUCKETS_PER_PIXEL);
+        int first = level.bucketOf(fromDay);
+        int last = level.bucketOf(toDay);
+        long maxFlow = 1;
+        long minBalance = Long.MAX_VALUE;
+        long maxBalance = Long.MIN_VALUE;
+        for (int bucket = first; bucket <= last; bucket++) {
+            maxFlow = Math.max(maxFlow, Math.max(level.get(TimeSeries.Measure.INCOME, bucket),
+                    level.get(TimeSeries.Measure.EXPENSE, bucket)));
+            long balance = level.get(TimeSeries.Measure.BALANCE, bucket);
+            minBalance = Math.min(minBalance, balance);
+            maxBalance = Math.max(maxBalance, balance);
+        }
+
+        g2.setColor(cardBackground);
+        g2.drawLine(left, top + height, left + width, top + height);
+        // Income and expenses zigzag at one point per pixel, where antialiasing costs several times the
+        // drawing itself and shows little; the balance is smoother and keeps it
+        Stroke stroke = g2.getStroke();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        drawSeriesLine(g2, level, TimeSeries.Measure.INCOME, first, last, fromDay, toDay, 0, maxFlow, INCOME_COLOR);
+        drawSeriesLine(g2, level, TimeSeries.Measure.EXPENSE, first, last, fromDay, toDay, 0, maxFlow, EXPENSE_COLOR);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        drawSeriesLine(g2, level, TimeSeries.Measure.BALANCE, first, last, fromDay, toDay, minBalance, maxBalance,
+                BALANCE_COLOR);
+        g2.setStroke(stroke);
+
+        g2.setFont(labelFont);
+        FontMetrics fm = g2.getFontMetrics();
+        long balance = level.get(TimeSeries.Measure.BALANCE, last);
+        g2.drawString(level.resolution() + " · Balance " + formatAmount(BigDecimal.valueOf(balance, 2)), left, top - 8);
+        g2.setColor(Color.WHITE);
+        String from = LocalDate.ofEpochDay(fromDay).format(DAY_FORMAT);
+        String to = LocalDate.ofEpochDay(toDay).format(DAY_FORMAT);
+        g2.drawString(from, left, top + height + 15);
+        g2.drawString(to, left + width - fm.stringWidth(to), top + height + 15);
+
+        shownLevel = level;
+        shownFromDay = fromDay;
+        shownToDay = toDay;
+    }
+
+    private void drawSeriesLine(Graphics2D g2, TimeSeries.Level level, TimeSeries.Measure measure, int first,
+            int last, int fromDay, int toDay, long min, long max, Color color) {
+        Rectangle bounds = seriesBounds;
+        int[] buckets = level.downsample(measure, first, last + 1, bounds.width);
+        int[] xs = new int[buckets.length];
+        int[] ys = new int[buckets.length];
+        double range = Math.max(max - min, 1);
+        for (int i = 0; i < buckets.length; i++) {
+            int bucket = buckets[i];
+            double day = (Math.max(level.startDay(bucket), fromDay) + Math.min(level.endDay(bucket), toDay)) / 2.0;
+            xs[i] = bounds.x + (int) ((day - fromDay) / (toDay - fromDay) * bounds.width);
+            ys[i] = bounds.y + bounds.height - (int) ((level.get(measure, bucket) - min) / range * bounds.height);
+        }
+        g2.setColor(color);
+        g2.drawPolyline(xs, ys, buckets.length);
+    }
+
+    // Per-day amounts from the date index and the archive manifest, from the first recorded day through
+    // today or the last recorded day; O(days), and only after the data has changed
+    private TimeSeries timeSeries() {
+        if (seriesValid) return series;
+        seriesValid = true;
+        series = null;
+        if (filter != null) {
+            try (Metrics.Timing ignored = Metrics.time("dashboard.series")) {
+                series = filteredSeries(filteredRows());
+            }
+            return series;
+        }
+        java.util.List<PartitionArchive.MonthSummary> months = archive == null ? Collections.emptyList() : archive.summaries();
+        LocalDate first = dateIndex.firstDate();
+        LocalDate last = dateIndex.lastDate();
+        if (!months.isEmpty()) {
+            LocalDate archivedFirst = months.get(0).month().atDay(1);
+            LocalDate archivedLast = months.get(months.size() - 1).month().atEndOfMonth();
+            if (first == null || archivedFirst.isBefore(first)) first = archivedFirst;
+            if (last == null || archivedLast.isAfter(last)) last = archivedLast;
+        }
+        if (first == null) return null;
+        LocalDate today = LocalDate.now();
+        if (today.isAfter(last)) last = today;
+
+        try (Metrics.Timing ignored = Metrics.time("dashboard.series")) {
+            int firstDay = (int) first.toEpochDay();
+            int days = (int) (last.toEpochDay() - firstDay + 1);
+            long[] income = new long[days];
+            long[] expense = new long[days];
+            for (int i = 0; i < days; i++) {
+                income[i] = dateIndex.dayCents(true, firstDay + i);
+                expense[i] = dateIndex.dayCents(false, firstDay + i);
+            }
+            for (PartitionArchive.MonthSummary month : months) {
+                int monthStart = (int) month.month().atDay(1).toEpochDay() - firstDay;
+                for (int day = 1; day <= month.month().lengthOfMonth(); day++) {
+                    income[monthStart + day - 1] += month.dayCents(true, day);
+                    expense[monthStart + day - 1] += month.dayCents(false, day);
+                }
+            }
+            series = TimeSeries.of(firstDay, 0, income, expense);
+        }
+        return series;
+    }
+
+    // The same from the filter's rows, from the first of them through today or the last of them
+    private TimeSeries filteredSeries(IntList rows) {
+        if (rows.size() == 0) return null;
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = (int) LocalDate.now().toEpochDay();
+        for (int i = 0; i < rows.size(); i++) {
+            int day = store.getEpochDay(rows.get(i));
+            firstDay = Math.min(firstDay, day);
+            lastDay = Math.max(lastDay, day);
+        }
+        int days = lastDay - firstDay + 1;
+        long[] income = new long[days];
+        long[] expense = new long[days];
+        for (int i = 0; i < rows.size(); i++) {
+            int row = rows.get(i);
+            (store.isIncome(row) ? income : expense)[store.getEpochDay(row) - firstDay] += store.getCents(row);
+        }
+        return TimeSeries.of(firstDay, 0, income, expense);
+    }
+
+    private String seriesTooltipAt(Point p) {
+        TimeSeries.Level level = shownLevel;
+        if (level == null || !seriesBounds.contains(p)) return null;
+        int bucket = level.bucketOf((int) Math.round(dayAt(p.x)));
+        LocalDate start = LocalDate.ofEpochDay(level.startDay(bucket));
+        String when;
+        switch (level.resolution()) {
+            case WEEK: when = "Week of " + start.format(DAY_FORMAT); break;
+            case MONTH: when = start.format(MONTH_FORMAT); break;
+            default: when = start.format(DAY_FORMAT);
+        }
+        return String.format("<html>%s<br>Income %s<br>Expenses %s<br>Balance %s</html>", when,
+                formatAmount(BigDecimal.valueOf(level.get(TimeSeries.Measure.INCOME, bucket), 2)),
+                formatAmount(BigDecimal.valueOf(level.get(TimeSeries.Measure.EXPENSE, bucket), 2)),
+                formatAmount(BigDecimal.valueOf(level.get(TimeSeries.Measure.BALANCE, bucket), 2)));
+    }
+
+    private String tooltipAt(Point p) {
+        if (seriesBounds.contains(p)) return seriesTooltipAt(p);
+        if (upBounds.contains(p)) return "Back to " + (categories.parent(shownCategory) == CategoryTree.ROOT
+                ? "all categories" : categories.path(categories.parent(shownCategory)));
+        int bar = barAt(p, false);
+        return bar < 0 ? null : barTooltips[bar];
+    }
+
+    // Binary search over the bar x-ranges recorded by the last render
+    private int barAt(Point p, boolean withLabel) {
+        int[] lefts = barLeft;
+        int index = Arrays.binarySearch(lefts, p.x);
+        if (index < 0) index = -index - 2;
+        if (index < 0 || p.x >= lefts[index] + BAR_WIDTH) return -1;
+        if (p.y < barTop[index] || p.y >= barBottom + (withLabel ? LABEL_HEIGHT : 0)) return -1;
+        return index;
+    }
+
+    private void drawMetricCard(Graphics2D g2, int x, int y, int w, int h, String title, BigDecimal amount, Color borderColor) {
         g2.setColor(borderColor);
         g2.fillRoundRect(x - 2, y - 2, w + 4, h + 4, 12, 12);
 
@@ -205,10 +762,14 @@ public class DashboardPanel extends JPanel {
         g2.fillRoundRect(x, y, w, h, 12, 12);
 
         g2.setColor(Color.WHITE);
-        g2.setFont(customFont.deriveFont(Font.PLAIN, 14f));
+        g2.setFont(cardTitleFont);
         g2.drawString(title, x + 15, y + 25);
 
-        g2.setFont(customFont.deriveFont(Font.BOLD, 20f));
-        g2.drawString("₱" + String.format("%,.2f", amount), x + 15, y + 55);
+        g2.setFont(cardAmountFont);
+        g2.drawString(formatAmount(amount), x + 15, y + 55);
+    }
+
+    private static String formatAmount(BigDecimal amount) {
+        return "₱" + String.format("%,.2f", amount);
     }
 }
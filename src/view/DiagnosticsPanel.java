@@ -0,0 +1,145 @@
+package view;
+
+import diagnostics.EdtWatchdog;
+import diagnostics.Metrics;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * "Diagnostics" tab: every {@link Metrics} timer and counter, the EDT stalls
+ * the {@link EdtWatchdog} recorded and the stacks sampled during the selected
+ * one. The tables refresh once a second while the tab is showing, and the
+ * whole lot can be exported to a text file for offline analysis.
+ */
+public class DiagnosticsPanel extends JPanel {
+    private static final String[] METRIC_COLUMNS = { "Metric", "Count", "Total ms", "Mean ms", "P50 ms", "P99 ms",
+            "Max ms" };
+    private static final String[] STALL_COLUMNS = { "Started", "Duration ms", "Samples" };
+
+    private final EdtWatchdog watchdog;
+    private final DefaultTableModel metricsModel = ReportsPanel.readOnlyModel();
+    private final DefaultTableModel stallsModel = ReportsPanel.readOnlyModel();
+    private final JTextArea stackArea = new JTextArea();
+    private final JLabel infoLabel = new JLabel(" ");
+    private final Timer refreshTimer = new Timer(1000, e -> refresh());
+    private List<EdtWatchdog.Stall> shownStalls = List.of();
+
+    public DiagnosticsPanel(EdtWatchdog watchdog, Font font) {
+        this.watchdog = watchdog;
+        setLayout(new BorderLayout());
+        setBackground(new Color(24, 24, 24));
+
+        metricsModel.setColumnIdentifiers(METRIC_COLUMNS);
+        stallsModel.setColumnIdentifiers(STALL_COLUMNS);
+        JTable metricsTable = ReportsPanel.createTable(metricsModel, font);
+        JTable stallsTable = ReportsPanel.createTable(stallsModel, font);
+        stallsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        stallsTable.getSelectionModel().addListSelectionListener(e -> {
+            int row = stallsTable.getSelectedRow();
+            stackArea.setText(row < 0 || row >= shownStalls.size() ? "" : shownStalls.get(row).describe());
+            stackArea.setCaretPosition(0);
+        });
+
+        stackArea.setEditable(false);
+        stackArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        stackArea.setBackground(new Color(36, 36, 36));
+        stackArea.setForeground(Color.WHITE);
+
+        JSplitPane stallSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(stallsTable),
+                new JScrollPane(stackArea));
+        stallSplit.setResizeWeight(0.35);
+        stallSplit.setBorder(null);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(metricsTable), stallSplit);
+        split.setResizeWeight(0.6);
+        split.setBorder(null);
+        add(split, BorderLayout.CENTER);
+
+        JButton exportBtn = new JButton("Export…");
+        exportBtn.addActionListener(e -> exportReport());
+        JButton resetBtn = new JButton("Reset");
+        resetBtn.addActionListener(e -> {
+            Metrics.reset();
+            watchdog.clear();
+            refresh();
+        });
+        infoLabel.setForeground(Color.LIGHT_GRAY);
+        JPanel top = new JPanel(new BorderLayout(10, 0));
+        top.setBackground(new Color(24, 24, 24));
+        top.setBorder(new EmptyBorder(8, 10, 8, 10));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
+        buttons.setOpaque(false);
+        buttons.add(resetBtn);
+        buttons.add(exportBtn);
+        top.add(infoLabel, BorderLayout.CENTER);
+        top.add(buttons, BorderLayout.EAST);
+        add(top, BorderLayout.NORTH);
+
+        // Only poll while the tab is on screen
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == 0) return;
+            if (isShowing()) {
+                refresh();
+                refreshTimer.start();
+            } else {
+                refreshTimer.stop();
+            }
+        });
+    }
+
+    private void refresh() {
+        metricsModel.setRowCount(0);
+        for (Metrics.Timer timer : Metrics.timers()) {
+            metricsModel.addRow(new Object[] {
+                    timer.name(), String.format("%,d", timer.count()), millis(timer.totalNanos()),
+                    millis(timer.meanNanos()), millis(timer.percentileNanos(0.5)),
+                    millis(timer.percentileNanos(0.99)), millis(timer.maxNanos())
+            });
+        }
+        for (Metrics.Counter counter : Metrics.counters()) {
+            metricsModel.addRow(new Object[] { counter.name(), String.format("%,d", counter.value()), "", "", "", "", "" });
+        }
+
+        List<EdtWatchdog.Stall> stalls = watchdog.stalls();
+        if (!stalls.equals(shownStalls)) {
+            shownStalls = stalls;
+            stallsModel.setRowCount(0);
+            for (EdtWatchdog.Stall stall : stalls) {
+                stallsModel.addRow(new Object[] {
+                        stall.started().withNano(0).toString(), millis(stall.nanos()), stall.samples().size()
+                });
+            }
+        }
+
+        Runtime runtime = Runtime.getRuntime();
+        infoLabel.setText(String.format("EDT stall threshold %d ms, %d stalls recorded. Heap %,d of %,d MB.",
+                watchdog.thresholdMillis(), stalls.size(),
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.maxMemory() >> 20));
+    }
+
+    private void exportReport() {
+        JFileChooser chooser = new JFileChooser(new File("src/data"));
+        chooser.setSelectedFile(new File("src/data/diagnostics.txt"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        Path target = chooser.getSelectedFile().toPath();
+        try {
+            Metrics.writeReport(target, watchdog);
+            JOptionPane.showMessageDialog(this, "Diagnostics written to " + target + ".");
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Export failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%,.2f", Metrics.millis(nanos));
+    }
+}
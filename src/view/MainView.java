@@ -1,25 +1,124 @@
 package view;
 
+import diagnostics.EdtWatchdog;
+import diagnostics.Metrics;
+import diagnostics.StartupTimings;
+import model.CategoryTree;
+import model.ChangeCoalescer;
+import model.DateIndex;
+import model.IntList;
+import model.Query;
+import model.TextIndex;
 import model.Transaction;
+import model.TransactionAggregates;
+import model.TransactionStore;
+import model.TransactionRows;
+import model.UndoHistory;
+import storage.CategoryFile;
+import storage.CsvExporter;
+import storage.CsvImporter;
+import storage.FilterFile;
+import storage.JsonExporter;
+import storage.JsonImporter;
+import storage.PartitionArchive;
+import storage.PersistenceService;
+import storage.TransactionJournal;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntPredicate;
 
 public class MainView extends JFrame {
-    private List<Transaction> transactions = new ArrayList<>();
-    private DefaultTableModel tableModel;
+    private static final long EDT_STALL_THRESHOLD_MS = 200;
+    private static final int UNDO_LIMIT = 100;
+    private static final File DATA_FILE = new File("src/data/transactions.dat");
+    private static final String[] DEFAULT_CATEGORIES = { "Allowance", "Food", "Transport", "Tuition", "Entertainment", "Misc" };
+    private static final String NO_FILTER = "No filter";
+
+    private final EdtWatchdog watchdog = EdtWatchdog.install(EDT_STALL_THRESHOLD_MS);
+    private final TransactionStore transactions = new TransactionStore();
+    private final TransactionAggregates aggregates = new TransactionAggregates(transactions);
+    private final DateIndex dateIndex = new DateIndex(transactions);
+    private final TextIndex textIndex = new TextIndex(transactions);
+    private final CategoryTree categories = new CategoryTree(transactions);
+    private final File categoryFile = CategoryFile.fileFor(DATA_FILE);
+    private boolean categorySaveScheduled;
+    private final File filterFile = FilterFile.fileFor(DATA_FILE);
+    private final Map<String, String> savedFilters = new LinkedHashMap<>();
+    // Table filter, dashboard and reports catch up once per event-queue turn, however many rows changed
+    private final ChangeCoalescer changes = new ChangeCoalescer(transactions, SwingUtilities::invokeLater);
+    private TransactionTableModel tableModel;
     private JTable transactionTable;
+    private final JTextField searchField = new JTextField(16);
+    private final JComboBox<String> searchTypeCombo = new JComboBox<>(new String[] { "All", "Income", "Expense" });
+    private final JComboBox<DashboardPanel.Period> searchPeriodCombo = new JComboBox<>(DashboardPanel.Period.values());
+    private final JLabel searchCountLabel = new JLabel(" ");
+    private final JComboBox<String> filterCombo = new JComboBox<>();
+    private boolean updatingFilterCombo;
+    private Query activeFilter;
     private DashboardPanel dashboardPanel;
+    private ReportsPanel reportsPanel;
     private JPanel transactionsPanel;
-    private final File saveFile = new File("src/data/transactions.dat");
+    private final File saveFile = DATA_FILE;
+    private final PartitionArchive archive = new PartitionArchive(PartitionArchive.directoryFor(saveFile));
+    private final PersistenceService persistence = new PersistenceService(new TransactionJournal(saveFile, archive),
+            transactions, this::reportSaveError);
+    // Loads and changes from other windows are not journaled by this one, and reset the history
+    private final UndoHistory history = new UndoHistory(transactions, persistence::isRecording,
+            SwingUtilities::invokeLater, UNDO_LIMIT);
+    private final JMenuItem undoItem = new JMenuItem("Undo");
+    private final JMenuItem redoItem = new JMenuItem("Redo");
+    private final List<Component> mutatingControls = new ArrayList<>();
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JLabel statusLabel = new JLabel(" ");
+    private boolean loading;
+    private int archiveEditsPending; // archived deletes still running on the persistence thread
+
+    /**
+     * Starts reading what the window needs before it can show anything (the
+     * UI font, the icons and the data files) on background threads, so the
+     * work overlaps with setting up the look and feel. Call before creating
+     * the window; it picks up the results from {@link Resources} and the page cache.
+     */
+    public static void preload() {
+        ExecutorService pool = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "startup-preload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Resources.preload(pool);
+        pool.execute(() -> {
+            try (StartupTimings.Phase ignored = StartupTimings.begin("data prefetch")) {
+                new TransactionJournal(DATA_FILE).prefetch();
+            }
+        });
+        pool.shutdown();
+    }
 
     public MainView() {
         setTitle("Spendid - Student Finance Tracker");
@@ -27,22 +126,22 @@ public class MainView extends JFrame {
         setSize(900, 600);
         setLocationRelativeTo(null);
         setResizable(false);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                try {
+                    persistence.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
 
-        Font customFont;
-        try {
-            customFont = Font.createFont(Font.TRUETYPE_FONT, new File("fonts/SF-Pro-Display-Medium.ttf")).deriveFont(14f);
-            GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-            ge.registerFont(customFont);
-        } catch (Exception e) {
-            customFont = new Font("SF Pro Display", Font.BOLD, 14);
-        }
-
-        try {
-            Image icon = Toolkit.getDefaultToolkit().getImage(getClass().getResource("/img/icon.png"));
-            setIconImage(icon);
-        } catch (Exception e) {
-            System.err.println("Icon not found or failed to load.");
-        }
+        loadCategories();
+        loadFilters();
+        Font customFont = Resources.font(Resources.UI_FONT, 14f);
+        Image icon = Resources.image(Resources.APP_ICON);
+        if (icon != null) setIconImage(icon);
 
         JTabbedPane tabbedPane = new JTabbedPane();
         tabbedPane.setFont(customFont);
@@ -62,6 +161,17 @@ public class MainView extends JFrame {
         });
         add(tabbedPane, BorderLayout.CENTER);
 
+        JPanel statusBar = new JPanel(new BorderLayout(10, 0));
+        statusBar.setBackground(new Color(30, 30, 30));
+        statusBar.setBorder(new EmptyBorder(4, 10, 4, 10));
+        statusLabel.setForeground(Color.LIGHT_GRAY);
+        statusLabel.setFont(customFont.deriveFont(12f));
+        progressBar.setPreferredSize(new Dimension(200, 14));
+        progressBar.setVisible(false);
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        statusBar.add(progressBar, BorderLayout.EAST);
+        add(statusBar, BorderLayout.SOUTH);
+
         JMenuBar menuBar = new JMenuBar();
         menuBar.setBackground(new Color(30, 30, 30));
         JMenu fileMenu = new JMenu("File");
@@ -70,45 +180,66 @@ public class MainView extends JFrame {
 
         JMenuItem saveItem = new JMenuItem("Save");
         JMenuItem loadItem = new JMenuItem("Load");
-        JMenuItem exportItem = new JMenuItem("Export CSV");
+        JMenuItem importItem = new JMenuItem("Import CSV Folder…");
+        JMenuItem importJsonItem = new JMenuItem("Import JSON…");
+        JMenuItem exportItem = new JMenuItem("Export CSV or JSON…");
 
         saveItem.setFont(customFont);
         loadItem.setFont(customFont);
+        importItem.setFont(customFont);
+        importJsonItem.setFont(customFont);
         exportItem.setFont(customFont);
 
         saveItem.addActionListener(e -> {
-            saveTransactions();
+            persistence.snapshot();
             JOptionPane.showMessageDialog(this, "Saved " + transactions.size() + " transactions.", "Saved", JOptionPane.INFORMATION_MESSAGE);
         });
 
-        loadItem.addActionListener(e -> {
-            loadTransactions();
-            updateTable();
-            dashboardPanel.updateDashboard(transactions);
-            JOptionPane.showMessageDialog(this, "Loaded " + transactions.size() + " transactions.", "Loaded", JOptionPane.INFORMATION_MESSAGE);
-        });
+        loadItem.addActionListener(e -> loadTransactions(true));
 
-        exportItem.addActionListener(e -> exportToCSV());
+        importItem.addActionListener(e -> importCsvDirectory());
+        importJsonItem.addActionListener(e -> importJson());
+        exportItem.addActionListener(e -> exportTransactions());
 
+        mutatingControls.add(saveItem);
+        mutatingControls.add(loadItem);
+        mutatingControls.add(importItem);
+        mutatingControls.add(importJsonItem);
+        mutatingControls.add(exportItem);
         fileMenu.add(saveItem);
         fileMenu.add(loadItem);
+        fileMenu.add(importItem);
+        fileMenu.add(importJsonItem);
         fileMenu.add(exportItem);
         menuBar.add(fileMenu);
+
+        JMenu editMenu = new JMenu("Edit");
+        editMenu.setForeground(Color.WHITE);
+        editMenu.setFont(customFont);
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        undoItem.setFont(customFont);
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+        undoItem.addActionListener(e -> history.undo());
+        redoItem.setFont(customFont);
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut | InputEvent.SHIFT_DOWN_MASK));
+        redoItem.addActionListener(e -> history.redo());
+        history.addListener(this::updateUndoItems);
+        updateUndoItems();
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        menuBar.add(editMenu);
         setJMenuBar(menuBar);
 
-        dashboardPanel = new DashboardPanel(transactions);
+        dashboardPanel = new DashboardPanel(transactions, aggregates, dateIndex, categories, archive);
         tabbedPane.addTab("Dashboard", dashboardPanel);
+        changes.addListener(batch -> dashboardPanel.updateDashboard());
 
         transactionsPanel = new JPanel(new BorderLayout());
         transactionsPanel.setBackground(new Color(24, 24, 24));
 
-        String[] columns = { "Type", "Category", "Amount", "Date", "Notes" };
-        tableModel = new DefaultTableModel(columns, 0);
-        transactionTable = new JTable(tableModel) {
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new TransactionTableModel(transactions, dateIndex, changes);
+        tableModel.setArchive(archive, persistence::archivedRows);
+        transactionTable = new JTable(tableModel);
 
         transactionTable.setFont(customFont.deriveFont(13f));
         transactionTable.setRowHeight(26);
@@ -122,15 +253,14 @@ public class MainView extends JFrame {
 
         transactionTable.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
-                if (e.getClickCount() == 2 && transactionTable.getSelectedRow() != -1) {
-                    int row = transactionTable.getSelectedRow();
-                    Transaction t = transactions.get(row);
-                    showEditTransactionDialog(row, t);
+                if (e.getClickCount() == 2 && !loading && transactionTable.getSelectedRow() != -1) {
+                    showEditTransactionDialog(transactionTable.getSelectedRow());
                 }
             }
         });
 
         transactionsPanel.add(new JScrollPane(transactionTable), BorderLayout.CENTER);
+        transactionsPanel.add(createSearchBar(customFont), BorderLayout.NORTH);
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         buttonPanel.setBackground(new Color(24, 24, 24));
@@ -144,14 +274,13 @@ public class MainView extends JFrame {
 
         addBtn.addActionListener(e -> showAddTransactionDialog());
         deleteBtn.addActionListener(e -> {
-            int selectedRow = transactionTable.getSelectedRow();
-            if (selectedRow != -1) {
-                int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to delete this transaction?",
-                        "Confirm Deletion", JOptionPane.YES_NO_OPTION);
+            int[] selectedRows = transactionTable.getSelectedRows();
+            if (selectedRows.length > 0) {
+                String question = selectedRows.length == 1 ? "Are you sure you want to delete this transaction?"
+                        : String.format("Are you sure you want to delete these %,d transactions?", selectedRows.length);
+                int confirm = JOptionPane.showConfirmDialog(this, question, "Confirm Deletion", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
-                    transactions.remove(selectedRow);
-                    tableModel.removeRow(selectedRow);
-                    dashboardPanel.updateDashboard(transactions);
+                    deleteRows(selectedRows, null);
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Please select a transaction to delete.", "No Selection",
@@ -159,16 +288,235 @@ public class MainView extends JFrame {
             }
         });
 
+        mutatingControls.add(addBtn);
+        mutatingControls.add(deleteBtn);
         buttonPanel.add(addBtn);
         buttonPanel.add(deleteBtn);
         transactionsPanel.add(buttonPanel, BorderLayout.SOUTH);
 
         tabbedPane.addTab("Transactions", transactionsPanel);
 
-        loadTransactions();
-        updateTable();
-        dashboardPanel.updateDashboard(transactions);
+        reportsPanel = new ReportsPanel(transactions, archive, customFont);
+        tabbedPane.addTab("Reports", reportsPanel);
+        tabbedPane.addTab("Diagnostics", new DiagnosticsPanel(watchdog, customFont));
+        tabbedPane.addChangeListener(e -> {
+            if (tabbedPane.getSelectedComponent() == reportsPanel) reportsPanel.refreshIfStale();
+        });
+
         setVisible(true);
+        StartupTimings.mark("window shown");
+        followOtherInstances();
+        loadTransactions(false);
+    }
+
+    // Other Spendid windows and batch runs on the same data show up here as they save. If their
+    // changes cannot be applied row by row, or crossed edits made here, the data is loaded again.
+    private void followOtherInstances() {
+        try {
+            Files.createDirectories(saveFile.getAbsoluteFile().getParentFile().toPath());
+            persistence.follow(SwingUtilities::invokeLater, () -> {
+                if (!loading) loadTransactions(false);
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private JPanel createSearchBar(Font font) {
+        JPanel searchBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        searchBar.setBackground(new Color(24, 24, 24));
+        searchBar.setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        searchField.putClientProperty("JTextField.placeholderText", "Search notes and categories");
+        searchField.setFont(font.deriveFont(13f));
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                applySearch();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                applySearch();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                applySearch();
+            }
+        });
+        searchTypeCombo.addActionListener(e -> applySearch());
+        searchPeriodCombo.addActionListener(e -> applySearch());
+        refreshFilterCombo(NO_FILTER);
+        filterCombo.setToolTipText("Saved filter for the table and the dashboard");
+        filterCombo.addActionListener(e -> {
+            if (!updatingFilterCombo) applyFilter();
+        });
+        JButton filtersButton = new JButton("Filters…");
+        filtersButton.addActionListener(e -> editFilters());
+        searchCountLabel.setForeground(Color.LIGHT_GRAY);
+        tableModel.addTableModelListener(e -> updateSearchCount());
+
+        searchBar.add(searchField);
+        searchBar.add(searchTypeCombo);
+        searchBar.add(searchPeriodCombo);
+        searchBar.add(filterCombo);
+        searchBar.add(filtersButton);
+        searchBar.add(searchCountLabel);
+        return searchBar;
+    }
+
+    // Runs on every keystroke: the text index answers from its posting lists, so no row is re-scanned for text.
+    // A saved filter is run again with each change batch, and its plan shows on the row count's tooltip.
+    private void applySearch() {
+        String text = searchField.getText();
+        String type = (String) searchTypeCombo.getSelectedItem();
+        Boolean income = "All".equals(type) ? null : TransactionStore.INCOME.equals(type);
+        LocalDate today = LocalDate.now();
+        LocalDate from = ((DashboardPanel.Period) searchPeriodCombo.getSelectedItem()).start(today);
+        LocalDate to = from == null ? null : today;
+        boolean searching = !text.isBlank() || income != null || from != null;
+        Query filter = activeFilter;
+
+        searchCountLabel.setToolTipText(null);
+        if (filter != null) {
+            tableModel.setRowFilter(() -> {
+                Query.Result matched = filter.select(transactions, dateIndex, textIndex, LocalDate.now());
+                searchCountLabel.setToolTipText(preformatted(matched.explain()));
+                if (!searching) return matched.rows();
+                IntList found = textIndex.search(text, income, from, to);
+                IntList rows = new IntList();
+                for (int i = 0; i < found.size(); i++) {
+                    if (matched.contains(found.get(i))) rows.add(found.get(i));
+                }
+                return rows;
+            });
+        } else if (searching) {
+            tableModel.setRowFilter(() -> textIndex.search(text, income, from, to));
+        } else {
+            tableModel.setRowFilter(null);
+        }
+    }
+
+    private static String preformatted(String text) {
+        return "<html><pre>" + text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;") + "</pre></html>";
+    }
+
+    // Saved filters are parsed before they are saved, so only a hand-edited file gets here with a bad one
+    private void applyFilter() {
+        String name = (String) filterCombo.getSelectedItem();
+        String query = savedFilters.get(name);
+        activeFilter = null;
+        if (query != null) {
+            try {
+                activeFilter = Query.parse(query);
+            } catch (IllegalArgumentException e) {
+                statusLabel.setText("Filter " + name + ": " + e.getMessage());
+            }
+        }
+        Query filter = activeFilter;
+        dashboardPanel.setFilter(filter == null ? null : name,
+                filter == null ? null : () -> filter.select(transactions, dateIndex, textIndex, LocalDate.now()).rows());
+        applySearch();
+    }
+
+    private void refreshFilterCombo(String selected) {
+        updatingFilterCombo = true;
+        filterCombo.removeAllItems();
+        filterCombo.addItem(NO_FILTER);
+        for (String name : savedFilters.keySet()) filterCombo.addItem(name);
+        filterCombo.setSelectedItem(savedFilters.containsKey(selected) ? selected : NO_FILTER);
+        updatingFilterCombo = false;
+    }
+
+    // Pick a saved filter by name or type a new one; Explain runs the query and shows its plan
+    private void editFilters() {
+        String current = (String) filterCombo.getSelectedItem();
+        JComboBox<String> nameCombo = new JComboBox<>(savedFilters.keySet().toArray(new String[0]));
+        nameCombo.setEditable(true);
+        nameCombo.setSelectedItem(savedFilters.containsKey(current) ? current : "");
+        JTextField queryField = new JTextField(savedFilters.getOrDefault(current, ""), 40);
+        nameCombo.addActionListener(e -> {
+            String query = savedFilters.get(String.valueOf(nameCombo.getSelectedItem()));
+            if (query != null) queryField.setText(query);
+        });
+        JTextArea planArea = new JTextArea(9, 60);
+        planArea.setEditable(false);
+        planArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JButton explainButton = new JButton("Explain");
+        explainButton.addActionListener(e -> {
+            try {
+                Query query = Query.parse(queryField.getText());
+                planArea.setText(query.select(transactions, dateIndex, textIndex, LocalDate.now()).explain());
+            } catch (IllegalArgumentException ex) {
+                planArea.setText(ex.getMessage());
+            }
+            planArea.setCaretPosition(0);
+        });
+
+        JPanel fields = new JPanel(new GridLayout(0, 1, 0, 4));
+        fields.add(new JLabel("Name:"));
+        fields.add(nameCombo);
+        fields.add(new JLabel("Filter, e.g. expense AND category in (Food, Transport) AND amount > 500 AND date in last quarter:"));
+        fields.add(queryField);
+        JPanel explainRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        explainRow.add(explainButton);
+        fields.add(explainRow);
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.add(fields, BorderLayout.NORTH);
+        panel.add(new JScrollPane(planArea), BorderLayout.CENTER);
+
+        Object[] options = { "Save and Apply", "Delete", "Cancel" };
+        while (true) {
+            int choice = JOptionPane.showOptionDialog(this, panel, "Saved Filters", JOptionPane.DEFAULT_OPTION,
+                    JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+            String name = String.valueOf(nameCombo.getEditor().getItem()).trim();
+            if (choice == 0) {
+                String query = queryField.getText().trim();
+                try {
+                    if (name.isEmpty() || name.equals(NO_FILTER)) throw new IllegalArgumentException("Enter a name.");
+                    Query.parse(query);
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(this, "Invalid filter: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    continue;
+                }
+                savedFilters.put(name, query);
+                saveFilters();
+                refreshFilterCombo(name);
+                applyFilter();
+            } else if (choice == 1 && savedFilters.remove(name) != null) {
+                saveFilters();
+                refreshFilterCombo(current);
+                applyFilter();
+            }
+            return;
+        }
+    }
+
+    private void loadFilters() {
+        try {
+            savedFilters.putAll(FilterFile.read(filterFile));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void saveFilters() {
+        try {
+            FilterFile.write(filterFile, savedFilters);
+        } catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Could not save the filters: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Searches and filters run over the live rows only; archived months are left out of the table meanwhile
+    private void updateSearchCount() {
+        if (!tableModel.isFiltered()) {
+            searchCountLabel.setText(" ");
+        } else if (tableModel.archivedRowCount() == 0) {
+            searchCountLabel.setText(String.format("%,d of %,d", tableModel.getRowCount(), transactions.size()));
+        } else {
+            searchCountLabel.setText(String.format("%,d of %,d recent (%,d archived not searched)",
+                    tableModel.getRowCount(), transactions.size(), tableModel.archivedRowCount()));
+        }
     }
 
     private void styleButton(JButton button, Color bgColor, Font font) {
@@ -187,8 +535,7 @@ public class MainView extends JFrame {
         typeGroup.add(incomeBtn);
         typeGroup.add(expenseBtn);
 
-        String[] categories = { "Allowance", "Food", "Transport", "Tuition", "Entertainment", "Misc" };
-        JComboBox<String> categoryCombo = new JComboBox<>(categories);
+        JComboBox<String> categoryCombo = categoryCombo(null);
 
         JTextField amountField = new JTextField();
 
@@ -257,7 +604,7 @@ public class MainView extends JFrame {
                 if (type.isEmpty())
                     throw new IllegalArgumentException("Select a transaction type.");
 
-                String category = (String) categoryCombo.getSelectedItem();
+                String category = selectedCategory(categoryCombo);
 
                 // Remove commas before parsing
                 String rawAmount = amountField.getText().replace(",", "");
@@ -269,57 +616,352 @@ public class MainView extends JFrame {
                 Transaction t = new Transaction(type, category, amount, date, notes);
                 transactions.add(t);
 
-                updateTable();
-                dashboardPanel.updateDashboard(transactions);
-                saveTransactions();
-
             } catch (Exception ex) {
-
+                showInputError(ex);
             }
         }
     }
 
-    private void updateTable() {
-        tableModel.setRowCount(0);
-        for (Transaction t : transactions) {
-            tableModel.addRow(new Object[] {
-                    t.getType(), t.getCategory(), String.format("₱%,.2f", t.getAmount()), t.getDate().toString(),
-                    t.getNotes()
-            });
-        }
+    // Every category, parents before their children. Typing a name that is not listed adds a
+    // category, and "Food > Groceries" a subcategory, once the transaction is saved.
+    private JComboBox<String> categoryCombo(String selected) {
+        JComboBox<String> combo = new JComboBox<>();
+        for (int node : categories.descendants(CategoryTree.ROOT)) combo.addItem(categories.path(node));
+        combo.setEditable(true);
+        combo.setToolTipText("Pick a category, or type a new one; \"Food > Groceries\" makes a subcategory");
+        if (selected != null) combo.setSelectedItem(selected);
+        return combo;
+    }
+
+    private static String selectedCategory(JComboBox<String> combo) {
+        Object item = combo.getEditor().getItem();
+        String category = CategoryTree.normalize(item == null ? "" : item.toString());
+        if (category.isEmpty()) throw new IllegalArgumentException("Enter a category.");
+        return category;
     }
 
-    private void saveTransactions() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(saveFile))) {
-            oos.writeObject(transactions);
+    // Must run before any rows arrive, so the saved ids are taken before new categories get theirs
+    private void loadCategories() {
+        boolean restored = false;
+        try {
+            restored = CategoryFile.read(categoryFile, categories);
         } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Failed to save.", "Error", JOptionPane.ERROR_MESSAGE);
+            e.printStackTrace();
+        }
+        if (!restored) {
+            for (String name : DEFAULT_CATEGORIES) categories.intern(name);
         }
+        categories.addListener(this::saveCategoriesLater);
+    }
+
+    // Categories are added in bursts, e.g. while a load maps the store's, so they are written once per turn
+    private void saveCategoriesLater() {
+        if (categorySaveScheduled) return;
+        categorySaveScheduled = true;
+        SwingUtilities.invokeLater(() -> {
+            categorySaveScheduled = false;
+            try {
+                CategoryFile.write(categoryFile, categories);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
     }
 
-    private void loadTransactions() {
-        if (saveFile.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(saveFile))) {
-                transactions = (List<Transaction>) ois.readObject();
-            } catch (IOException | ClassNotFoundException e) {
-                JOptionPane.showMessageDialog(this, "Failed to load.", "Error", JOptionPane.ERROR_MESSAGE);
+    private void showInputError(Exception ex) {
+        String message = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+        JOptionPane.showMessageDialog(this, "Invalid transaction: " + message, "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Called on the persistence thread.
+    private void reportSaveError(Exception e) {
+        e.printStackTrace();
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                "Failed to save: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+    }
+
+    // Streams the data file in on the persistence thread. Each batch is applied on
+    // the EDT as it arrives, so the first page is visible while the rest loads.
+    // Editing stays disabled until the journal has been fully replayed, because
+    // journal records refer to row positions.
+    private void loadTransactions(boolean announce) {
+        setLoading(true);
+        Metrics.Timing timing = Metrics.time("ui.load");
+        persistence.setRecording(false);
+        transactions.clear();
+        statusLabel.setText("Loading transactions…");
+
+        persistence.load(new TransactionJournal.ReplaySink() {
+            @Override
+            public void append(TransactionStore batch) {
+                SwingUtilities.invokeLater(() -> {
+                    try (Metrics.Timing ignored = Metrics.time("ui.applyBatch").rows(batch.size())) {
+                        transactions.addAll(batch);
+                    }
+                    StartupTimings.mark("first rows");
+                });
+            }
+
+            @Override
+            public void set(int index, Transaction t) {
+                SwingUtilities.invokeLater(() -> transactions.set(index, t));
             }
+
+            @Override
+            public void remove(int index) {
+                SwingUtilities.invokeLater(() -> transactions.remove(index));
+            }
+
+            @Override
+            public void insert(int index, Transaction t) {
+                SwingUtilities.invokeLater(() -> transactions.insert(index, t));
+            }
+
+            @Override
+            public void progress(int loaded, int expected) {
+                SwingUtilities.invokeLater(() -> {
+                    progressBar.setValue((int) (100L * loaded / expected));
+                    statusLabel.setText(String.format("Loading… %,d of %,d transactions", loaded, expected));
+                });
+            }
+        }).whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            timing.rows(transactions.size()).close();
+            // A reload re-interns into the same dictionaries, so notes edited away earlier are dropped here
+            transactions.compactNotes();
+            persistence.setRecording(true);
+            setLoading(false);
+            tableModel.archiveChanged();
+            reportsPanel.markStale();
+            dashboardPanel.archiveChanged();
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                cause.printStackTrace();
+                statusLabel.setText("Load failed");
+                JOptionPane.showMessageDialog(this, "Failed to load: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            statusLabel.setText(archive.isEmpty() ? String.format("%,d transactions", transactions.size())
+                    : String.format("%,d recent transactions, %,d archived", transactions.size(), archive.totalRows()));
+            if (announce) {
+                JOptionPane.showMessageDialog(this, "Loaded " + transactions.size() + " transactions.", "Loaded", JOptionPane.INFORMATION_MESSAGE);
+            }
+            finishStartup();
+        }));
+    }
+
+    // The first completed load ends the startup. A training run for the class data sharing
+    // archive (see README) closes the window here, once everything on the way has been loaded.
+    private void finishStartup() {
+        StartupTimings.finish("data loaded");
+        if (Boolean.getBoolean("spendid.exitAfterStartup")) {
+            SwingUtilities.invokeLater(() -> dispatchEvent(new WindowEvent(this, WindowEvent.WINDOW_CLOSING)));
+        }
+    }
+
+    private void setLoading(boolean loading) {
+        this.loading = loading;
+        progressBar.setValue(0);
+        progressBar.setVisible(loading);
+        for (Component control : mutatingControls) {
+            control.setEnabled(!loading);
         }
+        updateUndoItems();
     }
 
-    private void exportToCSV() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter("src/data/transactions.csv"))) {
-            writer.println("Type,Category,Amount,Date,Notes");
-            for (Transaction t : transactions) {
-                writer.printf("%s,%s,%.2f,%s,%s\n", t.getType(), t.getCategory(), t.getAmount(), t.getDate(), t.getNotes().replaceAll(",", " "));
+    private void updateUndoItems() {
+        String undo = history.undoDescription();
+        String redo = history.redoDescription();
+        undoItem.setText(undo == null ? "Undo" : "Undo " + undo);
+        redoItem.setText(redo == null ? "Redo" : "Redo " + redo);
+        undoItem.setEnabled(!loading && undo != null);
+        redoItem.setEnabled(!loading && redo != null);
+    }
+
+    // Statements are parsed and checked for duplicates off the EDT, against a copy of the rows taken
+    // here. Each batch of new rows is appended on the EDT as it is ready and journaled like any
+    // other addition; editing stays disabled until the last one is in.
+    private void importCsvDirectory() {
+        JFileChooser chooser = new JFileChooser(new File("src/data"));
+        chooser.setDialogTitle("Import CSV Folder");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        Path directory = chooser.getSelectedFile().toPath();
+
+        TransactionStore snapshot = transactions.copy();
+        setLoading(true);
+        statusLabel.setText("Importing " + directory.getFileName() + "…");
+        SwingWorker<CsvImporter.DirectoryImport, Void> worker = new SwingWorker<>() {
+            @Override
+            protected CsvImporter.DirectoryImport doInBackground() throws Exception {
+                return CsvImporter.importDirectory(directory, archive.withHistory(snapshot),
+                        Runtime.getRuntime().availableProcessors(), CsvImporter.DEFAULT_BATCH_ROWS,
+                        batch -> SwingUtilities.invokeLater(() -> transactions.addAll(batch)),
+                        (parsed, files) -> setProgress(100 * parsed / files));
             }
-            JOptionPane.showMessageDialog(this, "Exported to CSV successfully.");
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "CSV export failed.", "Error", JOptionPane.ERROR_MESSAGE);
+
+            @Override
+            protected void done() {
+                setLoading(false);
+                try {
+                    CsvImporter.DirectoryImport result = get();
+                    statusLabel.setText(String.format("Imported %,d transactions", result.added()));
+                    JOptionPane.showMessageDialog(MainView.this, String.format(
+                            "Imported %,d new transactions from %,d files in %s.%nSkipped %,d already present.",
+                            result.added(), result.files(), directory, result.duplicates()));
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    cause.printStackTrace();
+                    statusLabel.setText("Import failed");
+                    JOptionPane.showMessageDialog(MainView.this, "CSV import failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) progressBar.setValue((Integer) e.getNewValue());
+        });
+        worker.execute();
+    }
+
+    // The file is read off the EDT into column batches, which are only added once all of it has
+    // parsed, in one event-queue turn, so a malformed file adds nothing and the import is one undo step.
+    private void importJson() {
+        JFileChooser chooser = new JFileChooser(new File("src/data"));
+        chooser.setDialogTitle("Import JSON");
+        chooser.setFileFilter(new FileNameExtensionFilter("JSON files", "json"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        Path file = chooser.getSelectedFile().toPath();
+
+        setLoading(true);
+        progressBar.setIndeterminate(true);
+        statusLabel.setText("Importing " + file.getFileName() + "…");
+        SwingWorker<List<TransactionStore>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected List<TransactionStore> doInBackground() throws Exception {
+                List<TransactionStore> batches = new ArrayList<>();
+                JsonImporter.importFile(file, CsvImporter.DEFAULT_BATCH_ROWS, batches::add);
+                return batches;
+            }
+
+            @Override
+            protected void done() {
+                progressBar.setIndeterminate(false);
+                setLoading(false);
+                try {
+                    int rows = 0;
+                    for (TransactionStore batch : get()) {
+                        transactions.addAll(batch);
+                        rows += batch.size();
+                    }
+                    statusLabel.setText(String.format("Imported %,d transactions", rows));
+                    JOptionPane.showMessageDialog(MainView.this, String.format("Imported %,d transactions from %s.", rows, file));
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    cause.printStackTrace();
+                    statusLabel.setText("Import failed");
+                    JOptionPane.showMessageDialog(MainView.this, "JSON import failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    // A file name ending in .json is written as JSON, anything else as CSV
+    private void exportTransactions() {
+        JFileChooser chooser = new JFileChooser(new File("src/data"));
+        chooser.setSelectedFile(new File("src/data/transactions.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        Path target = chooser.getSelectedFile().toPath();
+
+        JComboBox<String> typeCombo = new JComboBox<>(new String[] { "All", "Income", "Expense" });
+        JComboBox<String> exportFilterCombo = new JComboBox<>();
+        exportFilterCombo.addItem(NO_FILTER);
+        for (String name : savedFilters.keySet()) exportFilterCombo.addItem(name);
+        exportFilterCombo.setSelectedItem(filterCombo.getSelectedItem());
+        JTextField fromField = new JTextField();
+        JTextField toField = new JTextField();
+        JPanel panel = new JPanel(new GridLayout(0, 2));
+        panel.add(new JLabel("Type:"));
+        panel.add(typeCombo);
+        panel.add(new JLabel("Filter:"));
+        panel.add(exportFilterCombo);
+        panel.add(new JLabel("From (YYYY-MM-DD, optional):"));
+        panel.add(fromField);
+        panel.add(new JLabel("To (YYYY-MM-DD, optional):"));
+        panel.add(toField);
+        if (JOptionPane.showConfirmDialog(this, panel, "Export", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+            return;
+
+        LocalDate from;
+        LocalDate to;
+        Query query;
+        try {
+            from = fromField.getText().isBlank() ? null : LocalDate.parse(fromField.getText().trim());
+            to = toField.getText().isBlank() ? null : LocalDate.parse(toField.getText().trim());
+            String saved = savedFilters.get(exportFilterCombo.getSelectedItem());
+            query = saved == null ? null : Query.parse(saved);
+        } catch (Exception ex) {
+            showInputError(ex);
+            return;
         }
+
+        // Export from a copy so the EDT can keep editing while the file is written
+        TransactionStore snapshot = transactions.copy();
+        String type = (String) typeCombo.getSelectedItem();
+
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        statusLabel.setText("Exporting to " + target.getFileName() + "…");
+        SwingWorker<Integer, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                // Archived months come first, so the file stays in roughly chronological order
+                TransactionRows rows = archive.withHistory(snapshot);
+                boolean income = TransactionStore.INCOME.equals(type);
+                IntPredicate filter = "All".equals(type) ? row -> true : row -> rows.isIncome(row) == income;
+                if (query != null) {
+                    // The archive has no indexes, so the filter takes one scan before the export's
+                    filter = filter.and(query.select(rows, null, null, LocalDate.now())::contains);
+                }
+                if (target.getFileName().toString().toLowerCase().endsWith(".json")) {
+                    return new JsonExporter(rows).between(from, to).filter(filter).export(target, (scanned, total) ->
+                            setProgress(total == 0 ? 100 : (int) (100L * scanned / total)));
+                }
+                return new CsvExporter(rows).between(from, to).filter(filter).export(target, (scanned, total) ->
+                        setProgress(total == 0 ? 100 : (int) (100L * scanned / total)));
+            }
+
+            @Override
+            protected void done() {
+                progressBar.setVisible(false);
+                try {
+                    int written = get();
+                    statusLabel.setText(String.format("Exported %,d transactions", written));
+                    JOptionPane.showMessageDialog(MainView.this, String.format("Exported %,d transactions to %s.", written, target));
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    cause.printStackTrace();
+                    statusLabel.setText("Export failed");
+                    JOptionPane.showMessageDialog(MainView.this, "Export failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) progressBar.setValue((Integer) e.getNewValue());
+        });
+        worker.execute();
     }
 
-    private void showEditTransactionDialog(int index, Transaction t) {
+    private void showEditTransactionDialog(int row) {
+        if (tableModel.isArchived(row) && archiveBusy()) return;
+        Transaction t = tableModel.isArchived(row) ? tableModel.archivedTransaction(row)
+                : transactions.get(tableModel.toStoreRow(row));
+        if (t == null) {
+            statusLabel.setText("That month is still being read from the archive.");
+            return;
+        }
         ButtonGroup typeGroup = new ButtonGroup();
         JRadioButton incomeBtn = new JRadioButton("Income");
         JRadioButton expenseBtn = new JRadioButton("Expense");
@@ -330,9 +972,7 @@ public class MainView extends JFrame {
         typeGroup.add(incomeBtn);
         typeGroup.add(expenseBtn);
 
-        String[] categories = { "Allowance", "Food", "Transport", "Tuition", "Entertainment", "Misc" };
-        JComboBox<String> categoryCombo = new JComboBox<>(categories);
-        categoryCombo.setSelectedItem(t.getCategory());
+        JComboBox<String> categoryCombo = categoryCombo(t.getCategory());
 
         JTextField amountField = new JTextField(String.format("%,.2f", t.getAmount()));
         JTextField dateField = new JTextField(t.getDate().toString());
@@ -361,27 +1001,88 @@ public class MainView extends JFrame {
         if (result == 0) { // Save
             try {
                 String type = incomeBtn.isSelected() ? "Income" : "Expense";
-                String category = (String) categoryCombo.getSelectedItem();
+                String category = selectedCategory(categoryCombo);
                 String rawAmount = amountField.getText().replace(",", "");
                 double amount = Double.parseDouble(rawAmount);
                 LocalDate date = LocalDate.parse(dateField.getText());
                 String notes = notesArea.getText();
 
                 Transaction updated = new Transaction(type, category, amount, date, notes);
-                transactions.set(index, updated);
-                updateTable();
-                dashboardPanel.updateDashboard(transactions);
+                if (tableModel.isArchived(row)) {
+                    // An edited archived row becomes a live one; the next load archives it again if it is still old
+                    deleteRows(new int[] { row }, () -> {
+                        transactions.add(updated);
+                        history.clear();
+                    });
+                } else {
+                    transactions.set(tableModel.toStoreRow(row), updated);
+                }
             } catch (Exception ex) {
+                showInputError(ex);
             }
         } else if (result == 1) { // Delete
             int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to delete this transaction?",
                     "Confirm Delete", JOptionPane.YES_NO_OPTION);
             if (confirm == JOptionPane.YES_OPTION) {
-                transactions.remove(index);
-                updateTable();
-                dashboardPanel.updateDashboard(transactions);
+                deleteRows(new int[] { row }, null);
             }
         }
     }
 
+    // Rows go bottom-up, so the table rows still to be deleted keep their positions. Live rows are
+    // removed as runs of consecutive store rows, one removeRange each, and journaled through the
+    // store listener. Archived rows are removed from their partitions on the persistence thread, one
+    // after another; the table picks up the new month offsets once they are all done, and only then
+    // runs afterArchived. Until then no other archived row can be deleted or edited, since the
+    // table's positions for them are out of date.
+    private void deleteRows(int[] rows, Runnable afterArchived) {
+        int[] sorted = rows.clone();
+        Arrays.sort(sorted);
+        if (sorted.length > 0 && tableModel.isArchived(sorted[sorted.length - 1]) && archiveBusy()) return;
+        CompletableFuture<Void> archived = null;
+        int[] storeRows = new int[sorted.length];
+        int live = 0;
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            int row = sorted[i];
+            if (tableModel.isArchived(row)) {
+                YearMonth month = tableModel.archivedMonth(row);
+                int index = tableModel.archivedIndex(row);
+                archived = archived == null ? persistence.removeArchived(month, index)
+                        : archived.thenCompose(ignored -> persistence.removeArchived(month, index));
+            } else {
+                storeRows[live++] = tableModel.toStoreRow(row);
+            }
+        }
+        Arrays.sort(storeRows, 0, live);
+        for (int end = live; end > 0; ) {
+            int start = end - 1;
+            while (start > 0 && storeRows[start - 1] == storeRows[start] - 1) start--;
+            transactions.removeRange(storeRows[start], storeRows[end - 1] + 1);
+            end = start;
+        }
+        if (archived == null) return;
+
+        archiveEditsPending++;
+        archived.whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            archiveEditsPending--;
+            // Archived rows are rewritten in their partitions, outside the store, so this cannot be undone
+            history.clear();
+            tableModel.archiveChanged();
+            reportsPanel.markStale();
+            dashboardPanel.archiveChanged();
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                reportSaveError(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+            } else if (afterArchived != null) {
+                afterArchived.run();
+            }
+        }));
+    }
+
+    private boolean archiveBusy() {
+        if (archiveEditsPending == 0) return false;
+        statusLabel.setText("Archived rows are still being updated; try again in a moment.");
+        return true;
+    }
+
 }
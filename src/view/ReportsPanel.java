@@ -0,0 +1,175 @@
+package view;
+
+import diagnostics.Metrics;
+import model.PivotReport;
+import model.ReportEngine;
+import model.TransactionStore;
+import storage.PartitionArchive;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * "Reports" tab: per category and type statistics (count, total, min, max,
+ * average, median, 90th and 99th percentile) and a category × month pivot.
+ * Reports are built by {@link ReportEngine} on a background thread from a copy
+ * of the store plus every archived month, and only when the tab is shown
+ * after the data has changed.
+ */
+public class ReportsPanel extends JPanel implements TransactionStore.Listener {
+    private static final String[] STAT_COLUMNS = { "Category", "Type", "Count", "Total", "Min", "Max", "Average",
+            "Median", "P90", "P99" };
+
+    private final TransactionStore store;
+    private final PartitionArchive archive;
+    private final ReportEngine engine = new ReportEngine();
+    private final DefaultTableModel statsModel = readOnlyModel();
+    private final DefaultTableModel pivotModel = readOnlyModel();
+    private final JLabel infoLabel = new JLabel(" ");
+    private boolean stale = true;
+    private SwingWorker<PivotReport, Void> worker;
+
+    public ReportsPanel(TransactionStore store, PartitionArchive archive, Font font) {
+        this.store = store;
+        this.archive = archive;
+        setLayout(new BorderLayout());
+        setBackground(new Color(24, 24, 24));
+        store.addListener(this);
+
+        statsModel.setColumnIdentifiers(STAT_COLUMNS);
+        JTable statsTable = createTable(statsModel, font);
+        JTable pivotTable = createTable(pivotModel, font);
+        pivotTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(statsTable),
+                new JScrollPane(pivotTable));
+        split.setResizeWeight(0.5);
+        split.setBorder(null);
+        add(split, BorderLayout.CENTER);
+
+        infoLabel.setForeground(Color.LIGHT_GRAY);
+        infoLabel.setBorder(new EmptyBorder(8, 10, 8, 10));
+        add(infoLabel, BorderLayout.NORTH);
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        stale = true;
+    }
+
+    @Override
+    public void rowsRemoved(int from, int to) {
+        stale = true;
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        stale = true;
+    }
+
+    /** Forces a rebuild on the next refresh, e.g. after archived months changed. */
+    public void markStale() {
+        stale = true;
+        if (isShowing()) refreshIfStale();
+    }
+
+    /** Rebuilds the report in the background if the data changed since the last one. */
+    public void refreshIfStale() {
+        if (!stale || (worker != null && !worker.isDone())) return;
+        stale = false;
+        infoLabel.setText("Building report...");
+        TransactionStore snapshot = store.copy();
+        worker = new SwingWorker<>() {
+            @Override
+            protected PivotReport doInBackground() throws Exception {
+                try (Metrics.Timing ignored = Metrics.time("report.build")) {
+                    return engine.run(archive == null ? snapshot : archive.withHistory(snapshot));
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    display(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    stale = true;
+                    infoLabel.setText("Report failed: " + e.getCause().getMessage());
+                }
+                // Changes that arrived while building are picked up straight away
+                if (stale && isShowing()) refreshIfStale();
+            }
+        };
+        worker.execute();
+    }
+
+    private void display(PivotReport report) {
+        statsModel.setRowCount(0);
+        for (int id = 0; id < report.categoryCount(); id++) {
+            for (boolean income : new boolean[] { false, true }) {
+                if (report.count(id, income) == 0) continue;
+                statsModel.addRow(new Object[] {
+                        report.categoryName(id), income ? TransactionStore.INCOME : TransactionStore.EXPENSE,
+                        String.format("%,d", report.count(id, income)), format(report.sumCents(id, income)),
+                        format(report.minCents(id, income)), format(report.maxCents(id, income)),
+                        format(report.averageCents(id, income)), format(report.percentileCents(id, income, 0.5)),
+                        format(report.percentileCents(id, income, 0.9)), format(report.percentileCents(id, income, 0.99))
+                });
+            }
+        }
+
+        Object[] columns = new Object[report.monthCount() + 2];
+        columns[0] = "Category";
+        columns[1] = "Type";
+        for (int m = 0; m < report.monthCount(); m++) columns[m + 2] = report.month(m).toString();
+        pivotModel.setColumnIdentifiers(columns);
+        pivotModel.setRowCount(0);
+        for (int id = 0; id < report.categoryCount(); id++) {
+            for (boolean income : new boolean[] { false, true }) {
+                if (report.count(id, income) == 0) continue;
+                Object[] row = new Object[columns.length];
+                row[0] = report.categoryName(id);
+                row[1] = income ? TransactionStore.INCOME : TransactionStore.EXPENSE;
+                for (int m = 0; m < report.monthCount(); m++) {
+                    row[m + 2] = report.cellCount(id, m, income) == 0 ? "" : format(report.cellCents(id, m, income));
+                }
+                pivotModel.addRow(row);
+            }
+        }
+
+        infoLabel.setText(String.format("%,d transactions, %d months, built in %,d ms on %d threads. "
+                + "Percentiles are within about 1%%.", report.rowCount(), report.monthCount(),
+                report.elapsedNanos() / 1_000_000, report.parallelism()));
+    }
+
+    private static String format(long cents) {
+        return String.format("₱%,.2f", cents / 100.0);
+    }
+
+    static DefaultTableModel readOnlyModel() {
+        return new DefaultTableModel() {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    static JTable createTable(DefaultTableModel model, Font font) {
+        JTable table = new JTable(model);
+        table.setFont(font.deriveFont(13f));
+        table.setRowHeight(26);
+        table.setBackground(new Color(36, 36, 36));
+        table.setForeground(Color.WHITE);
+        table.setSelectionBackground(new Color(60, 60, 60));
+        table.getTableHeader().setFont(font);
+        table.getTableHeader().setBackground(new Color(20, 20, 20));
+        table.getTableHeader().setForeground(Color.WHITE);
+        table.setGridColor(new Color(50, 50, 50));
+        return table;
+    }
+}
@@ -0,0 +1,115 @@
+package view;
+
+import diagnostics.StartupTimings;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * The fonts and images bundled under {@code fonts/} and {@code img/}, each
+ * read and decoded once for the whole process by whichever thread asks first.
+ * {@link #preload} starts that work in the background so it overlaps with the
+ * look and feel setting up. Resources come from the class path (the packaged
+ * jar) or, for runs from the source tree, from {@code src/}.
+ */
+public final class Resources {
+    public static final String UI_FONT = "fonts/SF-Pro-Display-Medium.ttf";
+    public static final String APP_ICON = "img/icon.png";
+    public static final String EDIT_ICON = "img/pencil.png";
+
+    private static final Map<String, CompletableFuture<Font>> FONTS = new ConcurrentHashMap<>();
+    private static final Map<String, CompletableFuture<BufferedImage>> IMAGES = new ConcurrentHashMap<>();
+    private static final Map<String, ImageIcon> ICONS = new ConcurrentHashMap<>();
+
+    private Resources() {
+    }
+
+    /** Starts reading the UI font and the icons on {@code executor}, one task each, timed as startup phases. */
+    public static void preload(Executor executor) {
+        load(FONTS, UI_FONT, Resources::readFont, timed("font", executor));
+        load(IMAGES, APP_ICON, Resources::readImage, timed("icon", executor));
+        load(IMAGES, EDIT_ICON, Resources::readImage, timed("edit icon", executor));
+    }
+
+    /** The bundled font at {@code path} in {@code size}; the default dialog font if it cannot be read. */
+    public static Font font(String path, float size) {
+        Font font = load(FONTS, path, Resources::readFont, Runnable::run).join();
+        return font != null ? font.deriveFont(size) : new Font(Font.DIALOG, Font.PLAIN, Math.round(size));
+    }
+
+    /** The bundled image at {@code path}, or null if it cannot be read. */
+    public static BufferedImage image(String path) {
+        return load(IMAGES, path, Resources::readImage, Runnable::run).join();
+    }
+
+    /** The image at {@code path} scaled to {@code size} pixels square; an empty icon if it cannot be read. */
+    public static ImageIcon icon(String path, int size) {
+        return ICONS.computeIfAbsent(path + '@' + size, key -> {
+            BufferedImage image = image(path);
+            return image == null ? new ImageIcon()
+                    : new ImageIcon(image.getScaledInstance(size, size, Image.SCALE_SMOOTH));
+        });
+    }
+
+    // The first caller for a path claims it and reads it on its executor; later callers share the result
+    private static <T> CompletableFuture<T> load(Map<String, CompletableFuture<T>> cache, String path,
+            Function<String, T> reader, Executor executor) {
+        CompletableFuture<T> claimed = new CompletableFuture<>();
+        CompletableFuture<T> existing = cache.putIfAbsent(path, claimed);
+        if (existing != null) return existing;
+        executor.execute(() -> {
+            try {
+                claimed.complete(reader.apply(path));
+            } catch (Throwable t) {
+                claimed.completeExceptionally(t);
+            }
+        });
+        return claimed;
+    }
+
+    private static Executor timed(String phase, Executor executor) {
+        return task -> executor.execute(() -> {
+            try (StartupTimings.Phase ignored = StartupTimings.begin(phase)) {
+                task.run();
+            }
+        });
+    }
+
+    private static Font readFont(String path) {
+        try (InputStream in = open(path)) {
+            Font font = Font.createFont(Font.TRUETYPE_FONT, in);
+            GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
+            return font;
+        } catch (Exception e) {
+            System.err.println("Font " + path + " could not be loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static BufferedImage readImage(String path) {
+        try (InputStream in = open(path)) {
+            return ImageIO.read(in);
+        } catch (IOException e) {
+            System.err.println("Image " + path + " could not be loaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static InputStream open(String path) throws IOException {
+        InputStream in = Resources.class.getClassLoader().getResourceAsStream(path);
+        return in != null ? in : new FileInputStream(new File("src", path));
+    }
+}
@@ -0,0 +1,360 @@
+package view;
+
+import diagnostics.Metrics;
+import model.ChangeCoalescer;
+import model.DateIndex;
+import model.IntList;
+import model.Transaction;
+import model.TransactionRows;
+import model.TransactionStore;
+import storage.PartitionArchive;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Table model that reads cells straight from the {@link TransactionStore}.
+ * JTable only asks for the rows it paints, so formatting is done lazily and the
+ * results are kept in a small direct-mapped cache. Store mutations are turned
+ * into fine-grained table events instead of a full rebuild. An optional row
+ * filter narrows the table to the rows it returns; while one is set, the
+ * visible rows are kept in step with removals straight away and the filter is
+ * re-run once per batch from the {@link ChangeCoalescer}. Without a filter,
+ * archived months follow the live rows, newest first. A month's partition is
+ * read off the EDT when it scrolls into view, with placeholder cells until it
+ * arrives, and the last few months are kept. The running balance is not
+ * cached, since one edit moves the balance of every later row. Each cell adds
+ * the archived balance through the day before, from the month closing
+ * balances of the archive manifest in O(log #months), to the live balance: the
+ * date index's O(log n) balance after a live row, or its O(log n) balance
+ * through the day before plus the row's running total within its day, worked
+ * out once when an archived month is read.
+ */
+public class TransactionTableModel extends AbstractTableModel implements TransactionStore.Listener {
+    private static final String[] COLUMNS = { "Type", "Category", "Amount", "Date", "Notes", "Balance" };
+    private static final int BALANCE_COLUMN = 5;
+    private static final int CACHE_SIZE = 256; // must be a power of two
+    private static final int LOADED_MONTHS = 12;
+    private static final String LOADING = "…";
+
+    private final TransactionStore store;
+    private final DateIndex dateIndex;
+    private final int[] cachedRows = new int[CACHE_SIZE];
+    private final Object[][] cachedCells = new Object[CACHE_SIZE][];
+    private Supplier<IntList> rowFilter;
+    private IntList visibleRows; // null when every store row is shown
+    private boolean refilterDue;
+    private Function<YearMonth, CompletableFuture<? extends TransactionRows>> monthLoader;
+    private PartitionArchive archive;
+    private YearMonth[] archivedMonths = new YearMonth[0]; // newest first
+    private int[] archivedStarts = new int[0]; // first row of each month, counted from the end of the store
+    private int archivedRows;
+    private final TreeMap<YearMonth, PartitionArchive.MonthSummary> summaries = new TreeMap<>();
+    private final TreeMap<YearMonth, Long> closingBalances = new TreeMap<>();
+    private final Map<YearMonth, TransactionRows> loadedMonths = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<YearMonth, long[]> sameDayCents = new HashMap<>(); // per loaded row, through it within its day
+    private final Set<YearMonth> loadingMonths = new HashSet<>();
+    private int archiveGeneration;
+
+    public TransactionTableModel(TransactionStore store, DateIndex dateIndex, ChangeCoalescer changes) {
+        this.store = store;
+        this.dateIndex = dateIndex;
+        Arrays.fill(cachedRows, -1);
+        store.addListener(this);
+        changes.addListener(batch -> {
+            if (refilterDue) {
+                refilter();
+            } else if (getRowCount() > 0) {
+                fireTableChanged(new TableModelEvent(this, 0, getRowCount() - 1, BALANCE_COLUMN));
+            }
+        });
+    }
+
+    /** Shows only the store rows returned by {@code filter}, in ascending order; null shows every row. */
+    public void setRowFilter(Supplier<IntList> filter) {
+        rowFilter = filter;
+        refilterDue = false;
+        try (Metrics.Timing ignored = Metrics.time("table.filter")) {
+            visibleRows = filter == null ? null : filter.get();
+        }
+        invalidate();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Lists the rows of {@code archive} below the live ones; null hides them.
+     * {@code monthLoader} reads one month's rows on another thread, e.g. the
+     * persistence thread, so the EDT never waits for a partition file.
+     */
+    public void setArchive(PartitionArchive archive, Function<YearMonth, CompletableFuture<? extends TransactionRows>> monthLoader) {
+        this.archive = archive;
+        this.monthLoader = monthLoader;
+        archiveChanged();
+    }
+
+    /** Picks up archived months that were added, changed or removed. */
+    public void archiveChanged() {
+        List<PartitionArchive.MonthSummary> months = archive == null ? List.of() : archive.summaries();
+        archiveGeneration++;
+        loadedMonths.clear();
+        sameDayCents.clear();
+        loadingMonths.clear();
+        summaries.clear();
+        closingBalances.clear();
+        long balance = 0;
+        for (PartitionArchive.MonthSummary month : months) {
+            summaries.put(month.month(), month);
+            balance += month.netCents(Integer.MAX_VALUE);
+            closingBalances.put(month.month(), balance);
+        }
+        archivedMonths = new YearMonth[months.size()];
+        archivedStarts = new int[months.size()];
+        archivedRows = 0;
+        for (int i = 0; i < archivedMonths.length; i++) {
+            PartitionArchive.MonthSummary month = months.get(months.size() - 1 - i);
+            archivedMonths[i] = month.month();
+            archivedStarts[i] = archivedRows;
+            archivedRows += month.rows();
+        }
+        invalidate();
+        fireTableDataChanged();
+    }
+
+    /** Rows in archived months, whether or not they are listed right now. */
+    public int archivedRowCount() {
+        return archivedRows;
+    }
+
+    /** The archived row at a table row, or null while its month is still being read. */
+    public Transaction archivedTransaction(int row) {
+        TransactionRows rows = loadedMonth(archivedMonth(row));
+        return rows == null ? null : rows.get(archivedIndex(row));
+    }
+
+    /** True if the table row belongs to an archived month rather than the store. */
+    public boolean isArchived(int row) {
+        return visibleRows == null && row >= store.size();
+    }
+
+    public YearMonth archivedMonth(int row) {
+        return archivedMonths[archivedSlot(row)];
+    }
+
+    /** Position of an archived table row within its month's partition. */
+    public int archivedIndex(int row) {
+        return row - store.size() - archivedStarts[archivedSlot(row)];
+    }
+
+    public boolean isFiltered() {
+        return visibleRows != null;
+    }
+
+    /** Maps a table row to its row in the store. */
+    public int toStoreRow(int row) {
+        return visibleRows == null ? row : visibleRows.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return visibleRows == null ? store.size() + archivedRows : visibleRows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == BALANCE_COLUMN) {
+            Long balance = balanceCents(row);
+            return balance == null ? LOADING : String.format("₱%,.2f", balance / 100.0);
+        }
+        int slot = row & (CACHE_SIZE - 1);
+        if (cachedRows[slot] != row) {
+            TransactionRows rows = store;
+            if (isArchived(row)) {
+                rows = loadedMonth(archivedMonth(row));
+                if (rows == null) return LOADING;
+            }
+            Metrics.counter("table.rowsFormatted").increment();
+            cachedCells[slot] = cells(rows, rows == store ? toStoreRow(row) : archivedIndex(row));
+            cachedRows[slot] = row;
+        }
+        return cachedCells[slot][column];
+    }
+
+    private static Object[] cells(TransactionRows rows, int row) {
+        return new Object[] {
+                rows.isIncome(row) ? TransactionStore.INCOME : TransactionStore.EXPENSE, rows.getCategory(row),
+                String.format("₱%,.2f", rows.getCents(row) / 100.0), LocalDate.ofEpochDay(rows.getEpochDay(row)).toString(),
+                rows.getNotes(row)
+        };
+    }
+
+    /**
+     * Balance after the table row, counting every live and archived row in
+     * date order; on a shared day archived rows come before live ones. Null
+     * for an archived row whose month is still being read.
+     */
+    public Long balanceCents(int row) {
+        if (!isArchived(row)) {
+            int storeRow = toStoreRow(row);
+            return archivedBalanceCents(store.getEpochDay(storeRow)) + dateIndex.balanceAtRow(storeRow);
+        }
+        YearMonth month = archivedMonth(row);
+        TransactionRows rows = loadedMonth(month);
+        if (rows == null) return null;
+        int index = archivedIndex(row);
+        int day = rows.getEpochDay(index);
+        return archivedBalanceCents(day - 1) + dateIndex.balanceCents(day - 1) + sameDayCents.get(month)[index];
+    }
+
+    // Running totals within each day, rows of a day taken in partition order
+    private static long[] sameDayCents(YearMonth month, TransactionRows rows) {
+        long[] byDay = new long[month.lengthOfMonth()];
+        long[] running = new long[rows.size()];
+        int firstDay = (int) month.atDay(1).toEpochDay();
+        for (int row = 0; row < rows.size(); row++) {
+            int day = rows.getEpochDay(row) - firstDay;
+            byDay[day] += rows.isIncome(row) ? rows.getCents(row) : -rows.getCents(row);
+            running[row] = byDay[day];
+        }
+        return running;
+    }
+
+    // Income minus expenses of the archived rows dated on or before throughDay, from the copy of the
+    // manifest taken in archiveChanged: the month before's closing balance plus that month's daily amounts
+    private long archivedBalanceCents(int throughDay) {
+        if (summaries.isEmpty()) return 0;
+        LocalDate date = LocalDate.ofEpochDay(throughDay);
+        YearMonth month = YearMonth.from(date);
+        Map.Entry<YearMonth, Long> before = closingBalances.lowerEntry(month);
+        long balance = before == null ? 0 : before.getValue();
+        PartitionArchive.MonthSummary summary = summaries.get(month);
+        return summary == null ? balance : balance + summary.netCents(date.getDayOfMonth());
+    }
+
+    // Starts reading the month on the loader's thread the first time it is asked for; the rows that
+    // show it are repainted once it is in. A month that fails to load stays a placeholder until the
+    // archive changes.
+    private TransactionRows loadedMonth(YearMonth month) {
+        TransactionRows rows = loadedMonths.get(month);
+        if (rows != null || !loadingMonths.add(month)) return rows;
+        int generation = archiveGeneration;
+        monthLoader.apply(month).whenComplete((loaded, error) -> {
+            long[] running = error == null ? sameDayCents(month, loaded) : null;
+            SwingUtilities.invokeLater(() -> monthLoaded(generation, month, loaded, running, error));
+        });
+        return null;
+    }
+
+    private void monthLoaded(int generation, YearMonth month, TransactionRows loaded, long[] running, Throwable error) {
+        if (generation != archiveGeneration) return;
+        if (error != null) {
+            error.printStackTrace();
+            return;
+        }
+        loadingMonths.remove(month);
+        loadedMonths.put(month, loaded);
+        sameDayCents.put(month, running);
+        if (loadedMonths.size() > LOADED_MONTHS) {
+            Iterator<YearMonth> eldest = loadedMonths.keySet().iterator();
+            sameDayCents.remove(eldest.next());
+            eldest.remove();
+        }
+        int slot = Arrays.asList(archivedMonths).indexOf(month);
+        if (slot >= 0 && visibleRows == null) {
+            int first = store.size() + archivedStarts[slot];
+            int last = slot + 1 < archivedStarts.length ? store.size() + archivedStarts[slot + 1] - 1
+                    : store.size() + archivedRows - 1;
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    private int archivedSlot(int row) {
+        int index = Arrays.binarySearch(archivedStarts, row - store.size());
+        return index >= 0 ? index : -index - 2;
+    }
+
+    @Override
+    public void rowsInserted(int from, int to) {
+        if (rowFilter != null) {
+            if (from < store.size() - (to - from)) {
+                visibleRows.shift(from, to - from);
+                invalidate();
+                fireTableDataChanged();
+            }
+            refilterDue = true;
+            return;
+        }
+        // Rows after the insertion point (archived ones included) shift, so cached entries no longer match their index
+        if (from < store.size() - (to - from) || archivedRows > 0) invalidate();
+        fireTableRowsInserted(from, to - 1);
+    }
+
+    @Override
+    public void rowsRemoved(int from, int to) {
+        if (rowFilter != null) {
+            // Removed rows cannot match, so the visible list is fixed up here and never points past the store
+            for (int row = from; row < to; row++) visibleRows.removeSorted(row);
+            visibleRows.shift(to, from - to);
+            invalidate();
+            fireTableDataChanged();
+            return;
+        }
+        invalidate();
+        fireTableRowsDeleted(from, to - 1);
+    }
+
+    @Override
+    public void rowUpdated(int row) {
+        if (rowFilter != null) {
+            invalidate();
+            refilterDue = true;
+            return;
+        }
+        int slot = row & (CACHE_SIZE - 1);
+        if (cachedRows[slot] == row) cachedRows[slot] = -1;
+        fireTableRowsUpdated(row, row);
+    }
+
+    private void refilter() {
+        refilterDue = false;
+        try (Metrics.Timing ignored = Metrics.time("table.filter")) {
+            visibleRows = rowFilter.get();
+        }
+        invalidate();
+        fireTableDataChanged();
+    }
+
+    private void invalidate() {
+        Arrays.fill(cachedRows, -1);
+        Arrays.fill(cachedCells, null);
+    }
+}